@@ -0,0 +1,124 @@
+// Catalano Core Library
+// The Catalano Framework
+//
+// Copyright © Diego Catalano, 2013
+// diego.catalano at live.com
+//
+//    This library is free software; you can redistribute it and/or
+//    modify it under the terms of the GNU Lesser General Public
+//    License as published by the Free Software Foundation; either
+//    version 2.1 of the License, or (at your option) any later version.
+//
+//    This library is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+//    Lesser General Public License for more details.
+//
+//    You should have received a copy of the GNU Lesser General Public
+//    License along with this library; if not, write to the Free Software
+//    Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+//
+
+package Catalano.Core;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Splits a range of indexes in contiguous blocks processed by several threads.
+ * <br /> The blocks run in a shared fork/join pool, so no thread is created for each call.
+ * A block can call For again: the waiting worker executes the queued blocks instead of blocking.
+ * @author Diego Catalano
+ */
+public final class Parallel {
+
+    // Worker threads are daemon threads, created on demand and kept alive between calls.
+    private static final ForkJoinPool POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+    /**
+     * Body of a parallel loop, called once for each block.
+     */
+    public static interface IBlock {
+        /**
+         * Process a block of indexes.
+         * @param block Index of the block.
+         * @param from First index, inclusive.
+         * @param to Last index, exclusive.
+         */
+        void Compute(int block, int from, int to);
+    }
+
+    private Parallel() {}
+
+    /**
+     * Get the default number of threads, one for each available processor.
+     * @return Number of threads.
+     */
+    public static int getDefaultThreads(){
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Get the number of blocks used by For for a range.
+     * @param from First index, inclusive.
+     * @param to Last index, exclusive.
+     * @param threads Maximum number of threads.
+     * @return Number of blocks.
+     */
+    public static int Blocks(int from, int to, int threads){
+        return Math.max(1, Math.min(threads, to - from));
+    }
+
+    /**
+     * Process the range [from, to) in contiguous blocks, one for each thread.
+     * <br /> The first block runs in the calling thread, the others in the shared pool. Exceptions thrown by a block are rethrown after all blocks finished.
+     * @param from First index, inclusive.
+     * @param to Last index, exclusive.
+     * @param threads Maximum number of threads.
+     * @param body Body called for each block.
+     */
+    public static void For(int from, int to, int threads, final IBlock body){
+        final int n = Blocks(from, to, threads);
+        if (n == 1) {
+            if (to > from) body.Compute(0, from, to);
+            return;
+        }
+
+        final int length = to - from;
+        final int start = from;
+        final Throwable[] error = new Throwable[1];
+        ForkJoinTask<?>[] tasks = new ForkJoinTask<?>[n - 1];
+        for (int b = 1; b < n; b++) {
+            final int block = b;
+            tasks[b - 1] = POOL.submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        body.Compute(block, start + (int)((long)length * block / n), start + (int)((long)length * (block + 1) / n));
+                    } catch (Throwable t) {
+                        synchronized (error) {
+                            if (error[0] == null) error[0] = t;
+                        }
+                    }
+                }
+            });
+        }
+
+        try {
+            body.Compute(0, start, start + length / n);
+        } catch (Throwable t) {
+            synchronized (error) {
+                if (error[0] == null) error[0] = t;
+            }
+        }
+
+        // The blocks catch their exceptions, so join only waits.
+        for (ForkJoinTask<?> task : tasks)
+            task.join();
+
+        Throwable t = error[0];
+        if (t instanceof RuntimeException) throw (RuntimeException)t;
+        if (t instanceof Error) throw (Error)t;
+        if (t != null) throw new RuntimeException(t);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,434 @@
+// Catalano Imaging Library
+// The Catalano Framework
+//
+// Copyright © Diego Catalano, 2013
+// diego.catalano at live.com
+//
+//    This library is free software; you can redistribute it and/or
+//    modify it under the terms of the GNU Lesser General Public
+//    License as published by the Free Software Foundation; either
+//    version 2.1 of the License, or (at your option) any later version.
+//
+//    This library is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+//    Lesser General Public License for more details.
+//
+//    You should have received a copy of the GNU Lesser General Public
+//    License along with this library; if not, write to the Free Software
+//    Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+//
+
+package Catalano.Imaging.Corners;
+
+import Catalano.Core.IntPoint;
+import Catalano.Core.Parallel;
+import Catalano.Imaging.FastBitmap;
+import java.util.ArrayList;
+
+/**
+ * Difference of Gaussian keypoints detector.
+ * <br /> Scale-space extrema detection as described by Lowe in: <b>D. G. Lowe, "Distinctive Image Features from Scale-Invariant Keypoints", International Journal of Computer Vision 60(2), pp. 91–110, 2004</b>.
+ * <para> Each octave blurs incrementally from the previous Gaussian image and computes the DoG layers by subtraction in float.
+ * Only two Gaussian images and three DoG layers are kept for each octave, whatever the number of scales. Points which are extrema of their 3x3x3
+ * neighborhood are refined with one quadratic step and rejected if the contrast is low or the response lies along an edge.
+ * Octaves are processed in parallel.</para>
+ * <para> Points are returned in the coordinates of the source image, with x as row and y as column.</para>
+ * @author Diego Catalano
+ */
+public class DifferenceOfGaussianDetector implements ICornersDetector{
+    
+    // Blur assumed in the source image.
+    private static final double INITIAL_SIGMA = 0.5;
+    
+    // Points closer to the border are not tested.
+    private static final int BORDER = 4;
+    
+    private int octaves = 4;
+    private int scales = 3;
+    private double sigma = 1.6;
+    private float contrastThreshold = 0.03f;
+    private float edgeThreshold = 10;
+    private int threads = 1;
+
+    /**
+     * Get number of octaves. Default value is 4.
+     * @return Number of octaves.
+     */
+    public int getOctaves() {
+        return octaves;
+    }
+
+    /**
+     * Set number of octaves. Default value is 4.
+     * <br /> Octaves smaller than the border are not processed.
+     * @param octaves Number of octaves.
+     */
+    public void setOctaves(int octaves) {
+        this.octaves = Math.max(1, octaves);
+    }
+
+    /**
+     * Get number of scales per octave. Default value is 3.
+     * @return Number of scales.
+     */
+    public int getScales() {
+        return scales;
+    }
+
+    /**
+     * Set number of scales per octave. Default value is 3.
+     * @param scales Number of scales.
+     */
+    public void setScales(int scales) {
+        this.scales = Math.max(1, scales);
+    }
+
+    /**
+     * Get sigma of the first scale. Default value is 1.6.
+     * @return Sigma value.
+     */
+    public double getSigma() {
+        return sigma;
+    }
+
+    /**
+     * Set sigma of the first scale. Default value is 1.6.
+     * @param sigma Sigma value.
+     */
+    public void setSigma(double sigma) {
+        this.sigma = Math.max(INITIAL_SIGMA + 0.1, sigma);
+    }
+
+    /**
+     * Get contrast threshold, for intensities in the range [0..1]. Default value is 0.03.
+     * @return Contrast threshold.
+     */
+    public float getContrastThreshold() {
+        return contrastThreshold;
+    }
+
+    /**
+     * Set contrast threshold, for intensities in the range [0..1]. Default value is 0.03.
+     * @param contrastThreshold Contrast threshold.
+     */
+    public void setContrastThreshold(float contrastThreshold) {
+        this.contrastThreshold = contrastThreshold;
+    }
+
+    /**
+     * Get edge threshold, the maximum ratio between the principal curvatures. Default value is 10.
+     * @return Edge threshold.
+     */
+    public float getEdgeThreshold() {
+        return edgeThreshold;
+    }
+
+    /**
+     * Set edge threshold, the maximum ratio between the principal curvatures. Default value is 10.
+     * @param edgeThreshold Edge threshold.
+     */
+    public void setEdgeThreshold(float edgeThreshold) {
+        this.edgeThreshold = Math.max(1, edgeThreshold);
+    }
+
+    /**
+     * Get number of threads.
+     * @return Number of threads.
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Set number of threads.
+     * @param threads Number of threads.
+     */
+    public void setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Initializes a new instance of the DifferenceOfGaussianDetector class.
+     */
+    public DifferenceOfGaussianDetector() {}
+    
+    /**
+     * Initializes a new instance of the DifferenceOfGaussianDetector class.
+     * @param octaves Number of octaves.
+     * @param scales Number of scales per octave.
+     */
+    public DifferenceOfGaussianDetector(int octaves, int scales) {
+        setOctaves(octaves);
+        setScales(scales);
+    }
+    
+    /**
+     * Initializes a new instance of the DifferenceOfGaussianDetector class.
+     * @param octaves Number of octaves.
+     * @param scales Number of scales per octave.
+     * @param contrastThreshold Contrast threshold.
+     * @param edgeThreshold Edge threshold.
+     */
+    public DifferenceOfGaussianDetector(int octaves, int scales, float contrastThreshold, float edgeThreshold) {
+        setOctaves(octaves);
+        setScales(scales);
+        setContrastThreshold(contrastThreshold);
+        setEdgeThreshold(edgeThreshold);
+    }
+
+    @Override
+    public ArrayList<IntPoint> ProcessImage(FastBitmap fastBitmap) {
+        
+        FastBitmap gray = fastBitmap;
+        if (!fastBitmap.isGrayscale()) {
+            gray = new FastBitmap(fastBitmap);
+            gray.toGrayscale();
+        }
+        
+        int width = gray.getWidth();
+        int height = gray.getHeight();
+        
+        // Octaves must leave some points inside the border.
+        int n = 0;
+        while (n < octaves && (width >> n) > 2 * BORDER && (height >> n) > 2 * BORDER)
+            n++;
+        final ArrayList<IntPoint> corners = new ArrayList<IntPoint>();
+        if (n == 0) return corners;
+        
+        // Gaussian kernels: the first scale of each octave, and the increments between the scales.
+        final int s = scales;
+        final float[][] kernels = new float[s + 3][];
+        double k = Math.pow(2, 1.0 / s);
+        kernels[0] = Kernel(Math.sqrt(sigma * sigma - INITIAL_SIGMA * INITIAL_SIGMA));
+        for (int i = 1; i < s + 3; i++) {
+            double prev = sigma * Math.pow(k, i - 1);
+            double next = prev * k;
+            kernels[i] = Kernel(Math.sqrt(next * next - prev * prev));
+        }
+        float[] down = Kernel(sigma * Math.sqrt(3));
+        
+        // Base of each octave: the first scale, which is the previous base blurred to twice its sigma and decimated.
+        final float[][] bases = new float[n][];
+        final int[] widths = new int[n];
+        final int[] heights = new int[n];
+        
+        byte[] data = gray.getGrayData();
+        float[] image = new float[width * height];
+        for (int i = 0; i < image.length; i++)
+            image[i] = (data[i] & 0xFF) * (1f / 255);
+        
+        float[] temp = new float[width * height];
+        widths[0] = width;
+        heights[0] = height;
+        bases[0] = new float[width * height];
+        Blur(image, bases[0], temp, width, height, kernels[0]);
+        
+        for (int o = 1; o < n; o++) {
+            int w = widths[o - 1];
+            int h = heights[o - 1];
+            Blur(bases[o - 1], image, temp, w, h, down);
+            
+            widths[o] = (w + 1) / 2;
+            heights[o] = (h + 1) / 2;
+            float[] base = new float[widths[o] * heights[o]];
+            int idx = 0;
+            for (int i = 0; i < h; i += 2)
+                for (int j = 0; j < w; j += 2)
+                    base[idx++] = image[i * w + j];
+            bases[o] = base;
+        }
+        
+        final ArrayList<ArrayList<IntPoint>> found = new ArrayList<ArrayList<IntPoint>>();
+        for (int o = 0; o < n; o++)
+            found.add(null);
+        
+        final int imageWidth = width;
+        final int imageHeight = height;
+        Parallel.For(0, n, threads, new Parallel.IBlock() {
+            @Override
+            public void Compute(int block, int from, int to) {
+                for (int o = from; o < to; o++) {
+                    ArrayList<IntPoint> list = ProcessOctave(bases[o], widths[o], heights[o], o, imageWidth, imageHeight, kernels);
+                    synchronized (found) {
+                        found.set(o, list);
+                    }
+                }
+            }
+        });
+        
+        for (int o = 0; o < n; o++)
+            corners.addAll(found.get(o));
+        
+        return corners;
+    }
+    
+    private ArrayList<IntPoint> ProcessOctave(float[] base, int width, int height, int octave, int imageWidth, int imageHeight, float[][] kernels){
+        
+        ArrayList<IntPoint> corners = new ArrayList<IntPoint>();
+        int size = width * height;
+        int s = scales;
+        
+        float[] prev = base;
+        float[] next = new float[size];
+        float[] temp = new float[size];
+        float[][] dog = {new float[size], new float[size], new float[size]};
+        
+        float prefilter = 0.5f * contrastThreshold / s;
+        float edge = (edgeThreshold + 1) * (edgeThreshold + 1) / edgeThreshold;
+        int scale = 1 << octave;
+        
+        for (int i = 1; i < s + 3; i++) {
+            Blur(prev, next, temp, width, height, kernels[i]);
+            
+            float[] d = dog[(i - 1) % 3];
+            for (int p = 0; p < size; p++)
+                d[p] = next[p] - prev[p];
+            
+            // The base belongs to the caller, so the first image is never overwritten.
+            float[] t = prev == base ? new float[size] : prev;
+            prev = next;
+            next = t;
+            
+            if (i < 3) continue;
+            
+            float[] d0 = dog[(i - 3) % 3];
+            float[] d1 = dog[(i - 2) % 3];
+            float[] d2 = dog[(i - 1) % 3];
+            
+            for (int x = BORDER; x < height - BORDER; x++) {
+                for (int y = BORDER; y < width - BORDER; y++) {
+                    int p = x * width + y;
+                    float v = d1[p];
+                    if (Math.abs(v) <= prefilter) continue;
+                    if (!IsExtremum(d0, d1, d2, p, width, v)) continue;
+                    
+                    // Spatial Hessian for the edge response.
+                    float dxx = d1[p - width] + d1[p + width] - 2 * v;
+                    float dyy = d1[p - 1] + d1[p + 1] - 2 * v;
+                    float dxy = (d1[p + width + 1] - d1[p + width - 1] - d1[p - width + 1] + d1[p - width - 1]) * 0.25f;
+                    float tr = dxx + dyy;
+                    float det = dxx * dyy - dxy * dxy;
+                    if (det <= 0 || tr * tr >= edge * det) continue;
+                    
+                    // One step of quadratic refinement: offset = -H^-1 * g.
+                    float gx = (d1[p + width] - d1[p - width]) * 0.5f;
+                    float gy = (d1[p + 1] - d1[p - 1]) * 0.5f;
+                    float gs = (d2[p] - d0[p]) * 0.5f;
+                    float dss = d2[p] + d0[p] - 2 * v;
+                    float dxs = (d2[p + width] - d2[p - width] - d0[p + width] + d0[p - width]) * 0.25f;
+                    float dys = (d2[p + 1] - d2[p - 1] - d0[p + 1] + d0[p - 1]) * 0.25f;
+                    
+                    double[] offset = Solve(dxx, dxy, dxs, dyy, dys, dss, -gx, -gy, -gs);
+                    if (offset == null) continue;
+                    if (Math.abs(offset[0]) > 1.5 || Math.abs(offset[1]) > 1.5 || Math.abs(offset[2]) > 1.5) continue;
+                    
+                    double contrast = v + 0.5 * (gx * offset[0] + gy * offset[1] + gs * offset[2]);
+                    if (Math.abs(contrast) < contrastThreshold) continue;
+                    
+                    int r = (int)Math.round((x + offset[0]) * scale);
+                    int c = (int)Math.round((y + offset[1]) * scale);
+                    r = Math.max(0, Math.min(imageHeight - 1, r));
+                    c = Math.max(0, Math.min(imageWidth - 1, c));
+                    corners.add(new IntPoint(r, c));
+                }
+            }
+        }
+        
+        return corners;
+    }
+    
+    // Strict maximum or minimum of the 26 neighbors.
+    private static boolean IsExtremum(float[] d0, float[] d1, float[] d2, int p, int width, float v){
+        if (v > 0) {
+            for (int i = -width; i <= width; i += width) {
+                for (int j = -1; j <= 1; j++) {
+                    int q = p + i + j;
+                    if (d0[q] >= v || d2[q] >= v) return false;
+                    if (q != p && d1[q] >= v) return false;
+                }
+            }
+        }
+        else{
+            for (int i = -width; i <= width; i += width) {
+                for (int j = -1; j <= 1; j++) {
+                    int q = p + i + j;
+                    if (d0[q] <= v || d2[q] <= v) return false;
+                    if (q != p && d1[q] <= v) return false;
+                }
+            }
+        }
+        return true;
+    }
+    
+    // Solve the symmetric system [a b c; b d e; c e f] x = [g h i] with the Cramer's rule.
+    private static double[] Solve(double a, double b, double c, double d, double e, double f, double g, double h, double i){
+        double det = a * (d * f - e * e) - b * (b * f - c * e) + c * (b * e - c * d);
+        if (Math.abs(det) < 1e-12) return null;
+        
+        double x = (g * (d * f - e * e) - b * (h * f - e * i) + c * (h * e - d * i)) / det;
+        double y = (a * (h * f - e * i) - g * (b * f - c * e) + c * (b * i - h * c)) / det;
+        double z = (a * (d * i - h * e) - b * (b * i - h * c) + g * (b * e - c * d)) / det;
+        return new double[] {x, y, z};
+    }
+    
+    private static float[] Kernel(double sigma){
+        int radius = Math.max(1, (int)Math.ceil(3 * sigma));
+        float[] kernel = new float[radius * 2 + 1];
+        double sum = 0;
+        for (int i = -radius; i <= radius; i++) {
+            double v = Math.exp(-i * i / (2 * sigma * sigma));
+            kernel[i + radius] = (float)v;
+            sum += v;
+        }
+        for (int i = 0; i < kernel.length; i++)
+            kernel[i] /= sum;
+        return kernel;
+    }
+    
+    // Separable convolution, replicating the border pixels.
+    private static void Blur(float[] src, float[] dst, float[] temp, int width, int height, float[] kernel){
+        int radius = kernel.length / 2;
+        
+        for (int x = 0; x < height; x++) {
+            int row = x * width;
+            for (int y = 0; y < width; y++) {
+                float v = 0;
+                if (y >= radius && y < width - radius) {
+                    int p = row + y - radius;
+                    for (int k = 0; k < kernel.length; k++)
+                        v += src[p + k] * kernel[k];
+                }
+                else{
+                    for (int k = 0; k < kernel.length; k++)
+                        v += src[row + Math.max(0, Math.min(width - 1, y + k - radius))] * kernel[k];
+                }
+                temp[row + y] = v;
+            }
+        }
+        
+        for (int x = 0; x < height; x++) {
+            int row = x * width;
+            if (x >= radius && x < height - radius) {
+                // Accumulate whole rows to read the memory in order.
+                int top = (x - radius) * width;
+                for (int y = 0; y < width; y++)
+                    dst[row + y] = temp[top + y] * kernel[0];
+                for (int k = 1; k < kernel.length; k++) {
+                    int p = top + k * width;
+                    float w = kernel[k];
+                    for (int y = 0; y < width; y++)
+                        dst[row + y] += temp[p + y] * w;
+                }
+            }
+            else{
+                for (int y = 0; y < width; y++) {
+                    float v = 0;
+                    for (int k = 0; k < kernel.length; k++)
+                        v += temp[Math.max(0, Math.min(height - 1, x + k - radius)) * width + y] * kernel[k];
+                    dst[row + y] = v;
+                }
+            }
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,327 @@
+// Catalano Imaging Library
+// The Catalano Framework
+//
+// Copyright © Diego Catalano, 2013
+// diego.catalano at live.com
+//
+//    This library is free software; you can redistribute it and/or
+//    modify it under the terms of the GNU Lesser General Public
+//    License as published by the Free Software Foundation; either
+//    version 2.1 of the License, or (at your option) any later version.
+//
+//    This library is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+//    Lesser General Public License for more details.
+//
+//    You should have received a copy of the GNU Lesser General Public
+//    License along with this library; if not, write to the Free Software
+//    Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+//
+
+package Catalano.Imaging.Corners;
+
+import Catalano.Core.IntPoint;
+import Catalano.Imaging.FastBitmap;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * FAST (Features from Accelerated Segment Test) corners detector.
+ * <br /> A pixel is a corner if a contiguous arc of the 16 pixels in a circle of radius 3 is brighter or darker than the center by more than the threshold.
+ * The algorithm is described by Rosten and Drummond in: <b>E. Rosten and T. Drummond, "Machine learning for high-speed corner detection", European Conference on Computer Vision, pp. 430–443, 2006</b>.
+ * <para> Pixels 1, 5, 9 and 13 of the circle are tested first to reject most of the candidates. The circle is read with precomputed offsets
+ * and the arc is checked with a lookup table of the 16 bits masks. The score used by the non-maximum suppression is the sum of the absolute
+ * differences above the threshold on the arc.</para>
+ * <para> The number of corners can be limited keeping the best scores in each cell of a grid, so the corners are spread over the image.</para>
+ * @author Diego Catalano
+ */
+public class FastCornersDetector implements ICornersDetector{
+    
+    // Bresenham circle of radius 3, clockwise from the top (row, column).
+    private static final int[][] CIRCLE = {
+        {-3, 0}, {-3, 1}, {-2, 2}, {-1, 3}, {0, 3}, {1, 3}, {2, 2}, {3, 1},
+        {3, 0}, {3, -1}, {2, -2}, {1, -3}, {0, -3}, {-1, -3}, {-2, -2}, {-3, -1}
+    };
+    
+    private int threshold = 20;
+    private int arcLength = 9;
+    private boolean suppression = true;
+    private int maxCorners = 0;
+    private int gridRows = 1;
+    private int gridColumns = 1;
+    
+    // Built here and in setArcLength, never lazily, so ProcessImage can run while the arc length changes.
+    private boolean[] arcs = BuildArcs(arcLength);
+
+    /**
+     * Get threshold. Default value is 20.
+     * @return Threshold.
+     */
+    public int getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * Set threshold. Default value is 20.
+     * @param threshold Threshold.
+     */
+    public void setThreshold(int threshold) {
+        this.threshold = Math.max(0, Math.min(255, threshold));
+    }
+
+    /**
+     * Get length of the arc. Default value is 9.
+     * @return Length of the arc.
+     */
+    public int getArcLength() {
+        return arcLength;
+    }
+
+    /**
+     * Set length of the arc, from 9 (FAST-9) to 12 (FAST-12). Default value is 9.
+     * @param arcLength Length of the arc.
+     */
+    public void setArcLength(int arcLength) {
+        this.arcLength = Math.max(9, Math.min(12, arcLength));
+        this.arcs = BuildArcs(this.arcLength);
+    }
+
+    /**
+     * Check if non-maximum suppression is used. Default value is true.
+     * @return True if non-maximum suppression is used.
+     */
+    public boolean isSuppression() {
+        return suppression;
+    }
+
+    /**
+     * Set non-maximum suppression. Default value is true.
+     * @param suppression True to use non-maximum suppression.
+     */
+    public void setSuppression(boolean suppression) {
+        this.suppression = suppression;
+    }
+
+    /**
+     * Get maximum number of corners. Default value is 0 (no limit).
+     * @return Maximum number of corners.
+     */
+    public int getMaxCorners() {
+        return maxCorners;
+    }
+
+    /**
+     * Set maximum number of corners. Default value is 0 (no limit).
+     * <br /> When limited, the corners are sorted by score.
+     * @param maxCorners Maximum number of corners.
+     */
+    public void setMaxCorners(int maxCorners) {
+        this.maxCorners = Math.max(0, maxCorners);
+    }
+
+    /**
+     * Get number of rows of the grid.
+     * @return Number of rows.
+     */
+    public int getGridRows() {
+        return gridRows;
+    }
+
+    /**
+     * Get number of columns of the grid.
+     * @return Number of columns.
+     */
+    public int getGridColumns() {
+        return gridColumns;
+    }
+    
+    /**
+     * Set the grid used to spread the corners when the number of corners is limited. Default value is 1x1.
+     * <br /> Each cell keeps the best corners up to its share of the maximum, the remaining places are filled with the best corners left.
+     * @param rows Number of rows.
+     * @param columns Number of columns.
+     */
+    public void setGrid(int rows, int columns){
+        this.gridRows = Math.max(1, rows);
+        this.gridColumns = Math.max(1, columns);
+    }
+
+    /**
+     * Initializes a new instance of the FastCornersDetector class.
+     */
+    public FastCornersDetector() {}
+    
+    /**
+     * Initializes a new instance of the FastCornersDetector class.
+     * @param threshold Threshold.
+     */
+    public FastCornersDetector(int threshold) {
+        setThreshold(threshold);
+    }
+    
+    /**
+     * Initializes a new instance of the FastCornersDetector class.
+     * @param threshold Threshold.
+     * @param arcLength Length of the arc, from 9 to 12.
+     */
+    public FastCornersDetector(int threshold, int arcLength) {
+        setThreshold(threshold);
+        setArcLength(arcLength);
+    }
+    
+    /**
+     * Initializes a new instance of the FastCornersDetector class.
+     * @param threshold Threshold.
+     * @param arcLength Length of the arc, from 9 to 12.
+     * @param suppression True to use non-maximum suppression.
+     */
+    public FastCornersDetector(int threshold, int arcLength, boolean suppression) {
+        setThreshold(threshold);
+        setArcLength(arcLength);
+        this.suppression = suppression;
+    }
+
+    @Override
+    public ArrayList<IntPoint> ProcessImage(FastBitmap fastBitmap) {
+        
+        FastBitmap gray = fastBitmap;
+        if (!fastBitmap.isGrayscale()) {
+            gray = new FastBitmap(fastBitmap);
+            gray.toGrayscale();
+        }
+        
+        int width = gray.getWidth();
+        int height = gray.getHeight();
+        byte[] data = gray.getGrayData();
+        
+        boolean[] arcs = this.arcs;
+        
+        int[] offset = new int[16];
+        for (int k = 0; k < 16; k++)
+            offset[k] = CIRCLE[k][0] * width + CIRCLE[k][1];
+        int o0 = offset[0], o4 = offset[4], o8 = offset[8], o12 = offset[12];
+        
+        // An arc of n pixels always covers n / 4 of the pixels 1, 5, 9 and 13.
+        int required = arcLength / 4;
+        int t = threshold;
+        
+        int[] score = new int[width * height];
+        int[] candidates = new int[256];
+        int count = 0;
+        
+        for (int x = 3; x < height - 3; x++) {
+            for (int y = 3, p = x * width + 3; y < width - 3; y++, p++) {
+                int c = data[p] & 0xFF;
+                int hi = c + t;
+                int lo = c - t;
+                
+                // High speed test.
+                int a = data[p + o0] & 0xFF;
+                int b = data[p + o4] & 0xFF;
+                int d = data[p + o8] & 0xFF;
+                int e = data[p + o12] & 0xFF;
+                int bright = (a > hi ? 1 : 0) + (b > hi ? 1 : 0) + (d > hi ? 1 : 0) + (e > hi ? 1 : 0);
+                int dark = (a < lo ? 1 : 0) + (b < lo ? 1 : 0) + (d < lo ? 1 : 0) + (e < lo ? 1 : 0);
+                if (bright < required && dark < required) continue;
+                
+                int brightMask = 0, darkMask = 0;
+                int brightSum = 0, darkSum = 0;
+                for (int k = 0; k < 16; k++) {
+                    int v = data[p + offset[k]] & 0xFF;
+                    if (v > hi) {
+                        brightMask |= 1 << k;
+                        brightSum += v - hi;
+                    }
+                    else if (v < lo) {
+                        darkMask |= 1 << k;
+                        darkSum += lo - v;
+                    }
+                }
+                
+                boolean isBright = arcs[brightMask];
+                boolean isDark = arcs[darkMask];
+                if (!isBright && !isDark) continue;
+                
+                score[p] = 1 + Math.max(isBright ? brightSum : 0, isDark ? darkSum : 0);
+                if (count == candidates.length)
+                    candidates = Arrays.copyOf(candidates, count * 2);
+                candidates[count++] = p;
+            }
+        }
+        
+        // Non-maximum suppression in 3x3, ties are kept by the first pixel in raster order.
+        if (suppression) {
+            int n = 0;
+            for (int i = 0; i < count; i++) {
+                int p = candidates[i];
+                int s = score[p];
+                if (score[p - width - 1] >= s || score[p - width] >= s || score[p - width + 1] >= s || score[p - 1] >= s) continue;
+                if (score[p + 1] > s || score[p + width - 1] > s || score[p + width] > s || score[p + width + 1] > s) continue;
+                candidates[n++] = p;
+            }
+            count = n;
+        }
+        
+        ArrayList<IntPoint> corners = new ArrayList<IntPoint>();
+        
+        if (maxCorners == 0) {
+            for (int i = 0; i < count; i++)
+                corners.add(new IntPoint(candidates[i] / width, candidates[i] % width));
+            return corners;
+        }
+        
+        // Sort by score, best first, then in raster order.
+        long[] sorted = new long[count];
+        for (int i = 0; i < count; i++)
+            sorted[i] = ((long)(Integer.MAX_VALUE - score[candidates[i]]) << 32) | candidates[i];
+        Arrays.sort(sorted);
+        
+        int cells = gridRows * gridColumns;
+        int share = (maxCorners + cells - 1) / cells;
+        int[] used = new int[cells];
+        boolean[] taken = new boolean[count];
+        int total = 0;
+        
+        for (int i = 0; i < count && total < maxCorners; i++) {
+            int p = (int)sorted[i];
+            int x = p / width;
+            int y = p % width;
+            int cell = (x * gridRows / height) * gridColumns + y * gridColumns / width;
+            if (used[cell] < share) {
+                used[cell]++;
+                taken[i] = true;
+                total++;
+            }
+        }
+        
+        // Fill the places left by the cells with few corners.
+        for (int i = 0; i < count && total < maxCorners; i++) {
+            if (!taken[i]) {
+                taken[i] = true;
+                total++;
+            }
+        }
+        
+        for (int i = 0; i < count; i++) {
+            if (taken[i]) {
+                int p = (int)sorted[i];
+                corners.add(new IntPoint(p / width, p % width));
+            }
+        }
+        
+        return corners;
+    }
+    
+    // Masks of 16 bits which contain a circular run of ones of the given length.
+    private static boolean[] BuildArcs(int length){
+        boolean[] arcs = new boolean[1 << 16];
+        for (int m = 0; m < arcs.length; m++) {
+            int run = m | (m << 16);
+            for (int k = 1; k < length; k++)
+                run &= run >>> 1;
+            arcs[m] = run != 0;
+        }
+        return arcs;
+    }
+}
\ No newline at end of file
@@ -26,12 +26,17 @@ package Catalano.Imaging.Corners;
 
 import Catalano.Core.ArraysUtil;
 import Catalano.Core.IntPoint;
+import Catalano.Core.Parallel;
 import Catalano.Imaging.FastBitmap;
 import Catalano.Math.Constants;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 /**
  * Harris Corners Detector.
+ * <para> The gradient products are computed and smoothed horizontally row by row into a small ring buffer, then smoothed vertically
+ * straight into the response, so the structure tensor is never stored for the whole image. Row bands run in parallel.
+ * Non-maximum suppression is done by blocks, as described in: <b>A. Neubeck and L. Van Gool, "Efficient Non-Maximum Suppression", International Conference on Pattern Recognition, 2006</b>.</para>
  * @author Diego Catalano
  */
 public class HarrisCornersDetector implements ICornersDetector{
@@ -51,6 +56,8 @@ public class HarrisCornersDetector implements ICornersDetector{
     private double sigma = 1.2;
     private float[] kernel;
     private int size = 7;
+    
+    private int threads = 1;
 
     /**
      * Gets the measure to use when detecting corners.
@@ -130,6 +137,23 @@ public class HarrisCornersDetector implements ICornersDetector{
      */
     public void setSigma(double sigma) {
         this.sigma = sigma;
+        createGaussian();
+    }
+
+    /**
+     * Get number of threads.
+     * @return Number of threads.
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Set number of threads.
+     * @param threads Number of threads.
+     */
+    public void setThreads(int threads) {
+        this.threads = Math.max(1, threads);
     }
 
     /**
@@ -227,6 +251,7 @@ public class HarrisCornersDetector implements ICornersDetector{
     }
     
     private void createGaussian(){
+        if (sigma <= 0) return;
         double[] kernel = new Catalano.Math.Functions.Gaussian(sigma).Kernel1D(size);
         this.kernel = ArraysUtil.toFloat(kernel);
     }
@@ -246,54 +271,126 @@ public class HarrisCornersDetector implements ICornersDetector{
             gray.toGrayscale();
         }
         
-        int width = gray.getWidth();
-        int height = gray.getHeight();
+        final int width = gray.getWidth();
+        final int height = gray.getHeight();
+        final byte[] data = gray.getGrayData();
         
-        // 1. Calculate partial differences
-        float[][] diffx = new float[height][width];
-        float[][] diffy = new float[height][width];
-        float[][] diffxy = new float[height][width];
+        // 1. Corner response map, zero where the response is under the threshold.
+        final float[] map = new float[width * height];
         
-        for (int i = 1; i < height - 1; i++) {
-            for (int j = 1; j < width - 1; j++) {
-                int p1 = fastBitmap.getGray(i - 1, j + 1);
-                int p2 = fastBitmap.getGray(i, j + 1);
-                int p3 = fastBitmap.getGray(i + 1, j + 1);
-                int p4 = fastBitmap.getGray(i - 1, j - 1);
-                int p5 = fastBitmap.getGray(i, j - 1);
-                int p6 = fastBitmap.getGray(i + 1, j - 1);
-                int p7 = fastBitmap.getGray(i + 1, j);
-                int p8 = fastBitmap.getGray(i - 1, j);
-                
-                float h = ((p1 + p2 + p3) - (p4 + p5 + p6)) * 0.166666667f;
-                float v = ((p6 + p7 + p3) - (p4 + p8 + p1)) * 0.166666667f;
-                
-                diffx[i][j] = h * h;
-                diffy[i][j] = v * v;
-                diffxy[i][j] = h * v;
+        Parallel.For(0, height, threads, new Parallel.IBlock() {
+            @Override
+            public void Compute(int block, int from, int to) {
+                Response(data, width, height, from, to, map);
             }
-        }
+        });
         
-        // 2. Smooth the diff images
-        if (sigma > 0.0)
-        {
-            float[][] temp = new float[height][width];
-
-            // Convolve with Gaussian kernel
-            convolve(diffx, temp, kernel);
-            convolve(diffy, temp, kernel);
-            convolve(diffxy, temp, kernel);
+        // 2. Suppress non-maximum points, one row of blocks at a time.
+        final int n = suppression;
+        final int blockRows = (height + n) / (n + 1);
+        final int[][] found = new int[blockRows][];
+        
+        Parallel.For(0, blockRows, threads, new Parallel.IBlock() {
+            @Override
+            public void Compute(int block, int from, int to) {
+                for (int b = from; b < to; b++)
+                    found[b] = Suppress(map, width, height, b * (n + 1), n);
+            }
+        });
+        
+        int count = 0;
+        for (int[] f : found)
+            count += f[0];
+        int[] points = new int[count];
+        count = 0;
+        for (int[] f : found) {
+            System.arraycopy(f, 1, points, count, f[0]);
+            count += f[0];
         }
+        Arrays.sort(points);
+        
+        ArrayList<IntPoint> cornersList = new ArrayList<IntPoint>(points.length);
+        for (int p : points)
+            cornersList.add(new IntPoint(p / width, p % width));
+        
+        return cornersList;
+    }
+    
+    /**
+     * Compute the corner response for a band of rows.
+     * <br /> Gradient products of each row are smoothed horizontally into a ring of rows, which is smoothed vertically for each output row.
+     * The response is computed where the whole kernel fits in the image.
+     */
+    private void Response(byte[] data, int width, int height, int from, int to, float[] map){
+        boolean smooth = sigma > 0;
+        float[] kernel = this.kernel;
+        int radius = smooth ? kernel.length / 2 : 0;
+        int rows = radius * 2 + 1;
+        
+        int first = Math.max(from, radius);
+        int last = Math.min(to, height - radius);
+        if (first >= last || width <= radius * 2) return;
         
-        // 3. Compute Harris Corner Response Map
-        float[][] map = new float[height][width];
+        float[] px = new float[width];
+        float[] py = new float[width];
+        float[] pxy = new float[width];
+        float[][] rx = new float[rows][width];
+        float[][] ry = new float[rows][width];
+        float[][] rxy = new float[rows][width];
+        float[] a = new float[width];
+        float[] b = new float[width];
+        float[] c = new float[width];
         
-        float M, A, B, C;
-        for (int i = 0; i < height; i++) {
-            for (int j = 0; j < width; j++) {
-                A = diffx[i][j];
-                B = diffy[i][j];
-                C = diffxy[i][j];
+        int next = first - radius;
+        
+        for (int x = first; x < last; x++) {
+            
+            // Gradient products and horizontal smoothing of the rows entering the window.
+            for (; next <= x + radius; next++) {
+                Products(data, width, height, next, px, py, pxy);
+                int slot = next % rows;
+                if (smooth) {
+                    Convolve(px, rx[slot], kernel);
+                    Convolve(py, ry[slot], kernel);
+                    Convolve(pxy, rxy[slot], kernel);
+                }
+                else{
+                    System.arraycopy(px, 0, rx[slot], 0, width);
+                    System.arraycopy(py, 0, ry[slot], 0, width);
+                    System.arraycopy(pxy, 0, rxy[slot], 0, width);
+                }
+            }
+            
+            // Vertical smoothing.
+            if (smooth) {
+                Arrays.fill(a, 0);
+                Arrays.fill(b, 0);
+                Arrays.fill(c, 0);
+                for (int k = 0; k < rows; k++) {
+                    int slot = (x - radius + k) % rows;
+                    float w = kernel[k];
+                    float[] sx = rx[slot], sy = ry[slot], sxy = rxy[slot];
+                    for (int y = radius; y < width - radius; y++) {
+                        a[y] += sx[y] * w;
+                        b[y] += sy[y] * w;
+                        c[y] += sxy[y] * w;
+                    }
+                }
+            }
+            else{
+                int slot = x % rows;
+                System.arraycopy(rx[slot], 0, a, 0, width);
+                System.arraycopy(ry[slot], 0, b, 0, width);
+                System.arraycopy(rxy[slot], 0, c, 0, width);
+            }
+            
+            // Harris corner response.
+            int row = x * width;
+            for (int y = radius; y < width - radius; y++) {
+                float A = a[y];
+                float B = b[y];
+                float C = c[y];
+                float M;
                 if (measure == HarrisCornerMeasure.Harris){
                     M = (A * B - C * C) - (k * ((A + B) * (A + B)));
                 }
@@ -302,73 +399,109 @@ public class HarrisCornersDetector implements ICornersDetector{
                 }
                 
                 if (M > threshold)
-                    map[i][j] = M;
-                
+                    map[row + y] = M;
             }
         }
+    }
+    
+    /**
+     * Squared differences of a row, zero at the border of the image.
+     */
+    private void Products(byte[] data, int width, int height, int x, float[] px, float[] py, float[] pxy){
+        if (x == 0 || x == height - 1) {
+            Arrays.fill(px, 0);
+            Arrays.fill(py, 0);
+            Arrays.fill(pxy, 0);
+            return;
+        }
         
-        // 4. Suppress non-maximum points
-        ArrayList<IntPoint> cornersList = new ArrayList<IntPoint>();
+        px[0] = py[0] = pxy[0] = 0;
+        px[width - 1] = py[width - 1] = pxy[width - 1] = 0;
         
-        for (int x = suppression, maxX = height - suppression; x < maxX; x++) {
-            for (int y = suppression, maxY = width - suppression; y < maxY; y++) {
-                float currentValue = map[x][y];
-                
-                // for each windows' row
-                for (int i = -suppression; (currentValue != 0) && (i <= suppression); i++) {
-                    
-                    // for each windows' pixel
-                    for (int j = -suppression; j <= suppression; j++) {
-                        if (map[x + i][y + j] > currentValue){
-                            currentValue = 0;
-                            break;
-                        }
-                    }
-                }
-                
-                // check if this point is really interesting
-                if (currentValue != 0){
-                    cornersList.add(new IntPoint(x, y));
-                }
-            }
+        int up = (x - 1) * width;
+        int mid = x * width;
+        int down = (x + 1) * width;
+        for (int j = 1; j < width - 1; j++) {
+            int p1 = data[up + j + 1] & 0xFF;
+            int p2 = data[mid + j + 1] & 0xFF;
+            int p3 = data[down + j + 1] & 0xFF;
+            int p4 = data[up + j - 1] & 0xFF;
+            int p5 = data[mid + j - 1] & 0xFF;
+            int p6 = data[down + j - 1] & 0xFF;
+            int p7 = data[down + j] & 0xFF;
+            int p8 = data[up + j] & 0xFF;
+            
+            float h = ((p1 + p2 + p3) - (p4 + p5 + p6)) * 0.166666667f;
+            float v = ((p6 + p7 + p3) - (p4 + p8 + p1)) * 0.166666667f;
+            
+            px[j] = h * h;
+            py[j] = v * v;
+            pxy[j] = h * v;
         }
-        
-        return cornersList;
     }
     
     /**
-     * Convolution with decomposed 1D kernel.
-     * @param image Original image.
-     * @param temp Temporary image.
-     * @param kernel Kernel.
+     * Horizontal convolution of a row, where the whole kernel fits.
      */
-    private void convolve(float[][] image, float[][] temp, float[] kernel){
-        int width = image[0].length;
-        int height = image.length;
+    private void Convolve(float[] src, float[] dst, float[] kernel){
         int radius = kernel.length / 2;
+        for (int y = radius; y < src.length - radius; y++) {
+            float v = 0;
+            for (int k = 0, p = y - radius; k < kernel.length; k++, p++)
+                v += src[p] * kernel[k];
+            dst[y] = v;
+        }
+    }
+    
+    /**
+     * Block non-maximum suppression for one row of blocks.
+     * <br /> The maximum of each block of (n + 1) x (n + 1) pixels is the only candidate, and it is checked against its full window.
+     * @return Number of corners followed by their indexes.
+     */
+    private static int[] Suppress(float[] map, int width, int height, int top, int n){
+        int[] found = new int[16];
+        int count = 0;
+        int bottom = Math.min(height, top + n + 1);
         
-        for (int x = 0; x < height; x++){
-            for (int y = radius; y < width - radius; y++){
-                float v = 0;
-                for (int k = 0; k < kernel.length; k++){
-                    v += image[x][y + k - radius] * kernel[k];
+        for (int left = 0; left < width; left += n + 1) {
+            int right = Math.min(width, left + n + 1);
+            
+            // Maximum of the block.
+            float max = 0;
+            int mx = -1, my = -1;
+            for (int i = top; i < bottom; i++) {
+                for (int j = left, p = i * width + left; j < right; j++, p++) {
+                    if (map[p] > max) {
+                        max = map[p];
+                        mx = i;
+                        my = j;
+                    }
                 }
-                temp[x][y] = v;
             }
-        }
-
-
-        for (int y = 0; y < width; y++)
-        {
-            for (int x = radius; x < height - radius; x++)
-            {
-                float v = 0;
-                for (int k = 0; k < kernel.length; k++){
-                    v += temp[x + k - radius][y] * kernel[k];
+            
+            if (mx < n || mx >= height - n || my < n || my >= width - n) continue;
+            
+            // Check the window outside the block.
+            boolean isMax = true;
+            for (int i = mx - n; isMax && i <= mx + n; i++) {
+                boolean inside = i >= top && i < bottom;
+                for (int j = my - n, p = i * width + my - n; j <= my + n; j++, p++) {
+                    if (inside && j >= left && j < right) continue;
+                    if (map[p] > max) {
+                        isMax = false;
+                        break;
+                    }
                 }
-                
-                image[x][y] = v;
+            }
+            
+            if (isMax) {
+                if (count + 1 == found.length)
+                    found = Arrays.copyOf(found, found.length * 2);
+                found[++count] = mx * width + my;
             }
         }
+        
+        found[0] = count;
+        return found;
     }
-}
\ No newline at end of file
+}
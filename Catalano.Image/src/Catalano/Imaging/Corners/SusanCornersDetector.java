@@ -31,14 +31,26 @@ import java.util.ArrayList;
 /**
  * Susan corners detector.
  * The class implements Susan corners detector, which is described by S.M. Smith in: <b>S.M. Smith, "SUSAN - a new approach to low level image processing", Internal Technical Report TR95SMS1, Defense Research Agency, Chobham Lane, Chertsey, Surrey, UK, 1995</b>.
+ * <para> The circular mask of 37 pixels is read with precomputed index offsets, and the brightness similarity exp(-(d/t)^6)
+ * comes from a lookup table of the 511 possible differences, scaled by 100 as in the original implementation.
+ * The smooth similarity counts partially similar pixels too, so on noisy images the corners differ from those of a hard threshold.
+ * The USAN map is kept per thread, so an instance can be shared between threads.</para>
  * @author Diego Catalano
  */
 public class SusanCornersDetector implements ICornersDetector{
     
     private int differenceThreshold = 25;
     private int geometricalThreshold = 18;
-    private ArrayList<IntPoint> corners = new ArrayList<IntPoint>();
     private int[] rowRadius = { 1, 2, 3, 3, 3, 2, 1 };
+    
+    // Similarity of one pixel, the unit of the USAN area.
+    private static final int ONE = 100;
+    
+    // Built in the constructors and in setDifferenceThreshold, never lazily.
+    private int[] similarity = Similarity(differenceThreshold);
+    
+    // USAN map of each thread, reused between images of the same size.
+    private final ThreadLocal<int[]> susanMaps = new ThreadLocal<int[]>();
 
     /**
      * Initialize a new instance of the SusanCornersDetector class.
@@ -53,7 +65,7 @@ public class SusanCornersDetector implements ICornersDetector{
      * @param geometricalThreshold Geometrical threshold.
      */
     public SusanCornersDetector(int differenceThreshold, int geometricalThreshold) {
-        this.differenceThreshold = differenceThreshold;
+        setDifferenceThreshold(differenceThreshold);
         this.geometricalThreshold = geometricalThreshold;
     }
 
@@ -71,6 +83,7 @@ public class SusanCornersDetector implements ICornersDetector{
      */
     public void setDifferenceThreshold(int differenceThreshold) {
         this.differenceThreshold = differenceThreshold;
+        this.similarity = Similarity(differenceThreshold);
     }
 
     /**
@@ -97,76 +110,102 @@ public class SusanCornersDetector implements ICornersDetector{
     @Override
     public ArrayList<IntPoint> ProcessImage(FastBitmap fastBitmap){
         
-        FastBitmap l = new FastBitmap(fastBitmap);
-        
-        if (fastBitmap.isRGB()) l.toGrayscale();
+        FastBitmap l = fastBitmap;
+        if (!fastBitmap.isGrayscale()) {
+            l = new FastBitmap(fastBitmap);
+            l.toGrayscale();
+        }
         
         int width = l.getWidth();
         int height = l.getHeight();
-        int[][] susanMap = new int[height][width];
+        byte[] data = l.getGrayData();
+        ArrayList<IntPoint> corners = new ArrayList<IntPoint>();
+        
+        // The map is only written inside the border, which stays zero.
+        int[] susanMap = susanMaps.get();
+        if (susanMap == null || susanMap.length != width * height) {
+            susanMap = new int[width * height];
+            susanMaps.set(susanMap);
+        }
+        
+        int[] similarity = this.similarity;
+        
+        // Mask offsets.
+        int size = 0;
+        for (int r : rowRadius)
+            size += r * 2 + 1;
+        int[] offset = new int[size];
+        int[] di = new int[size];
+        int[] dj = new int[size];
+        for (int i = -3, k = 0; i <= 3; i++) {
+            int r = rowRadius[i + 3];
+            for (int j = -r; j <= r; j++, k++) {
+                offset[k] = i * width + j;
+                di[k] = i;
+                dj[k] = j;
+            }
+        }
+        
+        int g = geometricalThreshold * ONE;
         
         for (int x = 3; x < height - 3; x++) {
-            for (int y = 3; y < width - 3; y++) {
-                int nucleusValue = l.getGray(x, y);
+            for (int y = 3, p = x * width + 3; y < width - 3; y++, p++) {
+                int nucleus = 255 - (data[p] & 0xFF);
                 int usan = 0;
-                int cx = 0, cy = 0;
-                for (int i = -3; i <= 3; i++) {
-                    int r = rowRadius[i + 3];
-                    for ( int j = -r; j <= r; j++ ){
-                        int gray = l.getGray(x + i, y + j);
-                        // differenceThreshold
-                        if ( Math.abs( nucleusValue - gray ) <= differenceThreshold ){
-                            usan++;
-                            cx += x + j;
-                            cy += y + i;
-                        }
-                    }
+                int si = 0, sj = 0;
+                for (int k = 0; k < size; k++) {
+                    int c = similarity[nucleus + (data[p + offset[k]] & 0xFF)];
+                    usan += c;
+                    si += c * di[k];
+                    sj += c * dj[k];
                 }
                 
-                // check usan size
-                if ( usan < geometricalThreshold ){
-                    cx /= usan;
-                    cy /= usan;
-
-                    if ( ( x != cx ) || ( y != cy ) ){
-                        usan = ( geometricalThreshold - usan );
-                    }
-                    else{
-                        usan = 0;
-                    }
+                // check usan size, and the centroid away from the nucleus
+                if ( usan < g && ( sj < 0 || sj >= usan || si < 0 || si >= usan ) ){
+                    usan = g - usan;
                 }
                 else{
                     usan = 0;
                 }
-
-                // usan = ( usan < geometricalThreshold ) ? ( geometricalThreshold - usan ) : 0;
-                susanMap[x][y] = usan;
-                }
+                
+                susanMap[p] = usan;
             }
+        }
         
-            // for each row
-            for ( int x = 2; x < height - 2; x++ ){
-                // for each pixel
-                for ( int y = 2; y < width - 2; y++ ){
-                    int currentValue = susanMap[x][y];
-
-                    // for each windows' row
-                    for ( int i = -2; ( currentValue != 0 ) && ( i <= 2 ); i++ ){
-                        // for each windows' pixel
-                        for ( int j = -2; j <= 2; j++ ){
-                            if ( susanMap[x+i][y+j] > currentValue ){
-                                currentValue = 0;
-                                break;
-                            }
+        // for each row
+        for ( int x = 2; x < height - 2; x++ ){
+            // for each pixel
+            for ( int y = 2, p = x * width + 2; y < width - 2; y++, p++ ){
+                int currentValue = susanMap[p];
+                
+                // for each windows' row
+                for ( int i = -2; ( currentValue != 0 ) && ( i <= 2 ); i++ ){
+                    // for each windows' pixel
+                    for ( int j = -2, q = p + i * width - 2; j <= 2; j++, q++ ){
+                        if ( susanMap[q] > currentValue ){
+                            currentValue = 0;
+                            break;
                         }
                     }
-
-                    // check if this point is really interesting
-                    if ( currentValue != 0 ){
-                        corners.add( new IntPoint( x, y ) );
-                    }
+                }
+                
+                // check if this point is really interesting
+                if ( currentValue != 0 ){
+                    corners.add( new IntPoint( x, y ) );
                 }
             }
-            return corners;
         }
-    }
\ No newline at end of file
+        return corners;
+    }
+    
+    /**
+     * Similarity of two pixels indexed by 255 - nucleus + pixel.
+     */
+    private static int[] Similarity(int threshold){
+        int[] lut = new int[511];
+        double t = Math.max(1, threshold);
+        for (int d = -255; d <= 255; d++)
+            lut[d + 255] = (int)Math.round(ONE * Math.exp(-Math.pow(d / t, 6)));
+        return lut;
+    }
+}
@@ -23,6 +23,8 @@ package Catalano.Imaging;
 
 import Catalano.Core.IntPoint;
 import Catalano.Imaging.Filters.Grayscale;
+import Catalano.Imaging.IO.RawImageFormat;
+import Catalano.Imaging.IO.RawImageReader;
 import java.awt.Graphics;
 import java.awt.Image;
 import java.awt.Toolkit;
@@ -114,10 +116,17 @@ public class FastBitmap {
     
     /**
      * Initialize a new instance of the FastBitmap class.
+     * PGM, PPM and PFM files are read by RawImageReader, others by ImageIO.
      * @param pathname The path that indicate a image.
      */
     public FastBitmap(String pathname){
         try {
+            RawImageFormat format = RawImageFormat.fromExtension(pathname);
+            if (format != null && format != RawImageFormat.Raw) {
+                this.bufferedImage = RawImageReader.load(pathname).bufferedImage;
+                refresh();
+                return;
+            }
             this.bufferedImage = ImageIO.read(new File(pathname));
             if (getType() == BufferedImage.TYPE_BYTE_GRAY) {
                 refresh();
@@ -719,7 +728,25 @@ public class FastBitmap {
     public void setBlue(IntPoint point, int value){
         setBlue(point.x,point.y,value);
     }
-    
+
+    /**
+     * Get the backing array of a grayscale image.
+     * Pixels are stored row by row, the pixel (x,y) is at index x*width+y.
+     * @return Gray data, or null if the image is not grayscale.
+     */
+    public byte[] getGrayData(){
+        return isGrayscale() ? pixelsGRAY : null;
+    }
+
+    /**
+     * Get the backing array of a RGB image.
+     * Pixels are stored row by row as 0xRRGGBB, the pixel (x,y) is at index x*width+y.
+     * @return RGB data, or null if the image is not RGB.
+     */
+    public int[] getRGBData(){
+        return isRGB() ? pixelsRGB : null;
+    }
+
     /**
      * Save FastBitmap as Bitmap.
      * @param pathname Path name.
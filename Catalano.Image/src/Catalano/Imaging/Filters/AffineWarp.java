@@ -0,0 +1,392 @@
+// Catalano Imaging Library
+// The Catalano Framework
+//
+// Copyright © Diego Catalano, 2013
+// diego.catalano at live.com
+//
+//    This library is free software; you can redistribute it and/or
+//    modify it under the terms of the GNU Lesser General Public
+//    License as published by the Free Software Foundation; either
+//    version 2.1 of the License, or (at your option) any later version.
+//
+//    This library is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+//    Lesser General Public License for more details.
+//
+//    You should have received a copy of the GNU Lesser General Public
+//    License along with this library; if not, write to the Free Software
+//    Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+//
+
+package Catalano.Imaging.Filters;
+
+import Catalano.Core.Parallel;
+import Catalano.Imaging.FastBitmap;
+import Catalano.Imaging.IBaseInPlace;
+
+/**
+ * Affine warp.
+ * <br /> The matrix maps a source pixel (x, y) to the destination, where x is the row and y is the column like in FastBitmap:
+ * <br /> x' = m00 * x + m01 * y + m02
+ * <br /> y' = m10 * x + m11 * y + m12
+ * <br /> Each destination pixel is sampled from the inverse transform. The source coordinates are stepped along each row in 32.32 fixed point,
+ * and the part of a row which falls outside the source is filled with black without sampling. Rows are processed in parallel.
+ * <br /> The destination has the same size of the source, unless a destination image is given.
+ * @author Diego Catalano
+ */
+public class AffineWarp implements IBaseInPlace{
+    
+    /**
+     * Interpolation algorithm.
+     */
+    public static enum Algorithm{
+        /**
+         * Bilinear interpolation.
+         */
+        BILINEAR,
+        /**
+         * Bicubic interpolation (Catmull-Rom).
+         */
+        BICUBIC,
+        /**
+         * Nearest neighbor.
+         */
+        NEAREST_NEIGHBOR
+    };
+    
+    private static final long ONE = 1L << 32;
+    private static final long HALF = 1L << 31;
+    
+    // Catmull-Rom weights of the 4 taps for 256 fractions, scaled by 1024.
+    private static final int[] CUBIC = new int[256 * 4];
+    
+    static {
+        for (int f = 0; f < 256; f++) {
+            double t = f / 256.0;
+            double[] w = {
+                ((-0.5 * t + 1) * t - 0.5) * t,
+                (1.5 * t - 2.5) * t * t + 1,
+                ((-1.5 * t + 2) * t + 0.5) * t,
+                (0.5 * t - 0.5) * t * t
+            };
+            int sum = 0;
+            for (int k = 0; k < 4; k++) {
+                CUBIC[f * 4 + k] = (int)Math.round(w[k] * 1024);
+                sum += CUBIC[f * 4 + k];
+            }
+            // Weights must sum to exactly 1024, so flat areas stay flat.
+            CUBIC[f * 4 + 1] += 1024 - sum;
+        }
+    }
+    
+    private double[][] matrix = {{1, 0, 0}, {0, 1, 0}};
+    private Algorithm algorithm = Algorithm.NEAREST_NEIGHBOR;
+    private int threads = 1;
+
+    /**
+     * Initialize a new instance of the AffineWarp class.
+     */
+    public AffineWarp() {}
+
+    /**
+     * Initialize a new instance of the AffineWarp class.
+     * @param matrix Affine matrix, 2x3 or 3x3.
+     */
+    public AffineWarp(double[][] matrix) {
+        setMatrix(matrix);
+    }
+
+    /**
+     * Initialize a new instance of the AffineWarp class.
+     * @param matrix Affine matrix, 2x3 or 3x3.
+     * @param algorithm Interpolation algorithm.
+     */
+    public AffineWarp(double[][] matrix, Algorithm algorithm) {
+        setMatrix(matrix);
+        this.algorithm = algorithm;
+    }
+
+    /**
+     * Initialize a new instance of the AffineWarp class.
+     * @param matrix Affine matrix, 2x3 or 3x3.
+     * @param algorithm Interpolation algorithm.
+     * @param threads Number of threads.
+     */
+    public AffineWarp(double[][] matrix, Algorithm algorithm, int threads) {
+        setMatrix(matrix);
+        this.algorithm = algorithm;
+        setThreads(threads);
+    }
+
+    /**
+     * Get affine matrix.
+     * @return Affine matrix, 2x3.
+     */
+    public double[][] getMatrix() {
+        return new double[][] {matrix[0].clone(), matrix[1].clone()};
+    }
+
+    /**
+     * Set affine matrix.
+     * @param matrix Affine matrix, 2x3 or 3x3. The last row of a 3x3 matrix is ignored.
+     */
+    public void setMatrix(double[][] matrix) {
+        if (matrix.length < 2 || matrix[0].length < 3 || matrix[1].length < 3)
+            throw new IllegalArgumentException("Affine matrix must be 2x3 or 3x3.");
+        this.matrix = new double[][] {
+            {matrix[0][0], matrix[0][1], matrix[0][2]},
+            {matrix[1][0], matrix[1][1], matrix[1][2]}
+        };
+    }
+
+    /**
+     * Get interpolation algorithm.
+     * @return Interpolation algorithm.
+     */
+    public Algorithm getAlgorithm() {
+        return algorithm;
+    }
+
+    /**
+     * Set interpolation algorithm.
+     * @param algorithm Interpolation algorithm.
+     */
+    public void setAlgorithm(Algorithm algorithm) {
+        this.algorithm = algorithm;
+    }
+
+    /**
+     * Get number of threads.
+     * @return Number of threads.
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Set number of threads.
+     * @param threads Number of threads.
+     */
+    public void setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+    
+    @Override
+    public void applyInPlace(FastBitmap fastBitmap){
+        FastBitmap dst = new FastBitmap(fastBitmap.getWidth(), fastBitmap.getHeight(), fastBitmap.getColorSpace());
+        Apply(fastBitmap, dst);
+        if (fastBitmap.isGrayscale())
+            System.arraycopy(dst.getGrayData(), 0, fastBitmap.getGrayData(), 0, fastBitmap.getGrayData().length);
+        else
+            System.arraycopy(dst.getRGBData(), 0, fastBitmap.getRGBData(), 0, fastBitmap.getRGBData().length);
+    }
+    
+    /**
+     * Warp into a destination image.
+     * @param source Image to be warped, grayscale or RGB.
+     * @param destination Destination image, with the same color space of the source.
+     */
+    public void Apply(FastBitmap source, FastBitmap destination){
+        if (!source.isGrayscale() && !source.isRGB())
+            throw new IllegalArgumentException("Affine warp only works with grayscale or RGB images.");
+        if (source.getColorSpace() != destination.getColorSpace())
+            throw new IllegalArgumentException("Source and destination must have the same color space.");
+        
+        // Inverse transform, from destination to source.
+        double a = matrix[0][0], b = matrix[0][1], c = matrix[0][2];
+        double d = matrix[1][0], e = matrix[1][1], f = matrix[1][2];
+        double det = a * e - b * d;
+        if (Math.abs(det) < 1e-12)
+            throw new IllegalArgumentException("Affine matrix must be invertible.");
+        final double ia = e / det, ib = -b / det, id = -d / det, ie = a / det;
+        final double ic = -(ia * c + ib * f);
+        final double iff = -(id * c + ie * f);
+        
+        final int width = source.getWidth();
+        final int height = source.getHeight();
+        final int dstWidth = destination.getWidth();
+        final byte[] srcGray = source.isGrayscale() ? source.getGrayData() : null;
+        final int[] srcRGB = srcGray == null ? source.getRGBData() : null;
+        final byte[] dstGray = srcGray != null ? destination.getGrayData() : null;
+        final int[] dstRGB = srcGray == null ? destination.getRGBData() : null;
+        final Algorithm alg = algorithm;
+        
+        // Step of the source coordinates along a destination row.
+        final long stepX = Math.round(ib * ONE);
+        final long stepY = Math.round(ie * ONE);
+        
+        Parallel.For(0, destination.getHeight(), threads, new Parallel.IBlock() {
+            @Override
+            public void Compute(int block, int from, int to) {
+                for (int x = from; x < to; x++) {
+                    // Source coordinates of the first pixel of the row.
+                    double sx = ia * x + ic;
+                    double sy = id * x + iff;
+                    
+                    // Columns whose source coordinates are inside [-0.5, size - 0.5).
+                    int[] span = {0, dstWidth};
+                    clip(span, sx, ib, height);
+                    clip(span, sy, ie, width);
+                    span[0] = Math.min(span[0], dstWidth);
+                    span[1] = Math.max(span[1], span[0]);
+                    
+                    int p = x * dstWidth;
+                    if (dstGray != null) {
+                        for (int y = 0; y < span[0]; y++) dstGray[p + y] = 0;
+                        for (int y = span[1]; y < dstWidth; y++) dstGray[p + y] = 0;
+                    }
+                    else{
+                        for (int y = 0; y < span[0]; y++) dstRGB[p + y] = 0;
+                        for (int y = span[1]; y < dstWidth; y++) dstRGB[p + y] = 0;
+                    }
+                    if (span[0] >= span[1]) continue;
+                    
+                    long fx = Math.round((sx + ib * span[0]) * ONE);
+                    long fy = Math.round((sy + ie * span[0]) * ONE);
+                    switch (alg) {
+                        case NEAREST_NEIGHBOR:
+                            if (dstGray != null) nearest(srcGray, width, height, dstGray, p, span[0], span[1], fx, fy, stepX, stepY);
+                            else nearest(srcRGB, width, height, dstRGB, p, span[0], span[1], fx, fy, stepX, stepY);
+                            break;
+                        case BILINEAR:
+                            if (dstGray != null) bilinear(srcGray, width, height, dstGray, p, span[0], span[1], fx, fy, stepX, stepY);
+                            else bilinear(srcRGB, width, height, dstRGB, p, span[0], span[1], fx, fy, stepX, stepY);
+                            break;
+                        default:
+                            if (dstGray != null) bicubic(srcGray, width, height, dstGray, p, span[0], span[1], fx, fy, stepX, stepY);
+                            else bicubic(srcRGB, width, height, dstRGB, p, span[0], span[1], fx, fy, stepX, stepY);
+                    }
+                }
+            }
+        });
+    }
+    
+    private static void nearest(byte[] src, int width, int height, byte[] dst, int p, int from, int to, long fx, long fy, long stepX, long stepY){
+        for (int y = from; y < to; y++, fx += stepX, fy += stepY) {
+            dst[p + y] = src[clamp((int)((fx + HALF) >> 32), height) * width + clamp((int)((fy + HALF) >> 32), width)];
+        }
+    }
+    
+    private static void nearest(int[] src, int width, int height, int[] dst, int p, int from, int to, long fx, long fy, long stepX, long stepY){
+        for (int y = from; y < to; y++, fx += stepX, fy += stepY) {
+            dst[p + y] = src[clamp((int)((fx + HALF) >> 32), height) * width + clamp((int)((fy + HALF) >> 32), width)];
+        }
+    }
+    
+    private static void bilinear(byte[] src, int width, int height, byte[] dst, int p, int from, int to, long fx, long fy, long stepX, long stepY){
+        long maxX = (long)(height - 1) << 32, maxY = (long)(width - 1) << 32;
+        for (int y = from; y < to; y++, fx += stepX, fy += stepY) {
+            // Integer part and 8 bits fraction, clamped inside the image.
+            long cx = fx < 0 ? 0 : Math.min(fx, maxX);
+            long cy = fy < 0 ? 0 : Math.min(fy, maxY);
+            int ix = (int)(cx >> 32), iy = (int)(cy >> 32);
+            int tx = (int)(cx >>> 24) & 0xFF, ty = (int)(cy >>> 24) & 0xFF;
+            
+            int i00 = ix * width + iy;
+            int i01 = iy < width - 1 ? i00 + 1 : i00;
+            int i10 = ix < height - 1 ? i00 + width : i00;
+            int i11 = i10 + (i01 - i00);
+            dst[p + y] = (byte)bilinear(src[i00] & 0xFF, src[i01] & 0xFF, src[i10] & 0xFF, src[i11] & 0xFF, tx, ty);
+        }
+    }
+    
+    private static void bilinear(int[] src, int width, int height, int[] dst, int p, int from, int to, long fx, long fy, long stepX, long stepY){
+        long maxX = (long)(height - 1) << 32, maxY = (long)(width - 1) << 32;
+        for (int y = from; y < to; y++, fx += stepX, fy += stepY) {
+            long cx = fx < 0 ? 0 : Math.min(fx, maxX);
+            long cy = fy < 0 ? 0 : Math.min(fy, maxY);
+            int ix = (int)(cx >> 32), iy = (int)(cy >> 32);
+            int tx = (int)(cx >>> 24) & 0xFF, ty = (int)(cy >>> 24) & 0xFF;
+            
+            int i00 = ix * width + iy;
+            int i01 = iy < width - 1 ? i00 + 1 : i00;
+            int i10 = ix < height - 1 ? i00 + width : i00;
+            int i11 = i10 + (i01 - i00);
+            int p00 = src[i00], p01 = src[i01], p10 = src[i10], p11 = src[i11];
+            int r = bilinear(p00 >> 16 & 0xFF, p01 >> 16 & 0xFF, p10 >> 16 & 0xFF, p11 >> 16 & 0xFF, tx, ty);
+            int g = bilinear(p00 >> 8 & 0xFF, p01 >> 8 & 0xFF, p10 >> 8 & 0xFF, p11 >> 8 & 0xFF, tx, ty);
+            int b = bilinear(p00 & 0xFF, p01 & 0xFF, p10 & 0xFF, p11 & 0xFF, tx, ty);
+            dst[p + y] = r << 16 | g << 8 | b;
+        }
+    }
+    
+    private static void bicubic(byte[] src, int width, int height, byte[] dst, int p, int from, int to, long fx, long fy, long stepX, long stepY){
+        long maxX = (long)(height - 1) << 32, maxY = (long)(width - 1) << 32;
+        for (int y = from; y < to; y++, fx += stepX, fy += stepY) {
+            long cx = fx < 0 ? 0 : Math.min(fx, maxX);
+            long cy = fy < 0 ? 0 : Math.min(fy, maxY);
+            int ix = (int)(cx >> 32), iy = (int)(cy >> 32);
+            int tx = (int)(cx >>> 24) & 0xFF, ty = (int)(cy >>> 24) & 0xFF;
+            int y0 = clamp(iy - 1, width), y1 = iy, y2 = clamp(iy + 1, width), y3 = clamp(iy + 2, width);
+            int w0 = CUBIC[ty * 4], w1 = CUBIC[ty * 4 + 1], w2 = CUBIC[ty * 4 + 2], w3 = CUBIC[ty * 4 + 3];
+            
+            int v = 0;
+            for (int k = 0; k < 4; k++) {
+                int row = clamp(ix + k - 1, height) * width;
+                v += CUBIC[tx * 4 + k] * (w0 * (src[row + y0] & 0xFF) + w1 * (src[row + y1] & 0xFF) + w2 * (src[row + y2] & 0xFF) + w3 * (src[row + y3] & 0xFF));
+            }
+            dst[p + y] = (byte)round(v);
+        }
+    }
+    
+    private static void bicubic(int[] src, int width, int height, int[] dst, int p, int from, int to, long fx, long fy, long stepX, long stepY){
+        long maxX = (long)(height - 1) << 32, maxY = (long)(width - 1) << 32;
+        for (int y = from; y < to; y++, fx += stepX, fy += stepY) {
+            long cx = fx < 0 ? 0 : Math.min(fx, maxX);
+            long cy = fy < 0 ? 0 : Math.min(fy, maxY);
+            int ix = (int)(cx >> 32), iy = (int)(cy >> 32);
+            int tx = (int)(cx >>> 24) & 0xFF, ty = (int)(cy >>> 24) & 0xFF;
+            int y0 = clamp(iy - 1, width), y1 = iy, y2 = clamp(iy + 1, width), y3 = clamp(iy + 2, width);
+            int w0 = CUBIC[ty * 4], w1 = CUBIC[ty * 4 + 1], w2 = CUBIC[ty * 4 + 2], w3 = CUBIC[ty * 4 + 3];
+            
+            int r = 0, g = 0, b = 0;
+            for (int k = 0; k < 4; k++) {
+                int row = clamp(ix + k - 1, height) * width;
+                int q0 = src[row + y0], q1 = src[row + y1], q2 = src[row + y2], q3 = src[row + y3];
+                int wx = CUBIC[tx * 4 + k];
+                r += wx * (w0 * (q0 >> 16 & 0xFF) + w1 * (q1 >> 16 & 0xFF) + w2 * (q2 >> 16 & 0xFF) + w3 * (q3 >> 16 & 0xFF));
+                g += wx * (w0 * (q0 >> 8 & 0xFF) + w1 * (q1 >> 8 & 0xFF) + w2 * (q2 >> 8 & 0xFF) + w3 * (q3 >> 8 & 0xFF));
+                b += wx * (w0 * (q0 & 0xFF) + w1 * (q1 & 0xFF) + w2 * (q2 & 0xFF) + w3 * (q3 & 0xFF));
+            }
+            dst[p + y] = round(r) << 16 | round(g) << 8 | round(b);
+        }
+    }
+    
+    /**
+     * Restrict span to the columns y where start + step * y is inside [-0.5, size - 0.5).
+     */
+    private static void clip(int[] span, double start, double step, int size){
+        double lo = -0.5, hi = size - 0.5;
+        if (Math.abs(step) < 1e-12) {
+            if (start < lo || start >= hi) span[1] = span[0];
+            return;
+        }
+        double u0, u1;
+        if (step > 0) {
+            u0 = Math.ceil((lo - start) / step);
+            u1 = Math.ceil((hi - start) / step);
+        }
+        else{
+            u0 = Math.floor((hi - start) / step) + 1;
+            u1 = Math.floor((lo - start) / step) + 1;
+        }
+        span[0] = (int)Math.max(span[0], Math.min(u0, Integer.MAX_VALUE));
+        span[1] = (int)Math.min(span[1], Math.max(u1, Integer.MIN_VALUE));
+    }
+    
+    private static int clamp(int i, int size){
+        return i < 0 ? 0 : i >= size ? size - 1 : i;
+    }
+    
+    private static int bilinear(int p00, int p01, int p10, int p11, int tx, int ty){
+        int top = p00 * (256 - ty) + p01 * ty;
+        int bottom = p10 * (256 - ty) + p11 * ty;
+        return (top * (256 - tx) + bottom * tx + 32768) >> 16;
+    }
+    
+    private static int round(int v){
+        v = (v + (1 << 19)) >> 20;
+        return v < 0 ? 0 : v > 255 ? 255 : v;
+    }
+}
\ No newline at end of file
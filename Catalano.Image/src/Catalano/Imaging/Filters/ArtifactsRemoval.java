@@ -27,6 +27,7 @@ import Catalano.Imaging.IBaseInPlace;
 /**
  * Remove artifacts caused by uneven lightning.
  * Actually this technique is useful as a preprocessing step for all texture measures.
+ * <br /> The local mean is updated incrementally with column sums, so the cost does not depend on the window size.
  * @see Computer Imaging: digital image analysis and processing / Scott E. Umbaugh. Chapter 6. p. 276
  * @author Diego Catalano
  */
@@ -50,27 +51,45 @@ public class ArtifactsRemoval implements IBaseInPlace{
     @Override
     public void applyInPlace(FastBitmap fastBitmap) {
         
-        FastBitmap copy = new FastBitmap(fastBitmap);
+        if (!fastBitmap.isGrayscale())
+            throw new IllegalArgumentException("ArtifactsRemoval only works with grayscale images.");
+        
+        byte[] data = fastBitmap.getGrayData();
+        byte[] copy = data.clone();
         int width = fastBitmap.getWidth();
         int height = fastBitmap.getHeight();
         int steps = windowSize / 2;
         
+        // Sums of the window rows for each column, updated row by row.
+        int[] columns = new int[width];
+        long[] prefix = new long[width + 1];
+        for (int i = 0; i < Math.min(height, steps - 1); i++) {
+            for (int y = 0; y < width; y++) columns[y] += copy[i * width + y] & 0xFF;
+        }
+        
         for (int x = 0; x < height; x++) {
+            
+            // Window rows are [x - steps, x + steps).
+            int add = x + steps - 1;
+            int remove = x - steps - 1;
+            if (add >= 0 && add < height) {
+                for (int y = 0; y < width; y++) columns[y] += copy[add * width + y] & 0xFF;
+            }
+            if (remove >= 0 && remove < height) {
+                for (int y = 0; y < width; y++) columns[y] -= copy[remove * width + y] & 0xFF;
+            }
+            int rows = Math.min(height, x + steps) - Math.max(0, x - steps);
+            
+            for (int y = 0; y < width; y++) prefix[y + 1] = prefix[y] + columns[y];
+            
             for (int y = 0; y < width; y++) {
-                
-                double sum = 0;
-                int hits = 0;
-                for (int i = x - steps; i < x + steps; i++) {
-                    for (int j = y - steps; j < y + steps; j++) {
-                        
-                        if (((i >= 0) && (j >= 0)) && ((i < height) && (j < width))){
-                            sum += copy.getGray(i, j);
-                            hits++;
-                        }
-                    }
-                }
+                int from = Math.max(0, y - steps);
+                int to = Math.min(width, y + steps);
+                double sum = prefix[to] - prefix[from];
+                int hits = rows * (to - from);
                 double mean = sum / hits;
-                fastBitmap.setGray(x, y, (int)(fastBitmap.getGray(x, y) - mean));
+                int i = x * width + y;
+                data[i] = (byte)(int)((data[i] & 0xFF) - mean);
             }
         }
     }
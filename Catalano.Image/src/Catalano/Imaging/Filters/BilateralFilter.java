@@ -0,0 +1,249 @@
+// Catalano Imaging Library
+// The Catalano Framework
+//
+// Copyright © Diego Catalano, 2013
+// diego.catalano at live.com
+//
+//    This library is free software; you can redistribute it and/or
+//    modify it under the terms of the GNU Lesser General Public
+//    License as published by the Free Software Foundation; either
+//    version 2.1 of the License, or (at your option) any later version.
+//
+//    This library is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+//    Lesser General Public License for more details.
+//
+//    You should have received a copy of the GNU Lesser General Public
+//    License along with this library; if not, write to the Free Software
+//    Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+//
+
+package Catalano.Imaging.Filters;
+
+import Catalano.Imaging.FastBitmap;
+import Catalano.Imaging.IBaseInPlace;
+import java.util.Arrays;
+
+/**
+ * Bilateral filter.
+ * <br /> Edge preserving smoothing computed on a bilateral grid: the pixels are accumulated in a 3D grid (row, column, intensity)
+ * downsampled by the spatial and the range sigma, the grid is blurred and the result is interpolated back at each pixel.
+ * The cost is almost independent of the sigmas, a larger spatial sigma only makes the grid smaller.
+ * <br /> RGB images are filtered one channel at a time. Each thread keeps its own grid between calls, so filtering frames of the same size
+ * does not allocate memory and an instance can be shared between threads.
+ * <br /> <b>S. Paris and F. Durand, "A Fast Approximation of the Bilateral Filter using a Signal Processing Approach", International Journal of Computer Vision, 2009.</b>
+ * @author Diego Catalano
+ */
+public class BilateralFilter implements IBaseInPlace{
+    
+    // Cells around the image, the blur kernel [1 4 6 4 1] reaches two cells.
+    private static final int PAD = 2;
+    
+    private double spatialSigma = 8;
+    private double rangeSigma = 20;
+    
+    // Grid and blur buffer of each thread, value and weight of each cell interleaved.
+    private final ThreadLocal<float[][]> buffers = new ThreadLocal<float[][]>();
+
+    /**
+     * Initialize a new instance of the BilateralFilter class.
+     */
+    public BilateralFilter() {}
+
+    /**
+     * Initialize a new instance of the BilateralFilter class.
+     * @param spatialSigma Spatial sigma, in pixels.
+     * @param rangeSigma Range sigma, in intensity levels.
+     */
+    public BilateralFilter(double spatialSigma, double rangeSigma) {
+        setSpatialSigma(spatialSigma);
+        setRangeSigma(rangeSigma);
+    }
+
+    /**
+     * Get spatial sigma.
+     * @return Spatial sigma, in pixels.
+     */
+    public double getSpatialSigma() {
+        return spatialSigma;
+    }
+
+    /**
+     * Set spatial sigma.
+     * @param spatialSigma Spatial sigma, in pixels. Minimum value is 1.
+     */
+    public void setSpatialSigma(double spatialSigma) {
+        this.spatialSigma = Math.max(1, spatialSigma);
+    }
+
+    /**
+     * Get range sigma.
+     * @return Range sigma, in intensity levels.
+     */
+    public double getRangeSigma() {
+        return rangeSigma;
+    }
+
+    /**
+     * Set range sigma.
+     * @param rangeSigma Range sigma, in intensity levels. Minimum value is 1.
+     */
+    public void setRangeSigma(double rangeSigma) {
+        this.rangeSigma = Math.max(1, rangeSigma);
+    }
+    
+    @Override
+    public void applyInPlace(FastBitmap fastBitmap){
+        int width = fastBitmap.getWidth();
+        int height = fastBitmap.getHeight();
+        
+        // Grid size.
+        int nx = (int)((height - 1) / spatialSigma) + 1 + 2 * PAD;
+        int ny = (int)((width - 1) / spatialSigma) + 1 + 2 * PAD;
+        int nz = (int)(255 / rangeSigma) + 1 + 2 * PAD;
+        int cells = nx * ny * nz * 2;
+        float[][] buf = buffers.get();
+        if (buf == null || buf[0].length != cells) {
+            buf = new float[][] {new float[cells], new float[cells]};
+            buffers.set(buf);
+        }
+        
+        // Grid coordinates of rows, columns and intensities: nearest cell for the accumulation, cell and fraction for the interpolation.
+        int[] splatX = new int[height], cellX = new int[height];
+        float[] fracX = new float[height];
+        for (int x = 0; x < height; x++) {
+            double g = x / spatialSigma;
+            splatX[x] = (int)(g + 0.5) + PAD;
+            cellX[x] = (int)g + PAD;
+            fracX[x] = (float)(g - (int)g);
+        }
+        int[] splatY = new int[width], cellY = new int[width];
+        float[] fracY = new float[width];
+        for (int y = 0; y < width; y++) {
+            double g = y / spatialSigma;
+            splatY[y] = (int)(g + 0.5) + PAD;
+            cellY[y] = (int)g + PAD;
+            fracY[y] = (float)(g - (int)g);
+        }
+        int[] splatZ = new int[256], cellZ = new int[256];
+        float[] fracZ = new float[256];
+        for (int i = 0; i < 256; i++) {
+            double g = i / rangeSigma;
+            splatZ[i] = (int)(g + 0.5) + PAD;
+            cellZ[i] = (int)g + PAD;
+            fracZ[i] = (float)(g - (int)g);
+        }
+        
+        if (fastBitmap.isGrayscale()) {
+            byte[] data = fastBitmap.getGrayData();
+            float[] grid = buf[0];
+            Arrays.fill(grid, 0);
+            for (int x = 0, p = 0; x < height; x++) {
+                int row = splatX[x] * ny;
+                for (int y = 0; y < width; y++, p++) {
+                    int v = data[p] & 0xFF;
+                    int c = ((row + splatY[y]) * nz + splatZ[v]) * 2;
+                    grid[c] += v;
+                    grid[c + 1] += 1;
+                }
+            }
+            blur(buf, nx, ny, nz);
+            for (int x = 0, p = 0; x < height; x++) {
+                for (int y = 0; y < width; y++, p++) {
+                    int v = data[p] & 0xFF;
+                    data[p] = (byte)slice(buf[0], v, cellX[x], cellY[y], cellZ[v], fracX[x], fracY[y], fracZ[v], ny, nz);
+                }
+            }
+        }
+        else if (fastBitmap.isRGB()) {
+            int[] data = fastBitmap.getRGBData();
+            for (int shift = 16; shift >= 0; shift -= 8) {
+                float[] grid = buf[0];
+                Arrays.fill(grid, 0);
+                for (int x = 0, p = 0; x < height; x++) {
+                    int row = splatX[x] * ny;
+                    for (int y = 0; y < width; y++, p++) {
+                        int v = data[p] >> shift & 0xFF;
+                        int c = ((row + splatY[y]) * nz + splatZ[v]) * 2;
+                        grid[c] += v;
+                        grid[c + 1] += 1;
+                    }
+                }
+                blur(buf, nx, ny, nz);
+                int mask = ~(0xFF << shift);
+                for (int x = 0, p = 0; x < height; x++) {
+                    for (int y = 0; y < width; y++, p++) {
+                        int v = data[p] >> shift & 0xFF;
+                        int r = slice(buf[0], v, cellX[x], cellY[y], cellZ[v], fracX[x], fracY[y], fracZ[v], ny, nz);
+                        data[p] = (data[p] & mask) | (r << shift);
+                    }
+                }
+            }
+        }
+        else{
+            throw new IllegalArgumentException("Bilateral filter only works with grayscale or RGB images.");
+        }
+    }
+    
+    /**
+     * Blur the grid buf[0] with the kernel [1 4 6 4 1] / 16 along each axis, the result is left in buf[0].
+     */
+    private static void blur(float[][] buf, int nx, int ny, int nz){
+        float[] grid = buf[0];
+        float[] temp = buf[1];
+        blur(grid, temp, nx, ny * nz * 2);
+        blur(temp, grid, ny, nz * 2);
+        blur(grid, temp, nz, 2);
+        buf[0] = temp;
+        buf[1] = grid;
+    }
+    
+    private static void blur(float[] src, float[] dst, int length, int stride){
+        int block = length * stride;
+        for (int o = 0; o < src.length; o += block) {
+            for (int c = 0, i = o; c < length; c++) {
+                boolean inner = c > 1 && c < length - 2;
+                for (int k = 0; k < stride; k++, i++) {
+                    float s = 6 * src[i];
+                    if (inner) {
+                        s += 4 * (src[i - stride] + src[i + stride]) + src[i - 2 * stride] + src[i + 2 * stride];
+                    }
+                    else{
+                        if (c > 0) s += 4 * src[i - stride];
+                        if (c > 1) s += src[i - 2 * stride];
+                        if (c < length - 1) s += 4 * src[i + stride];
+                        if (c < length - 2) s += src[i + 2 * stride];
+                    }
+                    dst[i] = s * (1f / 16);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Trilinear interpolation of the grid, the value is kept where the weight is zero.
+     */
+    private static int slice(float[] g, int value, int x, int y, int z, float fx, float fy, float fz, int ny, int nz){
+        int sy = nz * 2;
+        int sx = ny * sy;
+        int c = x * sx + y * sy + z * 2;
+        
+        float v = 0, w = 0;
+        for (int i = 0; i < 2; i++) {
+            float wx = i == 0 ? 1 - fx : fx;
+            for (int j = 0; j < 2; j++) {
+                float wxy = wx * (j == 0 ? 1 - fy : fy);
+                int k = c + i * sx + j * sy;
+                float w0 = wxy * (1 - fz);
+                float w1 = wxy * fz;
+                v += w0 * g[k] + w1 * g[k + 2];
+                w += w0 * g[k + 1] + w1 * g[k + 3];
+            }
+        }
+        
+        if (w <= 0) return value;
+        int r = (int)(v / w + 0.5f);
+        return r < 0 ? 0 : r > 255 ? 255 : r;
+    }
+}
\ No newline at end of file
@@ -21,12 +21,12 @@
 
 package Catalano.Imaging.Filters;
 
-import Catalano.Core.IntPoint;
 import Catalano.Imaging.FastBitmap;
 import Catalano.Imaging.IBaseInPlace;
 import Catalano.Imaging.Tools.Blob;
 import Catalano.Imaging.Tools.BlobDetection;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 /**
  * Eliminates blobs with certain area.
@@ -87,12 +87,23 @@ public class BlobsFiltering implements IBaseInPlace{
         
         ArrayList<Blob> blobs = new BlobDetection().ProcessImage(fastBitmap);
         
+        int width = fastBitmap.getWidth();
+        byte[] gray = fastBitmap.getGrayData();
+        int[] rgb = fastBitmap.getRGBData();
+        
         int area;
         for (int i = 0; i < blobs.size(); i++) {
             area = blobs.get(i).getArea();
             if ((area > minArea) && (area <= maxArea)) {
-                for (IntPoint p : blobs.get(i).getPoints()) {
-                    fastBitmap.setGray(p.x, p.y, 0);
+                // Clear each run of the blob.
+                int[] runs = blobs.get(i).getRuns();
+                for (int j = 0; j < runs.length; j += 3) {
+                    int from = runs[j] * width + runs[j + 1];
+                    int to = runs[j] * width + runs[j + 2] + 1;
+                    if (gray != null)
+                        Arrays.fill(gray, from, to, (byte)0);
+                    else
+                        Arrays.fill(rgb, from, to, 0);
                 }
             }
         }
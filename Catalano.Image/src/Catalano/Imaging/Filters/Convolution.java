@@ -29,7 +29,6 @@ import Catalano.Imaging.IBaseInPlace;
  * @author Diego Catalano
  */
 public class Convolution implements IBaseInPlace{
-    private int width,height;
     private int[][] kernel;
     private int division;
     private boolean useDiv = false;
@@ -87,8 +86,8 @@ public class Convolution implements IBaseInPlace{
     @Override
     public void applyInPlace(FastBitmap fastBitmap){
         
-        this.width = fastBitmap.getWidth();
-        this.height = fastBitmap.getHeight();
+        int width = fastBitmap.getWidth();
+        int height = fastBitmap.getHeight();
         int div;
         
         int Xline,Yline;
@@ -30,11 +30,8 @@ import Catalano.Math.Tools;
  */
 public class CosineTransform {
     
-    private int width, height;
     private boolean isTransformed = false;
     private double[][] data;
-    private double[][] Power;
-    private double PowerMax;
     private int scaleValue = 255;
 
     /**
@@ -73,8 +70,8 @@ public class CosineTransform {
      */
     public void Forward(FastBitmap fastBitmap){
         
-        this.width = fastBitmap.getWidth();
-        this.height = fastBitmap.getHeight();
+        int width = fastBitmap.getWidth();
+        int height = fastBitmap.getHeight();
         if (!isTransformed) {
             if (fastBitmap.isGrayscale()) {
                 if (Tools.IsPowerOf2(width) && Tools.IsPowerOf2(height)) {
@@ -121,8 +118,15 @@ public class CosineTransform {
      * @return FastBitmap.
      */
     public FastBitmap toFastBitmapPowerSpectrum(){
+        int width = data[0].length;
+        int height = data.length;
         FastBitmap l = new FastBitmap(width, height, FastBitmap.ColorSpace.Grayscale);
-        PowerSpectrum();
+        double[][] Power = PowerSpectrum();
+        
+        double PowerMax = 0;
+        for (int i = 0; i < height; i++)
+            for (int j = 0; j < width; j++)
+                PowerMax = Math.max(PowerMax, Power[i][j]);
         
         double max = Math.log(PowerMax+1.0);
         double scale = 1.0;
@@ -140,6 +144,8 @@ public class CosineTransform {
     }
     
     public FastBitmap toFastBitmap(){
+        int width = data[0].length;
+        int height = data.length;
         FastBitmap l = new FastBitmap(width, height, FastBitmap.ColorSpace.Grayscale);
         
         for (int i = 0; i < height; i++) {
@@ -154,17 +160,16 @@ public class CosineTransform {
     /**
      * Compute the Power Spectrum;
      */
-    private void PowerSpectrum(){
-        Power = new double[data.length][data[0].length];
-        PowerMax = 0;
+    private double[][] PowerSpectrum(){
+        double[][] Power = new double[data.length][data[0].length];
 
         for (int i = 0; i < data.length; i++) {
             for (int j = 0; j < data[0].length; j++) {
                 double p = data[i][j];
                 if (p < 0) p = -p;
                 Power[i][j] = p;
-                if (p > PowerMax) PowerMax = p;
             }
         }
+        return Power;
     }
 }
@@ -46,7 +46,6 @@ public class ExtractBoundary implements IBaseInPlace{
         Dilatation
     };
     private Algorithm algorithm = Algorithm.Erosion;
-    private ArrayList<IntPoint> points;
 
     /**
      * Initialize a new instance of the ExtractBoundary class.
@@ -86,13 +85,11 @@ public class ExtractBoundary implements IBaseInPlace{
      */
     public ArrayList<IntPoint> ProcessImage(FastBitmap fastBitmap){
         FastBitmap l = new FastBitmap(fastBitmap);
-        if (points == null) {
-            applyInPlace(l);
-        }
+        applyInPlace(l);
         
         int width = l.getWidth();
         int height = l.getHeight();
-        points = new ArrayList<IntPoint>();
+        ArrayList<IntPoint> points = new ArrayList<IntPoint>();
         
         for (int x = 0; x < height; x++) {
             for (int y = 0; y < width; y++) {
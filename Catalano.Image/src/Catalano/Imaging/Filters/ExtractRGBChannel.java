@@ -31,8 +31,6 @@ import Catalano.Imaging.IExtract;
  */
 public class ExtractRGBChannel implements IExtract{
     
-    private FastBitmap l;
-    
     /**
      * RGB Channel to extract.
      */
@@ -79,6 +77,7 @@ public class ExtractRGBChannel implements IExtract{
     
     @Override
     public FastBitmap Extract(FastBitmap fastBitmap) {
+        FastBitmap l = null;
         if (fastBitmap.isGrayscale()) {
             try {
                 throw new Exception("Extract Channel works only with RGB images");
@@ -26,9 +26,15 @@ package Catalano.Imaging.Filters;
 
 import Catalano.Imaging.FastBitmap;
 import Catalano.Imaging.IBaseInPlace;
+import Catalano.Imaging.Tools.ConnectedComponentsLabeling;
+import Catalano.Imaging.Tools.LabeledImage;
+import Catalano.Imaging.Tools.MorphologicalReconstruction;
 
 /**
  * Fill holes in objects in binary image.
+ * <br /> Holes are the areas not connected to the image border, found by morphological reconstruction. In grayscale images the regional minima not connected to the border are filled.
+ * <br /> Only holes with area greater than the minimum area and lower or equal to the maximum area are filled, maximum area 0 means no limit.
+ * @see MorphologicalReconstruction
  * @author Diego Catalano
  */
 public class FillHoles implements IBaseInPlace{
@@ -86,14 +92,35 @@ public class FillHoles implements IBaseInPlace{
     @Override
     public void applyInPlace(FastBitmap fastBitmap){
         
-        Invert inv = new Invert();
-        inv.applyInPlace(fastBitmap);
+        if (!fastBitmap.isGrayscale())
+            throw new IllegalArgumentException("FillHoles only works with grayscale images.");
         
-        BlobsFiltering bf = new BlobsFiltering();
-        bf.setMinArea(minArea);
-        bf.setMaxArea(maxArea);
-        bf.applyInPlace(fastBitmap);
-        inv.applyInPlace(fastBitmap);
+        MorphologicalReconstruction reconstruction = new MorphologicalReconstruction(ConnectedComponentsLabeling.Connectivity.Four);
+        if (minArea == 0 && maxArea == 0) {
+            reconstruction.FillHoles(fastBitmap);
+            return;
+        }
         
+        byte[] data = fastBitmap.getGrayData();
+        byte[] original = data.clone();
+        reconstruction.FillHoles(fastBitmap);
+        
+        // Holes are the pixels raised by the reconstruction, restore the ones out of the area range.
+        FastBitmap holes = new FastBitmap(fastBitmap.getWidth(), fastBitmap.getHeight(), FastBitmap.ColorSpace.Grayscale);
+        byte[] h = holes.getGrayData();
+        for (int i = 0; i < data.length; i++) {
+            if (data[i] != original[i]) h[i] = (byte)255;
+        }
+        
+        LabeledImage labels = new ConnectedComponentsLabeling(ConnectedComponentsLabeling.Connectivity.Four).Process(holes);
+        int[] l = labels.getLabels();
+        boolean[] keep = new boolean[labels.getCount() + 1];
+        for (int k = 1; k <= labels.getCount(); k++) {
+            int area = labels.getArea(k);
+            keep[k] = (area > minArea) && (maxArea == 0 || area <= maxArea);
+        }
+        for (int i = 0; i < data.length; i++) {
+            if (l[i] != 0 && !keep[l[i]]) data[i] = original[i];
+        }
     }
 }
\ No newline at end of file
@@ -24,11 +24,12 @@ package Catalano.Imaging.Filters;
 import Catalano.Core.IntPoint;
 import Catalano.Imaging.FastBitmap;
 import Catalano.Imaging.IBaseInPlace;
-import java.util.Stack;
+import java.util.Arrays;
 
 /**
  * Flood Fill filter.
  * The purpose of Flood Fill is to color an entire area of connected pixels with the same color.
+ * <br /> For grayscale images the red channel value is used as gray.
  * @author Diego Catalano
  */
 public class FloodFill implements IBaseInPlace{
@@ -206,167 +207,174 @@ public class FloodFill implements IBaseInPlace{
         
         int width = fastBitmap.getWidth();
         int height = fastBitmap.getHeight();
-        Stack<IntPoint> examList = new Stack();
+        boolean eight = algorithm == Algorithm.EightWay;
         
-        int iR = fastBitmap.getRed(x, y);
-        int iG = fastBitmap.getGreen(x, y);
-        int iB = fastBitmap.getBlue(x, y);
-        int iRGB = iR+iG+iB;
-        
-        int _r = r;
-        int _g = g;
-        int _b = b;
-        int _RGB = _r + _g + _b;
+        if (fastBitmap.isGrayscale()) {
+            byte[] data = fastBitmap.getGrayData();
+            byte target = data[x * width + y];
+            byte color = (byte)r;
+            if (target != color)
+                fill(data, width, height, target, color, eight);
+        }
+        else{
+            int[] data = fastBitmap.getRGBData();
+            int target = data[x * width + y];
+            int color = r << 16 | g << 8 | b;
+            if (target != color)
+                fill(data, width, height, target, color, eight);
+        }
+    }
+    
+    /**
+     * Scanline fill. Each span is filled with one loop and only one seed is pushed for each span found in the rows above and below.
+     * <br /> Seeds keep the span of the row they come from, which is not scanned again.
+     */
+    private void fill(byte[] data, int width, int height, byte target, byte color, boolean eight){
+        IntStack stack = new IntStack();
+        stack.push(x * width + y, 0, 0, -1);
         
+        while (stack.size > 0) {
+            int parentRight = stack.pop();
+            int parentLeft = stack.pop();
+            int dir = stack.pop();
+            int i = stack.pop();
+            if (data[i] != target) continue;
+            
+            int row = i / width * width;
+            int left = i, right = i;
+            while (left > row && data[left - 1] == target) left--;
+            while (right < row + width - 1 && data[right + 1] == target) right++;
+            for (int k = left; k <= right; k++) data[k] = color;
+            
+            left -= row;
+            right -= row;
+            int from = left, to = right;
+            if (eight) {
+                if (from > 0) from--;
+                if (to < width - 1) to++;
+            }
+            
+            if (row > 0) {
+                if (dir == 1) {
+                    scan(data, stack, row - width, from, parentLeft - 1, target, -1, left, right);
+                    scan(data, stack, row - width, parentRight + 1, to, target, -1, left, right);
+                }
+                else{
+                    scan(data, stack, row - width, from, to, target, -1, left, right);
+                }
+            }
+            if (row + width < width * height) {
+                if (dir == -1) {
+                    scan(data, stack, row + width, from, parentLeft - 1, target, 1, left, right);
+                    scan(data, stack, row + width, parentRight + 1, to, target, 1, left, right);
+                }
+                else{
+                    scan(data, stack, row + width, from, to, target, 1, left, right);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Push one seed for each span of target pixels in the columns [from, to] of a row.
+     */
+    private void scan(byte[] data, IntStack stack, int row, int from, int to, byte target, int dir, int left, int right){
+        boolean span = false;
+        for (int k = row + from; k <= row + to; k++) {
+            if (data[k] == target) {
+                if (!span) stack.push(k, dir, left, right);
+                span = true;
+            }
+            else{
+                span = false;
+            }
+        }
+    }
+    
+    /**
+     * Scanline fill. Each span is filled with one loop and only one seed is pushed for each span found in the rows above and below.
+     * <br /> Seeds keep the span of the row they come from, which is not scanned again.
+     */
+    private void fill(int[] data, int width, int height, int target, int color, boolean eight){
+        IntStack stack = new IntStack();
+        stack.push(x * width + y, 0, 0, -1);
         
-        switch(algorithm){
-            case FourWay:
-                if (iRGB != _RGB) {
-                    examList.push(new IntPoint(x,y));
-                    while (examList.size() > 0) {
-                        IntPoint p = examList.pop();
-                        _r = fastBitmap.getRed(p.x, p.y);
-                        _g = fastBitmap.getGreen(p.x, p.y);
-                        _b = fastBitmap.getBlue(p.x, p.y);
-                        _RGB = _r + _g + _b;
-
-                        if (_RGB == iRGB) {
-                            x = p.x;
-                            y = p.y;
-
-                            fastBitmap.setRGB(x, y, r, g, b);
-
-                            if (y-1 > 0) {
-                                examList.push(new IntPoint(x,y-1));        // check west neighbor
-                            }
-                            if (y+1 < width) {
-                                examList.push(new IntPoint(x,y+1));        // check east neighbor
-                            }
-                            if (x+1 < height) {
-                                examList.push(new IntPoint(x+1,y));        // check south neighbor
-                            }
-                            if (x-1 > 0) {
-                                examList.push(new IntPoint(x-1,y));        // check north neighbor
-                            }
-                        }
-                    }
+        while (stack.size > 0) {
+            int parentRight = stack.pop();
+            int parentLeft = stack.pop();
+            int dir = stack.pop();
+            int i = stack.pop();
+            if (data[i] != target) continue;
+            
+            int row = i / width * width;
+            int left = i, right = i;
+            while (left > row && data[left - 1] == target) left--;
+            while (right < row + width - 1 && data[right + 1] == target) right++;
+            for (int k = left; k <= right; k++) data[k] = color;
+            
+            left -= row;
+            right -= row;
+            int from = left, to = right;
+            if (eight) {
+                if (from > 0) from--;
+                if (to < width - 1) to++;
+            }
+            
+            if (row > 0) {
+                if (dir == 1) {
+                    scan(data, stack, row - width, from, parentLeft - 1, target, -1, left, right);
+                    scan(data, stack, row - width, parentRight + 1, to, target, -1, left, right);
                 }
-                break;
-                
-            case EightWay:
-                if (iRGB != _RGB) {
-                    examList.push(new IntPoint(x,y));
-                    while (examList.size() > 0) {
-                        IntPoint p = examList.pop();
-                        _r = fastBitmap.getRed(p.x, p.y);
-                        _g = fastBitmap.getGreen(p.x, p.y);
-                        _b = fastBitmap.getBlue(p.x, p.y);
-                        _RGB = _r + _g + _b;
-
-                        if (_RGB == iRGB) {
-                            x = p.x;
-                            y = p.y;
-
-                            fastBitmap.setRGB(x, y, r, g, b);
-
-                            if ((x-1 > 0) && (y-1 > 0)) {
-                                examList.push(new IntPoint(x-1,y-1));        // check north-west neighbor
-                            }
-                            if (x-1 > 0) {
-                                examList.push(new IntPoint(x-1,y));        // check north neighbor
-                            }
-                            if ((x+1 < height) && (y+1 < width)) {
-                                examList.push(new IntPoint(x+1,y+1));        // check north-east neighbor
-                            }
-                            if (y-1 > 0) {
-                                examList.push(new IntPoint(x,y-1));        // check west neighbor
-                            }
-                            if (y+1 < width) {
-                                examList.push(new IntPoint(x,y+1));        // check east neighbor
-                            }
-                            if ((x+1 < height) && (y-1 > 0)) {
-                                examList.push(new IntPoint(x+1,y-1));        // check south-west neighbor
-                            }
-                            if (x+1 < height) {
-                                examList.push(new IntPoint(x+1,y));        // check south neighbor
-                            }
-                            if ((x+1 < height) && (y+1 < width)) {
-                                examList.push(new IntPoint(x+1,y+1));        // check south-east neighbor
-                            }
-                        }
-                    }
+                else{
+                    scan(data, stack, row - width, from, to, target, -1, left, right);
+                }
+            }
+            if (row + width < width * height) {
+                if (dir == -1) {
+                    scan(data, stack, row + width, from, parentLeft - 1, target, 1, left, right);
+                    scan(data, stack, row + width, parentRight + 1, to, target, 1, left, right);
+                }
+                else{
+                    scan(data, stack, row + width, from, to, target, 1, left, right);
                 }
-                break;
+            }
         }
     }
-}
-//
-///**
-// * A simple stack in points for image manipulation.
-// * @author Diego Catalano
-// */
-// class PointStack {
-//    
-//    int[] dataX;
-//    int[] dataY;
-//    
-//    int walk = 0;
-//
-//    /**
-//     * Create stack.
-//     * @param width width of image
-//     * @param height height of image
-//     */
-//    public PointStack(int width, int height) {
-//        dataX = new int[height*height*3];
-//        dataY = new int[width*width*3];
-//    }
-//    
-//    /**
-//     * Pushes a value into the stack.
-//     */
-//    public void push(IntPoint p){
-//        dataX[walk] = p.x;
-//        dataY[walk] = p.y;
-//        walk++;
-//    }
-//    
-//    /**
-//     * Pops a value off of the stack.
-//     */
-//    public IntPoint pop(){
-//        walk--;
-//        return new IntPoint(dataX[walk],dataY[walk]);
-//    }
-//    
-//    /**
-//     * Peeks at the top of the stack.
-//     */
-//    public IntPoint peak(){
-//        return new IntPoint(dataX[walk - 1], dataY[walk - 1]);
-//    }
-//    
-//    /**
-//     * Clears the stack.
-//     */
-//    public void clear(){
-//        walk = 0;
-//    }
-//    
-//    /**
-//     * Returns the size of the stack.
-//     */
-//    public int size(){
-//        return walk;
-//    }
-//    
-//    /**
-//     * Return true if is empty, otherwise false.
-//     */
-//    public boolean isEmpty(){
-//        if (walk > 0) {
-//            return false;
-//        }
-//        return true;
-//    }
-//}
\ No newline at end of file
+    
+    /**
+     * Push one seed for each span of target pixels in the columns [from, to] of a row.
+     */
+    private void scan(int[] data, IntStack stack, int row, int from, int to, int target, int dir, int left, int right){
+        boolean span = false;
+        for (int k = row + from; k <= row + to; k++) {
+            if (data[k] == target) {
+                if (!span) stack.push(k, dir, left, right);
+                span = true;
+            }
+            else{
+                span = false;
+            }
+        }
+    }
+    
+    /**
+     * A simple stack of seeds: pixel index, direction and span of the parent row.
+     */
+    private static class IntStack {
+        
+        int[] data = new int[1024];
+        int size;
+        
+        void push(int index, int dir, int left, int right){
+            if (size + 4 > data.length) data = Arrays.copyOf(data, data.length * 2);
+            data[size++] = index;
+            data[size++] = dir;
+            data[size++] = left;
+            data[size++] = right;
+        }
+        
+        int pop(){
+            return data[--size];
+        }
+    }
+}
\ No newline at end of file
@@ -36,7 +36,6 @@ import Catalano.Math.ComplexNumber;
 public class FourierTransform {
     
     private ComplexNumber[][] data;
-    private int width, height;
     private boolean fourierTransformed = false;
 
     /**
@@ -45,8 +44,8 @@ public class FourierTransform {
      */
     public FourierTransform(FastBitmap fastBitmap) {
         if (fastBitmap.isGrayscale()) {
-            this.width = fastBitmap.getWidth();
-            this.height = fastBitmap.getHeight();
+            int width = fastBitmap.getWidth();
+            int height = fastBitmap.getHeight();
             data = new ComplexNumber[height][width];
 
             for (int x = 0; x < height; x++) {
@@ -70,7 +69,7 @@ public class FourierTransform {
      * @return Width.
      */
     public int getWidth() {
-        return width;
+        return data[0].length;
     }
 
     /**
@@ -78,7 +77,7 @@ public class FourierTransform {
      * @return Height.
      */
     public int getHeight() {
-        return height;
+        return data.length;
     }
 
     /**
@@ -110,6 +109,8 @@ public class FourierTransform {
      * @return FastBitmap.
      */
     public FastBitmap toFastBitmap(){
+        int width = getWidth();
+        int height = getHeight();
         FastBitmap l = new FastBitmap(width, height, FastBitmap.ColorSpace.Grayscale);
         
         double scale = ( fourierTransformed ) ? Math.sqrt( width * height ) : 1;
@@ -127,6 +128,8 @@ public class FourierTransform {
      * Applies forward fast Fourier transformation to the complex image.
      */
     public void Forward(){
+        int width = getWidth();
+        int height = getHeight();
         if (!fourierTransformed){
             for ( int x = 0; x < height; x++ ){
                 for ( int y = 0; y < width; y++ ){
@@ -146,6 +149,8 @@ public class FourierTransform {
      * Applies backward fast Fourier transformation to the complex image.
      */
     public void Backward( ){
+        int width = getWidth();
+        int height = getHeight();
         if ( fourierTransformed ){
             Catalano.Math.Transforms.FourierTransform.DFT2(data, Catalano.Math.Transforms.FourierTransform.Direction.Backward);
             fourierTransformed = false;
@@ -68,6 +68,7 @@ public class GammaCorrection implements IBaseInPlace{
         int width = fastBitmap.getWidth();
         int height = fastBitmap.getHeight();
         
+        double gamma = this.gamma;
         gamma=gamma<0.1?0.1:gamma;
         gamma=gamma>5.0?5.0:gamma;
         
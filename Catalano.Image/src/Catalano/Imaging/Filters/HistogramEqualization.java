@@ -34,9 +34,6 @@ import java.util.ArrayList;
  */
 public class HistogramEqualization implements IBaseInPlace{
     
-    private int width;
-    private int height;
-    
     /**
      * Initialize a new instance of the HistogramEqualization class.
      */
@@ -46,8 +43,8 @@ public class HistogramEqualization implements IBaseInPlace{
     public void applyInPlace(FastBitmap fastBitmap) {
  
         // Get the Lookup table for histogram equalization
-        width = fastBitmap.getWidth();
-        height = fastBitmap.getHeight();
+        int width = fastBitmap.getWidth();
+        int height = fastBitmap.getHeight();
         ArrayList<int[]> histLUT = histogramEqualizationLUT(fastBitmap);
 
         if (fastBitmap.isGrayscale()) {
@@ -36,7 +36,6 @@ import Catalano.Imaging.IBaseInPlace;
 public class IsoDataClassifier implements IBaseInPlace{
     
     int n;
-    int[] histogram;
 
     /**
      * Initialize a new instance of the IsoDataClassifier class.
@@ -57,7 +56,7 @@ public class IsoDataClassifier implements IBaseInPlace{
     @Override
     public void applyInPlace(FastBitmap fastBitmap) {
         if(fastBitmap.isGrayscale()){
-            histogram = Histogram(fastBitmap);
+            int[] histogram = Histogram(fastBitmap);
             histogram = IsoData(histogram, n);
             
             int height = fastBitmap.getHeight();
@@ -44,11 +44,6 @@ public class LevelsLinear implements IBaseInPlace{
     private IntRange outGreen = new IntRange(0, 255);
     private IntRange outBlue = new IntRange(0, 255);
     private IntRange outGray = new IntRange(0, 255);
-    
-    private int[] mapRed = new int[256];
-    private int[] mapGreen = new int[256];
-    private int[] mapBlue = new int[256];
-    private int[] mapGray = new int[256];
 
     /**
      * Initialize a new instance of the LevelsLinear class.
@@ -69,7 +64,6 @@ public class LevelsLinear implements IBaseInPlace{
      */
     public void setInBlue(IntRange inBlue) {
         this.inBlue = inBlue;
-        CalculateMap(inBlue, outBlue, mapBlue);
     }
 
     /**
@@ -86,7 +80,6 @@ public class LevelsLinear implements IBaseInPlace{
      */
     public void setInGray(IntRange inGray) {
         this.inGray = inGray;
-        CalculateMap(inGray, outGray, mapGray);
     }
 
     /**
@@ -103,7 +96,6 @@ public class LevelsLinear implements IBaseInPlace{
      */
     public void setInGreen(IntRange inGreen) {
         this.inGreen = inGreen;
-        CalculateMap(inGreen, outGreen, mapGreen);
     }
 
     /**
@@ -120,7 +112,6 @@ public class LevelsLinear implements IBaseInPlace{
      */
     public void setInRed(IntRange inRed) {
         this.inRed = inRed;
-        CalculateMap(inRed, outRed, mapRed);
     }
 
     /**
@@ -137,7 +128,6 @@ public class LevelsLinear implements IBaseInPlace{
      */
     public void setOutBlue(IntRange outBlue) {
         this.outBlue = outBlue;
-        CalculateMap(inBlue, outBlue, mapBlue);
     }
 
     /**
@@ -154,7 +144,6 @@ public class LevelsLinear implements IBaseInPlace{
      */
     public void setOutGray(IntRange outGray) {
         this.outGray = outGray;
-        CalculateMap(inGray, outGray, mapGray);
     }
 
     /**
@@ -171,7 +160,6 @@ public class LevelsLinear implements IBaseInPlace{
      */
     public void setOutGreen(IntRange outGreen) {
         this.outGreen = outGreen;
-        CalculateMap(inGreen, outGreen, mapGreen);
     }
 
     /**
@@ -188,7 +176,6 @@ public class LevelsLinear implements IBaseInPlace{
      */
     public void setOutRed(IntRange outRed) {
         this.outRed = outRed;
-        CalculateMap(inRed, outRed, mapRed);
     }
     
     @Override
@@ -199,6 +186,7 @@ public class LevelsLinear implements IBaseInPlace{
         
         if (fastBitmap.isGrayscale()) {
             
+            int[] mapGray = new int[256];
             CalculateMap( inGray, outGray, mapGray );
             
             for (int x = 0; x < height; x++) {
@@ -209,6 +197,9 @@ public class LevelsLinear implements IBaseInPlace{
         }
         else{
             
+            int[] mapRed = new int[256];
+            int[] mapGreen = new int[256];
+            int[] mapBlue = new int[256];
             CalculateMap( inRed, outRed, mapRed );
             CalculateMap( inGreen, outGreen, mapGreen );
             CalculateMap( inBlue, outBlue, mapBlue );
@@ -24,6 +24,7 @@
 
 package Catalano.Imaging.Filters;
 
+import Catalano.Core.Parallel;
 import Catalano.Imaging.FastBitmap;
 import Catalano.Imaging.IBaseInPlace;
 
@@ -31,12 +32,19 @@ import Catalano.Imaging.IBaseInPlace;
  * Mean Shift filter.
  * <br /> Mean Shift filter can be used for edge-preserving smoothing or for segmentation. Important edges of an image might be easier detected after mean shift filtering.
  * <br /> It uses a circular flat kernel and the color distance is calculated in the YIQ-color space.
+ * <br /> The image is split in tiles of 8x8 pixels which keep the bounds and the sums of their colors:
+ * a tile too far in color from the current mean is skipped, and a tile completely inside the color distance is added at once,
+ * or one row at a time with prefix sums when it crosses the border of the kernel.
+ * Rows are processed in parallel.
  * @author Diego Catalano
  */
 public class MeanShift implements IBaseInPlace{
     
+    private static final int TILE = 8;
+    
     private int radius;
     private float colorDistance;
+    private int threads = 1;
 
     /**
      * Initialize a new instance of the MeanShift class.
@@ -53,180 +61,273 @@ public class MeanShift implements IBaseInPlace{
         this.colorDistance = colorDistance;
     }
 
-    @Override
-    public void applyInPlace(FastBitmap fastBitmap) {
-        
-        int width = fastBitmap.getWidth();
-        int height = fastBitmap.getHeight();
-        
-        if (fastBitmap.isRGB()) {
-            float[][][] pixelsF = new float[height][width][3];
-
-            int r,g,b;
-            for (int x = 0; x < height; x++) {
-                for (int y = 0; y < width; y++) {
-                    r = fastBitmap.getRed(x, y);
-                    g = fastBitmap.getGreen(x, y);
-                    b = fastBitmap.getBlue(x, y);
-
-                    // You can use ColorConverter.RGBtoYIQ but you need to multiply the result with 255.
-                    // In this way its more fast because we spend less processor.
-                    pixelsF[x][y][0] = 0.299f  *r + 0.587f *g + 0.114f  *b;
-                    pixelsF[x][y][1] = 0.5957f *r - 0.2744f*g - 0.3212f *b;
-                    pixelsF[x][y][2] = 0.2114f *r - 0.5226f*g + 0.3111f *b;
-                }
-            }
-
-            float shift;
-            int iters;
-
-            for (int x = 0; x < height; x++) {
-                for (int y = 0; y < width; y++) {
-                    int yc = y;
-                    int xc = x;
-                    int xcOld, ycOld;
-                    float YcOld, IcOld, QcOld;
-                    float[] yiq = pixelsF[x][y];
-                    float Yc = yiq[0];
-                    float Ic = yiq[1];
-                    float Qc = yiq[2];
+    /**
+     * Initialize a new instance of the MeanShift class.
+     * @param radius Radius.
+     * @param colorDistance Color distance.
+     * @param threads Number of threads.
+     */
+    public MeanShift(int radius, float colorDistance, int threads) {
+        this.radius = radius;
+        this.colorDistance = colorDistance;
+        setThreads(threads);
+    }
 
-                    iters = 0;
-                    do {
-                        xcOld = xc;
-                        ycOld = yc;
-                        YcOld = Yc;
-                        IcOld = Ic;
-                        QcOld = Qc;
+    /**
+     * Get radius.
+     * @return Radius.
+     */
+    public int getRadius() {
+        return radius;
+    }
 
-                        float mx = 0;
-                        float my = 0;
-                        float mY = 0;
-                        float mI = 0;
-                        float mQ = 0;
-                        int num=0;
+    /**
+     * Set radius.
+     * @param radius Radius.
+     */
+    public void setRadius(int radius) {
+        this.radius = radius;
+    }
 
-                        int radius2 = radius * radius;
-                        float colorDistance2 = colorDistance * colorDistance;
-                        for (int rx=-radius; rx <= radius; rx++) {
-                                int x2 = xc + rx; 
-                                if (x2 >= 0 && x2 < height) {
-                                        for (int ry=-radius; ry <= radius; ry++) {
-                                                int y2 = yc + ry; 
-                                                if (y2 >= 0 && y2 < width) {
-                                                        if (rx*rx + ry*ry <= radius2) {
-                                                                yiq = pixelsF[x2][y2];
+    /**
+     * Get color distance.
+     * @return Color distance.
+     */
+    public float getColorDistance() {
+        return colorDistance;
+    }
 
-                                                                float Y2 = yiq[0];
-                                                                float I2 = yiq[1];
-                                                                float Q2 = yiq[2];
+    /**
+     * Set color distance.
+     * @param colorDistance Color distance.
+     */
+    public void setColorDistance(float colorDistance) {
+        this.colorDistance = colorDistance;
+    }
 
-                                                                float dY = Yc - Y2;
-                                                                float dI = Ic - I2;
-                                                                float dQ = Qc - Q2;
+    /**
+     * Get number of threads.
+     * @return Number of threads.
+     */
+    public int getThreads() {
+        return threads;
+    }
 
-                                                                if (dY*dY+dI*dI+dQ*dQ <= colorDistance2) {
-                                                                        mx += x2;
-                                                                        my += y2;
-                                                                        mY += Y2;
-                                                                        mI += I2;
-                                                                        mQ += Q2;
-                                                                        num++;
-                                                                }
-                                                        }
-                                                }
-                                        }
-                                }
-                        }
-                        float num_ = 1f/num;
-                        Yc = mY*num_;
-                        Ic = mI*num_;
-                        Qc = mQ*num_;
-                        xc = (int) (mx*num_+0.5);
-                        yc = (int) (my*num_+0.5);
-                        int dx = xc-xcOld;
-                        int dy = yc-ycOld;
-                        float dY = Yc-YcOld;
-                        float dI = Ic-IcOld;
-                        float dQ = Qc-QcOld;
+    /**
+     * Set number of threads.
+     * @param threads Number of threads.
+     */
+    public void setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+    }
 
-                        shift = dx*dx+dy*dy+dY*dY+dI*dI+dQ*dQ; 
-                        iters++;
+    @Override
+    public void applyInPlace(FastBitmap fastBitmap) {
+        
+        final int width = fastBitmap.getWidth();
+        final int height = fastBitmap.getHeight();
+        final int size = width * height;
+        
+        if (!fastBitmap.isRGB() && !fastBitmap.isGrayscale()) return;
+        
+        // Planar YIQ, the chroma planes stay zero for grayscale images.
+        final float[] cY = new float[size];
+        final float[] cI = new float[size];
+        final float[] cQ = new float[size];
+        final int[] rgb = fastBitmap.isRGB() ? fastBitmap.getRGBData() : null;
+        final byte[] gray = rgb == null ? fastBitmap.getGrayData() : null;
+        
+        if (rgb != null) {
+            for (int i = 0; i < size; i++) {
+                int r = rgb[i] >> 16 & 0xFF;
+                int g = rgb[i] >> 8 & 0xFF;
+                int b = rgb[i] & 0xFF;
+                
+                // You can use ColorConverter.RGBtoYIQ but you need to multiply the result with 255.
+                // In this way its more fast because we spend less processor.
+                cY[i] = 0.299f  *r + 0.587f *g + 0.114f  *b;
+                cI[i] = 0.5957f *r - 0.2744f*g - 0.3212f *b;
+                cQ[i] = 0.2114f *r - 0.5226f*g + 0.3111f *b;
+            }
+        }
+        else{
+            for (int i = 0; i < size; i++) {
+                cY[i] = gray[i] & 0xFF;
+            }
+        }
+        
+        // Prefix sums of the colors of each row of a tile.
+        final float[] pY = new float[size];
+        final float[] pI = new float[size];
+        final float[] pQ = new float[size];
+        for (int x = 0; x < height; x++) {
+            for (int y = 0, p = x * width; y < width; y++, p++) {
+                boolean first = y % TILE == 0;
+                pY[p] = first ? cY[p] : pY[p - 1] + cY[p];
+                pI[p] = first ? cI[p] : pI[p - 1] + cI[p];
+                pQ[p] = first ? cQ[p] : pQ[p - 1] + cQ[p];
+            }
+        }
+        
+        // Color bounds (min, max of each channel) and sums (x, y, Y, I, Q, count) of each tile.
+        final int tileRows = (height + TILE - 1) / TILE;
+        final int tileCols = (width + TILE - 1) / TILE;
+        final float[] bounds = new float[tileRows * tileCols * 6];
+        final double[] sums = new double[tileRows * tileCols * 6];
+        for (int tx = 0, t = 0; tx < tileRows; tx++) {
+            for (int ty = 0; ty < tileCols; ty++, t++) {
+                float minY = Float.MAX_VALUE, maxY = -Float.MAX_VALUE;
+                float minI = Float.MAX_VALUE, maxI = -Float.MAX_VALUE;
+                float minQ = Float.MAX_VALUE, maxQ = -Float.MAX_VALUE;
+                double sx = 0, sy = 0, sY = 0, sI = 0, sQ = 0, n = 0;
+                for (int x = tx * TILE; x < Math.min(height, (tx + 1) * TILE); x++) {
+                    for (int y = ty * TILE; y < Math.min(width, (ty + 1) * TILE); y++) {
+                        int p = x * width + y;
+                        minY = Math.min(minY, cY[p]); maxY = Math.max(maxY, cY[p]);
+                        minI = Math.min(minI, cI[p]); maxI = Math.max(maxI, cI[p]);
+                        minQ = Math.min(minQ, cQ[p]); maxQ = Math.max(maxQ, cQ[p]);
+                        sx += x; sy += y;
+                        sY += cY[p]; sI += cI[p]; sQ += cQ[p];
+                        n++;
                     }
-                    while (shift > 3 && iters < 100);
-
-                    int r_ = (int)(Yc + 0.9563f*Ic + 0.6210f*Qc);
-                    int g_ = (int)(Yc - 0.2721f*Ic - 0.6473f*Qc);
-                    int b_ = (int)(Yc - 1.1070f*Ic + 1.7046f*Qc);
-
-                    fastBitmap.setRGB(x, y, r_, g_, b_);
                 }
+                int b = t * 6;
+                bounds[b] = minY; bounds[b + 1] = maxY;
+                bounds[b + 2] = minI; bounds[b + 3] = maxI;
+                bounds[b + 4] = minQ; bounds[b + 5] = maxQ;
+                sums[b] = sx; sums[b + 1] = sy;
+                sums[b + 2] = sY; sums[b + 3] = sI; sums[b + 4] = sQ;
+                sums[b + 5] = n;
             }
         }
-        if (fastBitmap.isGrayscale()) {
-            float shift;
-            int iters;
-
-            for (int x = 0; x < height; x++) {
-                for (int y = 0; y < width; y++) {
-                    int yc = y;
-                    int xc = x;
-                    int xcOld, ycOld;
-                    float YcOld;
-                    float Yc = fastBitmap.getGray(x, y);
-
-                    iters = 0;
-                    do {
-                        xcOld = xc;
-                        ycOld = yc;
-                        YcOld = Yc;
-
-                        float mx = 0;
-                        float my = 0;
-                        float mY = 0;
-                        int num=0;
-
-                        int radius2 = radius * radius;
-                        float colorDistance2 = colorDistance * colorDistance;
-                        for (int rx=-radius; rx <= radius; rx++) {
-                                int x2 = xc + rx; 
-                                if (x2 >= 0 && x2 < height) {
-                                        for (int ry=-radius; ry <= radius; ry++) {
-                                                int y2 = yc + ry; 
-                                                if (y2 >= 0 && y2 < width) {
-                                                        if (rx*rx + ry*ry <= radius2) {
-
-                                                                float Y2 = fastBitmap.getGray(x2, y2);
-
-                                                                float dY = Yc - Y2;
-
-                                                                if (dY*dY <= colorDistance2) {
-                                                                        mx += x2;
-                                                                        my += y2;
-                                                                        mY += Y2;
-                                                                        num++;
-                                                                }
-                                                        }
-                                                }
+        
+        // Half width of each row of the circular kernel.
+        final int r = Math.max(0, radius);
+        final int[] span = new int[r + 1];
+        for (int i = 0; i <= r; i++) {
+            span[i] = (int)Math.sqrt(r * r - i * i);
+            while ((span[i] + 1) * (span[i] + 1) + i * i <= r * r) span[i]++;
+            while (span[i] * span[i] + i * i > r * r) span[i]--;
+        }
+        
+        final float colorDistance2 = colorDistance * colorDistance;
+        
+        Parallel.For(0, height, threads, new Parallel.IBlock() {
+            @Override
+            public void Compute(int block, int from, int to) {
+                for (int x = from; x < to; x++) {
+                    for (int y = 0; y < width; y++) {
+                        int p = x * width + y;
+                        int xc = x;
+                        int yc = y;
+                        float Yc = cY[p];
+                        float Ic = cI[p];
+                        float Qc = cQ[p];
+                        
+                        float shift;
+                        int iters = 0;
+                        do {
+                            double mx = 0, my = 0, mY = 0, mI = 0, mQ = 0, num = 0;
+                            
+                            int tx0 = Math.max(0, xc - r) / TILE, tx1 = Math.min(height - 1, xc + r) / TILE;
+                            int ty0 = Math.max(0, yc - r) / TILE, ty1 = Math.min(width - 1, yc + r) / TILE;
+                            for (int tx = tx0; tx <= tx1; tx++) {
+                                int x0 = tx * TILE, x1 = Math.min(height, x0 + TILE) - 1;
+                                int nx = xc < x0 ? x0 - xc : xc > x1 ? xc - x1 : 0;
+                                int fx = Math.max(Math.abs(x0 - xc), Math.abs(x1 - xc));
+                                for (int ty = ty0; ty <= ty1; ty++) {
+                                    int y0 = ty * TILE, y1 = Math.min(width, y0 + TILE) - 1;
+                                    int ny = yc < y0 ? y0 - yc : yc > y1 ? yc - y1 : 0;
+                                    if (nx * nx + ny * ny > r * r) continue;
+                                    
+                                    int b = (tx * tileCols + ty) * 6;
+                                    float dY = Yc < bounds[b] ? bounds[b] - Yc : Yc > bounds[b + 1] ? Yc - bounds[b + 1] : 0;
+                                    float dI = Ic < bounds[b + 2] ? bounds[b + 2] - Ic : Ic > bounds[b + 3] ? Ic - bounds[b + 3] : 0;
+                                    float dQ = Qc < bounds[b + 4] ? bounds[b + 4] - Qc : Qc > bounds[b + 5] ? Qc - bounds[b + 5] : 0;
+                                    if (dY * dY + dI * dI + dQ * dQ > colorDistance2) continue;
+                                    
+                                    dY = Math.max(Yc - bounds[b], bounds[b + 1] - Yc);
+                                    dI = Math.max(Ic - bounds[b + 2], bounds[b + 3] - Ic);
+                                    dQ = Math.max(Qc - bounds[b + 4], bounds[b + 5] - Qc);
+                                    boolean allColors = dY * dY + dI * dI + dQ * dQ <= colorDistance2;
+                                    
+                                    int fy = Math.max(Math.abs(y0 - yc), Math.abs(y1 - yc));
+                                    if (allColors && fx * fx + fy * fy <= r * r) {
+                                        mx += sums[b]; my += sums[b + 1];
+                                        mY += sums[b + 2]; mI += sums[b + 3]; mQ += sums[b + 4];
+                                        num += sums[b + 5];
+                                        continue;
+                                    }
+                                    
+                                    for (int x2 = Math.max(x0, xc - r); x2 <= Math.min(x1, xc + r); x2++) {
+                                        int s = span[Math.abs(x2 - xc)];
+                                        int ya = Math.max(y0, yc - s), yb = Math.min(y1, yc + s);
+                                        if (ya > yb) continue;
+                                        if (allColors) {
+                                            int qa = x2 * width + ya - 1, qb = x2 * width + yb;
+                                            int n = yb - ya + 1;
+                                            mx += (double)x2 * n;
+                                            my += (ya + yb) * n * 0.5;
+                                            mY += ya > y0 ? pY[qb] - pY[qa] : pY[qb];
+                                            mI += ya > y0 ? pI[qb] - pI[qa] : pI[qb];
+                                            mQ += ya > y0 ? pQ[qb] - pQ[qa] : pQ[qb];
+                                            num += n;
+                                            continue;
+                                        }
+                                        for (int y2 = ya, q = x2 * width + ya; y2 <= yb; y2++, q++) {
+                                            float Y2 = cY[q];
+                                            float I2 = cI[q];
+                                            float Q2 = cQ[q];
+                                            float eY = Yc - Y2;
+                                            float eI = Ic - I2;
+                                            float eQ = Qc - Q2;
+                                            if (eY * eY + eI * eI + eQ * eQ > colorDistance2) continue;
+                                            mx += x2; my += y2;
+                                            mY += Y2; mI += I2; mQ += Q2;
+                                            num++;
                                         }
+                                    }
                                 }
+                            }
+                            
+                            // No pixel near enough to the mean, it can not move anymore.
+                            if (num == 0) break;
+                            
+                            double num_ = 1.0 / num;
+                            float YcOld = Yc, IcOld = Ic, QcOld = Qc;
+                            int xcOld = xc, ycOld = yc;
+                            Yc = (float)(mY * num_);
+                            Ic = (float)(mI * num_);
+                            Qc = (float)(mQ * num_);
+                            xc = (int)(mx * num_ + 0.5);
+                            yc = (int)(my * num_ + 0.5);
+                            
+                            int dx = xc - xcOld;
+                            int dy = yc - ycOld;
+                            float dY = Yc - YcOld;
+                            float dI = Ic - IcOld;
+                            float dQ = Qc - QcOld;
+                            shift = dx * dx + dy * dy + dY * dY + dI * dI + dQ * dQ;
+                            iters++;
+                        }
+                        while (shift > 3 && iters < 100);
+                        
+                        if (rgb != null) {
+                            int r_ = clamp((int)(Yc + 0.9563f*Ic + 0.6210f*Qc));
+                            int g_ = clamp((int)(Yc - 0.2721f*Ic - 0.6473f*Qc));
+                            int b_ = clamp((int)(Yc - 1.1070f*Ic + 1.7046f*Qc));
+                            rgb[p] = r_ << 16 | g_ << 8 | b_;
+                        }
+                        else{
+                            gray[p] = (byte)clamp((int)Yc);
                         }
-                        float num_ = 1f/num;
-                        Yc = mY*num_;
-                        xc = (int) (mx*num_+0.5);
-                        yc = (int) (my*num_+0.5);
-                        int dx = xc-xcOld;
-                        int dy = yc-ycOld;
-                        float dY = Yc-YcOld;
-
-                        shift = dx*dx+dy*dy+dY*dY;
-                        iters++;
                     }
-                    while (shift > 3 && iters < 100);
-
-                    fastBitmap.setGray(x, y, (int)Yc);
                 }
             }
-        }
+        });
+    }
+    
+    private static int clamp(int value){
+        return value < 0 ? 0 : value > 255 ? 255 : value;
     }
 }
\ No newline at end of file
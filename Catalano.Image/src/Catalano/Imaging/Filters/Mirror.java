@@ -26,6 +26,7 @@ import Catalano.Imaging.IBaseInPlace;
 
 /**
  * Mirroring filter.
+ * @see AffineWarp
  * @author Diego Catalano
  */
 public class Mirror implements IBaseInPlace{
@@ -57,78 +58,16 @@ public class Mirror implements IBaseInPlace{
     
     @Override
     public void applyInPlace(FastBitmap fastBitmap){
+        if (!mirrorX && !mirrorY) return;
         
         int width = fastBitmap.getWidth();
         int height = fastBitmap.getHeight();
-        int halfWidth = width / 2;
-        int halfHeight = height / 2;
         
-        if (fastBitmap.isRGB()) {
-            if (mirrorX) {
-                for (int x = 0; x < height; x++) {
-                    int w = width - 1;
-                    for (int y = 0; y < halfWidth; y++) {
-                        int tRed = fastBitmap.getRed(x, w);
-                        int tGreen = fastBitmap.getGreen(x, w);
-                        int tBlue = fastBitmap.getBlue(x, w);
-                        
-                        int r = fastBitmap.getRed(x, y);
-                        int g = fastBitmap.getGreen(x, y);
-                        int b = fastBitmap.getBlue(x, y);
-                        
-                        fastBitmap.setRGB(x, y, tRed, tGreen, tBlue);
-                        fastBitmap.setRGB(x, w, r, g, b);
-                        w--;
-                    }
-                }
-            }
-            if (mirrorY) {
-                for (int x = 0; x < halfHeight; x++) {
-                    int h = height - x - 1;
-                    for (int y = 0; y < width; y++) {
-                        int tRed = fastBitmap.getRed(h, y);
-                        int tGreen = fastBitmap.getGreen(h, y);
-                        int tBlue = fastBitmap.getBlue(h, y);
-                        
-                        int r = fastBitmap.getRed(x, y);
-                        int g = fastBitmap.getGreen(x, y);
-                        int b = fastBitmap.getBlue(x, y);
-                        
-                        fastBitmap.setRGB(x, y, tRed, tGreen, tBlue);
-                        fastBitmap.setRGB(h, y, r, g, b);
-                    }
-                }
-            }
-        }
-        else if(fastBitmap.isGrayscale()){
-            if (mirrorX) {
-                for (int x = 0; x < height; x++) {
-                    int w = width - 1;
-                    for (int y = 0; y < halfWidth; y++) {
-                        
-                        int tG = fastBitmap.getGray(x, w);
-                        int g = fastBitmap.getGray(x, y);
-                        
-                        fastBitmap.setGray(x, y, tG);
-                        fastBitmap.setGray(x, w, g);
-                        
-                        w--;
-                    }
-                }
-            }
-            if (mirrorY) {
-                for (int x = 0; x < halfHeight; x++) {
-                    int h = height - x - 1;
-                    for (int y = 0; y < width; y++) {
-
-                        int tG = fastBitmap.getGray(h, y);
-                        int g = fastBitmap.getGray(x, y);
-                        
-                        fastBitmap.setGray(x, y, tG);
-                        fastBitmap.setGray(h, y, g);
-                    }
-                }
-            }
-        }
+        // Horizontal mirroring flips the columns (y), vertical mirroring flips the rows (x).
+        double[][] matrix = {
+            {mirrorY ? -1 : 1, 0, mirrorY ? height - 1 : 0},
+            {0, mirrorX ? -1 : 1, mirrorX ? width - 1 : 0}
+        };
+        new AffineWarp(matrix, AffineWarp.Algorithm.NEAREST_NEIGHBOR).applyInPlace(fastBitmap);
     }
 }
\ No newline at end of file
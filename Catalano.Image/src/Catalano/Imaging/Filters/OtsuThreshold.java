@@ -33,7 +33,6 @@ import Catalano.Imaging.IBaseInPlace;
  * @author Diego Catalano
  */
 public class OtsuThreshold implements IBaseInPlace{
-    private int width,height;
     private boolean invert = false;
 
     /**
@@ -63,8 +62,8 @@ public class OtsuThreshold implements IBaseInPlace{
      */
     public int CalculateThreshold(FastBitmap fastBitmap) {
         
-    this.width = fastBitmap.getWidth();
-    this.height = fastBitmap.getHeight();
+    int width = fastBitmap.getWidth();
+    int height = fastBitmap.getHeight();
  
     int[] histogram = imageHistogram(fastBitmap);
     int total = width * height;
@@ -109,6 +108,8 @@ public class OtsuThreshold implements IBaseInPlace{
      */
     private int[] imageHistogram(FastBitmap fastBitmap) {
         int gray;
+        int width = fastBitmap.getWidth();
+        int height = fastBitmap.getHeight();
         
         int[] histogram = new int[256];
  
@@ -43,6 +43,16 @@ public class ReplaceRGBChannel implements IBaseInPlace{
 
     @Override
     public void applyInPlace(FastBitmap fastBitmap) {
+        applyInPlace(fastBitmap, band, rgb);
+    }
+    
+    /**
+     * Replace a channel with a band given for this call, without changing the configured band.
+     * @param fastBitmap RGB image.
+     * @param band Grayscale band.
+     * @param rgb Channel to be replaced.
+     */
+    public void applyInPlace(FastBitmap fastBitmap, FastBitmap band, RGB rgb) {
         if ((!band.isGrayscale()) || (!fastBitmap.isRGB())) {
             try {
                 throw new Exception("ReplaceRGBChannel needs one image grayscale and another RGB image");
@@ -1,34 +1,110 @@
-/*
- * To change this template, choose Tools | Templates
- * and open the template in the editor.
- */
+// Catalano Imaging Library
+// The Catalano Framework
+//
+// Copyright © Diego Catalano, 2013
+// diego.catalano at live.com
+//
+//    This library is free software; you can redistribute it and/or
+//    modify it under the terms of the GNU Lesser General Public
+//    License as published by the Free Software Foundation; either
+//    version 2.1 of the License, or (at your option) any later version.
+//
+//    This library is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+//    Lesser General Public License for more details.
+//
+//    You should have received a copy of the GNU Lesser General Public
+//    License along with this library; if not, write to the Free Software
+//    Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+//
+
 package Catalano.Imaging.Filters;
 
+import Catalano.Core.Parallel;
 import Catalano.Imaging.FastBitmap;
 import java.awt.geom.AffineTransform;
 import java.awt.image.AffineTransformOp;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
 
 /**
- *
+ * Resize image.
+ * <br /> Grayscale and RGB images are resampled by two separable passes, first the rows and then the columns,
+ * with the weights of each output column and row computed once. When downscaling the kernels are stretched to cover
+ * all the input pixels, so the result does not alias. The area algorithm averages the input pixels covered by each output pixel,
+ * which is the best choice for large downscales like thumbnails.
+ * <br /> Both passes run in parallel bands of rows and the output keeps the color space of the input.
  * @author Diego Catalano
  */
 public class Resize {
     
-    public static enum Algorithm{BILINEAR,BICUBIC,NEAREST_NEIGHBOR};
+    /**
+     * Interpolation algorithm.
+     */
+    public static enum Algorithm{
+        /**
+         * Linear interpolation.
+         */
+        BILINEAR,
+        /**
+         * Cubic convolution (Catmull-Rom).
+         */
+        BICUBIC,
+        /**
+         * Nearest neighbor.
+         */
+        NEAREST_NEIGHBOR,
+        /**
+         * Average of the covered area.
+         */
+        AREA,
+        /**
+         * Lanczos windowed sinc, with 3 lobes.
+         */
+        LANCZOS3
+    };
+    
     private Algorithm algorithm;
     private int newWidth, newHeight;
+    private int threads = 1;
 
+    /**
+     * Initialize a new instance of the Resize class.
+     * @param newWidth New width.
+     * @param newHeight New height.
+     */
     public Resize(int newWidth, int newHeight) {
         this.newWidth = newWidth;
         this.newHeight = newHeight;
         this.algorithm = Algorithm.NEAREST_NEIGHBOR;
     }
     
+    /**
+     * Initialize a new instance of the Resize class.
+     * @param newWidth New width.
+     * @param newHeight New height.
+     * @param algorithm Interpolation algorithm.
+     */
     public Resize(int newWidth, int newHeight, Algorithm algorithm) {
         this.newWidth = newWidth;
         this.newHeight = newHeight;
         this.algorithm = algorithm;
     }
+    
+    /**
+     * Initialize a new instance of the Resize class.
+     * @param newWidth New width.
+     * @param newHeight New height.
+     * @param algorithm Interpolation algorithm.
+     * @param threads Number of threads.
+     */
+    public Resize(int newWidth, int newHeight, Algorithm algorithm, int threads) {
+        this.newWidth = newWidth;
+        this.newHeight = newHeight;
+        this.algorithm = algorithm;
+        setThreads(threads);
+    }
 
     public int getNewHeight() {
         return newHeight;
@@ -45,31 +121,276 @@ public class Resize {
     public void setNewWidth(int newWidth) {
         this.newWidth = newWidth;
     }
+
+    /**
+     * Get interpolation algorithm.
+     * @return Interpolation algorithm.
+     */
+    public Algorithm getAlgorithm() {
+        return algorithm;
+    }
+
+    /**
+     * Set interpolation algorithm.
+     * @param algorithm Interpolation algorithm.
+     */
+    public void setAlgorithm(Algorithm algorithm) {
+        this.algorithm = algorithm;
+    }
+
+    /**
+     * Get number of threads.
+     * @return Number of threads.
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Set number of threads.
+     * @param threads Number of threads.
+     */
+    public void setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+    }
     
     /**
      * Resize
      * @param fastBitmap
      */
     public void ApplyInPlace(FastBitmap fastBitmap){
+        if (!fastBitmap.isGrayscale() && !fastBitmap.isRGB()) {
+            double sx = (double)newWidth*1.00/fastBitmap.getWidth();
+            double sy = (double)newHeight*1.00/fastBitmap.getHeight();
+            AffineTransform tx = new AffineTransform();
+            tx.scale(sx, sy);
+            int type;
+            switch(algorithm){
+                case NEAREST_NEIGHBOR:
+                    type = AffineTransformOp.TYPE_NEAREST_NEIGHBOR;
+                    break;
+                case BILINEAR:
+                    type = AffineTransformOp.TYPE_BILINEAR;
+                    break;
+                default:
+                    type = AffineTransformOp.TYPE_BICUBIC;
+            }
+            AffineTransformOp op = new AffineTransformOp(tx, type);
+            fastBitmap.setImage(op.filter(fastBitmap.toBufferedImage(), null));
+            return;
+        }
+        
+        BufferedImage image = new BufferedImage(newWidth, newHeight, fastBitmap.isGrayscale() ? BufferedImage.TYPE_BYTE_GRAY : BufferedImage.TYPE_INT_RGB);
+        Apply(fastBitmap, new FastBitmap(image));
+        fastBitmap.setImage(image);
+    }
+    
+    /**
+     * Resize to a new image.
+     * @param fastBitmap Image to be resized, grayscale or RGB.
+     * @return Resized image, with the same color space.
+     */
+    public FastBitmap Apply(FastBitmap fastBitmap){
+        FastBitmap dst = new FastBitmap(newWidth, newHeight, fastBitmap.getColorSpace());
+        Apply(fastBitmap, dst);
+        return dst;
+    }
+    
+    /**
+     * Resize into a destination image. The size of the destination is used instead of the new width and height.
+     * @param source Image to be resized, grayscale or RGB.
+     * @param destination Destination image, with the same color space of the source.
+     */
+    public void Apply(FastBitmap source, FastBitmap destination){
+        if (!source.isGrayscale() && !source.isRGB())
+            throw new IllegalArgumentException("Resize only works with grayscale or RGB images.");
+        if (source.getColorSpace() != destination.getColorSpace())
+            throw new IllegalArgumentException("Source and destination must have the same color space.");
+        
+        final int width = source.getWidth();
+        final int height = source.getHeight();
+        final int dstWidth = destination.getWidth();
+        final int dstHeight = destination.getHeight();
+        final boolean gray = source.isGrayscale();
+        final int channels = gray ? 1 : 3;
+        
+        final Weights columns = new Weights(width, dstWidth, algorithm);
+        final Weights rows = new Weights(height, dstHeight, algorithm);
+        
+        // Only the input rows used by the vertical pass are resampled.
+        final int first = rows.start[0];
+        final int last = rows.start[dstHeight - 1] + rows.count[dstHeight - 1];
+        final float[] temp = new float[(last - first) * dstWidth * channels];
+        
+        final byte[] srcGray = gray ? source.getGrayData() : null;
+        final int[] srcRGB = gray ? null : source.getRGBData();
+        final byte[] dstGray = gray ? destination.getGrayData() : null;
+        final int[] dstRGB = gray ? null : destination.getRGBData();
+        
+        // Horizontal pass.
+        Parallel.For(first, last, threads, new Parallel.IBlock() {
+            @Override
+            public void Compute(int block, int from, int to) {
+                for (int x = from; x < to; x++) {
+                    int row = x * width;
+                    int t = (x - first) * dstWidth * channels;
+                    for (int j = 0; j < dstWidth; j++) {
+                        int s = row + columns.start[j];
+                        int w = j * columns.taps;
+                        int n = columns.count[j];
+                        if (gray) {
+                            float v = 0;
+                            for (int k = 0; k < n; k++)
+                                v += columns.weight[w + k] * (srcGray[s + k] & 0xFF);
+                            temp[t++] = v;
+                        }
+                        else{
+                            float r = 0, g = 0, b = 0;
+                            for (int k = 0; k < n; k++) {
+                                int p = srcRGB[s + k];
+                                float c = columns.weight[w + k];
+                                r += c * (p >> 16 & 0xFF);
+                                g += c * (p >> 8 & 0xFF);
+                                b += c * (p & 0xFF);
+                            }
+                            temp[t++] = r;
+                            temp[t++] = g;
+                            temp[t++] = b;
+                        }
+                    }
+                }
+            }
+        });
+        
+        // Vertical pass.
+        Parallel.For(0, dstHeight, threads, new Parallel.IBlock() {
+            @Override
+            public void Compute(int block, int from, int to) {
+                int stride = dstWidth * channels;
+                float[] acc = new float[stride];
+                for (int i = from; i < to; i++) {
+                    Arrays.fill(acc, 0);
+                    int w = i * rows.taps;
+                    for (int k = 0; k < rows.count[i]; k++) {
+                        float c = rows.weight[w + k];
+                        int t = (rows.start[i] + k - first) * stride;
+                        for (int j = 0; j < stride; j++)
+                            acc[j] += c * temp[t + j];
+                    }
+                    
+                    int d = i * dstWidth;
+                    if (gray) {
+                        for (int j = 0; j < dstWidth; j++)
+                            dstGray[d + j] = (byte)clamp(acc[j]);
+                    }
+                    else{
+                        for (int j = 0, a = 0; j < dstWidth; j++, a += 3)
+                            dstRGB[d + j] = clamp(acc[a]) << 16 | clamp(acc[a + 1]) << 8 | clamp(acc[a + 2]);
+                    }
+                }
+            }
+        });
+    }
+    
+    private static int clamp(float v){
+        int i = (int)(v + 0.5f);
+        return i < 0 ? 0 : i > 255 ? 255 : i;
+    }
+    
+    /**
+     * Weights of the input pixels for each output pixel along one axis.
+     */
+    private static class Weights {
+        
+        int taps;
+        int[] start;
+        int[] count;
+        float[] weight;
+        
+        Weights(int in, int out, Algorithm algorithm){
+            double scale = (double)in / out;
+            double stretch = Math.max(1, scale);
+            double radius;
+            switch(algorithm){
+                case NEAREST_NEIGHBOR: radius = 0.5; break;
+                case BILINEAR: radius = 1; break;
+                case BICUBIC: radius = 2; break;
+                case LANCZOS3: radius = 3; break;
+                default: radius = 0.5;
+            }
+            double support = algorithm == Algorithm.NEAREST_NEIGHBOR ? 0.5 : radius * stretch;
+            if (algorithm == Algorithm.AREA) support = Math.max(0.5, scale / 2);
+            
+            taps = (int)Math.ceil(support) * 2 + 1;
+            start = new int[out];
+            count = new int[out];
+            weight = new float[out * taps];
+            double[] w = new double[taps];
+            
+            for (int i = 0; i < out; i++) {
+                double center = (i + 0.5) * scale;
+                
+                if (algorithm == Algorithm.NEAREST_NEIGHBOR) {
+                    start[i] = Math.min(in - 1, (int)center);
+                    count[i] = 1;
+                    weight[i * taps] = 1;
+                    continue;
+                }
+                
+                int min = Math.max(0, (int)Math.floor(center - support));
+                int max = Math.min(in, (int)Math.ceil(center + support));
+                int n = 0;
+                double sum = 0;
+                for (int x = min; x < max; x++) {
+                    double v;
+                    if (algorithm == Algorithm.AREA) {
+                        // Overlap of the input pixel [x, x + 1) with the footprint of the output pixel.
+                        double a = Math.max(x, center - scale / 2);
+                        double b = Math.min(x + 1, center + scale / 2);
+                        v = Math.max(0, b - a);
+                    }
+                    else{
+                        v = kernel(algorithm, (x + 0.5 - center) / stretch);
+                    }
+                    w[n++] = v;
+                    sum += v;
+                }
+                
+                // Drop the zero weights at the ends.
+                int lo = 0, hi = n;
+                while (lo < hi && w[lo] == 0) lo++;
+                while (hi > lo && w[hi - 1] == 0) hi--;
+                if (lo == hi || sum == 0) {
+                    start[i] = Math.min(in - 1, Math.max(0, (int)center));
+                    count[i] = 1;
+                    weight[i * taps] = 1;
+                    continue;
+                }
+                
+                start[i] = min + lo;
+                count[i] = hi - lo;
+                for (int k = lo; k < hi; k++)
+                    weight[i * taps + k - lo] = (float)(w[k] / sum);
+            }
+        }
         
-        double sx = (double)newWidth*1.00/fastBitmap.getWidth();
-        double sy = (double)newHeight*1.00/fastBitmap.getHeight();
-        AffineTransform tx = new AffineTransform();
-        AffineTransformOp op;
-        tx.scale(sx, sy);
-        switch(algorithm){
-            case BILINEAR:
-                op = new AffineTransformOp(tx, AffineTransformOp.TYPE_BILINEAR);
-                break;
-            case BICUBIC:
-                op = new AffineTransformOp(tx, AffineTransformOp.TYPE_BICUBIC);
-                break;
-            case NEAREST_NEIGHBOR:
-                op = new AffineTransformOp(tx, AffineTransformOp.TYPE_NEAREST_NEIGHBOR);
-                break;
-            default:
-                op = new AffineTransformOp(tx, AffineTransformOp.TYPE_NEAREST_NEIGHBOR);
+        private static double kernel(Algorithm algorithm, double x){
+            x = Math.abs(x);
+            switch(algorithm){
+                case BILINEAR:
+                    return x < 1 ? 1 - x : 0;
+                case BICUBIC:
+                    if (x < 1) return (1.5 * x - 2.5) * x * x + 1;
+                    if (x < 2) return ((-0.5 * x + 2.5) * x - 4) * x + 2;
+                    return 0;
+                case LANCZOS3:
+                    if (x == 0) return 1;
+                    if (x >= 3) return 0;
+                    double px = Math.PI * x;
+                    return 3 * Math.sin(px) * Math.sin(px / 3) / (px * px);
+                default:
+                    return x < 0.5 ? 1 : 0;
+            }
         }
-        fastBitmap.setImage(op.filter(fastBitmap.toBufferedImage(), null));
     }
 }
\ No newline at end of file
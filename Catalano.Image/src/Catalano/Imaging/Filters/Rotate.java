@@ -1,16 +1,33 @@
-/*
- * To change this template, choose Tools | Templates
- * and open the template in the editor.
- */
+// Catalano Imaging Library
+// The Catalano Framework
+//
+// Copyright © Diego Catalano, 2013
+// diego.catalano at live.com
+//
+//    This library is free software; you can redistribute it and/or
+//    modify it under the terms of the GNU Lesser General Public
+//    License as published by the Free Software Foundation; either
+//    version 2.1 of the License, or (at your option) any later version.
+//
+//    This library is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+//    Lesser General Public License for more details.
+//
+//    You should have received a copy of the GNU Lesser General Public
+//    License along with this library; if not, write to the Free Software
+//    Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+//
+
 package Catalano.Imaging.Filters;
 
 import Catalano.Imaging.FastBitmap;
 import Catalano.Imaging.IBaseInPlace;
-import java.awt.geom.AffineTransform;
-import java.awt.image.AffineTransformOp;
 
 /**
- *
+ * Rotate the image around its center, keeping its size.
+ * <br /> Positive angles rotate counterclockwise. The corners uncovered by the rotation are black.
+ * @see AffineWarp
  * @author Diego Catalano
  */
 public class Rotate implements IBaseInPlace{
@@ -37,32 +54,24 @@ public class Rotate implements IBaseInPlace{
     }
     
     /**
-     * Resize
-     * @param fastBitmap
+     * Rotate.
+     * @param fastBitmap Image to be processed.
      */
     @Override
     public void applyInPlace(FastBitmap fastBitmap){
         
-        int width = fastBitmap.getWidth();
-        int height = fastBitmap.getHeight();
+        // Center of the rotation, x is the row and y the column.
+        int cx = fastBitmap.getHeight() / 2;
+        int cy = fastBitmap.getWidth() / 2;
         
-        AffineTransform tx = new AffineTransform();
-         tx.rotate(-angle * Math.PI / 180.0,width / 2,height / 2);
+        double t = -angle * Math.PI / 180.0;
+        double cos = Math.cos(t);
+        double sin = Math.sin(t);
         
-        AffineTransformOp op;
-        switch(algorithm){
-            case BILINEAR:
-                op = new AffineTransformOp(tx, AffineTransformOp.TYPE_BILINEAR);
-                break;
-            case BICUBIC:
-                op = new AffineTransformOp(tx, AffineTransformOp.TYPE_BICUBIC);
-                break;
-            case NEAREST_NEIGHBOR:
-                op = new AffineTransformOp(tx, AffineTransformOp.TYPE_NEAREST_NEIGHBOR);
-                break;
-            default:
-                op = new AffineTransformOp(tx, AffineTransformOp.TYPE_NEAREST_NEIGHBOR);
-        }
-        fastBitmap.setImage(op.filter(fastBitmap.toBufferedImage(), null));
+        double[][] matrix = {
+            {cos, sin, cx - cos * cx - sin * cy},
+            {-sin, cos, cy + sin * cx - cos * cy}
+        };
+        new AffineWarp(matrix, AffineWarp.Algorithm.valueOf(algorithm.name())).applyInPlace(fastBitmap);
     }
 }
\ No newline at end of file
@@ -1,16 +1,33 @@
-/*
- * To change this template, choose Tools | Templates
- * and open the template in the editor.
- */
+// Catalano Imaging Library
+// The Catalano Framework
+//
+// Copyright © Diego Catalano, 2013
+// diego.catalano at live.com
+//
+//    This library is free software; you can redistribute it and/or
+//    modify it under the terms of the GNU Lesser General Public
+//    License as published by the Free Software Foundation; either
+//    version 2.1 of the License, or (at your option) any later version.
+//
+//    This library is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+//    Lesser General Public License for more details.
+//
+//    You should have received a copy of the GNU Lesser General Public
+//    License along with this library; if not, write to the Free Software
+//    Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+//
+
 package Catalano.Imaging.Filters;
 
 import Catalano.Imaging.FastBitmap;
 import Catalano.Imaging.IBaseInPlace;
-import java.awt.geom.AffineTransform;
-import java.awt.image.AffineTransformOp;
 
 /**
- *
+ * Shear the image, keeping its size.
+ * <br /> A pixel (x, y) moves to (x + xShear * y, y + yShear * x), where x is the row and y is the column.
+ * @see AffineWarp
  * @author Diego Catalano
  */
 public class Shear implements IBaseInPlace{
@@ -54,28 +71,24 @@ public class Shear implements IBaseInPlace{
         return sY;
     }
 
+    public void setYtrans(double sY) {
+        this.sY = sY;
+    }
+
+    /**
+     * @deprecated Use setYtrans.
+     */
+    @Deprecated
     public void getYtrans(double sY) {
         this.sY = sY;
     }
     
     @Override
     public void applyInPlace(FastBitmap fastBitmap){
-        AffineTransform tx = new AffineTransform();
-        AffineTransformOp op;
-        tx.shear(sY, sX);
-        switch(algorithm){
-            case BILINEAR:
-                op = new AffineTransformOp(tx, AffineTransformOp.TYPE_BILINEAR);
-                break;
-            case BICUBIC:
-                op = new AffineTransformOp(tx, AffineTransformOp.TYPE_BICUBIC);
-                break;
-            case NEAREST_NEIGHBOR:
-                op = new AffineTransformOp(tx, AffineTransformOp.TYPE_NEAREST_NEIGHBOR);
-                break;
-            default:
-                op = new AffineTransformOp(tx, AffineTransformOp.TYPE_NEAREST_NEIGHBOR);
-        }
-        fastBitmap.setImage(op.filter(fastBitmap.toBufferedImage(), null));
+        double[][] matrix = {
+            {1, sX, 0},
+            {sY, 1, 0}
+        };
+        new AffineWarp(matrix, AffineWarp.Algorithm.valueOf(algorithm.name())).applyInPlace(fastBitmap);
     }
 }
\ No newline at end of file
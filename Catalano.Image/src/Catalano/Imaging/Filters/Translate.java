@@ -1,14 +1,34 @@
-/*
- * To change this template, choose Tools | Templates
- * and open the template in the editor.
- */
+// Catalano Imaging Library
+// The Catalano Framework
+//
+// Copyright © Diego Catalano, 2013
+// diego.catalano at live.com
+//
+//    This library is free software; you can redistribute it and/or
+//    modify it under the terms of the GNU Lesser General Public
+//    License as published by the Free Software Foundation; either
+//    version 2.1 of the License, or (at your option) any later version.
+//
+//    This library is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+//    Lesser General Public License for more details.
+//
+//    You should have received a copy of the GNU Lesser General Public
+//    License along with this library; if not, write to the Free Software
+//    Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+//
+
 package Catalano.Imaging.Filters;
 
 import Catalano.Imaging.FastBitmap;
 import Catalano.Imaging.IBaseInPlace;
 
 /**
- *
+ * Translate the image, keeping its size.
+ * <br /> A pixel (x, y) moves to (x + xTrans, y + yTrans), where x is the row and y is the column. The uncovered area is black.
+ * Fractional translations are interpolated bilinearly.
+ * @see AffineWarp
  * @author Diego Catalano
  */
 public class Translate implements IBaseInPlace{
@@ -34,20 +54,25 @@ public class Translate implements IBaseInPlace{
         return sY;
     }
 
+    public void setYtrans(double sY) {
+        this.sY = sY;
+    }
+
+    /**
+     * @deprecated Use setYtrans.
+     */
+    @Deprecated
     public void getYtrans(double sY) {
         this.sY = sY;
     }
     
     @Override
     public void applyInPlace(FastBitmap fastBitmap){
-        
-        int width = fastBitmap.getWidth();
-        int height = fastBitmap.getHeight();
-        
-        for (int x = 0; x < height; x++) {
-            for (int y = 0; y < width; y++) {
-                
-            }
-        }
+        double[][] matrix = {
+            {1, 0, sX},
+            {0, 1, sY}
+        };
+        boolean integer = sX == Math.rint(sX) && sY == Math.rint(sY);
+        new AffineWarp(matrix, integer ? AffineWarp.Algorithm.NEAREST_NEIGHBOR : AffineWarp.Algorithm.BILINEAR).applyInPlace(fastBitmap);
     }
 }
\ No newline at end of file
@@ -35,7 +35,6 @@ import Catalano.Math.Wavelets.IWavelet;
 public class WaveletTransform {
     
     private IWavelet wavelet;
-    private int width, height;
     private boolean waveletTransformed = false;
     private double[][] data;
 
@@ -77,8 +76,8 @@ public class WaveletTransform {
      */
     public void Forward(FastBitmap fastBitmap){
         
-        this.width = fastBitmap.getWidth();
-        this.height = fastBitmap.getHeight();
+        int width = fastBitmap.getWidth();
+        int height = fastBitmap.getHeight();
         if (!waveletTransformed) {
             if (fastBitmap.isGrayscale()) {
                 if (Tools.IsPowerOf2(width) && Tools.IsPowerOf2(height)) {
@@ -124,6 +123,8 @@ public class WaveletTransform {
      * @return FastBitmap.
      */
     public FastBitmap toFastBitmap(){
+        int width = data[0].length;
+        int height = data.length;
         FastBitmap l = new FastBitmap(width, height, FastBitmap.ColorSpace.Grayscale);
         
         for (int i = 0; i < height; i++) {
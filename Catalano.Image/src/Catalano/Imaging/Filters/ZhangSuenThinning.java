@@ -6,151 +6,143 @@ package Catalano.Imaging.Filters;
 
 import Catalano.Imaging.FastBitmap;
 import Catalano.Imaging.IBaseInPlace;
+import java.util.Arrays;
 
 /**
- *
+ * Zhang-Suen thinning.
+ * <br /> The 8-neighborhood of a pixel is encoded as a byte and the deletion conditions of both sub-iterations are read from 256 entries tables.
+ * After the first scan only the pixels whose neighborhood changed are visited again, so the cost depends on the number of pixels removed.
+ * <br /> Works with binary images, pixels equal to 255 are foreground.
  * @author Diego Catalano
  */
 public class ZhangSuenThinning implements IBaseInPlace{
 
+    // Neighbors P2..P9 are bits 0..7 of the code.
+    private static final boolean[] FIRST = new boolean[256];
+    private static final boolean[] SECOND = new boolean[256];
+
+    static {
+        for (int code = 0; code < 256; code++) {
+            int[] nb = new int[10];
+            for (int k = 0; k < 8; k++)
+                nb[k + 2] = (code >> k) & 1;
+
+            int a = 0;
+            for (int i = 2; i < 9; i++) {
+                if ((nb[i] == 0) && (nb[i + 1] == 1)) a++;
+            }
+            if ((nb[9] == 0) && (nb[2] == 1)) a++;
+            int b = Integer.bitCount(code);
+
+            boolean common = (a == 1) && (b >= 2) && (b <= 6);
+            FIRST[code] = common && (nb[2] * nb[4] * nb[6] == 0) && (nb[4] * nb[6] * nb[8] == 0);
+            SECOND[code] = common && (nb[2] * nb[4] * nb[8] == 0) && (nb[2] * nb[6] * nb[8] == 0);
+        }
+    }
+
     public ZhangSuenThinning() {}
 
     @Override
     public void applyInPlace(FastBitmap fastBitmap) {
         
-        if (!fastBitmap.isGrayscale()) {
-            try {
-                throw new Exception("works only with grayscale image");
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
-        }
-        //Zhang-Suen Thinning
+        if (!fastBitmap.isGrayscale())
+            throw new IllegalArgumentException("Zhang-Suen Thinning only works with grayscale images.");
+        
         int h = fastBitmap.getHeight();
         int w = fastBitmap.getWidth();
-        int imgval[][] = new int[h][w];
-        int mark[][] = new int[h][w];
+        byte[] data = fastBitmap.getGrayData();
+        
+        // Image with one pixel of background border, so neighbors never go out of bounds.
+        int stride = w + 2;
+        byte[] img = new byte[stride * (h + 2)];
         for (int x = 0; x < h; x++) {
             for (int y = 0; y < w; y++) {
-                imgval[x][y] = (fastBitmap.getGray(x, y) == 255) ? 1 : 0;
+                img[(x + 1) * stride + y + 1] = (byte)(data[x * w + y] == (byte)255 ? 1 : 0);
             }
         }
-
-        boolean hasdelete = true;
-        while (hasdelete) {
-            hasdelete = false;
-            for (int x = 0; x < h; x++) {
-                for (int y = 0; y < w; y++) {
-                    if (imgval[x][y] == 1) {
-                        int nb[] = getNeighbors(imgval, x, y, w, h);
-                        int a = 0;
-                        for (int i = 2; i < 9; i++) {
-                            if ((nb[i] == 0) && (nb[i + 1] == 1)) {
-                                a++;
-                            }
-                        }
-                        if ((nb[9] == 0) && (nb[2] == 1)) {
-                            a++;
-                        }
-                        int b = nb[2] + nb[3] + nb[4] + nb[5] + nb[6] + nb[7] + nb[8] + nb[9];
-                        int p1 = nb[2] * nb[4] * nb[6];
-                        int p2 = nb[4] * nb[6] * nb[8];
-                        if ((a == 1) && ((b >= 2) && (b <= 6))
-                                && (p1 == 0) && (p2 == 0)) {
-                            mark[x][y] = 0;
-                            hasdelete = true;
-                        } else {
-                            mark[x][y] = 1;
-                        }
-                    } else {
-                        mark[x][y] = 0;
-                    }
+        
+        // Offsets of P2..P9.
+        int[] nb = {-1, stride - 1, stride, stride + 1, 1, -stride + 1, -stride, -stride - 1};
+        
+        // Pixels to visit. Interior pixels can not be removed until a neighbor is.
+        int[] queue = new int[64];
+        int size = 0;
+        for (int x = 1; x <= h; x++) {
+            for (int i = x * stride + 1, end = i + w; i < end; i++) {
+                if (img[i] != 0 && code(img, i, nb) != 255) {
+                    if (size == queue.length) queue = Arrays.copyOf(queue, size * 2);
+                    queue[size++] = i;
                 }
             }
-            for (int x = 0; x < h; x++) {
-                for (int y = 0; y < w; y++) {
-                    imgval[x][y] = mark[x][y];
+        }
+        
+        // Tables already failed by each pixel since its neighborhood last changed.
+        byte[] failed = new byte[img.length];
+        int[] stamp = new int[img.length];
+        int[] next = new int[queue.length];
+        int[] removed = new int[queue.length];
+        int pass = 0;
+        
+        while (size > 0) {
+            pass++;
+            boolean[] table = (pass & 1) == 1 ? FIRST : SECOND;
+            int bit = (pass & 1) == 1 ? 1 : 2;
+            
+            // Decide on the image as it was at the start of the sub-iteration.
+            int count = 0;
+            for (int k = 0; k < size; k++) {
+                int i = queue[k];
+                if (table[code(img, i, nb)]) {
+                    removed[count++] = i;
+                }
+                else{
+                    failed[i] |= bit;
                 }
             }
-
-            //
-            for (int x = 0; x < h; x++) {
-                for (int y = 0; y < w; y++) {
-                    if (imgval[x][y] == 1) {
-                        int nb[] = getNeighbors(imgval, x, y, w, h);
-                        int a = 0;
-                        for (int i = 2; i < 9; i++) {
-                            if ((nb[i] == 0) && (nb[i + 1] == 1)) {
-                                a++;
-                            }
-                        }
-                        if ((nb[9] == 0) && (nb[2] == 1)) {
-                            a++;
-                        }
-                        int b = nb[2] + nb[3] + nb[4] + nb[5] + nb[6] + nb[7] + nb[8] + nb[9];
-                        int p1 = nb[2] * nb[4] * nb[8];
-                        int p2 = nb[2] * nb[6] * nb[8];
-                        if ((a == 1) && ((b >= 2) && (b <= 6))
-                                && (p1 == 0) && (p2 == 0)) {
-                            mark[x][y] = 0;
-                            hasdelete = true;
-                        } else {
-                            mark[x][y] = 1;
-                        }
-                    } else {
-                        mark[x][y] = 0;
+            
+            int n = 0;
+            if (next.length < size + 8 * count) next = new int[size + 8 * count];
+            for (int k = 0; k < count; k++)
+                img[removed[k]] = 0;
+            
+            // Neighbors of removed pixels must be checked by both tables again.
+            for (int k = 0; k < count; k++) {
+                int i = removed[k];
+                for (int j = 0; j < 8; j++) {
+                    int p = i + nb[j];
+                    if (img[p] == 0) continue;
+                    failed[p] = 0;
+                    if (stamp[p] != pass) {
+                        stamp[p] = pass;
+                        next[n++] = p;
                     }
                 }
             }
-            for (int x = 0; x < h; x++) {
-                for (int y = 0; y < w; y++) {
-                    imgval[x][y] = mark[x][y];
+            for (int k = 0; k < size; k++) {
+                int i = queue[k];
+                if (img[i] != 0 && failed[i] != 3 && stamp[i] != pass) {
+                    stamp[i] = pass;
+                    next[n++] = i;
                 }
             }
+            
+            int[] t = queue;
+            queue = next;
+            next = t;
+            size = n;
+            if (removed.length < size) removed = new int[queue.length];
         }
 
         //redraw image
         for (int x = 0; x < h; x++) {
             for (int y = 0; y < w; y++) {
-                if (imgval[x][y] == 1) {
-                    fastBitmap.setGray(x, y, 255);
-                } else {
-                    fastBitmap.setGray(x, y, 0);
-                }
+                data[x * w + y] = (byte)(img[(x + 1) * stride + y + 1] != 0 ? 255 : 0);
             }
         }
     }
-
-    private int[] getNeighbors(int imgval[][], int x, int y, int h, int w) {
-        
-        int a[] = new int[10];
-        for (int n = 1; n < 10; n++) {
-            a[n] = 0;
-        }
-        if (y - 1 >= 0) {
-            a[2] = imgval[x][y - 1];
-            if (x + 1 < w) {
-                a[3] = imgval[x + 1][y - 1];
-            }
-            if (x - 1 >= 0) {
-                a[9] = imgval[x - 1][y - 1];
-            }
-        }
-        if (y + 1 < h) {
-            a[6] = imgval[x][y + 1];
-            if (x + 1 < w) {
-                a[5] = imgval[x + 1][y + 1];
-            }
-            if (x - 1 >= 0) {
-                a[7] = imgval[x - 1][y + 1];
-            }
-        }
-        if (x + 1 < w) {
-            a[4] = imgval[x + 1][y];
-        }
-        if (x - 1 >= 0) {
-            a[8] = imgval[x - 1][y];
-        }
-        return a;
+    
+    private static int code(byte[] img, int i, int[] nb){
+        return img[i + nb[0]] | img[i + nb[1]] << 1 | img[i + nb[2]] << 2 | img[i + nb[3]] << 3
+                | img[i + nb[4]] << 4 | img[i + nb[5]] << 5 | img[i + nb[6]] << 6 | img[i + nb[7]] << 7;
     }
 }
\ No newline at end of file
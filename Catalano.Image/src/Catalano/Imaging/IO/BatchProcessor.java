@@ -0,0 +1,641 @@
+// Catalano Imaging Library
+// The Catalano Framework
+//
+// Copyright © Diego Catalano, 2013
+// diego.catalano at live.com
+//
+//    This library is free software; you can redistribute it and/or
+//    modify it under the terms of the GNU Lesser General Public
+//    License as published by the Free Software Foundation; either
+//    version 2.1 of the License, or (at your option) any later version.
+//
+//    This library is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+//    Lesser General Public License for more details.
+//
+//    You should have received a copy of the GNU Lesser General Public
+//    License along with this library; if not, write to the Free Software
+//    Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+//
+
+package Catalano.Imaging.IO;
+
+import Catalano.Imaging.FastBitmap;
+import Catalano.Imaging.IBaseInPlace;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.imageio.ImageIO;
+
+/**
+ * Process many image files in parallel.
+ * <br /> Decoding, filtering and encoding run in separate thread pools connected by bounded queues,
+ * so the three stages overlap and a slow stage blocks the previous one instead of filling the memory.
+ * Files that can not be read or written are retried, then skipped and listed in the report.
+ * If a worker stops on an error which is not an exception, or is interrupted, the other stages are cancelled and the error is thrown.
+ * <br /> Inputs with the same name get a numeric suffix in the output directory (name_1.png), so no output is overwritten.
+ * <br /> The filters are shared by all filter threads, so they must not keep per-image state in fields.
+ * @author Diego Catalano
+ */
+public class BatchProcessor {
+
+    private static final Job END = new Job(null, null);
+
+    // Blocking operations wake up at this interval (ms) to check if the batch was cancelled.
+    private static final long POLL = 50;
+
+    private List<IBaseInPlace> filters = new ArrayList<IBaseInPlace>();
+    private int decodeThreads = 2;
+    private int filterThreads = Runtime.getRuntime().availableProcessors();
+    private int encodeThreads = 2;
+    private int queueCapacity = 16;
+    private int retries = 1;
+    private boolean virtualThreads = false;
+    private String outputFormat = "png";
+
+    /**
+     * Initialize a new instance of the BatchProcessor class.
+     */
+    public BatchProcessor() {}
+
+    /**
+     * Initialize a new instance of the BatchProcessor class.
+     * @param outputFormat Output format, the extension of the files written (e.g. png, jpg, pgm).
+     */
+    public BatchProcessor(String outputFormat) {
+        this.outputFormat = outputFormat;
+    }
+
+    /**
+     * Add a filter to the end of the chain.
+     * @param filter Filter.
+     */
+    public void add(IBaseInPlace filter){
+        filters.add(filter);
+    }
+
+    /**
+     * Remove all filters.
+     */
+    public void clear(){
+        filters.clear();
+    }
+
+    /**
+     * Get number of decoding threads.
+     * @return Number of threads.
+     */
+    public int getDecodeThreads() {
+        return decodeThreads;
+    }
+
+    /**
+     * Set number of decoding threads.
+     * @param decodeThreads Number of threads.
+     */
+    public void setDecodeThreads(int decodeThreads) {
+        this.decodeThreads = Math.max(1, decodeThreads);
+    }
+
+    /**
+     * Get number of filtering threads.
+     * @return Number of threads.
+     */
+    public int getFilterThreads() {
+        return filterThreads;
+    }
+
+    /**
+     * Set number of filtering threads.
+     * @param filterThreads Number of threads.
+     */
+    public void setFilterThreads(int filterThreads) {
+        this.filterThreads = Math.max(1, filterThreads);
+    }
+
+    /**
+     * Get number of encoding threads.
+     * @return Number of threads.
+     */
+    public int getEncodeThreads() {
+        return encodeThreads;
+    }
+
+    /**
+     * Set number of encoding threads.
+     * @param encodeThreads Number of threads.
+     */
+    public void setEncodeThreads(int encodeThreads) {
+        this.encodeThreads = Math.max(1, encodeThreads);
+    }
+
+    /**
+     * Get capacity of the queues between stages.
+     * @return Capacity.
+     */
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * Set capacity of the queues between stages. It bounds the number of decoded images in memory.
+     * @param queueCapacity Capacity.
+     */
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = Math.max(1, queueCapacity);
+    }
+
+    /**
+     * Get number of retries of a file that failed to be read or written.
+     * @return Retries.
+     */
+    public int getRetries() {
+        return retries;
+    }
+
+    /**
+     * Set number of retries of a file that failed to be read or written.
+     * @param retries Retries.
+     */
+    public void setRetries(int retries) {
+        this.retries = Math.max(0, retries);
+    }
+
+    /**
+     * Check if decoding and encoding run on virtual threads.
+     * @return True if virtual threads are requested.
+     */
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    /**
+     * Run decoding and encoding on virtual threads. Ignored when the JVM does not support them.
+     * @param virtualThreads True to use virtual threads.
+     */
+    public void setVirtualThreads(boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+    }
+
+    /**
+     * Get output format.
+     * @return Output format.
+     */
+    public String getOutputFormat() {
+        return outputFormat;
+    }
+
+    /**
+     * Set output format.
+     * @param outputFormat Output format, the extension of the files written (e.g. png, jpg, pgm).
+     */
+    public void setOutputFormat(String outputFormat) {
+        this.outputFormat = outputFormat;
+    }
+
+    /**
+     * Process files, writing the results in a directory with the same name and the output format extension.
+     * @param inputs Files.
+     * @param outputDirectory Output directory.
+     * @return Report.
+     * @throws InterruptedException If the calling thread or a worker is interrupted.
+     */
+    public Report process(final List<File> inputs, final File outputDirectory) throws InterruptedException{
+        final BlockingQueue<Job> decoded = new ArrayBlockingQueue<Job>(queueCapacity);
+        final BlockingQueue<Job> filtered = new ArrayBlockingQueue<Job>(queueCapacity);
+        final AtomicInteger next = new AtomicInteger();
+        final Report report = new Report();
+        final Cancel cancel = new Cancel();
+        final List<File> outputs = outputFiles(inputs, outputDirectory);
+
+        ThreadFactory ioFactory = virtualThreads ? virtualThreadFactory() : null;
+        if (ioFactory == null) ioFactory = Executors.defaultThreadFactory();
+
+        ExecutorService decoders = Executors.newFixedThreadPool(decodeThreads, ioFactory);
+        ExecutorService filterers = Executors.newFixedThreadPool(filterThreads);
+        ExecutorService encoders = Executors.newFixedThreadPool(encodeThreads, ioFactory);
+
+        long start = System.nanoTime();
+
+        for (int t = 0; t < decodeThreads; t++) {
+            decoders.execute(new Worker(cancel) {
+                @Override
+                void work() {
+                    int i;
+                    while (!cancel.isCancelled() && (i = next.getAndIncrement()) < inputs.size()) {
+                        File file = inputs.get(i);
+                        Job job = new Job(file, outputs.get(i));
+                        long t0 = System.nanoTime();
+                        try {
+                            job.image = read(file);
+                        } catch (Exception ex) {
+                            report.fail(file, ex);
+                            continue;
+                        }
+                        report.decode.add(System.nanoTime() - t0);
+                        job.start = t0;
+                        if (!put(decoded, job, cancel)) return;
+                    }
+                }
+            });
+        }
+
+        for (int t = 0; t < filterThreads; t++) {
+            filterers.execute(new Worker(cancel) {
+                @Override
+                void work() {
+                    Job job;
+                    while ((job = take(decoded, cancel)) != END) {
+                        long t0 = System.nanoTime();
+                        try {
+                            for (int i = 0; i < filters.size(); i++)
+                                filters.get(i).applyInPlace(job.image);
+                        } catch (Exception ex) {
+                            report.fail(job.input, ex);
+                            continue;
+                        }
+                        report.filter.add(System.nanoTime() - t0);
+                        if (!put(filtered, job, cancel)) return;
+                    }
+                }
+            });
+        }
+
+        for (int t = 0; t < encodeThreads; t++) {
+            encoders.execute(new Worker(cancel) {
+                @Override
+                void work() {
+                    Job job;
+                    while ((job = take(filtered, cancel)) != END) {
+                        long t0 = System.nanoTime();
+                        try {
+                            write(job.image, job.output);
+                        } catch (Exception ex) {
+                            report.fail(job.input, ex);
+                            continue;
+                        }
+                        long t1 = System.nanoTime();
+                        report.encode.add(t1 - t0);
+                        report.total.add(t1 - job.start);
+                    }
+                }
+            });
+        }
+
+        try {
+            finish(decoders, decoded, filterThreads, cancel);
+            finish(filterers, filtered, encodeThreads, cancel);
+            finish(encoders, null, 0, cancel);
+        } catch (InterruptedException ex) {
+            cancel.fail(ex);
+            decoders.shutdownNow();
+            filterers.shutdownNow();
+            encoders.shutdownNow();
+            throw ex;
+        }
+
+        Throwable cause = cancel.getCause();
+        if (cause instanceof Error)
+            throw (Error)cause;
+        if (cause instanceof RuntimeException)
+            throw (RuntimeException)cause;
+        if (cause != null) {
+            InterruptedException ex = new InterruptedException("Batch cancelled.");
+            ex.initCause(cause);
+            throw ex;
+        }
+
+        report.elapsed = System.nanoTime() - start;
+        return report;
+    }
+
+    /**
+     * Read an image, retrying on I/O errors.
+     * @param file File.
+     * @return FastBitmap.
+     * @throws IOException If the file can not be read after all retries.
+     */
+    protected FastBitmap read(File file) throws IOException{
+        IOException error = null;
+        for (int attempt = 0; attempt <= retries; attempt++) {
+            try {
+                RawImageFormat format = RawImageFormat.fromExtension(file.getName());
+                if (format != null && format != RawImageFormat.Raw)
+                    return RawImageReader.load(file.getPath());
+
+                BufferedImage image = ImageIO.read(file);
+                if (image == null)
+                    throw new IOException("Unsupported or corrupt image: " + file);
+                FastBitmap fastBitmap = new FastBitmap(image);
+                if (!fastBitmap.isGrayscale() && !fastBitmap.isRGB())
+                    fastBitmap.toRGB();
+                return fastBitmap;
+            } catch (IOException ex) {
+                error = ex;
+            }
+        }
+        throw error;
+    }
+
+    /**
+     * Write an image, retrying on I/O errors.
+     * @param fastBitmap FastBitmap.
+     * @param file File.
+     * @throws IOException If the file can not be written after all retries.
+     */
+    protected void write(FastBitmap fastBitmap, File file) throws IOException{
+        IOException error = null;
+        for (int attempt = 0; attempt <= retries; attempt++) {
+            try {
+                RawImageFormat format = RawImageFormat.fromExtension(file.getName());
+                if (format != null && format != RawImageFormat.Raw) {
+                    RawImageWriter.save(fastBitmap, file.getPath());
+                    return;
+                }
+                if (!ImageIO.write(fastBitmap.toBufferedImage(), outputFormat, file))
+                    throw new IOException("No ImageIO writer for " + outputFormat);
+                return;
+            } catch (IOException ex) {
+                error = ex;
+            }
+        }
+        throw error;
+    }
+
+    /**
+     * Output files in input order. Names already taken get a numeric suffix, compared without case for case insensitive file systems.
+     */
+    private List<File> outputFiles(List<File> inputs, File outputDirectory){
+        List<File> outputs = new ArrayList<File>(inputs.size());
+        Set<String> used = new HashSet<String>();
+        for (File input : inputs) {
+            String name = input.getName();
+            int dot = name.lastIndexOf('.');
+            if (dot > 0) name = name.substring(0, dot);
+
+            String file = name + "." + outputFormat;
+            for (int k = 1; !used.add(file.toLowerCase()); k++)
+                file = name + "_" + k + "." + outputFormat;
+            outputs.add(new File(outputDirectory, file));
+        }
+        return outputs;
+    }
+
+    private static void finish(ExecutorService pool, BlockingQueue<Job> queue, int consumers, Cancel cancel) throws InterruptedException{
+        pool.shutdown();
+        pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        for (int i = 0; i < consumers; i++) {
+            boolean sent = false;
+            while (!sent && !cancel.isCancelled())
+                sent = queue.offer(END, POLL, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private static boolean put(BlockingQueue<Job> queue, Job job, Cancel cancel){
+        try {
+            while (!cancel.isCancelled()) {
+                if (queue.offer(job, POLL, TimeUnit.MILLISECONDS))
+                    return true;
+            }
+        } catch (InterruptedException ex) {
+            cancel.fail(ex);
+            Thread.currentThread().interrupt();
+        }
+        return false;
+    }
+
+    private static Job take(BlockingQueue<Job> queue, Cancel cancel){
+        try {
+            while (!cancel.isCancelled()) {
+                Job job = queue.poll(POLL, TimeUnit.MILLISECONDS);
+                if (job != null)
+                    return job;
+            }
+        } catch (InterruptedException ex) {
+            cancel.fail(ex);
+            Thread.currentThread().interrupt();
+        }
+        return END;
+    }
+
+    /**
+     * Cancellation shared by the stages, keeping the first cause.
+     */
+    private static class Cancel {
+        private volatile Throwable cause;
+
+        synchronized void fail(Throwable cause){
+            if (this.cause == null)
+                this.cause = cause;
+        }
+
+        boolean isCancelled(){
+            return cause != null;
+        }
+
+        Throwable getCause(){
+            return cause;
+        }
+    }
+
+    /**
+     * Worker of a stage. Anything escaping the work cancels the whole batch, so the other stages do not wait on the queues forever.
+     */
+    private abstract static class Worker implements Runnable {
+        private final Cancel cancel;
+
+        Worker(Cancel cancel) {
+            this.cancel = cancel;
+        }
+
+        abstract void work();
+
+        @Override
+        public final void run() {
+            try {
+                work();
+            } catch (Throwable t) {
+                cancel.fail(t);
+            }
+        }
+    }
+
+    /**
+     * Thread.ofVirtual().factory() when the JVM supports it, otherwise null.
+     */
+    private static ThreadFactory virtualThreadFactory(){
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            return (ThreadFactory)Class.forName("java.lang.Thread$Builder").getMethod("factory").invoke(builder);
+        } catch (Exception ex) {
+            return null;
+        }
+    }
+
+    private static class Job {
+        File input, output;
+        FastBitmap image;
+        long start;
+
+        Job(File input, File output) {
+            this.input = input;
+            this.output = output;
+        }
+    }
+
+    /**
+     * Latency of a stage.
+     */
+    public static class Stage {
+
+        private long count, total, max;
+
+        synchronized void add(long nanos){
+            count++;
+            total += nanos;
+            if (nanos > max) max = nanos;
+        }
+
+        /**
+         * Get number of images processed by the stage.
+         * @return Count.
+         */
+        public synchronized long getCount() {
+            return count;
+        }
+
+        /**
+         * Get mean latency.
+         * @return Mean latency in milliseconds.
+         */
+        public synchronized double getMeanMillis() {
+            return count == 0 ? 0 : total / (count * 1e6);
+        }
+
+        /**
+         * Get max latency.
+         * @return Max latency in milliseconds.
+         */
+        public synchronized double getMaxMillis() {
+            return max / 1e6;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d images, mean %.2f ms, max %.2f ms", getCount(), getMeanMillis(), getMaxMillis());
+        }
+    }
+
+    /**
+     * Result of a batch.
+     */
+    public static class Report {
+
+        private final Stage decode = new Stage();
+        private final Stage filter = new Stage();
+        private final Stage encode = new Stage();
+        private final Stage total = new Stage();
+        private final List<File> failedFiles = Collections.synchronizedList(new ArrayList<File>());
+        private final List<Exception> errors = Collections.synchronizedList(new ArrayList<Exception>());
+        private long elapsed;
+
+        synchronized void fail(File file, Exception ex){
+            failedFiles.add(file);
+            errors.add(ex);
+        }
+
+        /**
+         * Get number of files written.
+         * @return Number of files.
+         */
+        public long getProcessed() {
+            return encode.getCount();
+        }
+
+        /**
+         * Get files skipped because of an error.
+         * @return Files.
+         */
+        public List<File> getFailedFiles() {
+            return failedFiles;
+        }
+
+        /**
+         * Get errors, in the same order of the failed files.
+         * @return Errors.
+         */
+        public List<Exception> getErrors() {
+            return errors;
+        }
+
+        /**
+         * Get elapsed time of the batch.
+         * @return Elapsed time in milliseconds.
+         */
+        public double getElapsedMillis() {
+            return elapsed / 1e6;
+        }
+
+        /**
+         * Get throughput.
+         * @return Files written per second.
+         */
+        public double getThroughput() {
+            return elapsed == 0 ? 0 : getProcessed() * 1e9 / elapsed;
+        }
+
+        /**
+         * Get decoding latency.
+         * @return Stage.
+         */
+        public Stage getDecode() {
+            return decode;
+        }
+
+        /**
+         * Get filtering latency.
+         * @return Stage.
+         */
+        public Stage getFilter() {
+            return filter;
+        }
+
+        /**
+         * Get encoding latency.
+         * @return Stage.
+         */
+        public Stage getEncode() {
+            return encode;
+        }
+
+        /**
+         * Get latency from the start of decoding to the end of encoding, including the time spent in the queues.
+         * @return Stage.
+         */
+        public Stage getTotal() {
+            return total;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d files in %.0f ms (%.1f files/s), %d failed%n", getProcessed(), getElapsedMillis(), getThroughput(), failedFiles.size())
+                    + "decode: " + decode + String.format("%n")
+                    + "filter: " + filter + String.format("%n")
+                    + "encode: " + encode + String.format("%n")
+                    + "total:  " + total;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,62 @@
+// Catalano Imaging Library
+// The Catalano Framework
+//
+// Copyright © Diego Catalano, 2013
+// diego.catalano at live.com
+//
+//    This library is free software; you can redistribute it and/or
+//    modify it under the terms of the GNU Lesser General Public
+//    License as published by the Free Software Foundation; either
+//    version 2.1 of the License, or (at your option) any later version.
+//
+//    This library is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+//    Lesser General Public License for more details.
+//
+//    You should have received a copy of the GNU Lesser General Public
+//    License along with this library; if not, write to the Free Software
+//    Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+//
+
+package Catalano.Imaging.IO;
+
+import Catalano.Imaging.FastBitmap;
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Strip reader's interface.
+ * <br /> Reads an image from top to bottom, some rows at a time.
+ * @author Diego Catalano
+ */
+public interface IStripReader extends Closeable {
+
+    /**
+     * Get width.
+     * @return Width.
+     */
+    int getWidth();
+
+    /**
+     * Get height.
+     * @return Height.
+     */
+    int getHeight();
+
+    /**
+     * Get color space of the rows read.
+     * @return Color space.
+     */
+    FastBitmap.ColorSpace getColorSpace();
+
+    /**
+     * Read the next rows into a strip.
+     * @param strip FastBitmap with the same width and color space of the image.
+     * @param stripRow First row of the strip to be written.
+     * @param count Maximum number of rows.
+     * @return Number of rows read, 0 at the end of the image.
+     * @throws IOException If the image can not be read.
+     */
+    int readRows(FastBitmap strip, int stripRow, int count) throws IOException;
+}
\ No newline at end of file
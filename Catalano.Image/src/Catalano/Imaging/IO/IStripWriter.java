@@ -0,0 +1,44 @@
+// Catalano Imaging Library
+// The Catalano Framework
+//
+// Copyright © Diego Catalano, 2013
+// diego.catalano at live.com
+//
+//    This library is free software; you can redistribute it and/or
+//    modify it under the terms of the GNU Lesser General Public
+//    License as published by the Free Software Foundation; either
+//    version 2.1 of the License, or (at your option) any later version.
+//
+//    This library is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+//    Lesser General Public License for more details.
+//
+//    You should have received a copy of the GNU Lesser General Public
+//    License along with this library; if not, write to the Free Software
+//    Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+//
+
+package Catalano.Imaging.IO;
+
+import Catalano.Imaging.FastBitmap;
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Strip writer's interface.
+ * <br /> Writes an image from top to bottom, some rows at a time.
+ * @author Diego Catalano
+ */
+public interface IStripWriter extends Closeable {
+
+    /**
+     * Write rows of a strip after the last row written.
+     * @param strip FastBitmap with the same width of the image.
+     * @param stripRow First row of the strip to be written.
+     * @param count Number of rows.
+     * @return Number of rows written.
+     * @throws IOException If the image can not be written.
+     */
+    int writeRows(FastBitmap strip, int stripRow, int count) throws IOException;
+}
\ No newline at end of file
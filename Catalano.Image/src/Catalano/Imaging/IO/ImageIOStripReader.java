@@ -0,0 +1,142 @@
+// Catalano Imaging Library
+// The Catalano Framework
+//
+// Copyright © Diego Catalano, 2013
+// diego.catalano at live.com
+//
+//    This library is free software; you can redistribute it and/or
+//    modify it under the terms of the GNU Lesser General Public
+//    License as published by the Free Software Foundation; either
+//    version 2.1 of the License, or (at your option) any later version.
+//
+//    This library is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+//    Lesser General Public License for more details.
+//
+//    You should have received a copy of the GNU Lesser General Public
+//    License along with this library; if not, write to the Free Software
+//    Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+//
+
+package Catalano.Imaging.IO;
+
+import Catalano.Imaging.FastBitmap;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * Reads strips of rows of any image supported by ImageIO, using a source region.
+ * <br /> Only the rows requested are kept in memory. Formats with addressable rows (e.g. TIFF strips) read only those rows,
+ * sequential formats (e.g. PNG, JPEG) are decoded up to the region at each call, so prefer tall strips or the raw formats for them.
+ * @author Diego Catalano
+ */
+public class ImageIOStripReader implements IStripReader{
+
+    private ImageInputStream stream;
+    private ImageReader reader;
+    private FastBitmap.ColorSpace colorSpace;
+    private int width, height;
+    private int currentRow;
+
+    /**
+     * Initialize a new instance of the ImageIOStripReader class.
+     * @param pathname Path name.
+     * @throws IOException If the file can not be read or no ImageIO reader supports it.
+     */
+    public ImageIOStripReader(String pathname) throws IOException{
+        this.stream = ImageIO.createImageInputStream(new File(pathname));
+        if (stream == null)
+            throw new IOException("Can not open " + pathname);
+
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(stream);
+        if (!readers.hasNext()) {
+            stream.close();
+            throw new IOException("No ImageIO reader for " + pathname);
+        }
+
+        this.reader = readers.next();
+        try {
+            reader.setInput(stream, false, true);
+            this.width = reader.getWidth(0);
+            this.height = reader.getHeight(0);
+            ImageTypeSpecifier type = reader.getRawImageType(0);
+            if (type != null && type.getBufferedImageType() == BufferedImage.TYPE_BYTE_GRAY)
+                this.colorSpace = FastBitmap.ColorSpace.Grayscale;
+            else
+                this.colorSpace = FastBitmap.ColorSpace.RGB;
+        } catch (IOException ex) {
+            close();
+            throw ex;
+        }
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public FastBitmap.ColorSpace getColorSpace() {
+        return colorSpace;
+    }
+
+    /**
+     * Get the index of the next row read by readRows.
+     * @return Current row.
+     */
+    public int getCurrentRow() {
+        return currentRow;
+    }
+
+    @Override
+    public int readRows(FastBitmap strip, int stripRow, int count) throws IOException{
+        if (strip.getWidth() != width)
+            throw new IllegalArgumentException("The strip must be the same width of the image.");
+        if (strip.getColorSpace() != colorSpace)
+            throw new IllegalArgumentException("The strip must be the same color space of the image.");
+        if (stripRow < 0 || stripRow + count > strip.getHeight())
+            throw new IllegalArgumentException("Rows out of strip bounds.");
+
+        int n = Math.min(count, height - currentRow);
+        if (n <= 0) return 0;
+
+        ImageReadParam param = reader.getDefaultReadParam();
+        param.setSourceRegion(new Rectangle(0, currentRow, width, n));
+        BufferedImage region = reader.read(0, param);
+
+        if (colorSpace == FastBitmap.ColorSpace.Grayscale) {
+            byte[] data = ((DataBufferByte)region.getRaster().getDataBuffer()).getData();
+            System.arraycopy(data, 0, strip.getGrayData(), stripRow * width, n * width);
+        }
+        else{
+            int[] rgb = strip.getRGBData();
+            region.getRGB(0, 0, width, n, rgb, stripRow * width, width);
+            for (int i = stripRow * width; i < (stripRow + n) * width; i++)
+                rgb[i] &= 0xFFFFFF;
+        }
+
+        currentRow += n;
+        return n;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.dispose();
+        stream.close();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,60 @@
+// Catalano Imaging Library
+// The Catalano Framework
+//
+// Copyright © Diego Catalano, 2013
+// diego.catalano at live.com
+//
+//    This library is free software; you can redistribute it and/or
+//    modify it under the terms of the GNU Lesser General Public
+//    License as published by the Free Software Foundation; either
+//    version 2.1 of the License, or (at your option) any later version.
+//
+//    This library is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+//    Lesser General Public License for more details.
+//
+//    You should have received a copy of the GNU Lesser General Public
+//    License along with this library; if not, write to the Free Software
+//    Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+//
+
+package Catalano.Imaging.IO;
+
+/**
+ * Formats supported by RawImageReader and RawImageWriter.
+ * @author Diego Catalano
+ */
+public enum RawImageFormat {
+
+    /**
+     * Portable graymap, binary (P5).
+     */
+    PGM,
+    /**
+     * Portable pixmap, binary (P6).
+     */
+    PPM,
+    /**
+     * Portable floatmap (Pf for grayscale, PF for RGB), rows stored bottom to top.
+     */
+    PFM,
+    /**
+     * Headerless 8 bits image. Grayscale has one plane, RGB has three planes (red, green, blue) stored one after another.
+     */
+    Raw;
+
+    /**
+     * Detect the format from the file extension.
+     * @param pathname Path name.
+     * @return Format, or null if the extension is not known.
+     */
+    public static RawImageFormat fromExtension(String pathname){
+        String name = pathname.toLowerCase();
+        if (name.endsWith(".pgm")) return PGM;
+        if (name.endsWith(".ppm")) return PPM;
+        if (name.endsWith(".pfm")) return PFM;
+        if (name.endsWith(".raw")) return Raw;
+        return null;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,454 @@
+// Catalano Imaging Library
+// The Catalano Framework
+//
+// Copyright © Diego Catalano, 2013
+// diego.catalano at live.com
+//
+//    This library is free software; you can redistribute it and/or
+//    modify it under the terms of the GNU Lesser General Public
+//    License as published by the Free Software Foundation; either
+//    version 2.1 of the License, or (at your option) any later version.
+//
+//    This library is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+//    Lesser General Public License for more details.
+//
+//    You should have received a copy of the GNU Lesser General Public
+//    License along with this library; if not, write to the Free Software
+//    Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+//
+
+package Catalano.Imaging.IO;
+
+import Catalano.Imaging.FastBitmap;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads PGM, PPM, PFM and raw images through a FileChannel.
+ * <br /> Rows are read into a direct buffer and decoded straight into the FastBitmap data, without ImageIO. The image can be read at once or in strips of rows.
+ * @author Diego Catalano
+ */
+public class RawImageReader implements IStripReader{
+
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private FileChannel channel;
+    private ByteBuffer buffer;
+    private RawImageFormat format;
+    private FastBitmap.ColorSpace colorSpace;
+    private int width, height;
+    private int maxValue = 255;
+    private int bytesPerSample = 1;
+    private boolean littleEndian;
+    private int rowBytes;
+    private int bufferRows;
+    private long dataOffset;
+    private int currentRow;
+
+    /**
+     * Initialize a new instance of the RawImageReader class.
+     * <br /> The format is detected from the header, so only PGM, PPM and PFM are accepted.
+     * @param pathname Path name.
+     * @throws IOException If the file can not be read or the header is not valid.
+     */
+    public RawImageReader(String pathname) throws IOException{
+        this.channel = FileChannel.open(Paths.get(pathname), StandardOpenOption.READ);
+        try {
+            readHeader();
+            init();
+        } catch (IOException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Initialize a new instance of the RawImageReader class for a headerless raw image.
+     * @param pathname Path name.
+     * @param width Width.
+     * @param height Height.
+     * @param colorSpace Color space. RGB images are read as three planes.
+     * @throws IOException If the file can not be read or is smaller than the image.
+     */
+    public RawImageReader(String pathname, int width, int height, FastBitmap.ColorSpace colorSpace) throws IOException{
+        if (width <= 0 || height <= 0)
+            throw new IllegalArgumentException("Width and height must be greater than 0.");
+        this.channel = FileChannel.open(Paths.get(pathname), StandardOpenOption.READ);
+        this.format = RawImageFormat.Raw;
+        this.width = width;
+        this.height = height;
+        this.colorSpace = colorSpace;
+        try {
+            init();
+        } catch (IOException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Read a PGM, PPM or PFM file.
+     * @param pathname Path name.
+     * @return FastBitmap.
+     * @throws IOException If the file can not be read.
+     */
+    public static FastBitmap load(String pathname) throws IOException{
+        RawImageReader reader = new RawImageReader(pathname);
+        try {
+            return reader.read();
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Get format.
+     * @return Format.
+     */
+    public RawImageFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * Get color space.
+     * @return Color space.
+     */
+    @Override
+    public FastBitmap.ColorSpace getColorSpace() {
+        return colorSpace;
+    }
+
+    /**
+     * Get width.
+     * @return Width.
+     */
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Get height.
+     * @return Height.
+     */
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Get the maximum sample value declared in the header.
+     * @return Maximum value.
+     */
+    public int getMaxValue() {
+        return maxValue;
+    }
+
+    /**
+     * Get the index of the next row read by readRows.
+     * @return Current row.
+     */
+    public int getCurrentRow() {
+        return currentRow;
+    }
+
+    /**
+     * Move the next row read by readRows.
+     * @param row Row.
+     */
+    public void seek(int row){
+        if (row < 0 || row > height)
+            throw new IllegalArgumentException("Row out of image bounds.");
+        this.currentRow = row;
+    }
+
+    /**
+     * Read the whole image.
+     * @return FastBitmap.
+     * @throws IOException If the file can not be read.
+     */
+    public FastBitmap read() throws IOException{
+        FastBitmap fastBitmap = new FastBitmap(width, height, colorSpace);
+        read(fastBitmap);
+        return fastBitmap;
+    }
+
+    /**
+     * Read the whole image into an existing FastBitmap.
+     * @param fastBitmap FastBitmap with the same size and color space of the file.
+     * @throws IOException If the file can not be read.
+     */
+    public void read(FastBitmap fastBitmap) throws IOException{
+        if (fastBitmap.getWidth() != width || fastBitmap.getHeight() != height)
+            throw new IllegalArgumentException("The image must be the same dimension of the file.");
+        decode(0, height, fastBitmap, 0);
+    }
+
+    /**
+     * Read the next rows into the top of a strip.
+     * @param strip FastBitmap with the same width of the file.
+     * @return Number of rows read, 0 at the end of the image.
+     * @throws IOException If the file can not be read.
+     */
+    public int readRows(FastBitmap strip) throws IOException{
+        return readRows(strip, 0, strip.getHeight());
+    }
+
+    /**
+     * Read the next rows into a strip.
+     * @param strip FastBitmap with the same width of the file.
+     * @param stripRow First row of the strip to be written.
+     * @param count Maximum number of rows.
+     * @return Number of rows read, 0 at the end of the image.
+     * @throws IOException If the file can not be read.
+     */
+    @Override
+    public int readRows(FastBitmap strip, int stripRow, int count) throws IOException{
+        if (strip.getWidth() != width)
+            throw new IllegalArgumentException("The strip must be the same width of the file.");
+        if (stripRow < 0 || stripRow + count > strip.getHeight())
+            throw new IllegalArgumentException("Rows out of strip bounds.");
+
+        int n = Math.min(count, height - currentRow);
+        if (n <= 0) return 0;
+        decode(currentRow, n, strip, stripRow);
+        currentRow += n;
+        return n;
+    }
+
+    /**
+     * Read the next rows of a PFM file keeping the float samples.
+     * <br /> RGB samples are interleaved, rows are returned top to bottom.
+     * @param data Destination, at least count * width * channels.
+     * @param count Maximum number of rows.
+     * @return Number of rows read, 0 at the end of the image.
+     * @throws IOException If the file can not be read.
+     */
+    public int readRows(float[] data, int count) throws IOException{
+        if (format != RawImageFormat.PFM)
+            throw new IllegalArgumentException("Float samples are only supported by PFM.");
+
+        int n = Math.min(count, height - currentRow);
+        if (n <= 0) return 0;
+
+        int stride = rowBytes / 4;
+        int row = currentRow;
+        int offset = 0;
+        int left = n;
+        while (left > 0) {
+            int block = Math.min(bufferRows, left);
+            fill(dataOffset + (long)(height - row - block) * rowBytes, block * rowBytes);
+            FloatBuffer floats = buffer.asFloatBuffer();
+            for (int k = block - 1; k >= 0; k--) {
+                floats.position(k * stride);
+                floats.get(data, offset, stride);
+                offset += stride;
+            }
+            row += block;
+            left -= block;
+        }
+        currentRow += n;
+        return n;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void init() throws IOException{
+        int samples = (colorSpace == FastBitmap.ColorSpace.RGB && format != RawImageFormat.Raw) ? 3 : 1;
+        long bytes = (long)width * samples * bytesPerSample;
+        if (bytes > Integer.MAX_VALUE)
+            throw new IOException("Image row is too large.");
+        this.rowBytes = (int)bytes;
+
+        int planes = (colorSpace == FastBitmap.ColorSpace.RGB && format == RawImageFormat.Raw) ? 3 : 1;
+        if (channel.size() < dataOffset + (long)rowBytes * height * planes)
+            throw new EOFException("The file is smaller than the image declared.");
+
+        this.bufferRows = Math.max(1, Math.min(height, BUFFER_SIZE / rowBytes));
+        this.buffer = ByteBuffer.allocateDirect(bufferRows * rowBytes);
+        if (format == RawImageFormat.PFM)
+            buffer.order(littleEndian ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+    }
+
+    private void readHeader() throws IOException{
+        ByteBuffer header = ByteBuffer.allocate((int)Math.min(channel.size(), 4096));
+        while (header.hasRemaining()) {
+            if (channel.read(header, header.position()) < 0) break;
+        }
+        header.flip();
+        byte[] h = new byte[header.remaining()];
+        header.get(h);
+        int[] pos = new int[1];
+
+        String magic = nextToken(h, pos);
+        if (magic.equals("P5")) {
+            format = RawImageFormat.PGM;
+            colorSpace = FastBitmap.ColorSpace.Grayscale;
+        }
+        else if (magic.equals("P6")) {
+            format = RawImageFormat.PPM;
+            colorSpace = FastBitmap.ColorSpace.RGB;
+        }
+        else if (magic.equals("Pf")) {
+            format = RawImageFormat.PFM;
+            colorSpace = FastBitmap.ColorSpace.Grayscale;
+        }
+        else if (magic.equals("PF")) {
+            format = RawImageFormat.PFM;
+            colorSpace = FastBitmap.ColorSpace.RGB;
+        }
+        else{
+            throw new IOException("Unknown image header: " + magic);
+        }
+
+        try {
+            width = Integer.parseInt(nextToken(h, pos));
+            height = Integer.parseInt(nextToken(h, pos));
+            if (format == RawImageFormat.PFM) {
+                littleEndian = Float.parseFloat(nextToken(h, pos)) < 0;
+                bytesPerSample = 4;
+            }
+            else{
+                maxValue = Integer.parseInt(nextToken(h, pos));
+                bytesPerSample = maxValue > 255 ? 2 : 1;
+            }
+        } catch (NumberFormatException ex) {
+            throw new IOException("Invalid image header.", ex);
+        }
+
+        if (width <= 0 || height <= 0 || maxValue <= 0 || maxValue > 65535)
+            throw new IOException("Invalid image header.");
+
+        // Exactly one whitespace separates the header from the samples.
+        dataOffset = pos[0] + 1;
+    }
+
+    private static String nextToken(byte[] h, int[] pos) throws IOException{
+        int i = pos[0];
+        while (i < h.length) {
+            if (h[i] == '#') {
+                while (i < h.length && h[i] != '\n' && h[i] != '\r') i++;
+            }
+            else if (h[i] == ' ' || h[i] == '\t' || h[i] == '\n' || h[i] == '\r') {
+                i++;
+            }
+            else{
+                break;
+            }
+        }
+        int start = i;
+        while (i < h.length && h[i] != ' ' && h[i] != '\t' && h[i] != '\n' && h[i] != '\r') i++;
+        if (i >= h.length)
+            throw new EOFException("Incomplete image header.");
+        pos[0] = i;
+        return new String(h, start, i - start, "US-ASCII");
+    }
+
+    private void fill(long position, int length) throws IOException{
+        buffer.clear();
+        buffer.limit(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0)
+                throw new EOFException("Unexpected end of file.");
+        }
+        buffer.flip();
+    }
+
+    private void decode(int row, int count, FastBitmap dest, int destRow) throws IOException{
+        if (dest.getColorSpace() != colorSpace)
+            throw new IllegalArgumentException("The image must be the same color space of the file.");
+
+        byte[] gray = dest.getGrayData();
+        int[] rgb = dest.getRGBData();
+
+        while (count > 0) {
+            int n = Math.min(bufferRows, count);
+            int offset = destRow * width;
+            int size = n * width;
+
+            if (format == RawImageFormat.PFM) {
+                fill(dataOffset + (long)(height - row - n) * rowBytes, n * rowBytes);
+                for (int k = n - 1; k >= 0; k--) {
+                    buffer.position(k * rowBytes);
+                    if (gray != null) {
+                        for (int i = 0; i < width; i++)
+                            gray[offset++] = (byte)toByte(buffer.getFloat());
+                    }
+                    else{
+                        for (int i = 0; i < width; i++) {
+                            int r = toByte(buffer.getFloat());
+                            int g = toByte(buffer.getFloat());
+                            int b = toByte(buffer.getFloat());
+                            rgb[offset++] = r << 16 | g << 8 | b;
+                        }
+                    }
+                }
+            }
+            else if (format == RawImageFormat.Raw && rgb != null) {
+                long planeSize = (long)width * height;
+                for (int p = 0; p < 3; p++) {
+                    fill(dataOffset + p * planeSize + (long)row * width, size);
+                    int shift = 16 - 8 * p;
+                    if (p == 0) {
+                        for (int i = offset; i < offset + size; i++)
+                            rgb[i] = (buffer.get() & 0xFF) << 16;
+                    }
+                    else{
+                        for (int i = offset; i < offset + size; i++)
+                            rgb[i] |= (buffer.get() & 0xFF) << shift;
+                    }
+                }
+            }
+            else{
+                fill(dataOffset + (long)row * rowBytes, n * rowBytes);
+                if (gray != null) {
+                    if (bytesPerSample == 1 && maxValue == 255) {
+                        buffer.get(gray, offset, size);
+                    }
+                    else{
+                        for (int i = offset; i < offset + size; i++)
+                            gray[i] = (byte)nextSample();
+                    }
+                }
+                else{
+                    if (bytesPerSample == 1 && maxValue == 255) {
+                        for (int i = offset; i < offset + size; i++)
+                            rgb[i] = (buffer.get() & 0xFF) << 16 | (buffer.get() & 0xFF) << 8 | (buffer.get() & 0xFF);
+                    }
+                    else{
+                        for (int i = offset; i < offset + size; i++)
+                            rgb[i] = nextSample() << 16 | nextSample() << 8 | nextSample();
+                    }
+                }
+            }
+
+            row += n;
+            destRow += n;
+            count -= n;
+        }
+    }
+
+    private int nextSample(){
+        int v = bytesPerSample == 1 ? buffer.get() & 0xFF : buffer.getShort() & 0xFFFF;
+        v = (v * 255 + maxValue / 2) / maxValue;
+        return v > 255 ? 255 : v;
+    }
+
+    private static int toByte(float value){
+        int v = (int)(value * 255f + 0.5f);
+        v = v > 255 ? 255 : v;
+        v = v < 0 ? 0 : v;
+        return v;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,311 @@
+// Catalano Imaging Library
+// The Catalano Framework
+//
+// Copyright © Diego Catalano, 2013
+// diego.catalano at live.com
+//
+//    This library is free software; you can redistribute it and/or
+//    modify it under the terms of the GNU Lesser General Public
+//    License as published by the Free Software Foundation; either
+//    version 2.1 of the License, or (at your option) any later version.
+//
+//    This library is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+//    Lesser General Public License for more details.
+//
+//    You should have received a copy of the GNU Lesser General Public
+//    License along with this library; if not, write to the Free Software
+//    Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+//
+
+package Catalano.Imaging.IO;
+
+import Catalano.Imaging.FastBitmap;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes PGM, PPM, PFM and raw images through a FileChannel.
+ * <br /> Pixels are encoded from the FastBitmap data into a direct buffer, without ImageIO. The image can be written at once or in strips of rows.
+ * @author Diego Catalano
+ */
+public class RawImageWriter implements IStripWriter{
+
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private FileChannel channel;
+    private ByteBuffer buffer;
+    private RawImageFormat format;
+    private FastBitmap.ColorSpace colorSpace;
+    private int width, height;
+    private int rowBytes;
+    private int bufferRows;
+    private long dataOffset;
+    private int currentRow;
+
+    /**
+     * Initialize a new instance of the RawImageWriter class.
+     * @param pathname Path name.
+     * @param format Format.
+     * @param width Width.
+     * @param height Height.
+     * @param colorSpace Color space.
+     * @throws IOException If the file can not be written.
+     */
+    public RawImageWriter(String pathname, RawImageFormat format, int width, int height, FastBitmap.ColorSpace colorSpace) throws IOException{
+        if (width <= 0 || height <= 0)
+            throw new IllegalArgumentException("Width and height must be greater than 0.");
+        if (format == RawImageFormat.PGM && colorSpace != FastBitmap.ColorSpace.Grayscale)
+            throw new IllegalArgumentException("PGM only supports grayscale images.");
+        if (format == RawImageFormat.PPM && colorSpace != FastBitmap.ColorSpace.RGB)
+            throw new IllegalArgumentException("PPM only supports RGB images.");
+
+        this.format = format;
+        this.width = width;
+        this.height = height;
+        this.colorSpace = colorSpace;
+
+        int samples = (colorSpace == FastBitmap.ColorSpace.RGB && format != RawImageFormat.Raw) ? 3 : 1;
+        int bytesPerSample = format == RawImageFormat.PFM ? 4 : 1;
+        long bytes = (long)width * samples * bytesPerSample;
+        if (bytes > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Image row is too large.");
+        this.rowBytes = (int)bytes;
+        this.bufferRows = Math.max(1, Math.min(height, BUFFER_SIZE / rowBytes));
+        this.buffer = ByteBuffer.allocateDirect(bufferRows * rowBytes);
+        if (format == RawImageFormat.PFM)
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+        this.channel = FileChannel.open(Paths.get(pathname), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            writeHeader();
+        } catch (IOException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Write a FastBitmap according to the file extension: .pgm or .ppm as PGM (grayscale) or PPM (RGB), .pfm or .raw.
+     * @param fastBitmap FastBitmap.
+     * @param pathname Path name.
+     * @throws IOException If the file can not be written.
+     * @throws IllegalArgumentException If the extension is not supported.
+     */
+    public static void save(FastBitmap fastBitmap, String pathname) throws IOException{
+        RawImageFormat format = RawImageFormat.fromExtension(pathname);
+        if (format == null)
+            throw new IllegalArgumentException("File must be a .pgm, .ppm, .pfm or .raw file.");
+        if (format == RawImageFormat.PGM || format == RawImageFormat.PPM)
+            format = fastBitmap.isGrayscale() ? RawImageFormat.PGM : RawImageFormat.PPM;
+
+        RawImageWriter writer = new RawImageWriter(pathname, format, fastBitmap.getWidth(), fastBitmap.getHeight(), fastBitmap.getColorSpace());
+        try {
+            writer.write(fastBitmap);
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Get format.
+     * @return Format.
+     */
+    public RawImageFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * Get the index of the next row written by writeRows.
+     * @return Current row.
+     */
+    public int getCurrentRow() {
+        return currentRow;
+    }
+
+    /**
+     * Write the whole image.
+     * @param fastBitmap FastBitmap with the same size and color space of the writer.
+     * @throws IOException If the file can not be written.
+     */
+    public void write(FastBitmap fastBitmap) throws IOException{
+        if (fastBitmap.getWidth() != width || fastBitmap.getHeight() != height)
+            throw new IllegalArgumentException("The image must be the same dimension of the writer.");
+        encode(0, height, fastBitmap, 0);
+        currentRow = height;
+    }
+
+    /**
+     * Write all rows of a strip after the last row written.
+     * @param strip FastBitmap with the same width of the writer.
+     * @return Number of rows written.
+     * @throws IOException If the file can not be written.
+     */
+    public int writeRows(FastBitmap strip) throws IOException{
+        return writeRows(strip, 0, strip.getHeight());
+    }
+
+    /**
+     * Write rows of a strip after the last row written.
+     * @param strip FastBitmap with the same width of the writer.
+     * @param stripRow First row of the strip to be written.
+     * @param count Number of rows.
+     * @return Number of rows written, less than count at the end of the image.
+     * @throws IOException If the file can not be written.
+     */
+    @Override
+    public int writeRows(FastBitmap strip, int stripRow, int count) throws IOException{
+        if (strip.getWidth() != width)
+            throw new IllegalArgumentException("The strip must be the same width of the writer.");
+        if (stripRow < 0 || stripRow + count > strip.getHeight())
+            throw new IllegalArgumentException("Rows out of strip bounds.");
+
+        int n = Math.min(count, height - currentRow);
+        if (n <= 0) return 0;
+        encode(currentRow, n, strip, stripRow);
+        currentRow += n;
+        return n;
+    }
+
+    /**
+     * Write float samples after the last row written. Only supported by PFM.
+     * @param data Samples, RGB interleaved, rows top to bottom.
+     * @param count Number of rows.
+     * @return Number of rows written, less than count at the end of the image.
+     * @throws IOException If the file can not be written.
+     */
+    public int writeRows(float[] data, int count) throws IOException{
+        if (format != RawImageFormat.PFM)
+            throw new IllegalArgumentException("Float samples are only supported by PFM.");
+
+        int n = Math.min(count, height - currentRow);
+        if (n <= 0) return 0;
+
+        int stride = rowBytes / 4;
+        int row = currentRow;
+        int offset = 0;
+        int left = n;
+        while (left > 0) {
+            int block = Math.min(bufferRows, left);
+            buffer.clear();
+            FloatBuffer floats = buffer.asFloatBuffer();
+            for (int k = block - 1; k >= 0; k--) {
+                floats.position(k * stride);
+                floats.put(data, offset, stride);
+                offset += stride;
+            }
+            buffer.limit(block * rowBytes);
+            flush(dataOffset + (long)(height - row - block) * rowBytes);
+            row += block;
+            left -= block;
+        }
+        currentRow += n;
+        return n;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void writeHeader() throws IOException{
+        String header;
+        switch (format) {
+            case PGM:
+                header = "P5\n" + width + " " + height + "\n255\n";
+                break;
+            case PPM:
+                header = "P6\n" + width + " " + height + "\n255\n";
+                break;
+            case PFM:
+                header = (colorSpace == FastBitmap.ColorSpace.RGB ? "PF\n" : "Pf\n") + width + " " + height + "\n-1.0\n";
+                break;
+            default:
+                header = "";
+        }
+
+        ByteBuffer h = ByteBuffer.wrap(header.getBytes("US-ASCII"));
+        while (h.hasRemaining()) {
+            channel.write(h, h.position());
+        }
+        dataOffset = header.length();
+    }
+
+    private void flush(long position) throws IOException{
+        buffer.position(0);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+    }
+
+    private void encode(int row, int count, FastBitmap src, int srcRow) throws IOException{
+        if (src.getColorSpace() != colorSpace)
+            throw new IllegalArgumentException("The image must be the same color space of the writer.");
+
+        byte[] gray = src.getGrayData();
+        int[] rgb = src.getRGBData();
+
+        while (count > 0) {
+            int n = Math.min(bufferRows, count);
+            int offset = srcRow * width;
+            int size = n * width;
+
+            buffer.clear();
+            if (format == RawImageFormat.PFM) {
+                for (int k = n - 1; k >= 0; k--) {
+                    int i = offset + k * width;
+                    if (gray != null) {
+                        for (int j = 0; j < width; j++)
+                            buffer.putFloat((gray[i++] & 0xFF) / 255f);
+                    }
+                    else{
+                        for (int j = 0; j < width; j++) {
+                            int p = rgb[i++];
+                            buffer.putFloat((p >> 16 & 0xFF) / 255f);
+                            buffer.putFloat((p >> 8 & 0xFF) / 255f);
+                            buffer.putFloat((p & 0xFF) / 255f);
+                        }
+                    }
+                }
+                buffer.limit(buffer.position());
+                flush(dataOffset + (long)(height - row - n) * rowBytes);
+            }
+            else if (format == RawImageFormat.Raw && rgb != null) {
+                long planeSize = (long)width * height;
+                for (int p = 0; p < 3; p++) {
+                    int shift = 16 - 8 * p;
+                    buffer.clear();
+                    for (int i = offset; i < offset + size; i++)
+                        buffer.put((byte)(rgb[i] >> shift));
+                    buffer.limit(buffer.position());
+                    flush(dataOffset + p * planeSize + (long)row * width);
+                }
+            }
+            else{
+                if (gray != null) {
+                    buffer.put(gray, offset, size);
+                }
+                else{
+                    for (int i = offset; i < offset + size; i++) {
+                        int p = rgb[i];
+                        buffer.put((byte)(p >> 16));
+                        buffer.put((byte)(p >> 8));
+                        buffer.put((byte)p);
+                    }
+                }
+                buffer.limit(buffer.position());
+                flush(dataOffset + (long)row * rowBytes);
+            }
+
+            row += n;
+            srcRow += n;
+            count -= n;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,233 @@
+// Catalano Imaging Library
+// The Catalano Framework
+//
+// Copyright © Diego Catalano, 2013
+// diego.catalano at live.com
+//
+//    This library is free software; you can redistribute it and/or
+//    modify it under the terms of the GNU Lesser General Public
+//    License as published by the Free Software Foundation; either
+//    version 2.1 of the License, or (at your option) any later version.
+//
+//    This library is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+//    Lesser General Public License for more details.
+//
+//    You should have received a copy of the GNU Lesser General Public
+//    License along with this library; if not, write to the Free Software
+//    Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+//
+
+package Catalano.Imaging.IO;
+
+import Catalano.Imaging.FastBitmap;
+import Catalano.Imaging.IBaseInPlace;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Apply filters to huge images without loading them.
+ * <br /> Rows are read from a strip reader into a rolling window, filtered, and written to a strip writer.
+ * Each window keeps radius rows above and below the strip, so the result is the same of filtering the whole image with any
+ * pixel-wise or neighborhood filter that reaches at most radius rows, and that keeps the image size.
+ * <br /> Memory used is about 2 * width * (stripHeight + 2 * radius) pixels.
+ * @author Diego Catalano
+ */
+public class StripProcessor {
+
+    private int radius;
+    private int stripHeight = 64;
+    private List<IBaseInPlace> filters = new ArrayList<IBaseInPlace>();
+
+    /**
+     * Initialize a new instance of the StripProcessor class.
+     * @param radius Number of rows above and below each pixel needed by the filters.
+     */
+    public StripProcessor(int radius) {
+        this(radius, 64);
+    }
+
+    /**
+     * Initialize a new instance of the StripProcessor class.
+     * @param radius Number of rows above and below each pixel needed by the filters.
+     * @param stripHeight Number of rows written at each step.
+     */
+    public StripProcessor(int radius, int stripHeight) {
+        setRadius(radius);
+        setStripHeight(stripHeight);
+    }
+
+    /**
+     * Get radius.
+     * @return Radius.
+     */
+    public int getRadius() {
+        return radius;
+    }
+
+    /**
+     * Set radius. For a chain of filters, it is the sum of the radius of each filter.
+     * @param radius Radius.
+     */
+    public void setRadius(int radius) {
+        if (radius < 0)
+            throw new IllegalArgumentException("Radius must be at least 0.");
+        this.radius = radius;
+    }
+
+    /**
+     * Get strip height.
+     * @return Strip height.
+     */
+    public int getStripHeight() {
+        return stripHeight;
+    }
+
+    /**
+     * Set strip height.
+     * @param stripHeight Strip height.
+     */
+    public void setStripHeight(int stripHeight) {
+        if (stripHeight < 1)
+            throw new IllegalArgumentException("Strip height must be at least 1.");
+        this.stripHeight = stripHeight;
+    }
+
+    /**
+     * Add a filter to the end of the chain.
+     * @param filter Filter.
+     */
+    public void add(IBaseInPlace filter){
+        filters.add(filter);
+    }
+
+    /**
+     * Remove all filters.
+     */
+    public void clear(){
+        filters.clear();
+    }
+
+    /**
+     * Process a file into another.
+     * <br /> PGM, PPM, PFM are read by RawImageReader, others by ImageIOStripReader. The output must be .pgm or .ppm, written as PGM or PPM according to the color space of the result, .pfm or .raw.
+     * @param input Input path name.
+     * @param output Output path name.
+     * @throws IOException If a file can not be read or written.
+     * @throws IllegalArgumentException If the output extension is not supported.
+     */
+    public void process(String input, String output) throws IOException{
+        RawImageFormat outputFormat = RawImageFormat.fromExtension(output);
+        if (outputFormat == null)
+            throw new IllegalArgumentException("Output must be a .pgm, .ppm, .pfm or .raw file.");
+        
+        RawImageFormat format = RawImageFormat.fromExtension(input);
+        IStripReader reader;
+        if (format != null && format != RawImageFormat.Raw)
+            reader = new RawImageReader(input);
+        else
+            reader = new ImageIOStripReader(input);
+
+        LazyWriter writer = new LazyWriter(output, outputFormat, reader.getWidth(), reader.getHeight());
+        try {
+            process(reader, writer);
+        } finally {
+            reader.close();
+            writer.close();
+        }
+    }
+
+    /**
+     * Process all rows of the reader into the writer.
+     * @param reader Strip reader.
+     * @param writer Strip writer.
+     * @throws IOException If the image can not be read or written.
+     */
+    public void process(IStripReader reader, IStripWriter writer) throws IOException{
+        int width = reader.getWidth();
+        int height = reader.getHeight();
+        FastBitmap.ColorSpace colorSpace = reader.getColorSpace();
+
+        // Source rows [windowStart, windowEnd), kept unfiltered so they can be reused by the next strip.
+        FastBitmap window = new FastBitmap(width, Math.min(height, stripHeight + 2 * radius), colorSpace);
+        FastBitmap work = null;
+        int windowStart = 0;
+        int windowEnd = 0;
+
+        for (int y0 = 0; y0 < height; y0 += stripHeight) {
+            int y1 = Math.min(height, y0 + stripHeight);
+            int start = Math.max(0, y0 - radius);
+            int end = Math.min(height, y1 + radius);
+
+            if (start > windowStart) {
+                int keep = Math.max(0, windowEnd - start);
+                if (keep > 0)
+                    copyRows(window, start - windowStart, window, 0, keep);
+                windowStart = start;
+                windowEnd = start + keep;
+            }
+
+            while (windowEnd < end) {
+                int n = reader.readRows(window, windowEnd - windowStart, end - windowEnd);
+                if (n <= 0)
+                    throw new EOFException("Unexpected end of image.");
+                windowEnd += n;
+            }
+
+            int rows = end - start;
+            if (work == null || work.getHeight() != rows || work.getColorSpace() != colorSpace)
+                work = new FastBitmap(width, rows, colorSpace);
+            copyRows(window, 0, work, 0, rows);
+
+            for (int i = 0; i < filters.size(); i++)
+                filters.get(i).applyInPlace(work);
+
+            writer.writeRows(work, y0 - start, y1 - y0);
+        }
+    }
+
+    private static void copyRows(FastBitmap src, int srcRow, FastBitmap dest, int destRow, int rows){
+        int width = src.getWidth();
+        if (src.isGrayscale())
+            System.arraycopy(src.getGrayData(), srcRow * width, dest.getGrayData(), destRow * width, rows * width);
+        else
+            System.arraycopy(src.getRGBData(), srcRow * width, dest.getRGBData(), destRow * width, rows * width);
+    }
+
+    /**
+     * Creates the raw writer at the first strip, when the color space of the result is known.
+     */
+    private static class LazyWriter implements IStripWriter{
+
+        private String pathname;
+        private RawImageFormat format;
+        private int width, height;
+        private RawImageWriter writer;
+
+        public LazyWriter(String pathname, RawImageFormat format, int width, int height) {
+            this.pathname = pathname;
+            this.format = format;
+            this.width = width;
+            this.height = height;
+        }
+
+        @Override
+        public int writeRows(FastBitmap strip, int stripRow, int count) throws IOException{
+            if (writer == null) {
+                RawImageFormat format = this.format;
+                if (format == RawImageFormat.PGM || format == RawImageFormat.PPM)
+                    format = strip.isGrayscale() ? RawImageFormat.PGM : RawImageFormat.PPM;
+                writer = new RawImageWriter(pathname, format, width, height, strip.getColorSpace());
+            }
+            return writer.writeRows(strip, stripRow, count);
+        }
+
+        @Override
+        public void close() throws IOException{
+            if (writer != null) writer.close();
+        }
+    }
+}
\ No newline at end of file
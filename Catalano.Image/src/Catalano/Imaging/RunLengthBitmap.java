@@ -0,0 +1,593 @@
+// Catalano Imaging Library
+// The Catalano Framework
+//
+// Copyright © Diego Catalano, 2013
+// diego.catalano at live.com
+//
+//    This library is free software; you can redistribute it and/or
+//    modify it under the terms of the GNU Lesser General Public
+//    License as published by the Free Software Foundation; either
+//    version 2.1 of the License, or (at your option) any later version.
+//
+//    This library is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+//    Lesser General Public License for more details.
+//
+//    You should have received a copy of the GNU Lesser General Public
+//    License along with this library; if not, write to the Free Software
+//    Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+//
+
+package Catalano.Imaging;
+
+import Catalano.Core.IntPoint;
+import Catalano.Imaging.Tools.Blob;
+import Catalano.Imaging.Tools.ConnectedComponentsLabeling;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Run length encoded binary image.
+ * <br /> Each row is a sorted list of runs of foreground pixels, [start, end) with end exclusive. Runs of the same row never touch.
+ * Operations work on the run lists, so their cost depends on the number of runs instead of the number of pixels.
+ * <br /> The image is immutable, operations return a new image.
+ * @author Diego Catalano
+ */
+public class RunLengthBitmap {
+
+    private static final int AND = 0;
+    private static final int OR = 1;
+    private static final int XOR = 2;
+
+    private int width, height;
+    private int[] runs;
+    private int[] offsets;
+    private int area;
+    private int minX = -1, minY = -1, maxX = -1, maxY = -1;
+
+    /**
+     * Initialize a new instance of the RunLengthBitmap class.
+     * @param fastBitmap Image, non zero pixels are foreground.
+     */
+    public RunLengthBitmap(FastBitmap fastBitmap) {
+        int w = fastBitmap.getWidth();
+        int h = fastBitmap.getHeight();
+        byte[] gray = fastBitmap.getGrayData();
+        int[] rgb = fastBitmap.getRGBData();
+
+        Builder builder = new Builder(w, h);
+        for (int x = 0; x < h; x++) {
+            int row = x * w;
+            int y = 0;
+            while (y < w) {
+                if (gray != null) {
+                    while (y < w && gray[row + y] == 0) y++;
+                }
+                else{
+                    while (y < w && (rgb[row + y] & 0xFFFFFF) == 0) y++;
+                }
+                if (y == w) break;
+
+                int start = y;
+                if (gray != null) {
+                    while (y < w && gray[row + y] != 0) y++;
+                }
+                else{
+                    while (y < w && (rgb[row + y] & 0xFFFFFF) != 0) y++;
+                }
+                builder.add(start, y);
+            }
+            builder.endRow();
+        }
+        init(builder);
+    }
+
+    private RunLengthBitmap(Builder builder) {
+        init(builder);
+    }
+
+    private void init(Builder builder){
+        this.width = builder.width;
+        this.height = builder.height;
+        this.runs = builder.size * 2 == builder.runs.length ? builder.runs : Arrays.copyOf(builder.runs, builder.size * 2);
+        this.offsets = builder.offsets;
+
+        for (int x = 0; x < height; x++) {
+            int from = offsets[x], to = offsets[x + 1];
+            if (from == to) continue;
+            if (minX < 0) minX = x;
+            maxX = x;
+            int first = runs[2 * from];
+            int last = runs[2 * to - 1] - 1;
+            if (minY < 0 || first < minY) minY = first;
+            if (last > maxY) maxY = last;
+            for (int k = from; k < to; k++)
+                area += runs[2 * k + 1] - runs[2 * k];
+        }
+    }
+
+    /**
+     * Get width.
+     * @return Width.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Get height.
+     * @return Height.
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Get number of foreground pixels.
+     * @return Area.
+     */
+    public int getArea() {
+        return area;
+    }
+
+    /**
+     * Get the first row of the bounding box.
+     * @return Minimum X axis coordinate, -1 if the image is empty.
+     */
+    public int getMinX() {
+        return minX;
+    }
+
+    /**
+     * Get the first column of the bounding box.
+     * @return Minimum Y axis coordinate, -1 if the image is empty.
+     */
+    public int getMinY() {
+        return minY;
+    }
+
+    /**
+     * Get the last row of the bounding box.
+     * @return Maximum X axis coordinate, -1 if the image is empty.
+     */
+    public int getMaxX() {
+        return maxX;
+    }
+
+    /**
+     * Get the last column of the bounding box.
+     * @return Maximum Y axis coordinate, -1 if the image is empty.
+     */
+    public int getMaxY() {
+        return maxY;
+    }
+
+    /**
+     * Get number of runs.
+     * @return Number of runs.
+     */
+    public int getRunCount() {
+        return runs.length / 2;
+    }
+
+    /**
+     * Get number of runs of a row.
+     * @param x Row.
+     * @return Number of runs.
+     */
+    public int getRunCount(int x) {
+        return offsets[x + 1] - offsets[x];
+    }
+
+    /**
+     * Get the first column of a run.
+     * @param x Row.
+     * @param index Index of the run in the row.
+     * @return First column.
+     */
+    public int getRunStart(int x, int index) {
+        return runs[2 * (offsets[x] + index)];
+    }
+
+    /**
+     * Get the column after the last column of a run.
+     * @param x Row.
+     * @param index Index of the run in the row.
+     * @return Last column, exclusive.
+     */
+    public int getRunEnd(int x, int index) {
+        return runs[2 * (offsets[x] + index) + 1];
+    }
+
+    /**
+     * Check if a pixel is foreground.
+     * @param x X axis coordinate.
+     * @param y Y axis coordinate.
+     * @return True if the pixel is inside a run.
+     */
+    public boolean isForeground(int x, int y){
+        int lo = offsets[x], hi = offsets[x + 1] - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (y < runs[2 * mid]) hi = mid - 1;
+            else if (y >= runs[2 * mid + 1]) lo = mid + 1;
+            else return true;
+        }
+        return false;
+    }
+
+    /**
+     * Convert to a grayscale FastBitmap, 255 for foreground and 0 for background.
+     * @return FastBitmap.
+     */
+    public FastBitmap toFastBitmap(){
+        FastBitmap fb = new FastBitmap(width, height, FastBitmap.ColorSpace.Grayscale);
+        byte[] data = fb.getGrayData();
+        for (int x = 0; x < height; x++) {
+            int row = x * width;
+            for (int k = offsets[x]; k < offsets[x + 1]; k++)
+                Arrays.fill(data, row + runs[2 * k], row + runs[2 * k + 1], (byte)255);
+        }
+        return fb;
+    }
+
+    /**
+     * Intersection of two images.
+     * @param image Image with the same size.
+     * @return Pixels foreground in both images.
+     */
+    public RunLengthBitmap And(RunLengthBitmap image){
+        return combine(image, AND);
+    }
+
+    /**
+     * Union of two images.
+     * @param image Image with the same size.
+     * @return Pixels foreground in any image.
+     */
+    public RunLengthBitmap Or(RunLengthBitmap image){
+        return combine(image, OR);
+    }
+
+    /**
+     * Symmetric difference of two images.
+     * @param image Image with the same size.
+     * @return Pixels foreground in only one image.
+     */
+    public RunLengthBitmap Xor(RunLengthBitmap image){
+        return combine(image, XOR);
+    }
+
+    /**
+     * Complement of the image.
+     * @return Pixels in background.
+     */
+    public RunLengthBitmap Not(){
+        Builder builder = new Builder(width, height);
+        for (int x = 0; x < height; x++) {
+            int start = 0;
+            for (int k = offsets[x]; k < offsets[x + 1]; k++) {
+                builder.add(start, runs[2 * k]);
+                start = runs[2 * k + 1];
+            }
+            builder.add(start, width);
+            builder.endRow();
+        }
+        return new RunLengthBitmap(builder);
+    }
+
+    /**
+     * Horizontal dilation with a 1 x (2 * radius + 1) line.
+     * @param radius Radius.
+     * @return Dilated image.
+     */
+    public RunLengthBitmap Dilate(int radius){
+        Builder builder = new Builder(width, height);
+        for (int x = 0; x < height; x++) {
+            for (int k = offsets[x]; k < offsets[x + 1]; k++)
+                builder.add(Math.max(0, runs[2 * k] - radius), Math.min(width, runs[2 * k + 1] + radius));
+            builder.endRow();
+        }
+        return new RunLengthBitmap(builder);
+    }
+
+    /**
+     * Horizontal erosion with a 1 x (2 * radius + 1) line. Pixels outside the image are background.
+     * @param radius Radius.
+     * @return Eroded image.
+     */
+    public RunLengthBitmap Erode(int radius){
+        Builder builder = new Builder(width, height);
+        for (int x = 0; x < height; x++) {
+            for (int k = offsets[x]; k < offsets[x + 1]; k++)
+                builder.add(runs[2 * k] + radius, runs[2 * k + 1] - radius);
+            builder.endRow();
+        }
+        return new RunLengthBitmap(builder);
+    }
+
+    /**
+     * Horizontal run length smoothing, fills the background gaps between runs.
+     * @param maxGapSize Maximum gap size to fill.
+     * @param processGapsWithImageBorders Fill also the gaps between runs and the image borders.
+     * @return Smoothed image.
+     * @see Catalano.Imaging.Filters.HorizontalRunLengthSmoothing
+     */
+    public RunLengthBitmap Smooth(int maxGapSize, boolean processGapsWithImageBorders){
+        Builder builder = new Builder(width, height);
+        for (int x = 0; x < height; x++) {
+            int from = offsets[x], to = offsets[x + 1];
+            if (from == to) {
+                if (processGapsWithImageBorders && width <= maxGapSize) builder.add(0, width);
+                builder.endRow();
+                continue;
+            }
+
+            int start = runs[2 * from];
+            if (processGapsWithImageBorders && start <= maxGapSize) start = 0;
+            int end = runs[2 * from + 1];
+            for (int k = from + 1; k < to; k++) {
+                if (runs[2 * k] - end > maxGapSize) {
+                    builder.add(start, end);
+                    start = runs[2 * k];
+                }
+                end = runs[2 * k + 1];
+            }
+            if (processGapsWithImageBorders && width - end <= maxGapSize) end = width;
+            builder.add(start, end);
+            builder.endRow();
+        }
+        return new RunLengthBitmap(builder);
+    }
+
+    /**
+     * Vertical run length smoothing, fills the background gaps between vertical runs.
+     * @param maxGapSize Maximum gap size to fill.
+     * @param processGapsWithImageBorders Fill also the gaps between runs and the image borders.
+     * @return Smoothed image.
+     * @see Catalano.Imaging.Filters.VerticalRunLengthSmoothing
+     */
+    public RunLengthBitmap SmoothVertical(int maxGapSize, boolean processGapsWithImageBorders){
+        return Transpose().Smooth(maxGapSize, processGapsWithImageBorders).Transpose();
+    }
+
+    /**
+     * Transpose the image, rows become columns.
+     * <br /> Vertical runs start and end where consecutive rows differ, so the cost depends on the length of the horizontal edges.
+     * @return Transposed image.
+     */
+    public RunLengthBitmap Transpose(){
+        int[] open = new int[width];
+        Arrays.fill(open, -1);
+        int[] changes = new int[2 * width + 2];
+        int[] vertical = new int[64];
+        int count = 0;
+
+        for (int x = 0; x <= height; x++) {
+            // Columns which change between row x - 1 and row x.
+            int n;
+            if (x == 0)
+                n = combine(runs, 0, 0, runs, 0, 2 * offsets[1], XOR, changes);
+            else if (x == height)
+                n = combine(runs, 2 * offsets[x - 1], 2 * offsets[x], runs, 0, 0, XOR, changes);
+            else
+                n = combine(runs, 2 * offsets[x - 1], 2 * offsets[x], runs, 2 * offsets[x], 2 * offsets[x + 1], XOR, changes);
+
+            for (int k = 0; k < n; k += 2) {
+                for (int y = changes[k]; y < changes[k + 1]; y++) {
+                    if (open[y] < 0) {
+                        open[y] = x;
+                    }
+                    else{
+                        if (count * 3 + 3 > vertical.length) vertical = Arrays.copyOf(vertical, vertical.length * 2);
+                        vertical[count * 3] = y;
+                        vertical[count * 3 + 1] = open[y];
+                        vertical[count * 3 + 2] = x;
+                        count++;
+                        open[y] = -1;
+                    }
+                }
+            }
+        }
+
+        // Group the vertical runs by column, they are already sorted by row.
+        int[] t = new int[width + 1];
+        for (int k = 0; k < count; k++) t[vertical[k * 3] + 1]++;
+        for (int y = 0; y < width; y++) t[y + 1] += t[y];
+        int[] position = Arrays.copyOf(t, width);
+        int[] r = new int[count * 2];
+        for (int k = 0; k < count; k++) {
+            int p = position[vertical[k * 3]]++;
+            r[2 * p] = vertical[k * 3 + 1];
+            r[2 * p + 1] = vertical[k * 3 + 2];
+        }
+
+        Builder builder = new Builder(height, width);
+        builder.runs = r;
+        builder.size = count;
+        builder.offsets = t;
+        return new RunLengthBitmap(builder);
+    }
+
+    /**
+     * Find connected components, labeling runs instead of pixels.
+     * @param connectivity Pixel connectivity.
+     * @return Blobs in compact form, in scan order.
+     */
+    public ArrayList<Blob> ConnectedComponents(ConnectedComponentsLabeling.Connectivity connectivity){
+        int n = runs.length / 2;
+        int ext = connectivity == ConnectedComponentsLabeling.Connectivity.Eight ? 1 : 0;
+        int[] parent = new int[n];
+        long[] overlap = new long[n];
+        for (int k = 0; k < n; k++) parent[k] = k;
+
+        // Union the runs which touch a run of the previous row.
+        for (int x = 1; x < height; x++) {
+            int i = offsets[x - 1], iEnd = offsets[x];
+            int j = offsets[x], jEnd = offsets[x + 1];
+            while (i < iEnd && j < jEnd) {
+                int ps = runs[2 * i], pe = runs[2 * i + 1];
+                int cs = runs[2 * j], ce = runs[2 * j + 1];
+                if (ps < ce + ext && cs < pe + ext) {
+                    union(parent, i, j);
+                    int o = Math.min(pe, ce) - Math.max(ps, cs);
+                    if (o > 0) overlap[j] += o;
+                }
+                if (pe < ce) i++;
+                else j++;
+            }
+        }
+
+        // Components in scan order, roots are the first run of each component.
+        int[] component = new int[n];
+        int count = 0;
+        for (int k = 0; k < n; k++) {
+            int root = find(parent, k);
+            component[k] = root == k ? count++ : component[root];
+        }
+
+        int[] size = new int[count + 1];
+        int[] cArea = new int[count];
+        long[] sumX = new long[count], sumY2 = new long[count], sides = new long[count];
+        int[] cMinX = new int[count], cMinY = new int[count], cMaxX = new int[count], cMaxY = new int[count];
+        Arrays.fill(cMinY, Integer.MAX_VALUE);
+        Arrays.fill(cMinX, Integer.MAX_VALUE);
+        for (int x = 0; x < height; x++) {
+            for (int k = offsets[x]; k < offsets[x + 1]; k++) {
+                int c = component[k];
+                int s = runs[2 * k], e = runs[2 * k + 1];
+                int len = e - s;
+                size[c + 1]++;
+                cArea[c] += len;
+                sumX[c] += (long)x * len;
+                sumY2[c] += (long)len * (s + e - 1);
+                sides[c] += 2 + 2 * len - 2 * overlap[k];
+                if (x < cMinX[c]) cMinX[c] = x;
+                if (x > cMaxX[c]) cMaxX[c] = x;
+                if (s < cMinY[c]) cMinY[c] = s;
+                if (e - 1 > cMaxY[c]) cMaxY[c] = e - 1;
+            }
+        }
+
+        // Runs of each component as (row, first column, last column).
+        for (int c = 0; c < count; c++) size[c + 1] += size[c];
+        int[][] triplets = new int[count][];
+        for (int c = 0; c < count; c++) triplets[c] = new int[3 * (size[c + 1] - size[c])];
+        int[] filled = new int[count];
+        for (int x = 0; x < height; x++) {
+            for (int k = offsets[x]; k < offsets[x + 1]; k++) {
+                int c = component[k];
+                int[] t = triplets[c];
+                int p = filled[c];
+                t[p] = x;
+                t[p + 1] = runs[2 * k];
+                t[p + 2] = runs[2 * k + 1] - 1;
+                filled[c] = p + 3;
+            }
+        }
+
+        ArrayList<Blob> blobs = new ArrayList<Blob>(count);
+        for (int c = 0; c < count; c++) {
+            IntPoint center = new IntPoint((int)(sumX[c] / cArea[c]), (int)(sumY2[c] / (2L * cArea[c])));
+            blobs.add(new Blob(c, cArea[c], center, triplets[c], cMinX[c], cMinY[c], cMaxX[c], cMaxY[c], (int)sides[c]));
+        }
+        return blobs;
+    }
+
+    private RunLengthBitmap combine(RunLengthBitmap image, int op){
+        if (image.width != width || image.height != height)
+            throw new IllegalArgumentException("The images must be the same size.");
+
+        Builder builder = new Builder(width, height);
+        int[] out = new int[64];
+        for (int x = 0; x < height; x++) {
+            int a = 2 * offsets[x], aEnd = 2 * offsets[x + 1];
+            int b = 2 * image.offsets[x], bEnd = 2 * image.offsets[x + 1];
+            if (out.length < aEnd - a + bEnd - b) out = new int[aEnd - a + bEnd - b];
+            int n = combine(runs, a, aEnd, image.runs, b, bEnd, op, out);
+            for (int k = 0; k < n; k += 2) builder.add(out[k], out[k + 1]);
+            builder.endRow();
+        }
+        return new RunLengthBitmap(builder);
+    }
+
+    /**
+     * Combine the boundaries of two rows, writing the boundaries of the result.
+     * @return Number of boundaries written.
+     */
+    private static int combine(int[] ra, int i, int iEnd, int[] rb, int j, int jEnd, int op, int[] out){
+        boolean inA = false, inB = false, state = false;
+        int n = 0;
+        while (i < iEnd || j < jEnd) {
+            int pa = i < iEnd ? ra[i] : Integer.MAX_VALUE;
+            int pb = j < jEnd ? rb[j] : Integer.MAX_VALUE;
+            int p = Math.min(pa, pb);
+            if (pa == p) { inA = !inA; i++; }
+            if (pb == p) { inB = !inB; j++; }
+
+            boolean s;
+            if (op == AND) s = inA && inB;
+            else if (op == OR) s = inA || inB;
+            else s = inA != inB;
+
+            if (s != state) {
+                out[n++] = p;
+                state = s;
+            }
+        }
+        return n;
+    }
+
+    private static void union(int[] parent, int a, int b){
+        a = find(parent, a);
+        b = find(parent, b);
+        if (a < b) parent[b] = a;
+        else parent[a] = b;
+    }
+
+    private static int find(int[] parent, int a){
+        while (parent[a] != a) {
+            parent[a] = parent[parent[a]];
+            a = parent[a];
+        }
+        return a;
+    }
+
+    /**
+     * Collects the runs of a new image, row by row.
+     */
+    private static class Builder {
+
+        int width, height;
+        int[] runs = new int[64];
+        int[] offsets;
+        int size;
+        int row;
+
+        Builder(int width, int height) {
+            this.width = width;
+            this.height = height;
+            this.offsets = new int[height + 1];
+        }
+
+        /**
+         * Add a run to the current row. Runs must come sorted by start, a run which touches the previous one is merged.
+         */
+        void add(int start, int end){
+            if (start >= end) return;
+            if (size > offsets[row] && runs[2 * size - 1] >= start) {
+                if (end > runs[2 * size - 1]) runs[2 * size - 1] = end;
+                return;
+            }
+            if (2 * size + 2 > runs.length) runs = Arrays.copyOf(runs, runs.length * 2);
+            runs[2 * size] = start;
+            runs[2 * size + 1] = end;
+            size++;
+        }
+
+        void endRow(){
+            offsets[++row] = size;
+        }
+    }
+}
\ No newline at end of file
@@ -26,6 +26,8 @@ import java.util.ArrayList;
 
 /**
  * Blob object.
+ * <br /> A blob holds either the list of its points or, in compact form, its runs: one (row, first column, last column) triplet for each horizontal run of pixels.
+ * In compact form the points are only created when asked by getPoints.
  * @author Diego Catalano
  */
 public class Blob {
@@ -33,19 +35,57 @@ public class Blob {
     private int area;
     private IntPoint center;
     private ArrayList<IntPoint> points;
+    private int[] runs;
+    private int minX, minY, maxX, maxY;
+    private int perimeter = -1;
 
     /**
      * Initialize a new instance of the Blob class.
+     * <br /> If the list is null or empty the bounding box is not set.
      * @param id ID blob.
      * @param area Area.
      * @param center Center.
-     * @param points List of points.
+     * @param points List of points, can be null.
      */
     public Blob(int id, int area, IntPoint center,ArrayList<IntPoint> points) {
         this.id = id;
         this.area = area;
         this.center = center;
         this.points = points;
+        
+        minX = minY = Integer.MAX_VALUE;
+        maxX = maxY = Integer.MIN_VALUE;
+        if (points == null) return;
+        for (IntPoint p : points) {
+            if (p.x < minX) minX = p.x;
+            if (p.x > maxX) maxX = p.x;
+            if (p.y < minY) minY = p.y;
+            if (p.y > maxY) maxY = p.y;
+        }
+    }
+
+    /**
+     * Initialize a new instance of the Blob class in compact form.
+     * @param id ID blob.
+     * @param area Area.
+     * @param center Center.
+     * @param runs Runs, as (row, first column, last column) triplets.
+     * @param minX First row.
+     * @param minY First column.
+     * @param maxX Last row.
+     * @param maxY Last column.
+     * @param perimeter Perimeter.
+     */
+    public Blob(int id, int area, IntPoint center, int[] runs, int minX, int minY, int maxX, int maxY, int perimeter) {
+        this.id = id;
+        this.area = area;
+        this.center = center;
+        this.runs = runs;
+        this.minX = minX;
+        this.minY = minY;
+        this.maxX = maxX;
+        this.maxY = maxY;
+        this.perimeter = perimeter;
     }
 
     /**
@@ -72,11 +112,109 @@ public class Blob {
         return center;
     }
 
+    /**
+     * Get the first row of the bounding box.
+     * @return Minimum X axis coordinate.
+     */
+    public int getMinX() {
+        return minX;
+    }
+
+    /**
+     * Get the first column of the bounding box.
+     * @return Minimum Y axis coordinate.
+     */
+    public int getMinY() {
+        return minY;
+    }
+
+    /**
+     * Get the last row of the bounding box.
+     * @return Maximum X axis coordinate.
+     */
+    public int getMaxX() {
+        return maxX;
+    }
+
+    /**
+     * Get the last column of the bounding box.
+     * @return Maximum Y axis coordinate.
+     */
+    public int getMaxY() {
+        return maxY;
+    }
+
+    /**
+     * Get perimeter, the number of pixel sides between the blob and the outside.
+     * @return Perimeter.
+     */
+    public int getPerimeter() {
+        if (perimeter < 0 && (points == null || points.isEmpty())) {
+            perimeter = 0;
+        }
+        else if (perimeter < 0) {
+            // Mark the points in the bounding box and count the sides without a neighbour.
+            int w = maxY - minY + 1;
+            int h = maxX - minX + 1;
+            boolean[] mask = new boolean[w * h];
+            for (IntPoint p : points)
+                mask[(p.x - minX) * w + p.y - minY] = true;
+
+            int count = 0;
+            for (IntPoint p : points) {
+                int x = p.x - minX;
+                int y = p.y - minY;
+                int i = x * w + y;
+                if (x == 0 || !mask[i - w]) count++;
+                if (x == h - 1 || !mask[i + w]) count++;
+                if (y == 0 || !mask[i - 1]) count++;
+                if (y == w - 1 || !mask[i + 1]) count++;
+            }
+            perimeter = count;
+        }
+        return perimeter;
+    }
+
+    /**
+     * Check if the blob is in compact form.
+     * @return True if the blob holds runs instead of points.
+     */
+    public boolean isCompact() {
+        return runs != null;
+    }
+
+    /**
+     * Get runs, as (row, first column, last column) triplets.
+     * <br /> For a blob created with a list of points each point is a run.
+     * @return Runs.
+     */
+    public int[] getRuns() {
+        if (runs != null) return runs;
+        if (points == null) return new int[0];
+        
+        int[] r = new int[points.size() * 3];
+        int i = 0;
+        for (IntPoint p : points) {
+            r[i++] = p.x;
+            r[i++] = p.y;
+            r[i++] = p.y;
+        }
+        return r;
+    }
+
     /**
      * Get points.
+     * <br /> In compact form a new list is created for each call.
      * @return List of points.
      */
     public ArrayList<IntPoint> getPoints() {
-        return points;
+        if (points != null || runs == null) return points;
+        
+        ArrayList<IntPoint> list = new ArrayList<IntPoint>(area);
+        for (int i = 0; i < runs.length; i += 3) {
+            for (int y = runs[i + 1]; y <= runs[i + 2]; y++)
+                list.add(new IntPoint(runs[i], y));
+        }
+        return list;
     }
 }
\ No newline at end of file
@@ -21,34 +21,32 @@
 
 package Catalano.Imaging.Tools;
 
+import Catalano.Core.DoublePoint;
 import Catalano.Core.IntPoint;
 import Catalano.Imaging.FastBitmap;
 import java.util.ArrayList;
-import java.util.Stack;
+import java.util.Arrays;
 
 /**
  * Detects blobs.
+ * <br /> Blobs are the 4-connected components of the white pixels (255, or red 255 in RGB images), found by ConnectedComponentsLabeling.
+ * They are created in compact form, with runs instead of points.
+ * <br /> size and getIdBiggestBlob report the last image processed by the calling thread, so an instance can be shared between threads.
  * @author Diego Catalano
  */
 public class BlobDetection {
     
-    private int width;
-    private int height;
-    private FastBitmap light;
-    private int size; //All blobs
-    private int rR = 0,rG = 0,rB = 0;
-    private ArrayList<Blob> blobs;
-    private Blob blob; //Cria blob para instanciar os valores finais
-    private int id = 0; //ID blob
     private boolean filterBlob = false;
     private int minArea = 1,maxArea; //filtrar os blobs pela area
-    private int idBigBlob; //Biggest blob
-    private int areaBig = 0; //Biggest area
+    
+    //All blobs and biggest blob of the last image of each thread
+    private final ThreadLocal<int[]> last = new ThreadLocal<int[]>();
 
     public BlobDetection() {}
 
     public int size() {
-        return this.size;
+        int[] l = last.get();
+        return l == null ? 0 : l[0];
     }
     
     public boolean isFilterBlob(){
@@ -76,127 +74,97 @@ public class BlobDetection {
     }
     
     public int getIdBiggestBlob(){
-        return this.idBigBlob;
+        int[] l = last.get();
+        return l == null ? 0 : l[1];
     }
 
     public ArrayList<Blob> ProcessImage(FastBitmap fastBitmap) {
         
-        width = fastBitmap.getWidth();
-        height = fastBitmap.getHeight();
+        int width = fastBitmap.getWidth();
+        int height = fastBitmap.getHeight();
         
+        int maxArea = this.maxArea;
         if (maxArea == 0) {
             maxArea = width*height;
         }
         
-        //Create another FastBitmap
-        FastBitmap l = new FastBitmap(fastBitmap);
-        l.toRGB();
-        blobs = new ArrayList<Blob>();
-        
-        light = l;
-        for (int x = 0; x < height; x++) {
-            for (int y = 0; y < width; y++) {
-                // Can be any color
-                if (light.getRed(x, y) == 255) {
-                    ShuffleColor();
-                    FindBlob(x,y,rR,rG,rB);
-                }
-            }
-        }
-        return blobs;
-    }
-    
-    /**
-     * Tag blob with any color.
-     */
-    private void ShuffleColor(){
-        if (rB == 255) {
-            if (rG == 255) {
-                if (rR == 255) {
-                    rR = rG = rB = 0;
-                }
-                rR++;
-                rG = 0;
-            }
-            else{
-                rG++;
-                rB = 0;
-            }
+        // Foreground is 255 only, as before the labeling was used, so gray levels are background.
+        FastBitmap mask = new FastBitmap(width, height, FastBitmap.ColorSpace.Grayscale);
+        byte[] m = mask.getGrayData();
+        if (fastBitmap.isGrayscale()) {
+            byte[] gray = fastBitmap.getGrayData();
+            for (int i = 0; i < m.length; i++)
+                m[i] = (gray[i] & 0xFF) == 255 ? (byte)255 : 0;
         }
         else{
-            rB++;
+            for (int x = 0, i = 0; x < height; x++)
+                for (int y = 0; y < width; y++, i++)
+                    m[i] = fastBitmap.getRed(x, y) == 255 ? (byte)255 : 0;
         }
-    }
-    
-    private void FindBlob(int x,int y, int r, int g, int b){
-        ArrayList<IntPoint> blobPoints = new ArrayList<IntPoint>();
-        Stack<IntPoint> examList = new Stack<IntPoint>();
-        
-        int xc = 0,yc = 0; //Centroid
-        int blobArea = 0; //Area total
         
-        int iR = light.getRed(x, y);
-        int iG = light.getGreen(x, y);
-        int iB = light.getBlue(x, y);
-        int iRGB = iR+iG+iB;
+        LabeledImage image = new ConnectedComponentsLabeling(ConnectedComponentsLabeling.Connectivity.Four).Process(mask);
+        int count = image.getCount();
+        int[] labels = image.getLabels();
         
-        int _r,_g,_b;
-        examList.push(new IntPoint(x,y));
-        while (examList.size() > 0) {
-            IntPoint p = examList.pop();
-            _r = light.getRed(p.x, p.y);
-            _g = light.getRed(p.x, p.y);
-            _b = light.getRed(p.x, p.y);
-            int _RGB = _r+_g+_b;
-            
-            if (_RGB == iRGB) {
-                x = p.x;
-                y = p.y;
-                
-                light.setRGB(x, y, r, g, b);
-                blobArea++;
-                blobPoints.add(new IntPoint(x, y));
-                xc += p.x;
-                yc += p.y;
-                
-                if (x-1 > 0) {
-                    examList.push(new IntPoint(x-1,y));        // check west neighbor
-                }
-                if (x+1 < height) {
-                    examList.push(new IntPoint(x+1,y));        // check east neighbor
-                }
-                if (y-1 > 0) {
-                    examList.push(new IntPoint(x,y-1));        // check north neighbor
+        // Runs and perimeter of each component, in scan order.
+        int[][] runs = new int[count + 1][];
+        int[] size = new int[count + 1];
+        int[] perimeter = new int[count + 1];
+        for (int l = 1; l <= count; l++) {
+            runs[l] = new int[3 * (image.getMaxX(l) - image.getMinX(l) + 1)];
+        }
+        for (int x = 0; x < height; x++) {
+            int row = x * width;
+            int y = 0;
+            while (y < width) {
+                int l = labels[row + y];
+                if (l == 0) {
+                    y++;
+                    continue;
                 }
-                if (y+1 < width) {
-                    examList.push(new IntPoint(x,y+1));        // check south neighbor
+                
+                int start = y;
+                int sides = 2;
+                while (y < width && labels[row + y] == l) {
+                    if (x == 0 || labels[row + y - width] != l) sides++;
+                    if (x == height - 1 || labels[row + y + width] != l) sides++;
+                    y++;
                 }
+                perimeter[l] += sides;
+                
+                int[] r = runs[l];
+                int n = size[l];
+                if (n == r.length) runs[l] = r = Arrays.copyOf(r, r.length * 2);
+                r[n] = x;
+                r[n + 1] = start;
+                r[n + 2] = y - 1;
+                size[l] = n + 3;
             }
         }
         
-        if (filterBlob == true) {
-            if ((blobArea > minArea ) && (blobArea < maxArea)) {
-                    
-                    if (blobArea > areaBig) {
-                        areaBig = blobArea;
-                        idBigBlob = id;
-                    }
-                
-                    blob = new Blob(id, blobArea, new IntPoint(xc/blobArea, yc/blobArea),blobPoints);
-                    blobs.add(blob);
-                    size++;
-                    id++;
-            }
-        }else{
+        ArrayList<Blob> blobs = new ArrayList<Blob>();
+        int id = 0; //ID blob
+        int idBigBlob = 0; //Biggest blob
+        int areaBig = 0; //Biggest area
+        for (int l = 1; l <= count; l++) {
+            int blobArea = image.getArea(l);
+            
+            if (filterBlob == true && ((blobArea <= minArea) || (blobArea >= maxArea)))
+                continue;
+            
             if (blobArea > areaBig) {
                 areaBig = blobArea;
                 idBigBlob = id;
             }
             
-            blob = new Blob(id, blobArea, new IntPoint(xc/blobArea, yc/blobArea),blobPoints);
-            blobs.add(blob);
-            size++;
+            DoublePoint c = image.getCentroid(l);
+            int[] r = size[l] == runs[l].length ? runs[l] : Arrays.copyOf(runs[l], size[l]);
+            blobs.add(new Blob(id, blobArea, new IntPoint((int)c.x, (int)c.y), r,
+                    image.getMinX(l), image.getMinY(l), image.getMaxX(l), image.getMaxY(l), perimeter[l]));
             id++;
         }
+        
+        last.set(new int[] {blobs.size(), idBigBlob});
+        return blobs;
     }
 }
\ No newline at end of file
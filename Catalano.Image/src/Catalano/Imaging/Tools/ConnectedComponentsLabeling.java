@@ -0,0 +1,314 @@
+// Catalano Imaging Library
+// The Catalano Framework
+//
+// Copyright © Diego Catalano, 2013
+// diego.catalano at live.com
+//
+//    This library is free software; you can redistribute it and/or
+//    modify it under the terms of the GNU Lesser General Public
+//    License as published by the Free Software Foundation; either
+//    version 2.1 of the License, or (at your option) any later version.
+//
+//    This library is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+//    Lesser General Public License for more details.
+//
+//    You should have received a copy of the GNU Lesser General Public
+//    License along with this library; if not, write to the Free Software
+//    Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+//
+
+package Catalano.Imaging.Tools;
+
+import Catalano.Core.Parallel;
+import Catalano.Imaging.FastBitmap;
+import java.util.Arrays;
+
+/**
+ * Connected components labeling.
+ * <br /> Two pass algorithm with an union-find equivalence table. The first pass assigns provisional labels and accumulates area, bounding box and moments for each of them,
+ * the second pass replaces the provisional labels by consecutive labels, numbered in the order the components are found scanning the image.
+ * <br /> In parallel mode the image is split in horizontal strips labeled independently, and the labels that touch across strip borders are merged before the second pass.
+ * <br /> Foreground pixels are all non zero pixels.
+ * @see LabeledImage
+ * @author Diego Catalano
+ */
+public class ConnectedComponentsLabeling {
+
+    /**
+     * Pixel connectivity.
+     */
+    public static enum Connectivity {
+        /**
+         * Horizontal and vertical neighbours.
+         */
+        Four,
+        /**
+         * Horizontal, vertical and diagonal neighbours.
+         */
+        Eight
+    };
+
+    private Connectivity connectivity = Connectivity.Eight;
+    private int threads = 1;
+
+    /**
+     * Initialize a new instance of the ConnectedComponentsLabeling class.
+     */
+    public ConnectedComponentsLabeling() {}
+
+    /**
+     * Initialize a new instance of the ConnectedComponentsLabeling class.
+     * @param connectivity Pixel connectivity.
+     */
+    public ConnectedComponentsLabeling(Connectivity connectivity) {
+        this.connectivity = connectivity;
+    }
+
+    /**
+     * Initialize a new instance of the ConnectedComponentsLabeling class.
+     * @param connectivity Pixel connectivity.
+     * @param threads Number of strips labeled in parallel.
+     */
+    public ConnectedComponentsLabeling(Connectivity connectivity, int threads) {
+        this.connectivity = connectivity;
+        setThreads(threads);
+    }
+
+    /**
+     * Get pixel connectivity.
+     * @return Pixel connectivity.
+     */
+    public Connectivity getConnectivity() {
+        return connectivity;
+    }
+
+    /**
+     * Set pixel connectivity.
+     * @param connectivity Pixel connectivity.
+     */
+    public void setConnectivity(Connectivity connectivity) {
+        this.connectivity = connectivity;
+    }
+
+    /**
+     * Get number of strips labeled in parallel.
+     * @return Number of threads.
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Set number of strips labeled in parallel.
+     * @param threads Number of threads.
+     */
+    public void setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Label the connected components of an image.
+     * @param fastBitmap Image to be processed.
+     * @return Labeled image.
+     */
+    public LabeledImage Process(FastBitmap fastBitmap){
+        final int width = fastBitmap.getWidth();
+        final int height = fastBitmap.getHeight();
+        final byte[] gray = fastBitmap.getGrayData();
+        final int[] rgb = fastBitmap.getRGBData();
+        final int[] labels = new int[width * height];
+        final boolean eight = connectivity == Connectivity.Eight;
+
+        final int n = Parallel.Blocks(0, height, threads);
+        final Strip[] strips = new Strip[n];
+
+        // First pass, provisional labels and statistics of each strip.
+        Parallel.For(0, height, n, new Parallel.IBlock() {
+            @Override
+            public void Compute(int block, int from, int to) {
+                Strip strip = new Strip(from, to);
+                strip.label(labels, gray, rgb, width, eight);
+                strips[block] = strip;
+            }
+        });
+
+        // Global equivalence table.
+        final int[] base = new int[n];
+        int total = 0;
+        for (int s = 0; s < n; s++) {
+            base[s] = total;
+            total += strips[s].count;
+        }
+        int[] parent = new int[total + 1];
+        for (int s = 0; s < n; s++) {
+            Strip strip = strips[s];
+            for (int l = 1; l <= strip.count; l++)
+                parent[base[s] + l] = base[s] + strip.parent[l];
+        }
+
+        // Merge labels across strip borders.
+        for (int s = 1; s < n; s++) {
+            int row = strips[s].from * width;
+            int above = row - width;
+            for (int y = 0; y < width; y++) {
+                int l = labels[row + y];
+                if (l == 0) continue;
+                l += base[s];
+                int a = labels[above + y];
+                if (a != 0) union(parent, l, base[s - 1] + a);
+                if (eight) {
+                    if (y > 0 && (a = labels[above + y - 1]) != 0) union(parent, l, base[s - 1] + a);
+                    if (y < width - 1 && (a = labels[above + y + 1]) != 0) union(parent, l, base[s - 1] + a);
+                }
+            }
+        }
+
+        // Roots are the smallest label of each set, so final labels follow the scan order.
+        final int[] map = new int[total + 1];
+        int count = 0;
+        for (int l = 1; l <= total; l++) {
+            int r = find(parent, l);
+            map[l] = r == l ? ++count : map[r];
+        }
+
+        LabeledImage image = new LabeledImage(width, height, labels, count);
+        for (int s = 0; s < n; s++) {
+            Strip strip = strips[s];
+            for (int l = 1; l <= strip.count; l++)
+                image.merge(map[base[s] + l], strip.area[l], strip.minX[l], strip.minY[l], strip.maxX[l], strip.maxY[l],
+                        strip.sumX[l], strip.sumY[l], strip.sumXX[l], strip.sumXY[l], strip.sumYY[l]);
+        }
+
+        // Second pass, final labels.
+        Parallel.For(0, height, n, new Parallel.IBlock() {
+            @Override
+            public void Compute(int block, int from, int to) {
+                int offset = base[block];
+                for (int i = from * width; i < to * width; i++) {
+                    if (labels[i] != 0) labels[i] = map[offset + labels[i]];
+                }
+            }
+        });
+
+        return image;
+    }
+
+    private static int union(int[] parent, int a, int b){
+        a = find(parent, a);
+        b = find(parent, b);
+        if (a < b) { parent[b] = a; return a; }
+        parent[a] = b;
+        return b;
+    }
+
+    private static int find(int[] parent, int a){
+        while (parent[a] != a) {
+            parent[a] = parent[parent[a]];
+            a = parent[a];
+        }
+        return a;
+    }
+
+    /**
+     * Provisional labels and statistics of a strip of rows.
+     */
+    private static class Strip {
+
+        final int from, to;
+        int count;
+        int[] parent = new int[256];
+        int[] area = new int[256];
+        int[] minX = new int[256], minY = new int[256], maxX = new int[256], maxY = new int[256];
+        long[] sumX = new long[256], sumY = new long[256];
+        long[] sumXX = new long[256], sumXY = new long[256], sumYY = new long[256];
+
+        Strip(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        void label(int[] labels, byte[] gray, int[] rgb, int width, boolean eight){
+            for (int x = from; x < to; x++) {
+                int row = x * width;
+
+                // Mark foreground pixels of the row.
+                if (gray != null) {
+                    for (int i = row; i < row + width; i++)
+                        labels[i] = gray[i] != 0 ? -1 : 0;
+                }
+                else{
+                    for (int i = row; i < row + width; i++)
+                        labels[i] = (rgb[i] & 0xFFFFFF) != 0 ? -1 : 0;
+                }
+
+                boolean top = x > from;
+                for (int y = 0; y < width; y++) {
+                    int i = row + y;
+                    if (labels[i] == 0) continue;
+
+                    int d = y > 0 ? labels[i - 1] : 0;
+                    int b = top ? labels[i - width] : 0;
+                    int l;
+                    if (eight) {
+                        // Decision tree: the top pixel is a neighbour of all the others.
+                        if (b != 0) {
+                            l = b;
+                        }
+                        else{
+                            int c = top && y < width - 1 ? labels[i - width + 1] : 0;
+                            int a = top && y > 0 ? labels[i - width - 1] : 0;
+                            if (c != 0) {
+                                if (a != 0) l = union(parent, c, a);
+                                else if (d != 0) l = union(parent, c, d);
+                                else l = c;
+                            }
+                            else if (a != 0) l = a;
+                            else if (d != 0) l = d;
+                            else l = create(x, y);
+                        }
+                    }
+                    else{
+                        if (b != 0 && d != 0) l = b == d ? b : union(parent, b, d);
+                        else if (b != 0) l = b;
+                        else if (d != 0) l = d;
+                        else l = create(x, y);
+                    }
+                    labels[i] = l;
+
+                    area[l]++;
+                    if (x > maxX[l]) maxX[l] = x;
+                    if (y < minY[l]) minY[l] = y;
+                    if (y > maxY[l]) maxY[l] = y;
+                    sumX[l] += x;
+                    sumY[l] += y;
+                    sumXX[l] += (long)x * x;
+                    sumXY[l] += (long)x * y;
+                    sumYY[l] += (long)y * y;
+                }
+            }
+        }
+
+        private int create(int x, int y){
+            if (++count == parent.length) {
+                int size = parent.length * 2;
+                parent = Arrays.copyOf(parent, size);
+                area = Arrays.copyOf(area, size);
+                minX = Arrays.copyOf(minX, size);
+                minY = Arrays.copyOf(minY, size);
+                maxX = Arrays.copyOf(maxX, size);
+                maxY = Arrays.copyOf(maxY, size);
+                sumX = Arrays.copyOf(sumX, size);
+                sumY = Arrays.copyOf(sumY, size);
+                sumXX = Arrays.copyOf(sumXX, size);
+                sumXY = Arrays.copyOf(sumXY, size);
+                sumYY = Arrays.copyOf(sumYY, size);
+            }
+            parent[count] = count;
+            minX[count] = maxX[count] = x;
+            minY[count] = maxY[count] = y;
+            return count;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,210 @@
+// Catalano Imaging Library
+// The Catalano Framework
+//
+// Copyright © Diego Catalano, 2013
+// diego.catalano at live.com
+//
+//    This library is free software; you can redistribute it and/or
+//    modify it under the terms of the GNU Lesser General Public
+//    License as published by the Free Software Foundation; either
+//    version 2.1 of the License, or (at your option) any later version.
+//
+//    This library is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+//    Lesser General Public License for more details.
+//
+//    You should have received a copy of the GNU Lesser General Public
+//    License along with this library; if not, write to the Free Software
+//    Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+//
+
+package Catalano.Imaging.Tools;
+
+import Catalano.Core.Parallel;
+import Catalano.Imaging.FastBitmap;
+
+/**
+ * Exact euclidean distance transform.
+ * <br /> Computes for each pixel the distance to the nearest background (zero) pixel, so background pixels have distance 0.
+ * The algorithm of Felzenszwalb and Huttenlocher runs in linear time with two separable passes:
+ * the first one finds the nearest background pixel in each column, the second one takes the lower envelope of the parabolas of each row.
+ * Both passes can run in parallel.
+ * <br /> Pixels of an image without background get Integer.MAX_VALUE (or infinity) and no nearest pixel.
+ * <br /> <b>P. F. Felzenszwalb and D. P. Huttenlocher, "Distance Transforms of Sampled Functions", Theory of Computing, Vol. 8, 2012.</b>
+ * @author Diego Catalano
+ */
+public class DistanceTransform {
+
+    private int threads = 1;
+
+    /**
+     * Initialize a new instance of the DistanceTransform class.
+     */
+    public DistanceTransform() {}
+
+    /**
+     * Initialize a new instance of the DistanceTransform class.
+     * @param threads Number of threads.
+     */
+    public DistanceTransform(int threads) {
+        setThreads(threads);
+    }
+
+    /**
+     * Get number of threads.
+     * @return Number of threads.
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Set number of threads.
+     * @param threads Number of threads.
+     */
+    public void setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Compute the distance transform.
+     * @param fastBitmap Image to be processed, non zero pixels are objects.
+     * @return Distances, row by row.
+     */
+    public float[] Compute(FastBitmap fastBitmap){
+        int[] squared = ComputeSquared(fastBitmap, null);
+        float[] d = new float[squared.length];
+        for (int i = 0; i < d.length; i++)
+            d[i] = squared[i] == Integer.MAX_VALUE ? Float.POSITIVE_INFINITY : (float)Math.sqrt(squared[i]);
+        return d;
+    }
+
+    /**
+     * Compute the squared distance transform.
+     * @param fastBitmap Image to be processed, non zero pixels are objects.
+     * @return Squared distances, row by row.
+     */
+    public int[] ComputeSquared(FastBitmap fastBitmap){
+        return ComputeSquared(fastBitmap, null);
+    }
+
+    /**
+     * Compute the squared distance transform and the nearest background pixel of each pixel.
+     * @param fastBitmap Image to be processed, non zero pixels are objects.
+     * @param nearest Index (x * width + y) of the nearest background pixel, -1 if there is none. Can be null.
+     * @return Squared distances, row by row.
+     */
+    public int[] ComputeSquared(FastBitmap fastBitmap, final int[] nearest){
+        final int width = fastBitmap.getWidth();
+        final int height = fastBitmap.getHeight();
+        final byte[] gray = fastBitmap.getGrayData();
+        final int[] rgb = fastBitmap.getRGBData();
+        if (nearest != null && nearest.length < width * height)
+            throw new IllegalArgumentException("The nearest array must have one element for each pixel.");
+
+        // Distance to the nearest background pixel in the same column, and its row.
+        final int[] g = new int[width * height];
+        final int[] row = nearest != null ? new int[width * height] : null;
+        final int inf = width + height;
+
+        Parallel.For(0, width, threads, new Parallel.IBlock() {
+            @Override
+            public void Compute(int block, int from, int to) {
+                for (int y = from; y < to; y++) {
+                    int i = y;
+                    g[i] = isObject(gray, rgb, i) ? inf : 0;
+                    if (row != null) row[i] = g[i] == 0 ? 0 : -1;
+                }
+                for (int x = 1; x < height; x++) {
+                    for (int y = from; y < to; y++) {
+                        int i = x * width + y;
+                        if (isObject(gray, rgb, i)) {
+                            int up = g[i - width];
+                            g[i] = up == inf ? inf : up + 1;
+                            if (row != null) row[i] = row[i - width];
+                        }
+                        else{
+                            g[i] = 0;
+                            if (row != null) row[i] = x;
+                        }
+                    }
+                }
+                for (int x = height - 2; x >= 0; x--) {
+                    for (int y = from; y < to; y++) {
+                        int i = x * width + y;
+                        int down = g[i + width];
+                        if (down != inf && down + 1 < g[i]) {
+                            g[i] = down + 1;
+                            if (row != null) row[i] = row[i + width];
+                        }
+                    }
+                }
+            }
+        });
+
+        // Lower envelope of the parabolas of each row.
+        final int[] d = new int[width * height];
+        final long inf2 = (long)inf * inf;
+        Parallel.For(0, height, threads, new Parallel.IBlock() {
+            @Override
+            public void Compute(int block, int from, int to) {
+                long[] f = new long[width];
+                int[] v = new int[width];
+                double[] z = new double[width + 1];
+                for (int x = from; x < to; x++) {
+                    int offset = x * width;
+                    for (int q = 0; q < width; q++) {
+                        long gq = g[offset + q];
+                        f[q] = gq * gq;
+                    }
+
+                    int k = 0;
+                    v[0] = 0;
+                    z[0] = Double.NEGATIVE_INFINITY;
+                    z[1] = Double.POSITIVE_INFINITY;
+                    for (int q = 1; q < width; q++) {
+                        double s = intersection(f, q, v[k]);
+                        while (s <= z[k]) {
+                            k--;
+                            s = intersection(f, q, v[k]);
+                        }
+                        k++;
+                        v[k] = q;
+                        z[k] = s;
+                        z[k + 1] = Double.POSITIVE_INFINITY;
+                    }
+
+                    k = 0;
+                    for (int q = 0; q < width; q++) {
+                        while (z[k + 1] < q) k++;
+                        int p = v[k];
+                        long dist = (long)(q - p) * (q - p) + f[p];
+                        int i = offset + q;
+                        if (dist >= inf2) {
+                            d[i] = Integer.MAX_VALUE;
+                            if (nearest != null) nearest[i] = -1;
+                        }
+                        else{
+                            d[i] = (int)dist;
+                            if (nearest != null) nearest[i] = row[offset + p] * width + p;
+                        }
+                    }
+                }
+            }
+        });
+
+        return d;
+    }
+
+    private static boolean isObject(byte[] gray, int[] rgb, int i){
+        return gray != null ? gray[i] != 0 : (rgb[i] & 0xFFFFFF) != 0;
+    }
+
+    /**
+     * Abscissa where the parabolas rooted at q and p intersect.
+     */
+    private static double intersection(long[] f, int q, int p){
+        return ((f[q] + (long)q * q) - (f[p] + (long)p * p)) / (2.0 * (q - p));
+    }
+}
\ No newline at end of file
@@ -21,7 +21,6 @@
 
 package Catalano.Imaging.Tools;
 
-import Catalano.Core.IntPoint;
 import Catalano.Imaging.FastBitmap;
 import Catalano.Imaging.Tools.Blob;
 import Catalano.Imaging.Tools.BlobDetection;
@@ -56,23 +55,31 @@ public class ExtractBlob {
     public FastBitmap Extract(int id, FastBitmap fastBitmap){
         
         // Check if blobs list is null.
-        if (this.blobs == null)
-            this.blobs = new BlobDetection().ProcessImage(fastBitmap);
+        ArrayList<Blob> blobs = this.blobs;
+        if (blobs == null)
+            blobs = new BlobDetection().ProcessImage(fastBitmap);
         
         FastBitmap image;
+        int width = fastBitmap.getWidth();
+        int[] runs = blobs.get(id).getRuns();
         
+        // Copy each run of the blob.
         if (fastBitmap.isGrayscale()) {
             image = new FastBitmap(fastBitmap.getWidth(), fastBitmap.getHeight(), FastBitmap.ColorSpace.Grayscale);
-            for (IntPoint p : blobs.get(id).getPoints()) {
-                image.setGray(p.x, p.y, fastBitmap.getGray(p.x, p.y));
+            byte[] src = fastBitmap.getGrayData();
+            byte[] dst = image.getGrayData();
+            for (int i = 0; i < runs.length; i += 3) {
+                int offset = runs[i] * width + runs[i + 1];
+                System.arraycopy(src, offset, dst, offset, runs[i + 2] - runs[i + 1] + 1);
             }
         }
         else{
             image = new FastBitmap(fastBitmap.getWidth(), fastBitmap.getHeight(), FastBitmap.ColorSpace.RGB);
-            for (IntPoint p : blobs.get(id).getPoints()) {
-                image.setRed(p.x, p.y, fastBitmap.getRed(p.x, p.y));
-                image.setGreen(p.x, p.y, fastBitmap.getGreen(p.x, p.y));
-                image.setBlue(p.x, p.y, fastBitmap.getBlue(p.x, p.y));
+            int[] src = fastBitmap.getRGBData();
+            int[] dst = image.getRGBData();
+            for (int i = 0; i < runs.length; i += 3) {
+                int offset = runs[i] * width + runs[i + 1];
+                System.arraycopy(src, offset, dst, offset, runs[i + 2] - runs[i + 1] + 1);
             }
         }
         return image;
@@ -172,7 +172,7 @@ public class GrayLevelCooccurrenceMatrix {
         
         int maxGray = 255;
         if (autoGray) maxGray = getMax(fastBitmap);
-        this.numPairs = 0;
+        int numPairs = 0;
         
         double[][] coocurrence = new double[maxGray + 1][maxGray + 1];
         
@@ -215,6 +215,7 @@ public class GrayLevelCooccurrenceMatrix {
             break;
         }
         
+        this.numPairs = numPairs;
         if (normalize) Normalize(coocurrence, numPairs == 0 ? 1 : numPairs);
         return coocurrence;
         
@@ -79,6 +79,7 @@ public class GrayLevelRunLengthMatrix {
         int width = fastBitmap.getWidth();
         
         double[][] runMatrix = new double[maxGray + 1][width + 1];
+        int numPrimitives = 0;
         
         switch(degree){
             case Degree_0:
@@ -240,6 +241,7 @@ public class GrayLevelRunLengthMatrix {
                 }
             break;
         }
+        this.numPrimitives = numPrimitives;
         return runMatrix;
     }
 
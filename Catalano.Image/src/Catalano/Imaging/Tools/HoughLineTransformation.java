@@ -31,6 +31,8 @@ import java.util.Collections;
 
 /**
  * Hough line transfomation.
+ * <br /> Each call to ProcessImage votes in a new accumulator, which is returned, so an instance can be shared between threads.
+ * The methods without accumulator read the last accumulator created by the calling thread.
  * @author Diego Catalano
  */
 public class HoughLineTransformation {
@@ -51,32 +53,123 @@ public class HoughLineTransformation {
     
     boolean sort = true;
  
-    // the width and height of the image 
-    protected int width, height;
- 
-    // the hough array 
-    protected int[][] houghArray;
- 
-    // the coordinates of the centre of the image 
-    protected float centerX, centerY;
- 
-    // the height of the hough array 
-    protected int houghHeight;
- 
-    // double the hough height (allows for negative numbers) 
-    protected int doubleHeight;
- 
-    // the number of points that have been added 
-    protected int numPoints;
- 
     // cache of values of sin and cos for different theta values. Has a significant performance improvement. 
     private double[] sinCache;
     private double[] cosCache;
+    
+    // the last accumulator of each thread, for the methods without accumulator
+    private final ThreadLocal<Accumulator> last = new ThreadLocal<Accumulator>();
+
+    /**
+     * Hough accumulator of an image.
+     */
+    public static class Accumulator {
+        
+        // the width and height of the image 
+        private final int width, height;
+        
+        // the hough array 
+        private final int[][] houghArray;
+        
+        // the coordinates of the centre of the image 
+        private final float centerX, centerY;
+        
+        // the height of the hough array 
+        private final int houghHeight;
+        
+        // double the hough height (allows for negative numbers) 
+        private final int doubleHeight;
+        
+        // the number of points that have been added 
+        private int numPoints;
+        
+        Accumulator(int width, int height, int maxTheta) {
+            this.width = width;
+            this.height = height;
+            
+            // Calculate the maximum height the hough array needs to have 
+            this.houghHeight = (int) (Math.sqrt(2) * Math.max(height, width)) / 2;
+            
+            // Double the height of the hough array to cope with negative r values 
+            this.doubleHeight = 2 * houghHeight;
+            
+            this.houghArray = new int[maxTheta][doubleHeight];
+            this.centerX = width / 2;
+            this.centerY = height / 2;
+        }
+
+        /**
+         * Get width of the image.
+         * @return Width.
+         */
+        public int getWidth() {
+            return width;
+        }
+
+        /**
+         * Get height of the image.
+         * @return Height.
+         */
+        public int getHeight() {
+            return height;
+        }
+
+        /**
+         * Get number of points that voted.
+         * @return Number of points.
+         */
+        public int getNumPoints() {
+            return numPoints;
+        }
+        
+        /**
+         * Provides access to the hough array, indexed by theta and r.
+         * @return Hough array.
+         */
+        public int[][] getHoughArray() {
+            return houghArray;
+        }
+        
+        /**
+         * Get the maximum value of the hough array.
+         * @return Maximum value.
+         */
+        public int getMaximumValue() {
+            int max = 0;
+            for (int t = 0; t < houghArray.length; t++) {
+                for (int r = 0; r < doubleHeight; r++) {
+                    if (houghArray[t][r] > max) {
+                        max = houghArray[t][r];
+                    }
+                }
+            }
+            return max;
+        }
+        
+        /**
+         * Convert the hough array to an image.
+         * @return Hough array image.
+         */
+        public FastBitmap getHoughArrayImage() {
+            int max = getMaximumValue();
+            FastBitmap fastBitmap = new FastBitmap(houghArray.length, doubleHeight);
+            for (int t = 0; t < houghArray.length; t++) {
+                for (int r = 0; r < doubleHeight; r++) {
+                    double value = 255 * ((double) houghArray[t][r]) / max;
+                    int v = 255 - (int) value;
+                    fastBitmap.setRGB(r, t, v, v, v);
+                }
+            }
+            return fastBitmap;
+        }
+    }
 
     /**
      * Initialize a new instance of the HoughLineTransformation class.
      */
-    public HoughLineTransformation() {}
+    public HoughLineTransformation() {
+        createCache();
+    }
     
     /**
      * Initialize a new instance of the HoughLineTransformation class.
@@ -84,6 +177,7 @@ public class HoughLineTransformation {
      */
     public HoughLineTransformation(int minIntensity) {
         this.minIntensity = Math.max(1,minIntensity);
+        createCache();
     }
     
     /**
@@ -94,6 +188,7 @@ public class HoughLineTransformation {
     public HoughLineTransformation(int minIntensity, int maxIntensity) {
         this.minIntensity = Math.max(1,minIntensity);
         this.maxIntensity = Math.max(1,maxIntensity);
+        createCache();
     }
     
     /**
@@ -106,6 +201,7 @@ public class HoughLineTransformation {
         this.minIntensity = Math.max(1,minIntensity);
         this.maxIntensity = Math.max(1,maxIntensity);
         this.sort = sort;
+        createCache();
     }
 
     /**
@@ -148,67 +244,46 @@ public class HoughLineTransformation {
         this.stepsPerDegree = stepsPerDegree;
         
         stepsPerDegree = Math.max( 1, Math.min( 10, stepsPerDegree ) );
-        houghHeight = 180 * stepsPerDegree;
-        thetaStep = Math.PI / houghHeight;
-
-        // precalculate Sine and Cosine values
-        sinCache = new double[houghHeight];
-        cosCache = new double[houghHeight];
-
-        for ( int i = 0; i < houghHeight; i++ )
-        {
-            sinCache[i] = Math.sin( i * thetaStep );
-            cosCache[i] = Math.cos( i * thetaStep );
-        }
+        thetaStep = Math.PI / (180 * stepsPerDegree);
+        createCache();
     }
     
-    private void init(){
-        // Calculate the maximum height the hough array needs to have 
-        houghHeight = (int) (Math.sqrt(2) * Math.max(height, width)) / 2; 
- 
-        // Double the height of the hough array to cope with negative r values 
-        doubleHeight = 2 * houghHeight;
- 
-        // Create the hough array 
-        houghArray = new int[maxTheta][doubleHeight];
- 
-        // Find edge points and vote in array 
-        centerX = width / 2;
-        centerY = height / 2;
- 
-        // Count how many points there are 
-        numPoints = 0;
- 
-        // cache the values of sin and cos for faster processing 
-        sinCache = new double[maxTheta];
-        cosCache = sinCache.clone();
+    // cache the values of sin and cos for faster processing 
+    private void createCache(){
+        double[] sin = new double[maxTheta];
+        double[] cos = new double[maxTheta];
         for (int t = 0; t < maxTheta; t++) {
             double realTheta = t * thetaStep;
-            sinCache[t] = Math.sin(realTheta);
-            cosCache[t] = Math.cos(realTheta);
+            sin[t] = Math.sin(realTheta);
+            cos[t] = Math.cos(realTheta);
         }
+        sinCache = sin;
+        cosCache = cos;
     }
     
     /**
      * Process Image.
      * @param fastBitmap Image to be processed.
+     * @return Accumulator with the votes of the image, or null if the image is not grayscale.
      */
-    public void ProcessImage(FastBitmap fastBitmap) { 
+    public Accumulator ProcessImage(FastBitmap fastBitmap) { 
         
         if (fastBitmap.isGrayscale()){
-            this.width = fastBitmap.getWidth();
-            this.height = fastBitmap.getHeight();
+            int width = fastBitmap.getWidth();
+            int height = fastBitmap.getHeight();
 
-            init();
+            Accumulator acc = new Accumulator(width, height, maxTheta);
             // Now find edge points and update the hough array 
             for (int x = 0; x < height; x++) {
                 for (int y = 0; y < width; y++) {
                     // Find non-black pixels
                     if (fastBitmap.getGray(x, y) == 255) {
-                        addPoint(x, y);
+                        addPoint(acc, x, y);
                     }
                 }
             }
+            last.set(acc);
+            return acc;
         }
         else{
             try {
@@ -217,42 +292,75 @@ public class HoughLineTransformation {
                 e.printStackTrace();
             }
         }
+        return null;
     }
     
+    /**
+     * Add edge points to the last accumulator created by the calling thread.
+     * @param edgePoints Edge points.
+     */
     public void addEdgePoints(ArrayList<IntPoint> edgePoints){
+        addEdgePoints(last(), edgePoints);
+    }
+    
+    /**
+     * Add edge points to an accumulator.
+     * @param accumulator Accumulator.
+     * @param edgePoints Edge points.
+     */
+    public void addEdgePoints(Accumulator accumulator, ArrayList<IntPoint> edgePoints){
         for (IntPoint point : edgePoints) {
-            addPoint(point.x, point.y);
+            addPoint(accumulator, point.x, point.y);
         }
     }
     
-    private void addPoint(int x, int y) {
+    private void addPoint(Accumulator acc, int x, int y) {
+        double[] sinCache = this.sinCache;
+        double[] cosCache = this.cosCache;
+        int[][] houghArray = acc.houghArray;
  
         // Go through each value of theta
         for (int t = 0; t < maxTheta; t++) {
  
             //Work out the r values for each theta step
-            int r = (int) (((x - centerX) * cosCache[t]) + ((y - centerY) * sinCache[t]));
+            int r = (int) (((x - acc.centerX) * cosCache[t]) + ((y - acc.centerY) * sinCache[t]));
  
             // this copes with negative values of r
-            r += houghHeight;
+            r += acc.houghHeight;
  
-            if (r < 0 || r >= doubleHeight) continue;
+            if (r < 0 || r >= acc.doubleHeight) continue;
  
             // Increment the hough array
             houghArray[t][r]++;
  
         }
  
-        numPoints++;
+        acc.numPoints++;
     }
     
+    /**
+     * Get lines of the last accumulator created by the calling thread.
+     * @return Lines.
+     */
     public ArrayList<HoughLine> getLines() {
+        return getLines(last());
+    }
+    
+    /**
+     * Get lines of an accumulator.
+     * @param accumulator Accumulator.
+     * @return Lines.
+     */
+    public ArrayList<HoughLine> getLines(Accumulator accumulator) {
  
         // Initialise the vector of lines that we'll return 
         ArrayList<HoughLine> lines = new ArrayList<HoughLine>(); 
+        
+        int[][] houghArray = accumulator.houghArray;
+        int doubleHeight = accumulator.doubleHeight;
  
         // Only proceed if the hough array is not empty 
-        if (numPoints == 0) return lines;
+        if (accumulator.numPoints == 0) return lines;
         // Search for local peaks above threshold to draw 
         for (int t = 0; t < maxTheta; t++) { 
             loop: 
@@ -291,28 +399,26 @@ public class HoughLineTransformation {
         return lines;
     }
     
+    /**
+     * Get the maximum value of the last accumulator created by the calling thread.
+     * @return Maximum value.
+     */
     public int getMaximumValue() {
-        int max = 0;
-        for (int t = 0; t < maxTheta; t++) {
-            for (int r = 0; r < doubleHeight; r++) {
-                if (houghArray[t][r] > max) {
-                    max = houghArray[t][r];
-                }
-            }
-        }
-        return max;
+        return last().getMaximumValue();
     }
     
+    /**
+     * Convert the last accumulator created by the calling thread to an image.
+     * @return Hough array image.
+     */
     public FastBitmap getHoughArrayImage() {
-        int max = getMaximumValue();
-        FastBitmap fastBitmap = new FastBitmap(maxTheta, doubleHeight);
-        for (int t = 0; t < maxTheta; t++) {
-            for (int r = 0; r < doubleHeight; r++) {
-                double value = 255 * ((double) houghArray[t][r]) / max;
-                int v = 255 - (int) value;
-                fastBitmap.setRGB(r, t, v, v, v);
-            }
-        }
-        return fastBitmap;
+        return last().getHoughArrayImage();
+    }
+    
+    private Accumulator last(){
+        Accumulator acc = last.get();
+        if (acc == null)
+            throw new IllegalStateException("No image was processed by this thread.");
+        return acc;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,293 @@
+// Catalano Imaging Library
+// The Catalano Framework
+//
+// Copyright © Diego Catalano, 2013
+// diego.catalano at live.com
+//
+//    This library is free software; you can redistribute it and/or
+//    modify it under the terms of the GNU Lesser General Public
+//    License as published by the Free Software Foundation; either
+//    version 2.1 of the License, or (at your option) any later version.
+//
+//    This library is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+//    Lesser General Public License for more details.
+//
+//    You should have received a copy of the GNU Lesser General Public
+//    License along with this library; if not, write to the Free Software
+//    Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+//
+
+package Catalano.Imaging.Tools;
+
+import Catalano.Imaging.FastBitmap;
+
+/**
+ * Gaussian and Laplacian image pyramid.
+ * <br /> Each level is built from the previous one with a 5-tap [1 4 6 4 1] separable blur and 2x decimation in one pass.
+ * All levels are kept in one contiguous float buffer, so a pyramid of fixed size can be updated in place for each frame of a video.
+ * <br /> The Gaussian pyramid can be converted in place to a Laplacian pyramid and reconstructed back, as described by Burt and Adelson in:
+ * <b>P. J. Burt and E. H. Adelson, "The Laplacian Pyramid as a Compact Image Code", IEEE Transactions on Communications 31(4), pp. 532–540, 1983</b>.
+ * @author Diego Catalano
+ */
+public class ImagePyramid {
+    
+    private int levels;
+    private int[] widths;
+    private int[] heights;
+    private int[] offsets;
+    private float[] data;
+    private boolean laplacian = false;
+    
+    private float[] row;
+    private float[] expanded;
+
+    /**
+     * Initializes a new instance of the ImagePyramid class.
+     * @param width Width of the first level.
+     * @param height Height of the first level.
+     * @param levels Number of levels, limited to the level where the image is 1x1.
+     */
+    public ImagePyramid(int width, int height, int levels) {
+        if (width <= 0 || height <= 0)
+            throw new IllegalArgumentException("Width and height must be greater than 0.");
+        if (levels < 1)
+            throw new IllegalArgumentException("The pyramid must have at least one level.");
+        
+        int max = 1;
+        for (int w = width, h = height; w > 1 || h > 1; w = (w + 1) / 2, h = (h + 1) / 2)
+            max++;
+        this.levels = Math.min(levels, max);
+        
+        this.widths = new int[this.levels];
+        this.heights = new int[this.levels];
+        this.offsets = new int[this.levels];
+        long size = 0;
+        for (int k = 0; k < this.levels; k++) {
+            widths[k] = k == 0 ? width : (widths[k - 1] + 1) / 2;
+            heights[k] = k == 0 ? height : (heights[k - 1] + 1) / 2;
+            offsets[k] = (int)size;
+            size += (long)widths[k] * heights[k];
+        }
+        if (size > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Image is too large.");
+        
+        this.data = new float[(int)size];
+        this.row = new float[width + 4];
+        if (this.levels > 1)
+            this.expanded = new float[heights[1] * width];
+    }
+    
+    /**
+     * Initializes a new instance of the ImagePyramid class and builds the Gaussian pyramid.
+     * @param fastBitmap Grayscale image.
+     * @param levels Number of levels, limited to the level where the image is 1x1.
+     */
+    public ImagePyramid(FastBitmap fastBitmap, int levels){
+        this(fastBitmap.getWidth(), fastBitmap.getHeight(), levels);
+        Update(fastBitmap);
+    }
+
+    /**
+     * Get number of levels.
+     * @return Number of levels.
+     */
+    public int getLevels() {
+        return levels;
+    }
+    
+    /**
+     * Get width of a level.
+     * @param level Level.
+     * @return Width.
+     */
+    public int getWidth(int level){
+        return widths[level];
+    }
+    
+    /**
+     * Get height of a level.
+     * @param level Level.
+     * @return Height.
+     */
+    public int getHeight(int level){
+        return heights[level];
+    }
+    
+    /**
+     * Get offset of a level in the data buffer. Each level is stored row by row.
+     * @param level Level.
+     * @return Offset.
+     */
+    public int getOffset(int level){
+        return offsets[level];
+    }
+    
+    /**
+     * Provides access to the buffer keeping all the levels.
+     * @return Data.
+     */
+    public float[] getData() {
+        return data;
+    }
+    
+    /**
+     * Check if the pyramid holds the Laplacian levels.
+     * @return True if the levels are Laplacian, except the last one which is always Gaussian.
+     */
+    public boolean isLaplacian() {
+        return laplacian;
+    }
+    
+    /**
+     * Get value of a pixel.
+     * @param level Level.
+     * @param x X axis coordinate.
+     * @param y Y axis coordinate.
+     * @return Value.
+     */
+    public float get(int level, int x, int y){
+        return data[offsets[level] + x * widths[level] + y];
+    }
+    
+    /**
+     * Build the Gaussian pyramid of a new image, reusing the buffer.
+     * @param fastBitmap Grayscale image with the same size of the first level.
+     */
+    public void Update(FastBitmap fastBitmap){
+        if (!fastBitmap.isGrayscale())
+            throw new IllegalArgumentException("Image pyramid only works with grayscale images.");
+        if (fastBitmap.getWidth() != widths[0] || fastBitmap.getHeight() != heights[0])
+            throw new IllegalArgumentException("The image must be the same dimension of the pyramid.");
+        
+        byte[] gray = fastBitmap.getGrayData();
+        for (int i = 0; i < gray.length; i++)
+            data[i] = gray[i] & 0xFF;
+        
+        for (int k = 1; k < levels; k++)
+            Reduce(k);
+        laplacian = false;
+    }
+    
+    /**
+     * Convert the Gaussian pyramid to a Laplacian pyramid in place.
+     * <br /> Each level keeps the difference between the Gaussian level and the expanded next level.
+     */
+    public void ToLaplacian(){
+        if (laplacian) return;
+        for (int k = 0; k < levels - 1; k++)
+            Expand(k, -1);
+        laplacian = true;
+    }
+    
+    /**
+     * Reconstruct the Gaussian pyramid from the Laplacian pyramid in place.
+     */
+    public void ToGaussian(){
+        if (!laplacian) return;
+        for (int k = levels - 2; k >= 0; k--)
+            Expand(k, 1);
+        laplacian = false;
+    }
+    
+    /**
+     * Convert a level to a grayscale image. Laplacian levels are shifted by 128.
+     * @param level Level.
+     * @return Grayscale image.
+     */
+    public FastBitmap toFastBitmap(int level){
+        int width = widths[level];
+        int height = heights[level];
+        float shift = laplacian && level < levels - 1 ? 128.5f : 0.5f;
+        
+        FastBitmap fb = new FastBitmap(width, height, FastBitmap.ColorSpace.Grayscale);
+        byte[] gray = fb.getGrayData();
+        int offset = offsets[level];
+        for (int i = 0; i < gray.length; i++) {
+            int v = (int)Math.floor(data[offset + i] + shift);
+            gray[i] = (byte)(v < 0 ? 0 : v > 255 ? 255 : v);
+        }
+        return fb;
+    }
+    
+    // Blur level - 1 with [1 4 6 4 1] and keep even rows and columns.
+    private void Reduce(int level){
+        int sw = widths[level - 1];
+        int sh = heights[level - 1];
+        int so = offsets[level - 1];
+        int dw = widths[level];
+        int dh = heights[level];
+        int d = offsets[level];
+        
+        for (int r = 0; r < dh; r++) {
+            int y = r * 2;
+            int a = so + Reflect(y - 2, sh) * sw;
+            int b = so + Reflect(y - 1, sh) * sw;
+            int c = so + y * sw;
+            int e = so + Reflect(y + 1, sh) * sw;
+            int f = so + Reflect(y + 2, sh) * sw;
+            
+            for (int x = 0; x < sw; x++)
+                row[x + 2] = data[a + x] + 4 * (data[b + x] + data[e + x]) + 6 * data[c + x] + data[f + x];
+            
+            row[0] = row[Reflect(-2, sw) + 2];
+            row[1] = row[Reflect(-1, sw) + 2];
+            row[sw + 2] = row[Reflect(sw, sw) + 2];
+            row[sw + 3] = row[Reflect(sw + 1, sw) + 2];
+            
+            for (int j = 0; j < dw; j++) {
+                int x = j * 2 + 2;
+                data[d++] = (row[x - 2] + 4 * (row[x - 1] + row[x + 1]) + 6 * row[x] + row[x + 2]) * (1f / 256);
+            }
+        }
+    }
+    
+    // Upsample level + 1 to the size of level and add it with the given sign.
+    private void Expand(int level, int sign){
+        int fw = widths[level];
+        int fh = heights[level];
+        int fo = offsets[level];
+        int cw = widths[level + 1];
+        int ch = heights[level + 1];
+        int co = offsets[level + 1];
+        
+        // Horizontal pass: odd columns are the average of two coarse pixels, even columns are [1 6 1] / 8.
+        for (int i = 0; i < ch; i++) {
+            int c = co + i * cw;
+            int e = i * fw;
+            for (int x = 0; x < fw; x++) {
+                int j = x >> 1;
+                if ((x & 1) == 0)
+                    expanded[e + x] = (data[c + Math.max(j - 1, 0)] + 6 * data[c + j] + data[c + Math.min(j + 1, cw - 1)]) * 0.125f;
+                else
+                    expanded[e + x] = (data[c + j] + data[c + Math.min(j + 1, cw - 1)]) * 0.5f;
+            }
+        }
+        
+        // Vertical pass with the same weights.
+        for (int y = 0; y < fh; y++) {
+            int i = y >> 1;
+            int f = fo + y * fw;
+            int b = i * fw;
+            int e = Math.min(i + 1, ch - 1) * fw;
+            if ((y & 1) == 0) {
+                int a = Math.max(i - 1, 0) * fw;
+                for (int x = 0; x < fw; x++)
+                    data[f + x] += sign * (expanded[a + x] + 6 * expanded[b + x] + expanded[e + x]) * 0.125f;
+            }
+            else{
+                for (int x = 0; x < fw; x++)
+                    data[f + x] += sign * (expanded[b + x] + expanded[e + x]) * 0.5f;
+            }
+        }
+    }
+    
+    // Mirror an index at the borders without repeating the edge.
+    private static int Reflect(int i, int n){
+        if (n == 1) return 0;
+        while (i < 0 || i >= n)
+            i = i < 0 ? -i : 2 * n - 2 - i;
+        return i;
+    }
+}
\ No newline at end of file
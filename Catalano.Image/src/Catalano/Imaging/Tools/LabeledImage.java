@@ -0,0 +1,256 @@
+// Catalano Imaging Library
+// The Catalano Framework
+//
+// Copyright © Diego Catalano, 2013
+// diego.catalano at live.com
+//
+//    This library is free software; you can redistribute it and/or
+//    modify it under the terms of the GNU Lesser General Public
+//    License as published by the Free Software Foundation; either
+//    version 2.1 of the License, or (at your option) any later version.
+//
+//    This library is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+//    Lesser General Public License for more details.
+//
+//    You should have received a copy of the GNU Lesser General Public
+//    License along with this library; if not, write to the Free Software
+//    Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+//
+
+package Catalano.Imaging.Tools;
+
+import Catalano.Core.DoublePoint;
+import Catalano.Imaging.FastBitmap;
+
+/**
+ * Label image of connected components, with area, bounding box and moments of each component.
+ * <br /> Labels go from 1 to getCount(), 0 is the background.
+ * @see ConnectedComponentsLabeling
+ * @author Diego Catalano
+ */
+public class LabeledImage {
+
+    private int width, height;
+    private int[] labels;
+    private int count;
+    private int[] area;
+    private int[] minX, minY, maxX, maxY;
+    private long[] sumX, sumY, sumXX, sumXY, sumYY;
+
+    /**
+     * Initialize a new instance of the LabeledImage class.
+     * @param width Width.
+     * @param height Height.
+     * @param labels Labels, row by row.
+     * @param count Number of components.
+     */
+    LabeledImage(int width, int height, int[] labels, int count) {
+        this.width = width;
+        this.height = height;
+        this.labels = labels;
+        this.count = count;
+        this.area = new int[count + 1];
+        this.minX = new int[count + 1];
+        this.minY = new int[count + 1];
+        this.maxX = new int[count + 1];
+        this.maxY = new int[count + 1];
+        this.sumX = new long[count + 1];
+        this.sumY = new long[count + 1];
+        this.sumXX = new long[count + 1];
+        this.sumXY = new long[count + 1];
+        this.sumYY = new long[count + 1];
+    }
+
+    /**
+     * Get width.
+     * @return Width.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Get height.
+     * @return Height.
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Get number of components.
+     * @return Number of components.
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Get the labels, row by row. Changes are reflected in the image.
+     * @return Labels.
+     */
+    public int[] getLabels() {
+        return labels;
+    }
+
+    /**
+     * Get the label of a pixel.
+     * @param x X axis coordinate.
+     * @param y Y axis coordinate.
+     * @return Label, 0 for background.
+     */
+    public int getLabel(int x, int y){
+        return labels[x * width + y];
+    }
+
+    /**
+     * Get area of a component.
+     * @param label Label.
+     * @return Number of pixels.
+     */
+    public int getArea(int label){
+        return area[label];
+    }
+
+    /**
+     * Get the first row of a component.
+     * @param label Label.
+     * @return Minimum X axis coordinate.
+     */
+    public int getMinX(int label){
+        return minX[label];
+    }
+
+    /**
+     * Get the first column of a component.
+     * @param label Label.
+     * @return Minimum Y axis coordinate.
+     */
+    public int getMinY(int label){
+        return minY[label];
+    }
+
+    /**
+     * Get the last row of a component.
+     * @param label Label.
+     * @return Maximum X axis coordinate.
+     */
+    public int getMaxX(int label){
+        return maxX[label];
+    }
+
+    /**
+     * Get the last column of a component.
+     * @param label Label.
+     * @return Maximum Y axis coordinate.
+     */
+    public int getMaxY(int label){
+        return maxY[label];
+    }
+
+    /**
+     * Get centroid of a component.
+     * @param label Label.
+     * @return Centroid.
+     */
+    public DoublePoint getCentroid(int label){
+        return new DoublePoint((double)sumX[label] / area[label], (double)sumY[label] / area[label]);
+    }
+
+    /**
+     * Get raw moment of a component, up to the second order.
+     * @param label Label.
+     * @param p Order in the X axis.
+     * @param q Order in the Y axis.
+     * @return Raw moment.
+     */
+    public double getRawMoment(int label, int p, int q){
+        switch (p * 3 + q) {
+            case 0: return area[label];
+            case 1: return sumY[label];
+            case 2: return sumYY[label];
+            case 3: return sumX[label];
+            case 4: return sumXY[label];
+            case 6: return sumXX[label];
+            default:
+                throw new IllegalArgumentException("Only moments up to the second order are supported.");
+        }
+    }
+
+    /**
+     * Get central moment of a component, up to the second order.
+     * @param label Label.
+     * @param p Order in the X axis.
+     * @param q Order in the Y axis.
+     * @return Central moment.
+     */
+    public double getCentralMoment(int label, int p, int q){
+        double a = area[label];
+        double cx = sumX[label] / a;
+        double cy = sumY[label] / a;
+        switch (p * 3 + q) {
+            case 0: return a;
+            case 1: return 0;
+            case 2: return sumYY[label] - cy * sumY[label];
+            case 3: return 0;
+            case 4: return sumXY[label] - cx * sumY[label];
+            case 6: return sumXX[label] - cx * sumX[label];
+            default:
+                throw new IllegalArgumentException("Only moments up to the second order are supported.");
+        }
+    }
+
+    /**
+     * Get orientation of the major axis of a component.
+     * @param label Label.
+     * @return Angle in radians, from the X axis.
+     */
+    public double getOrientation(int label){
+        double mu11 = getCentralMoment(label, 1, 1);
+        double mu20 = getCentralMoment(label, 2, 0);
+        double mu02 = getCentralMoment(label, 0, 2);
+        return 0.5 * Math.atan2(2 * mu11, mu20 - mu02);
+    }
+
+    /**
+     * Create a binary image of a component.
+     * @param label Label.
+     * @return Grayscale image, 255 for the pixels of the component.
+     */
+    public FastBitmap toFastBitmap(int label){
+        FastBitmap fb = new FastBitmap(width, height, FastBitmap.ColorSpace.Grayscale);
+        byte[] data = fb.getGrayData();
+        for (int x = minX[label]; x <= maxX[label]; x++) {
+            for (int i = x * width + minY[label], end = x * width + maxY[label]; i <= end; i++) {
+                if (labels[i] == label) data[i] = (byte)255;
+            }
+        }
+        return fb;
+    }
+
+    /**
+     * Add statistics of a part of a component.
+     */
+    void merge(int label, int area, int minX, int minY, int maxX, int maxY, long sumX, long sumY, long sumXX, long sumXY, long sumYY){
+        if (this.area[label] == 0) {
+            this.minX[label] = minX;
+            this.minY[label] = minY;
+            this.maxX[label] = maxX;
+            this.maxY[label] = maxY;
+        }
+        else{
+            if (minX < this.minX[label]) this.minX[label] = minX;
+            if (minY < this.minY[label]) this.minY[label] = minY;
+            if (maxX > this.maxX[label]) this.maxX[label] = maxX;
+            if (maxY > this.maxY[label]) this.maxY[label] = maxY;
+        }
+        this.area[label] += area;
+        this.sumX[label] += sumX;
+        this.sumY[label] += sumY;
+        this.sumXX[label] += sumXX;
+        this.sumXY[label] += sumXY;
+        this.sumYY[label] += sumYY;
+    }
+}
\ No newline at end of file
@@ -27,6 +27,7 @@ import Catalano.Imaging.Filters.Convolution;
 
 /**
  * Laws Texture Energy Masks works by finding the average gray: Level, Edges, Spots, Ripples, and Waves in the image.
+ * <br /> The methods without image read the last image processed by the calling thread, so an instance can be shared between threads.
  * @author Diego Catalano
  */
 public class LawsTextureEnergy{
@@ -58,7 +59,9 @@ public class LawsTextureEnergy{
     
     private int[][] mask;
     private int[] vector1, vector2;
-    private FastBitmap fb;
+    
+    // the last image processed by each thread, for the methods without image
+    private final ThreadLocal<FastBitmap> last = new ThreadLocal<FastBitmap>();
 
     /**
      * Initialize a new instance of the LawsTextureEnergy class.
@@ -117,46 +120,47 @@ public class LawsTextureEnergy{
 
     /**
      * Process image to produce the texture filtered images.
-     * @param fastBitmap Image to be processed.
+     * @param fastBitmap Image to be processed, filtered in place.
+     * @return Image processed, or null if the image is not grayscale.
      */
-    public void ProcessImage(FastBitmap fastBitmap) {
+    public FastBitmap ProcessImage(FastBitmap fastBitmap) {
         if (fastBitmap.isGrayscale()){
-            this.fb = fastBitmap;
-            mask = CreateMask(vector1, vector2);
+            int[][] mask = vector1 != null && vector2 != null ? CreateMask(vector1, vector2) : this.mask;
             Convolution c = new Convolution(mask);
-            c.applyInPlace(fb);
+            c.applyInPlace(fastBitmap);
+            last.set(fastBitmap);
+            return fastBitmap;
         }
+        return null;
     }
     
     /**
-     * Returns image processed.
+     * Returns the last image processed by the calling thread.
      * @return Image processed.
      */
     public FastBitmap toFastBitmap(){
-        return fb;
+        return last.get();
     }
     
     /**
-     * Compute texture energy map. (Entire image)
+     * Compute texture energy map of the last image processed by the calling thread. (Entire image)
      * @return Texture energy map.
      */
     public long getTextureEnergyMap(){
-        
-        int width = fb.getWidth();
-        int height = fb.getHeight();
-        
-        long energy = 0;
-        for (int i = 0; i < height; i++) {
-            for (int j = 0; j < width; j++) {
-                energy += fb.getGray(i, j);
-            }
-        }
-        
-        return energy;
+        return getTextureEnergyMap(last.get());
     }
     
     /**
-     * Compute texture energy map.
+     * Compute texture energy map. (Entire image)
+     * @param fb Image processed.
+     * @return Texture energy map.
+     */
+    public long getTextureEnergyMap(FastBitmap fb){
+        return getTextureEnergyMap(fb, 0, 0, fb.getWidth(), fb.getHeight());
+    }
+    
+    /**
+     * Compute texture energy map of the last image processed by the calling thread.
      * @param x X axis coordinate.
      * @param y Y axis coordinate.
      * @param width Width.
@@ -164,10 +168,23 @@ public class LawsTextureEnergy{
      * @return Texture energy map.
      */
     public long getTextureEnergyMap(int x, int y, int width, int height){
+        return getTextureEnergyMap(last.get(), x, y, width, height);
+    }
+    
+    /**
+     * Compute texture energy map.
+     * @param fb Image processed.
+     * @param x X axis coordinate.
+     * @param y Y axis coordinate.
+     * @param width Width.
+     * @param height Height.
+     * @return Texture energy map.
+     */
+    public long getTextureEnergyMap(FastBitmap fb, int x, int y, int width, int height){
         
         long energy = 0;
-        for (int i = x; i < i + height; i++) {
-            for (int j = y; j < j + width; j++) {
+        for (int i = x; i < x + height; i++) {
+            for (int j = y; j < y + width; j++) {
                 energy += fb.getGray(i, j);
             }
         }
@@ -176,7 +193,7 @@ public class LawsTextureEnergy{
     }
     
     /**
-     * Compute texture energy map.
+     * Compute texture energy map of the last image processed by the calling thread.
      * @param point Point contains X and Y axis coordinates.
      * @param width Width.
      * @param height Height.
@@ -193,7 +210,7 @@ public class LawsTextureEnergy{
      * @return Mask.
      */
     private int[][] CreateMask(int[] vector1, int[] vector2){
-        mask = new int[vector1.length][vector2.length];
+        int[][] mask = new int[vector1.length][vector2.length];
         
         for (int i = 0; i < vector1.length; i++) {
             for (int j = 0; j < vector2.length; j++) {
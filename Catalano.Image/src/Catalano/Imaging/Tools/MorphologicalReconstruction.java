@@ -0,0 +1,306 @@
+// Catalano Imaging Library
+// The Catalano Framework
+//
+// Copyright © Diego Catalano, 2013
+// diego.catalano at live.com
+//
+//    This library is free software; you can redistribute it and/or
+//    modify it under the terms of the GNU Lesser General Public
+//    License as published by the Free Software Foundation; either
+//    version 2.1 of the License, or (at your option) any later version.
+//
+//    This library is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+//    Lesser General Public License for more details.
+//
+//    You should have received a copy of the GNU Lesser General Public
+//    License along with this library; if not, write to the Free Software
+//    Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+//
+
+package Catalano.Imaging.Tools;
+
+import Catalano.Imaging.FastBitmap;
+import java.util.Arrays;
+
+/**
+ * Grayscale morphological reconstruction.
+ * <br /> Reconstruction by dilation grows a marker image under a mask image until stability, reconstruction by erosion is the dual.
+ * Binary images are grayscale images with values 0 and 255.
+ * <br /> Implements the hybrid algorithm of Vincent: one forward and one backward raster scan, then a FIFO propagation of the pixels which can still change.
+ * <br /> <b>L. Vincent, "Morphological grayscale reconstruction in image analysis: applications and efficient algorithms", IEEE Transactions on Image Processing, Vol. 2, No. 2, 1993.</b>
+ * @author Diego Catalano
+ */
+public class MorphologicalReconstruction {
+
+    private ConnectedComponentsLabeling.Connectivity connectivity = ConnectedComponentsLabeling.Connectivity.Eight;
+
+    /**
+     * Initialize a new instance of the MorphologicalReconstruction class.
+     */
+    public MorphologicalReconstruction() {}
+
+    /**
+     * Initialize a new instance of the MorphologicalReconstruction class.
+     * @param connectivity Pixel connectivity.
+     */
+    public MorphologicalReconstruction(ConnectedComponentsLabeling.Connectivity connectivity) {
+        this.connectivity = connectivity;
+    }
+
+    /**
+     * Get pixel connectivity.
+     * @return Pixel connectivity.
+     */
+    public ConnectedComponentsLabeling.Connectivity getConnectivity() {
+        return connectivity;
+    }
+
+    /**
+     * Set pixel connectivity.
+     * @param connectivity Pixel connectivity.
+     */
+    public void setConnectivity(ConnectedComponentsLabeling.Connectivity connectivity) {
+        this.connectivity = connectivity;
+    }
+
+    /**
+     * Reconstruction by dilation. The marker is first limited to the mask.
+     * @param marker Marker image, replaced by the reconstruction.
+     * @param mask Mask image.
+     */
+    public void Dilate(FastBitmap marker, FastBitmap mask){
+        check(marker, mask);
+        reconstruct(marker.getGrayData(), mask.getGrayData(), marker.getWidth(), marker.getHeight(), false);
+    }
+
+    /**
+     * Reconstruction by erosion. The marker is first limited to be over the mask.
+     * @param marker Marker image, replaced by the reconstruction.
+     * @param mask Mask image.
+     */
+    public void Erode(FastBitmap marker, FastBitmap mask){
+        check(marker, mask);
+        reconstruct(marker.getGrayData(), mask.getGrayData(), marker.getWidth(), marker.getHeight(), true);
+    }
+
+    /**
+     * Fill the holes of an image: regional minima not connected to the image border are raised to the level of their surroundings.
+     * For binary images the holes are the background areas surrounded by objects.
+     * @param fastBitmap Image to be processed.
+     */
+    public void FillHoles(FastBitmap fastBitmap){
+        if (!fastBitmap.isGrayscale())
+            throw new IllegalArgumentException("Morphological reconstruction only works with grayscale images.");
+
+        int width = fastBitmap.getWidth();
+        int height = fastBitmap.getHeight();
+        byte[] data = fastBitmap.getGrayData();
+
+        // Marker is the image on the border and the maximum inside.
+        byte[] marker = new byte[data.length];
+        Arrays.fill(marker, (byte)255);
+        for (int y = 0; y < width; y++) {
+            marker[y] = data[y];
+            marker[(height - 1) * width + y] = data[(height - 1) * width + y];
+        }
+        for (int x = 0; x < height; x++) {
+            marker[x * width] = data[x * width];
+            marker[x * width + width - 1] = data[x * width + width - 1];
+        }
+
+        reconstruct(marker, data, width, height, true);
+        System.arraycopy(marker, 0, data, 0, data.length);
+    }
+
+    /**
+     * Suppress the regional maxima with height lower or equal to h: reconstruction by dilation of image - h under the image.
+     * @param fastBitmap Image to be processed.
+     * @param h Height.
+     */
+    public void HMaxima(FastBitmap fastBitmap, int h){
+        if (!fastBitmap.isGrayscale())
+            throw new IllegalArgumentException("Morphological reconstruction only works with grayscale images.");
+
+        byte[] data = fastBitmap.getGrayData();
+        byte[] marker = new byte[data.length];
+        for (int i = 0; i < data.length; i++)
+            marker[i] = (byte)Math.max(0, (data[i] & 0xFF) - h);
+
+        reconstruct(marker, data, fastBitmap.getWidth(), fastBitmap.getHeight(), false);
+        System.arraycopy(marker, 0, data, 0, data.length);
+    }
+
+    /**
+     * Suppress the regional minima with depth lower or equal to h: reconstruction by erosion of image + h over the image.
+     * @param fastBitmap Image to be processed.
+     * @param h Depth.
+     */
+    public void HMinima(FastBitmap fastBitmap, int h){
+        if (!fastBitmap.isGrayscale())
+            throw new IllegalArgumentException("Morphological reconstruction only works with grayscale images.");
+
+        byte[] data = fastBitmap.getGrayData();
+        byte[] marker = new byte[data.length];
+        for (int i = 0; i < data.length; i++)
+            marker[i] = (byte)Math.min(255, (data[i] & 0xFF) + h);
+
+        reconstruct(marker, data, fastBitmap.getWidth(), fastBitmap.getHeight(), true);
+        System.arraycopy(marker, 0, data, 0, data.length);
+    }
+
+    /**
+     * Find the regional maxima, plateaus without higher neighbors.
+     * @param fastBitmap Image to be processed.
+     * @return Binary image, 255 for the regional maxima.
+     */
+    public FastBitmap RegionalMaxima(FastBitmap fastBitmap){
+        return extrema(fastBitmap, false);
+    }
+
+    /**
+     * Find the regional minima, plateaus without lower neighbors.
+     * @param fastBitmap Image to be processed.
+     * @return Binary image, 255 for the regional minima.
+     */
+    public FastBitmap RegionalMinima(FastBitmap fastBitmap){
+        return extrema(fastBitmap, true);
+    }
+
+    private FastBitmap extrema(FastBitmap fastBitmap, boolean minima){
+        if (!fastBitmap.isGrayscale())
+            throw new IllegalArgumentException("Morphological reconstruction only works with grayscale images.");
+
+        // Maxima are the pixels lowered by the reconstruction of image - 1.
+        byte[] data = fastBitmap.getGrayData();
+        byte[] marker = new byte[data.length];
+        for (int i = 0; i < data.length; i++) {
+            int v = data[i] & 0xFF;
+            marker[i] = (byte)(minima ? Math.min(255, v + 1) : Math.max(0, v - 1));
+        }
+        reconstruct(marker, data, fastBitmap.getWidth(), fastBitmap.getHeight(), minima);
+
+        FastBitmap result = new FastBitmap(fastBitmap.getWidth(), fastBitmap.getHeight(), FastBitmap.ColorSpace.Grayscale);
+        byte[] r = result.getGrayData();
+        for (int i = 0; i < data.length; i++) {
+            if (marker[i] != data[i]) r[i] = (byte)255;
+        }
+        return result;
+    }
+
+    private void check(FastBitmap marker, FastBitmap mask){
+        if (!marker.isGrayscale() || !mask.isGrayscale())
+            throw new IllegalArgumentException("Morphological reconstruction only works with grayscale images.");
+        if (marker.getWidth() != mask.getWidth() || marker.getHeight() != mask.getHeight())
+            throw new IllegalArgumentException("Marker and mask must have the same size.");
+    }
+
+    /**
+     * Hybrid reconstruction. Erosion is computed as the dilation of the complements.
+     */
+    private void reconstruct(byte[] marker, byte[] mask, int width, int height, boolean erosion){
+        // Images with one pixel of border, where the mask is 0 and nothing propagates.
+        int stride = width + 2;
+        int[] J = new int[stride * (height + 2)];
+        int[] I = new int[J.length];
+        int flip = erosion ? 255 : 0;
+        for (int x = 0; x < height; x++) {
+            for (int y = 0, i = (x + 1) * stride + 1, s = x * width; y < width; y++, i++, s++) {
+                int m = (mask[s] & 0xFF) ^ flip;
+                I[i] = m;
+                J[i] = Math.min((marker[s] & 0xFF) ^ flip, m);
+            }
+        }
+
+        // Neighbors before the pixel in raster order, the others are the opposite offsets.
+        int[] before = connectivity == ConnectedComponentsLabeling.Connectivity.Eight
+                ? new int[] {-1, -stride - 1, -stride, -stride + 1}
+                : new int[] {-1, -stride};
+        int nb = before.length;
+        int[] all = new int[2 * nb];
+        for (int k = 0; k < nb; k++) {
+            all[k] = before[k];
+            all[nb + k] = -before[k];
+        }
+
+        // Forward scan.
+        for (int x = 1; x <= height; x++) {
+            for (int i = x * stride + 1, end = i + width; i < end; i++) {
+                int v = J[i];
+                for (int k = 0; k < nb; k++) {
+                    int q = J[i + before[k]];
+                    if (q > v) v = q;
+                }
+                J[i] = Math.min(v, I[i]);
+            }
+        }
+
+        // Backward scan, queue the pixels which can still raise a later neighbor.
+        IntQueue fifo = new IntQueue();
+        for (int x = height; x >= 1; x--) {
+            for (int i = x * stride + width, end = x * stride; i > end; i--) {
+                int v = J[i];
+                for (int k = 0; k < nb; k++) {
+                    int q = J[i - before[k]];
+                    if (q > v) v = q;
+                }
+                v = Math.min(v, I[i]);
+                J[i] = v;
+                for (int k = 0; k < nb; k++) {
+                    int q = i - before[k];
+                    if (J[q] < v && J[q] < I[q]) {
+                        fifo.add(i);
+                        break;
+                    }
+                }
+            }
+        }
+
+        // Propagation.
+        while (fifo.size > 0) {
+            int p = fifo.poll();
+            int v = J[p];
+            for (int k = 0; k < all.length; k++) {
+                int q = p + all[k];
+                if (J[q] < v && I[q] != J[q]) {
+                    J[q] = Math.min(v, I[q]);
+                    fifo.add(q);
+                }
+            }
+        }
+
+        for (int x = 0; x < height; x++) {
+            for (int y = 0, i = (x + 1) * stride + 1, s = x * width; y < width; y++, i++, s++) {
+                marker[s] = (byte)(J[i] ^ flip);
+            }
+        }
+    }
+
+    /**
+     * Growable circular queue of pixel indexes, the capacity is a power of two.
+     */
+    private static class IntQueue {
+
+        int[] data = new int[1024];
+        int head, size;
+
+        void add(int value){
+            if (size == data.length) {
+                int[] d = new int[data.length * 2];
+                for (int k = 0; k < size; k++)
+                    d[k] = data[(head + k) & (data.length - 1)];
+                data = d;
+                head = 0;
+            }
+            data[(head + size++) & (data.length - 1)] = value;
+        }
+
+        int poll(){
+            int v = data[head];
+            head = (head + 1) & (data.length - 1);
+            size--;
+            return v;
+        }
+    }
+}
\ No newline at end of file
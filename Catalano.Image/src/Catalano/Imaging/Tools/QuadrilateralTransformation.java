@@ -25,6 +25,7 @@
 package Catalano.Imaging.Tools;
 
 import Catalano.Core.IntPoint;
+import Catalano.Core.Parallel;
 import Catalano.Imaging.FastBitmap;
 import Catalano.Imaging.IProcessImage;
 import Catalano.Math.Geometry.QuadrilateralTransformationCalc;
@@ -35,6 +36,10 @@ import java.util.ArrayList;
  * 
  * The class implements quadrilateral transformation algorithm, which allows to transform any quadrilateral from a given source image to a rectangular image.
  * The idea of the algorithm is based on homogeneous transformation and its math is described by Paul Heckbert in his "Projective Mappings for Image Warping" paper.
+ * <br /> The homogeneous coordinates are stepped along each row: the exact source position is computed every 16 pixels
+ * and the pixels between are interpolated linearly in fixed point. Spans where the linear error would be above 1/32 of pixel
+ * (strong perspective) fall back to the exact division for each pixel.
+ * Rows can be processed by several threads, and the destination image can be reused between calls.
  * 
  * @author Diego Catalano
  */
@@ -45,6 +50,15 @@ public class QuadrilateralTransformation implements IProcessImage{
     private int newWidth;
     private int newHeight;
     private ArrayList<IntPoint> sourceQuadrilateral;
+    private int threads = 1;
+    
+    private static final int SPAN = 16;
+    private static final long ONE = 1L << 32;
+    
+    private static final double TOLERANCE = 1.0 / 32;
+    
+    // Beyond this distance from the image the fixed point stepping could overflow.
+    private static final double LIMIT = 1 << 20;
 
     /**
      * Is Automatic calculation of destination image.
@@ -130,6 +144,22 @@ public class QuadrilateralTransformation implements IProcessImage{
         this.useInterpolation = useInterpolation;
     }
     
+    /**
+     * Get number of threads.
+     * @return Number of threads.
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Set number of threads.
+     * @param threads Number of threads.
+     */
+    public void setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+    
     /**
      * Initializes a new instance of the QuadrilateralTransformation class.
      * @param sourceQuadrilateral Quadrilateral's corners.
@@ -155,159 +185,144 @@ public class QuadrilateralTransformation implements IProcessImage{
     
     @Override
     public FastBitmap ProcessImage(FastBitmap fastBitmap) {
-        
         FastBitmap dst = new FastBitmap(newWidth, newHeight, fastBitmap.getColorSpace());
+        ProcessImage(fastBitmap, dst);
+        return dst;
+    }
+    
+    /**
+     * Transform the quadrilateral into a destination image, which can be reused between calls.
+     * The size of the destination is used instead of the new width and height. Pixels mapped outside the source are black.
+     * @param source Source image, grayscale or RGB.
+     * @param destination Destination image, with the same color space of the source.
+     */
+    public void ProcessImage(FastBitmap source, FastBitmap destination){
+        if (!source.isGrayscale() && !source.isRGB())
+            throw new IllegalArgumentException("Quadrilateral transformation only works with grayscale or RGB images.");
+        if (source.getColorSpace() != destination.getColorSpace())
+            throw new IllegalArgumentException("Source and destination must have the same color space.");
+        
+        final int srcWidth = source.getWidth();
+        final int srcHeight = source.getHeight();
+        final int dstWidth = destination.getWidth();
+        final int dstHeight = destination.getHeight();
+        
+        double[] dstRect = {0, 0, dstWidth - 1, 0, dstWidth - 1, dstHeight - 1, 0, dstHeight - 1};
+        double[] srcQuad = new double[8];
+        for (int i = 0; i < 4; i++) {
+            srcQuad[i * 2] = sourceQuadrilateral.get(i).x;
+            srcQuad[i * 2 + 1] = sourceQuadrilateral.get(i).y;
+        }
         
-        int srcWidth = fastBitmap.getWidth();
-        int srcHeight = fastBitmap.getHeight();
-
-        int dstWidth = newWidth;
-        int dstHeight = newHeight;
-
-        ArrayList<IntPoint> dstRect = new ArrayList<IntPoint>( );
-        dstRect.add( new IntPoint( 0, 0 ) );
-        dstRect.add( new IntPoint( dstWidth - 1, 0 ) );
-        dstRect.add( new IntPoint( dstWidth - 1, dstHeight - 1 ) );
-        dstRect.add( new IntPoint( 0, dstHeight - 1 ) );
-
         // calculate tranformation matrix
-        double[][] matrix = QuadrilateralTransformationCalc.MapQuadToQuad( dstRect, sourceQuadrilateral );
+        final double[][] m = QuadrilateralTransformationCalc.MapQuadToQuad( dstRect, srcQuad );
         
-        if(!useInterpolation){
-            if (fastBitmap.isRGB()){
-                for (int i = 0; i < dstHeight; i++) {
-                    for (int j = 0; j < dstWidth; j++) {
-                        double factor = matrix[2][0] * j + matrix[2][1] * i + matrix[2][2];
-                        double srcX = ( matrix[0][0] * j + matrix[0][1] * i + matrix[0][2] ) / factor;
-                        double srcY = ( matrix[1][0] * j + matrix[1][1] * i + matrix[1][2] ) / factor;
-
-                        if ( ( srcX >= 0 ) && ( srcY >= 0 ) && ( srcX < srcWidth ) && ( srcY < srcHeight ) )
-                        {
-                            int r = fastBitmap.getRed((int)srcY, (int)srcX);
-                            int g = fastBitmap.getGreen((int)srcY, (int)srcX);
-                            int b = fastBitmap.getBlue((int)srcY, (int)srcX);
-                            dst.setRGB(i, j, r, g, b);
+        final byte[] srcGray = source.isGrayscale() ? source.getGrayData() : null;
+        final int[] srcRGB = srcGray == null ? source.getRGBData() : null;
+        final byte[] dstGray = srcGray != null ? destination.getGrayData() : null;
+        final int[] dstRGB = srcGray == null ? destination.getRGBData() : null;
+        final boolean interpolation = useInterpolation;
+        
+        Parallel.For(0, dstHeight, threads, new Parallel.IBlock() {
+            @Override
+            public void Compute(int block, int from, int to) {
+                long maxX = (long)srcWidth << 32;
+                long maxY = (long)srcHeight << 32;
+                
+                for (int i = from; i < to; i++) {
+                    // Homogeneous coordinates at the start of the row.
+                    double hx = m[0][1] * i + m[0][2];
+                    double hy = m[1][1] * i + m[1][2];
+                    double hw = m[2][1] * i + m[2][2];
+                    int p = i * dstWidth;
+                    
+                    double w0 = hw;
+                    double sx0 = hx / w0, sy0 = hy / w0;
+                    
+                    for (int j0 = 0; j0 < dstWidth; j0 += SPAN) {
+                        int j1 = Math.min(dstWidth, j0 + SPAN);
+                        
+                        double w1 = hw + m[2][0] * j1;
+                        double sx1 = (hx + m[0][0] * j1) / w1, sy1 = (hy + m[1][0] * j1) / w1;
+                        
+                        boolean linear = w0 * w1 > 0
+                                && Math.abs(sx0) < LIMIT && Math.abs(sy0) < LIMIT
+                                && Math.abs(sx1) < LIMIT && Math.abs(sy1) < LIMIT;
+                        
+                        if (linear) {
+                            // The error of the linear stepping is largest in the middle of the span.
+                            double jm = (j0 + j1) * 0.5;
+                            double wm = hw + m[2][0] * jm;
+                            double sxm = (hx + m[0][0] * jm) / wm, sym = (hy + m[1][0] * jm) / wm;
+                            linear = Math.abs(sxm - (sx0 + sx1) * 0.5) < TOLERANCE && Math.abs(sym - (sy0 + sy1) * 0.5) < TOLERANCE;
                         }
-                    }
-                }
-            }
-            if (fastBitmap.isGrayscale()){
-                for (int i = 0; i < dstHeight; i++) {
-                    for (int j = 0; j < dstWidth; j++) {
-                        double factor = matrix[2][0] * j + matrix[2][1] * i + matrix[2][2];
-                        double srcX = ( matrix[0][0] * j + matrix[0][1] * i + matrix[0][2] ) / factor;
-                        double srcY = ( matrix[1][0] * j + matrix[1][1] * i + matrix[1][2] ) / factor;
-
-                        if ( ( srcX >= 0 ) && ( srcY >= 0 ) && ( srcX < srcWidth ) && ( srcY < srcHeight ) )
-                        {
-                            int g = fastBitmap.getGray((int)srcY, (int)srcX);
-                            dst.setGray(i, j, g);
+                        
+                        long fx = 0, fy = 0, dx = 0, dy = 0;
+                        if (linear) {
+                            fx = (long)Math.floor(sx0 * ONE);
+                            fy = (long)Math.floor(sy0 * ONE);
+                            dx = Math.round((sx1 - sx0) / (j1 - j0) * ONE);
+                            dy = Math.round((sy1 - sy0) / (j1 - j0) * ONE);
                         }
-                    }
-                }
-            }
-        }
-        else{
-            if (fastBitmap.isRGB()){
-                int srcWidthM1  = srcWidth - 1;
-                int srcHeightM1 = srcHeight - 1;
-
-                // coordinates of source points
-                double dx1, dy1, dx2, dy2;
-                int sx1, sy1, sx2, sy2;
-                
-                int p1r, p2r, p3r, p4r;
-                int p1g, p2g, p3g, p4g;
-                int p1b, p2b, p3b, p4b;
-                
-                for (int i = 0; i < dstHeight; i++) {
-                    for (int j = 0; j < dstWidth; j++) {
-                        double factor = matrix[2][0] * j + matrix[2][1] * i + matrix[2][2];
-                        double srcX = ( matrix[0][0] * j + matrix[0][1] * i + matrix[0][2] ) / factor;
-                        double srcY = ( matrix[1][0] * j + matrix[1][1] * i + matrix[1][2] ) / factor;
                         
-                        if ( ( srcX >= 0 ) && ( srcY >= 0 ) && ( srcX < srcWidth ) && ( srcY < srcHeight ) ){
-                            sx1 = (int) srcX;
-                            sx2 = ( sx1 == srcWidthM1 ) ? sx1 : sx1 + 1;
-                            dx1 = srcX - sx1;
-                            dx2 = 1.0 - dx1;
-
-                            sy1 = (int) srcY;
-                            sy2 = ( sy1 == srcHeightM1 ) ? sy1 : sy1 + 1;
-                            dy1 = srcY - sy1;
-                            dy2 = 1.0 - dy1;
-
-                            // get four points in Red channel
-                            p1r = fastBitmap.getRed(sy1, sx1);
-                            p2r = fastBitmap.getRed(sy1, sx2);
-                            p3r = fastBitmap.getRed(sy2, sx1);
-                            p4r = fastBitmap.getRed(sy2, sx2);
-                            
-                            // get four points in Green channel
-                            p1g = fastBitmap.getGreen(sy1, sx1);
-                            p2g = fastBitmap.getGreen(sy1, sx2);
-                            p3g = fastBitmap.getGreen(sy2, sx1);
-                            p4g = fastBitmap.getGreen(sy2, sx2);
-                            
-                            // get four points in Blue channel
-                            p1b = fastBitmap.getBlue(sy1, sx1);
-                            p2b = fastBitmap.getBlue(sy1, sx2);
-                            p3b = fastBitmap.getBlue(sy2, sx1);
-                            p4b = fastBitmap.getBlue(sy2, sx2);
+                        for (int j = j0; j < j1; j++, fx += dx, fy += dy) {
+                            if (!linear) {
+                                // Exact position where the span crosses the horizon or goes too far.
+                                double w = hw + m[2][0] * j;
+                                double sx = (hx + m[0][0] * j) / w;
+                                double sy = (hy + m[1][0] * j) / w;
+                                boolean inside = sx >= 0 && sy >= 0 && sx < srcWidth && sy < srcHeight;
+                                fx = inside ? (long)(sx * ONE) : -1;
+                                fy = inside ? (long)(sy * ONE) : -1;
+                            }
                             
-                            int r = (int)(dy2 * (dx2 * (p1r) + dx1 * (p2r)) + dy1 * (dx2 * (p3r) + dx1 * (p4r)));
-                            int g = (int)(dy2 * (dx2 * (p1g) + dx1 * (p2g)) + dy1 * (dx2 * (p3g) + dx1 * (p4g)));
-                            int b = (int)(dy2 * (dx2 * (p1b) + dx1 * (p2b)) + dy1 * (dx2 * (p3b) + dx1 * (p4b)));
+                            if (fx < 0 || fy < 0 || fx >= maxX || fy >= maxY) {
+                                if (dstGray != null) dstGray[p + j] = 0;
+                                else dstRGB[p + j] = 0;
+                                continue;
+                            }
                             
-                            dst.setRGB(i, j, r, g, b);
-                        }
-                    }
-                }
-            }
-            
-            if (fastBitmap.isGrayscale()){
-                int srcWidthM1  = srcWidth - 1;
-                int srcHeightM1 = srcHeight - 1;
-
-                // coordinates of source points
-                double dx1, dy1, dx2, dy2;
-                int sx1, sy1, sx2, sy2;
-                
-                int p1, p2, p3, p4;
-                
-                for (int i = 0; i < dstHeight; i++) {
-                    for (int j = 0; j < dstWidth; j++) {
-                        double factor = matrix[2][0] * j + matrix[2][1] * i + matrix[2][2];
-                        double srcX = ( matrix[0][0] * j + matrix[0][1] * i + matrix[0][2] ) / factor;
-                        double srcY = ( matrix[1][0] * j + matrix[1][1] * i + matrix[1][2] ) / factor;
-                        
-                        if ( ( srcX >= 0 ) && ( srcY >= 0 ) && ( srcX < srcWidth ) && ( srcY < srcHeight ) ){
-                            sx1 = (int) srcX;
-                            sx2 = ( sx1 == srcWidthM1 ) ? sx1 : sx1 + 1;
-                            dx1 = srcX - sx1;
-                            dx2 = 1.0 - dx1;
-
-                            sy1 = (int) srcY;
-                            sy2 = ( sy1 == srcHeightM1 ) ? sy1 : sy1 + 1;
-                            dy1 = srcY - sy1;
-                            dy2 = 1.0 - dy1;
-
-                            // get four points
-                            p1 = fastBitmap.getGray(sy1, sx1);
-                            p2 = fastBitmap.getGray(sy1, sx2);
-                            p3 = fastBitmap.getGray(sy2, sx1);
-                            p4 = fastBitmap.getGray(sy2, sx2);
+                            int sx = (int)(fx >> 32);
+                            int sy = (int)(fy >> 32);
+                            int s = sy * srcWidth + sx;
+                            if (!interpolation) {
+                                if (dstGray != null) dstGray[p + j] = srcGray[s];
+                                else dstRGB[p + j] = srcRGB[s];
+                                continue;
+                            }
                             
-                            int g = (int)(dy2 * (dx2 * (p1) + dx1 * (p2)) + dy1 * (dx2 * (p3) + dx1 * (p4)));
-                            dst.setGray(i, j, g);
+                            // Bilinear interpolation with 8 bits fractions.
+                            int tx = (int)(fx >>> 24) & 0xFF;
+                            int ty = (int)(fy >>> 24) & 0xFF;
+                            int s01 = sx < srcWidth - 1 ? s + 1 : s;
+                            int s10 = sy < srcHeight - 1 ? s + srcWidth : s;
+                            int s11 = s10 + (s01 - s);
+                            if (dstGray != null) {
+                                dstGray[p + j] = (byte)bilinear(srcGray[s] & 0xFF, srcGray[s01] & 0xFF, srcGray[s10] & 0xFF, srcGray[s11] & 0xFF, tx, ty);
+                            }
+                            else{
+                                int p00 = srcRGB[s], p01 = srcRGB[s01], p10 = srcRGB[s10], p11 = srcRGB[s11];
+                                int r = bilinear(p00 >> 16 & 0xFF, p01 >> 16 & 0xFF, p10 >> 16 & 0xFF, p11 >> 16 & 0xFF, tx, ty);
+                                int g = bilinear(p00 >> 8 & 0xFF, p01 >> 8 & 0xFF, p10 >> 8 & 0xFF, p11 >> 8 & 0xFF, tx, ty);
+                                int b = bilinear(p00 & 0xFF, p01 & 0xFF, p10 & 0xFF, p11 & 0xFF, tx, ty);
+                                dstRGB[p + j] = r << 16 | g << 8 | b;
+                            }
                         }
                         
+                        w0 = w1;
+                        sx0 = sx1;
+                        sy0 = sy1;
                     }
                 }
             }
-        }
-        
-        return dst;
+        });
+    }
+    
+    // Bilinear interpolation, tx is the fraction along the row and ty across the rows
+    private static int bilinear(int p00, int p01, int p10, int p11, int tx, int ty){
+        int top = p00 * (256 - tx) + p01 * tx;
+        int bottom = p10 * (256 - tx) + p11 * tx;
+        return (top * (256 - ty) + bottom * ty + 32768) >> 16;
     }
     
     // Calculates size of destination image
@@ -0,0 +1,415 @@
+// Catalano Imaging Library
+// The Catalano Framework
+//
+// Copyright © Diego Catalano, 2013
+// diego.catalano at live.com
+//
+//    This library is free software; you can redistribute it and/or
+//    modify it under the terms of the GNU Lesser General Public
+//    License as published by the Free Software Foundation; either
+//    version 2.1 of the License, or (at your option) any later version.
+//
+//    This library is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+//    Lesser General Public License for more details.
+//
+//    You should have received a copy of the GNU Lesser General Public
+//    License along with this library; if not, write to the Free Software
+//    Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+//
+
+package Catalano.Imaging.Tools;
+
+import Catalano.Core.Parallel;
+import Catalano.Imaging.FastBitmap;
+import java.util.Arrays;
+
+/**
+ * SLIC (Simple Linear Iterative Clustering) superpixels.
+ * <br /> Pixels are clustered by k-means in the CIE-LAB color space plus position, but each pixel is only compared
+ * with the centers of the grid cells around it, so each iteration is linear in the number of pixels.
+ * The assignment and the update steps run in parallel over horizontal strips.
+ * A final pass relabels connected regions and merges the fragments smaller than a quarter of a grid cell with a neighbour region.
+ * <br /> The color conversion uses the D65 white point and lookup tables instead of the pow calls of ColorConverter.RGBtoLAB.
+ * <br /> <b>R. Achanta, A. Shaji, K. Smith, A. Lucchi, P. Fua and S. Susstrunk, "SLIC Superpixels Compared to State-of-the-art Superpixel Methods", IEEE Transactions on Pattern Analysis and Machine Intelligence, 2012.</b>
+ * @see ColorConverter
+ * @author Diego Catalano
+ */
+public class SLIC {
+
+    // sRGB to linear RGB.
+    private static final float[] LINEAR = new float[256];
+
+    // CIE-LAB f(t) for t in [0, T_MAX], interpolated linearly.
+    private static final int F_SIZE = 4096;
+    private static final float T_MAX = 1.0625f;
+    private static final float[] F = new float[F_SIZE + 2];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            double c = i / 255.0;
+            LINEAR[i] = (float)(c > 0.04045 ? Math.pow((c + 0.055) / 1.055, 2.4) : c / 12.92);
+        }
+        for (int i = 0; i < F.length; i++) {
+            double t = i * (double)T_MAX / F_SIZE;
+            F[i] = (float)(t > 0.008856 ? Math.cbrt(t) : 7.787 * t + 16.0 / 116.0);
+        }
+    }
+
+    private int superpixels = 400;
+    private double compactness = 10;
+    private int iterations = 10;
+    private int threads = 1;
+
+    /**
+     * Initialize a new instance of the SLIC class.
+     */
+    public SLIC() {}
+
+    /**
+     * Initialize a new instance of the SLIC class.
+     * @param superpixels Approximate number of superpixels.
+     */
+    public SLIC(int superpixels) {
+        setSuperpixels(superpixels);
+    }
+
+    /**
+     * Initialize a new instance of the SLIC class.
+     * @param superpixels Approximate number of superpixels.
+     * @param compactness Weight of the distance in position relative to the distance in color.
+     */
+    public SLIC(int superpixels, double compactness) {
+        setSuperpixels(superpixels);
+        setCompactness(compactness);
+    }
+
+    /**
+     * Initialize a new instance of the SLIC class.
+     * @param superpixels Approximate number of superpixels.
+     * @param compactness Weight of the distance in position relative to the distance in color.
+     * @param threads Number of threads.
+     */
+    public SLIC(int superpixels, double compactness, int threads) {
+        setSuperpixels(superpixels);
+        setCompactness(compactness);
+        setThreads(threads);
+    }
+
+    /**
+     * Get approximate number of superpixels.
+     * @return Number of superpixels.
+     */
+    public int getSuperpixels() {
+        return superpixels;
+    }
+
+    /**
+     * Set approximate number of superpixels.
+     * @param superpixels Number of superpixels.
+     */
+    public void setSuperpixels(int superpixels) {
+        this.superpixels = Math.max(1, superpixels);
+    }
+
+    /**
+     * Get compactness.
+     * @return Compactness.
+     */
+    public double getCompactness() {
+        return compactness;
+    }
+
+    /**
+     * Set compactness. Higher values give more regular superpixels, usual values are between 1 and 40.
+     * @param compactness Compactness.
+     */
+    public void setCompactness(double compactness) {
+        this.compactness = Math.max(0, compactness);
+    }
+
+    /**
+     * Get number of iterations.
+     * @return Number of iterations.
+     */
+    public int getIterations() {
+        return iterations;
+    }
+
+    /**
+     * Set number of iterations.
+     * @param iterations Number of iterations.
+     */
+    public void setIterations(int iterations) {
+        this.iterations = Math.max(1, iterations);
+    }
+
+    /**
+     * Get number of threads.
+     * @return Number of threads.
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Set number of threads.
+     * @param threads Number of threads.
+     */
+    public void setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Compute the superpixels.
+     * @param fastBitmap Image to be processed, grayscale or RGB.
+     * @return Superpixels, labeled from 1.
+     */
+    public LabeledImage Process(FastBitmap fastBitmap){
+        if (!fastBitmap.isGrayscale() && !fastBitmap.isRGB())
+            throw new IllegalArgumentException("SLIC only works with grayscale or RGB images.");
+
+        final int width = fastBitmap.getWidth();
+        final int height = fastBitmap.getHeight();
+        final int size = width * height;
+
+        // CIE-LAB planes.
+        final float[] l = new float[size];
+        final float[] a = new float[size];
+        final float[] b = new float[size];
+        final byte[] gray = fastBitmap.isGrayscale() ? fastBitmap.getGrayData() : null;
+        final int[] rgb = gray == null ? fastBitmap.getRGBData() : null;
+        Parallel.For(0, height, threads, new Parallel.IBlock() {
+            @Override
+            public void Compute(int block, int from, int to) {
+                for (int i = from * width; i < to * width; i++) {
+                    if (gray != null) {
+                        int g = gray[i] & 0xFF;
+                        toLab(g, g, g, l, a, b, i);
+                    }
+                    else{
+                        int p = rgb[i];
+                        toLab(p >> 16 & 0xFF, p >> 8 & 0xFF, p & 0xFF, l, a, b, i);
+                    }
+                }
+            }
+        });
+
+        // Centers on a regular grid of cells of side S.
+        double step = Math.sqrt(size / (double)Math.min(superpixels, size));
+        final int rows = Math.max(1, (int)Math.round(height / step));
+        final int cols = Math.max(1, (int)Math.round(width / step));
+        final int k = rows * cols;
+        final double cellHeight = height / (double)rows;
+        final double cellWidth = width / (double)cols;
+
+        final float[] cl = new float[k];
+        final float[] ca = new float[k];
+        final float[] cb = new float[k];
+        final float[] cx = new float[k];
+        final float[] cy = new float[k];
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < cols; j++) {
+                int x = (int)((i + 0.5) * cellHeight);
+                int y = (int)((j + 0.5) * cellWidth);
+
+                // Move the seed to the lowest gradient position of its 3x3 neighborhood.
+                int best = x * width + y;
+                float min = Float.MAX_VALUE;
+                for (int u = Math.max(1, x - 1); u <= Math.min(height - 2, x + 1); u++) {
+                    for (int v = Math.max(1, y - 1); v <= Math.min(width - 2, y + 1); v++) {
+                        int p = u * width + v;
+                        float g = gradient(l, a, b, p, 1) + gradient(l, a, b, p, width);
+                        if (g < min) {
+                            min = g;
+                            best = p;
+                        }
+                    }
+                }
+
+                int c = i * cols + j;
+                cl[c] = l[best];
+                ca[c] = a[best];
+                cb[c] = b[best];
+                cx[c] = best / width;
+                cy[c] = best % width;
+            }
+        }
+
+        // Cell of each row and column, the candidates of a pixel are the centers of the 3x3 cells around it.
+        final int[] cellRow = new int[height];
+        final int[] cellCol = new int[width];
+        for (int x = 0; x < height; x++) cellRow[x] = Math.min(rows - 1, (int)(x / cellHeight));
+        for (int y = 0; y < width; y++) cellCol[y] = Math.min(cols - 1, (int)(y / cellWidth));
+
+        final float weight = (float)(compactness * compactness / (step * step));
+        final int[] labels = new int[size];
+        final int blocks = Parallel.Blocks(0, height, threads);
+        final double[][] sums = new double[blocks][k * 5];
+        final int[][] counts = new int[blocks][k];
+
+        for (int it = 0; it < iterations; it++) {
+            Parallel.For(0, height, threads, new Parallel.IBlock() {
+                @Override
+                public void Compute(int block, int from, int to) {
+                    double[] sum = sums[block];
+                    int[] count = counts[block];
+                    Arrays.fill(sum, 0);
+                    Arrays.fill(count, 0);
+
+                    for (int x = from; x < to; x++) {
+                        int r0 = Math.max(0, cellRow[x] - 1);
+                        int r1 = Math.min(rows - 1, cellRow[x] + 1);
+                        for (int y = 0, p = x * width; y < width; y++, p++) {
+                            int c0 = Math.max(0, cellCol[y] - 1);
+                            int c1 = Math.min(cols - 1, cellCol[y] + 1);
+                            float pl = l[p], pa = a[p], pb = b[p];
+
+                            int best = 0;
+                            float min = Float.MAX_VALUE;
+                            for (int i = r0; i <= r1; i++) {
+                                for (int c = i * cols + c0, e = i * cols + c1; c <= e; c++) {
+                                    float dx = x - cx[c];
+                                    float dy = y - cy[c];
+                                    float d = (dx * dx + dy * dy) * weight;
+                                    if (d >= min) continue;
+                                    float dl = pl - cl[c];
+                                    float da = pa - ca[c];
+                                    float db = pb - cb[c];
+                                    d += dl * dl + da * da + db * db;
+                                    if (d < min) {
+                                        min = d;
+                                        best = c;
+                                    }
+                                }
+                            }
+
+                            labels[p] = best;
+                            int s = best * 5;
+                            sum[s] += pl;
+                            sum[s + 1] += pa;
+                            sum[s + 2] += pb;
+                            sum[s + 3] += x;
+                            sum[s + 4] += y;
+                            count[best]++;
+                        }
+                    }
+                }
+            });
+
+            for (int c = 0; c < k; c++) {
+                double sl = 0, sa = 0, sb = 0, sx = 0, sy = 0;
+                int n = 0;
+                for (int t = 0; t < blocks; t++) {
+                    double[] sum = sums[t];
+                    sl += sum[c * 5];
+                    sa += sum[c * 5 + 1];
+                    sb += sum[c * 5 + 2];
+                    sx += sum[c * 5 + 3];
+                    sy += sum[c * 5 + 4];
+                    n += counts[t][c];
+                }
+                if (n > 0) {
+                    cl[c] = (float)(sl / n);
+                    ca[c] = (float)(sa / n);
+                    cb[c] = (float)(sb / n);
+                    cx[c] = (float)(sx / n);
+                    cy[c] = (float)(sy / n);
+                }
+            }
+        }
+
+        return enforceConnectivity(labels, width, height, Math.max(1, (int)(step * step / 4)));
+    }
+
+    /**
+     * Relabel the connected regions from 1, merging the regions smaller than minSize with the region found before them.
+     */
+    private LabeledImage enforceConnectivity(int[] labels, int width, int height, int minSize){
+        int size = width * height;
+        int[] result = new int[size];
+        int[] queue = new int[size];
+        int count = 0;
+
+        for (int p = 0; p < size; p++) {
+            if (result[p] != 0) continue;
+            int x = p / width;
+            int y = p % width;
+
+            // Label of an adjacent region already found, for small fragments.
+            int adjacent = 0;
+            if (y > 0) adjacent = result[p - 1];
+            else if (x > 0) adjacent = result[p - width];
+
+            int label = labels[p];
+            int n = ++count;
+            int tail = 0;
+            queue[tail++] = p;
+            result[p] = n;
+            for (int head = 0; head < tail; head++) {
+                int q = queue[head];
+                int qy = q % width;
+                if (qy > 0 && result[q - 1] == 0 && labels[q - 1] == label) {
+                    result[q - 1] = n;
+                    queue[tail++] = q - 1;
+                }
+                if (qy < width - 1 && result[q + 1] == 0 && labels[q + 1] == label) {
+                    result[q + 1] = n;
+                    queue[tail++] = q + 1;
+                }
+                if (q >= width && result[q - width] == 0 && labels[q - width] == label) {
+                    result[q - width] = n;
+                    queue[tail++] = q - width;
+                }
+                if (q < size - width && result[q + width] == 0 && labels[q + width] == label) {
+                    result[q + width] = n;
+                    queue[tail++] = q + width;
+                }
+            }
+
+            if (tail < minSize && adjacent > 0) {
+                for (int i = 0; i < tail; i++) result[queue[i]] = adjacent;
+                count--;
+            }
+        }
+
+        LabeledImage image = new LabeledImage(width, height, result, count);
+        for (int x = 0, p = 0; x < height; x++) {
+            for (int y = 0; y < width; y++, p++) {
+                image.merge(result[p], 1, x, y, x, y, x, y, (long)x * x, (long)x * y, (long)y * y);
+            }
+        }
+        return image;
+    }
+
+    private static float gradient(float[] l, float[] a, float[] b, int p, int d){
+        float dl = l[p + d] - l[p - d];
+        float da = a[p + d] - a[p - d];
+        float db = b[p + d] - b[p - d];
+        return dl * dl + da * da + db * db;
+    }
+
+    private static void toLab(int red, int green, int blue, float[] l, float[] a, float[] b, int i){
+        float r = LINEAR[red];
+        float g = LINEAR[green];
+        float bl = LINEAR[blue];
+
+        // XYZ normalized by the D65 white point.
+        float fx = f((0.412453f * r + 0.35758f * g + 0.180423f * bl) / 0.95047f);
+        float fy = f(0.212671f * r + 0.71516f * g + 0.072169f * bl);
+        float fz = f((0.019334f * r + 0.119193f * g + 0.950227f * bl) / 1.08883f);
+
+        l[i] = 116 * fy - 16;
+        a[i] = 500 * (fx - fy);
+        b[i] = 200 * (fy - fz);
+    }
+
+    private static float f(float t){
+        float u = t * (F_SIZE / T_MAX);
+        int j = (int)u;
+        if (j >= F_SIZE) j = F_SIZE - 1;
+        float w = u - j;
+        return F[j] + (F[j + 1] - F[j]) * w;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,212 @@
+// Catalano Imaging Library
+// The Catalano Framework
+//
+// Copyright © Diego Catalano, 2013
+// diego.catalano at live.com
+//
+//    This library is free software; you can redistribute it and/or
+//    modify it under the terms of the GNU Lesser General Public
+//    License as published by the Free Software Foundation; either
+//    version 2.1 of the License, or (at your option) any later version.
+//
+//    This library is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+//    Lesser General Public License for more details.
+//
+//    You should have received a copy of the GNU Lesser General Public
+//    License along with this library; if not, write to the Free Software
+//    Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+//
+
+package Catalano.Imaging.Tools;
+
+import Catalano.Imaging.FastBitmap;
+import java.util.Arrays;
+
+/**
+ * Marker controlled watershed segmentation.
+ * <br /> The relief (usually a gradient image) is flooded from the markers in order of level with a priority flood:
+ * a bucket queue with one FIFO for each of the 256 levels, so each pixel is queued and removed in constant time.
+ * Every pixel reachable from a marker gets the label of the marker which floods it first, there are no watershed lines.
+ * <br /> To split touching objects of a binary image, the markers can be taken from the maxima of the distance transform.
+ * @author Diego Catalano
+ */
+public class Watershed {
+
+    private ConnectedComponentsLabeling.Connectivity connectivity = ConnectedComponentsLabeling.Connectivity.Eight;
+
+    /**
+     * Initialize a new instance of the Watershed class.
+     */
+    public Watershed() {}
+
+    /**
+     * Initialize a new instance of the Watershed class.
+     * @param connectivity Pixel connectivity.
+     */
+    public Watershed(ConnectedComponentsLabeling.Connectivity connectivity) {
+        this.connectivity = connectivity;
+    }
+
+    /**
+     * Get pixel connectivity.
+     * @return Pixel connectivity.
+     */
+    public ConnectedComponentsLabeling.Connectivity getConnectivity() {
+        return connectivity;
+    }
+
+    /**
+     * Set pixel connectivity.
+     * @param connectivity Pixel connectivity.
+     */
+    public void setConnectivity(ConnectedComponentsLabeling.Connectivity connectivity) {
+        this.connectivity = connectivity;
+    }
+
+    /**
+     * Flood the relief from markers.
+     * @param relief Grayscale relief, for example a gradient image.
+     * @param markers Binary image, each connected component of non zero pixels is a marker.
+     * @return Labels, row by row.
+     */
+    public int[] Process(FastBitmap relief, FastBitmap markers){
+        LabeledImage labels = new ConnectedComponentsLabeling(connectivity).Process(markers);
+        return Process(relief, labels.getLabels(), null);
+    }
+
+    /**
+     * Flood the relief from markers.
+     * @param relief Grayscale relief, for example a gradient image.
+     * @param markers Labels of the markers, row by row, 0 for unlabeled pixels.
+     * @return Labels, row by row.
+     */
+    public int[] Process(FastBitmap relief, int[] markers){
+        return Process(relief, markers, null);
+    }
+
+    /**
+     * Flood the relief from markers, only inside a mask.
+     * @param relief Grayscale relief, for example a gradient image.
+     * @param markers Labels of the markers, row by row, 0 for unlabeled pixels.
+     * @param mask Binary image, zero pixels are never flooded and get label 0. Can be null.
+     * @return Labels, row by row.
+     */
+    public int[] Process(FastBitmap relief, int[] markers, FastBitmap mask){
+        if (!relief.isGrayscale())
+            throw new IllegalArgumentException("Watershed only works with grayscale images.");
+        int width = relief.getWidth();
+        int height = relief.getHeight();
+        if (markers.length != width * height)
+            throw new IllegalArgumentException("Markers must have one element for each pixel.");
+        if (mask != null && (!mask.isGrayscale() || mask.getWidth() != width || mask.getHeight() != height))
+            throw new IllegalArgumentException("Mask must be a grayscale image with the same size of the relief.");
+
+        byte[] level = relief.getGrayData();
+        byte[] m = mask != null ? mask.getGrayData() : null;
+
+        // Labels and levels with one pixel of border. Border and masked pixels are -1, so they are never flooded.
+        int stride = width + 2;
+        int[] labels = new int[stride * (height + 2)];
+        byte[] levels = new byte[labels.length];
+        Arrays.fill(labels, 0, stride, -1);
+        Arrays.fill(labels, stride * (height + 1), labels.length, -1);
+        for (int x = 0; x < height; x++) {
+            int row = (x + 1) * stride;
+            labels[row] = labels[row + width + 1] = -1;
+            System.arraycopy(level, x * width, levels, row + 1, width);
+            for (int y = 0, s = x * width; y < width; y++, s++) {
+                if (m != null && m[s] == 0) labels[row + y + 1] = -1;
+                else if (markers[s] > 0) labels[row + y + 1] = markers[s];
+            }
+        }
+
+        int[] offsets = connectivity == ConnectedComponentsLabeling.Connectivity.Eight
+                ? new int[] {-stride - 1, -stride, -stride + 1, -1, 1, stride - 1, stride, stride + 1}
+                : new int[] {-stride, -1, 1, stride};
+
+        // Bucket queue: one FIFO for each level. A level is never pushed after it has been flooded,
+        // so each bucket only grows until its level is reached and then it is released.
+        int[][] bucket = new int[256][];
+        int[] size = new int[256];
+
+        for (int x = 0; x < height; x++) {
+            for (int y = 0, i = (x + 1) * stride + 1; y < width; y++, i++) {
+                if (labels[i] > 0) {
+                    int l = levels[i] & 0xFF;
+                    if (bucket[l] == null) bucket[l] = new int[64];
+                    else if (size[l] == bucket[l].length) bucket[l] = Arrays.copyOf(bucket[l], size[l] * 2);
+                    bucket[l][size[l]++] = i;
+                }
+            }
+        }
+
+        for (int current = 0; current < 256; current++) {
+            for (int h = 0; h < size[current]; h++) {
+                int p = bucket[current][h];
+                int label = labels[p];
+
+                for (int k = 0; k < offsets.length; k++) {
+                    int q = p + offsets[k];
+                    if (labels[q] != 0) continue;
+                    labels[q] = label;
+
+                    // Neighbors lower than the current level are flooded at the current level.
+                    int l = levels[q] & 0xFF;
+                    if (l < current) l = current;
+                    if (bucket[l] == null) bucket[l] = new int[64];
+                    else if (size[l] == bucket[l].length) bucket[l] = Arrays.copyOf(bucket[l], size[l] * 2);
+                    bucket[l][size[l]++] = q;
+                }
+            }
+            bucket[current] = null;
+        }
+
+        int[] result = new int[width * height];
+        for (int x = 0; x < height; x++) {
+            for (int y = 0, i = (x + 1) * stride + 1, s = x * width; y < width; y++, i++, s++) {
+                result[s] = labels[i] > 0 ? labels[i] : 0;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Split touching objects of a binary image.
+     * <br /> The markers are the maxima of the distance transform which are higher than their surroundings by more than h,
+     * and the relief is the inverted distance transform, flooded only inside the objects.
+     * @param fastBitmap Binary image, non zero pixels are objects.
+     * @param h Minimum height of a distance maximum, in pixels. Higher values merge more objects.
+     * @return Labels, row by row.
+     */
+    public int[] Split(FastBitmap fastBitmap, int h){
+        int width = fastBitmap.getWidth();
+        int height = fastBitmap.getHeight();
+
+        float[] distance = new DistanceTransform().Compute(fastBitmap);
+        FastBitmap d = new FastBitmap(width, height, FastBitmap.ColorSpace.Grayscale);
+        FastBitmap relief = new FastBitmap(width, height, FastBitmap.ColorSpace.Grayscale);
+        FastBitmap mask = new FastBitmap(width, height, FastBitmap.ColorSpace.Grayscale);
+        byte[] dd = d.getGrayData();
+        byte[] r = relief.getGrayData();
+        byte[] m = mask.getGrayData();
+        for (int i = 0; i < distance.length; i++) {
+            int v = Math.min(255, Math.round(distance[i]));
+            dd[i] = (byte)v;
+            r[i] = (byte)(255 - v);
+            m[i] = (byte)(distance[i] > 0 ? 255 : 0);
+        }
+
+        MorphologicalReconstruction reconstruction = new MorphologicalReconstruction(connectivity);
+        reconstruction.HMaxima(d, h);
+        FastBitmap maxima = reconstruction.RegionalMaxima(d);
+        byte[] mx = maxima.getGrayData();
+        for (int i = 0; i < mx.length; i++) {
+            if (m[i] == 0) mx[i] = 0;
+        }
+
+        LabeledImage markers = new ConnectedComponentsLabeling(connectivity).Process(maxima);
+        return Process(relief, markers.getLabels(), mask);
+    }
+}
\ No newline at end of file
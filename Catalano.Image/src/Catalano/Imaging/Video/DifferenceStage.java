@@ -0,0 +1,80 @@
+// Catalano Imaging Library
+// The Catalano Framework
+//
+// Copyright © Diego Catalano, 2013
+// diego.catalano at live.com
+//
+//    This library is free software; you can redistribute it and/or
+//    modify it under the terms of the GNU Lesser General Public
+//    License as published by the Free Software Foundation; either
+//    version 2.1 of the License, or (at your option) any later version.
+//
+//    This library is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+//    Lesser General Public License for more details.
+//
+//    You should have received a copy of the GNU Lesser General Public
+//    License along with this library; if not, write to the Free Software
+//    Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+//
+
+package Catalano.Imaging.Video;
+
+import Catalano.Imaging.FastBitmap;
+
+/**
+ * Stage that replaces each frame with its absolute difference to the previous frame.
+ * <br /> The previous frame is retained in a buffer of the stage. The first frame gives a black image.
+ * @author Diego Catalano
+ */
+public class DifferenceStage implements IFrameStage{
+
+    private FastBitmap previous;
+
+    /**
+     * Initialize a new instance of the DifferenceStage class.
+     */
+    public DifferenceStage() {}
+
+    /**
+     * Forget the previous frame.
+     */
+    public void reset(){
+        previous = null;
+    }
+
+    @Override
+    public FastBitmap process(FastBitmap frame) {
+        if (previous == null || previous.getWidth() != frame.getWidth() || previous.getHeight() != frame.getHeight() || previous.getColorSpace() != frame.getColorSpace())
+            previous = new FastBitmap(frame);
+
+        if (frame.isGrayscale()) {
+            byte[] cur = frame.getGrayData();
+            byte[] prev = previous.getGrayData();
+            for (int i = 0; i < cur.length; i++) {
+                int c = cur[i] & 0xFF;
+                int d = c - (prev[i] & 0xFF);
+                prev[i] = (byte)c;
+                cur[i] = (byte)(d < 0 ? -d : d);
+            }
+        }
+        else{
+            int[] cur = frame.getRGBData();
+            int[] prev = previous.getRGBData();
+            for (int i = 0; i < cur.length; i++) {
+                int c = cur[i];
+                int p = prev[i];
+                int r = (c >> 16 & 0xFF) - (p >> 16 & 0xFF);
+                int g = (c >> 8 & 0xFF) - (p >> 8 & 0xFF);
+                int b = (c & 0xFF) - (p & 0xFF);
+                r = r < 0 ? -r : r;
+                g = g < 0 ? -g : g;
+                b = b < 0 ? -b : b;
+                prev[i] = c;
+                cur[i] = r << 16 | g << 8 | b;
+            }
+        }
+        return frame;
+    }
+}
\ No newline at end of file
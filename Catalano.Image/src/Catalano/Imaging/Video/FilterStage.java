@@ -0,0 +1,57 @@
+// Catalano Imaging Library
+// The Catalano Framework
+//
+// Copyright © Diego Catalano, 2013
+// diego.catalano at live.com
+//
+//    This library is free software; you can redistribute it and/or
+//    modify it under the terms of the GNU Lesser General Public
+//    License as published by the Free Software Foundation; either
+//    version 2.1 of the License, or (at your option) any later version.
+//
+//    This library is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+//    Lesser General Public License for more details.
+//
+//    You should have received a copy of the GNU Lesser General Public
+//    License along with this library; if not, write to the Free Software
+//    Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+//
+
+package Catalano.Imaging.Video;
+
+import Catalano.Imaging.FastBitmap;
+import Catalano.Imaging.IBaseInPlace;
+
+/**
+ * Stage that applies a filter in place on the frame.
+ * <br /> Use it with filters that keep the color space of the image (e.g. Threshold, Invert). To convert to grayscale use GrayscaleStage.
+ * @author Diego Catalano
+ */
+public class FilterStage implements IFrameStage{
+
+    private IBaseInPlace filter;
+
+    /**
+     * Initialize a new instance of the FilterStage class.
+     * @param filter Filter.
+     */
+    public FilterStage(IBaseInPlace filter) {
+        this.filter = filter;
+    }
+
+    /**
+     * Get filter.
+     * @return Filter.
+     */
+    public IBaseInPlace getFilter() {
+        return filter;
+    }
+
+    @Override
+    public FastBitmap process(FastBitmap frame) {
+        filter.applyInPlace(frame);
+        return frame;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,368 @@
+// Catalano Imaging Library
+// The Catalano Framework
+//
+// Copyright © Diego Catalano, 2013
+// diego.catalano at live.com
+//
+//    This library is free software; you can redistribute it and/or
+//    modify it under the terms of the GNU Lesser General Public
+//    License as published by the Free Software Foundation; either
+//    version 2.1 of the License, or (at your option) any later version.
+//
+//    This library is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+//    Lesser General Public License for more details.
+//
+//    You should have received a copy of the GNU Lesser General Public
+//    License along with this library; if not, write to the Free Software
+//    Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+//
+
+package Catalano.Imaging.Video;
+
+import Catalano.Imaging.FastBitmap;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process a stream of frames of fixed size through a chain of stages.
+ * <br /> Frames are copied into three pre-allocated buffers (one being filled, one pending, one being processed) and the stages keep their own buffers,
+ * so a running stream does not allocate per frame. A worker thread runs the stages and publishes the result.
+ * <br /> A camera can not wait, so backpressure drops frames: when a frame is still pending, a new one either replaces it (Coalesce) or is discarded (Drop),
+ * and a result is discarded when the subscriber has no outstanding demand.
+ * <br /> The result passed to onNext is reused after onNext returns, copy it to keep it.
+ * @author Diego Catalano
+ */
+public class FrameStream implements Flow.Processor<FastBitmap, FastBitmap>{
+
+    /**
+     * What to do with a frame that arrives while another one is waiting.
+     */
+    public static enum Backpressure {
+
+        /**
+         * The new frame replaces the waiting one. Lowest latency.
+         */
+        Coalesce,
+        /**
+         * The new frame is discarded.
+         */
+        Drop
+    };
+
+    private static final int LATENCY_SAMPLES = 1024;
+
+    private final int width, height;
+    private final FastBitmap.ColorSpace colorSpace;
+    private final Backpressure backpressure;
+    private final List<IFrameStage> stages = new ArrayList<IFrameStage>();
+
+    private final Object lock = new Object();
+    private final ArrayDeque<Buffer> free = new ArrayDeque<Buffer>();
+    private Buffer pending;
+    private boolean closed;
+    private Throwable error;
+
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong processed = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final long[] latencies = new long[LATENCY_SAMPLES];
+    private long latencyCount;
+
+    private Flow.Subscription upstream;
+    private volatile Flow.Subscriber<? super FastBitmap> subscriber;
+    private final AtomicLong demand = new AtomicLong();
+    private final Thread worker;
+
+    /**
+     * Initialize a new instance of the FrameStream class.
+     * @param width Width of the frames.
+     * @param height Height of the frames.
+     * @param colorSpace Color space of the frames.
+     */
+    public FrameStream(int width, int height, FastBitmap.ColorSpace colorSpace) {
+        this(width, height, colorSpace, Backpressure.Coalesce);
+    }
+
+    /**
+     * Initialize a new instance of the FrameStream class.
+     * @param width Width of the frames.
+     * @param height Height of the frames.
+     * @param colorSpace Color space of the frames.
+     * @param backpressure What to do with a frame that arrives while another one is waiting.
+     */
+    public FrameStream(int width, int height, FastBitmap.ColorSpace colorSpace, Backpressure backpressure) {
+        this.width = width;
+        this.height = height;
+        this.colorSpace = colorSpace;
+        this.backpressure = backpressure;
+        for (int i = 0; i < 3; i++)
+            free.add(new Buffer(new FastBitmap(width, height, colorSpace)));
+
+        this.worker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                work();
+            }
+        }, "FrameStream");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Add a stage to the end of the chain. Stages must be added before the first frame.
+     * @param stage Stage.
+     */
+    public void add(IFrameStage stage){
+        synchronized (stages) {
+            stages.add(stage);
+        }
+    }
+
+    /**
+     * Get number of frames offered.
+     * @return Number of frames.
+     */
+    public long getReceived() {
+        return received.get();
+    }
+
+    /**
+     * Get number of frames published.
+     * @return Number of frames.
+     */
+    public long getProcessed() {
+        return processed.get();
+    }
+
+    /**
+     * Get number of frames dropped by backpressure.
+     * @return Number of frames.
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Get a percentile of the latency from offer to publish, over the last 1024 frames published.
+     * @param percentile Percentile, [0, 100].
+     * @return Latency in milliseconds, 0 if no frame was published.
+     */
+    public double getLatencyPercentile(double percentile){
+        long[] values;
+        synchronized (latencies) {
+            int n = (int)Math.min(latencyCount, LATENCY_SAMPLES);
+            if (n == 0) return 0;
+            values = Arrays.copyOf(latencies, n);
+        }
+        Arrays.sort(values);
+        int index = (int)Math.ceil(Math.max(0, Math.min(100, percentile)) / 100 * values.length) - 1;
+        return values[Math.max(0, index)] / 1e6;
+    }
+
+    /**
+     * Offer a frame. The pixels are copied, so the frame can be reused by the caller.
+     * @param frame Frame with the size and color space of the stream.
+     * @return True if the frame was queued, false if it was dropped or the stream is closed.
+     */
+    public boolean offer(FastBitmap frame){
+        if (frame.getWidth() != width || frame.getHeight() != height || frame.getColorSpace() != colorSpace)
+            throw new IllegalArgumentException("The frame must be the same dimension and color space of the stream.");
+
+        received.incrementAndGet();
+        Buffer buffer;
+        synchronized (lock) {
+            if (closed) return false;
+            if (pending != null && backpressure == Backpressure.Drop) {
+                dropped.incrementAndGet();
+                return false;
+            }
+            buffer = free.poll();
+            if (buffer == null && pending == null) {
+                // Another producer holds the last buffer.
+                dropped.incrementAndGet();
+                return false;
+            }
+            if (buffer == null) {
+                buffer = pending;
+                pending = null;
+                dropped.incrementAndGet();
+            }
+        }
+
+        if (buffer.image.getColorSpace() != colorSpace)
+            buffer.image = new FastBitmap(width, height, colorSpace);
+        if (colorSpace == FastBitmap.ColorSpace.Grayscale)
+            System.arraycopy(frame.getGrayData(), 0, buffer.image.getGrayData(), 0, width * height);
+        else
+            System.arraycopy(frame.getRGBData(), 0, buffer.image.getRGBData(), 0, width * height);
+        buffer.timestamp = System.nanoTime();
+
+        synchronized (lock) {
+            if (pending != null) {
+                free.add(pending);
+                dropped.incrementAndGet();
+            }
+            pending = buffer;
+            lock.notifyAll();
+        }
+        return true;
+    }
+
+    /**
+     * Stop the stream after the pending frame. The subscriber receives onComplete.
+     */
+    public void close(){
+        synchronized (lock) {
+            closed = true;
+            lock.notifyAll();
+        }
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        if (upstream != null) {
+            subscription.cancel();
+            return;
+        }
+        upstream = subscription;
+        // Frames are dropped here, never queued, so the publisher does not need to slow down.
+        subscription.request(Long.MAX_VALUE);
+    }
+
+    @Override
+    public void onNext(FastBitmap item) {
+        offer(item);
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        synchronized (lock) {
+            error = throwable;
+        }
+        close();
+    }
+
+    @Override
+    public void onComplete() {
+        close();
+    }
+
+    @Override
+    public void subscribe(final Flow.Subscriber<? super FastBitmap> subscriber) {
+        synchronized (lock) {
+            if (this.subscriber != null) {
+                subscriber.onSubscribe(new Flow.Subscription() {
+                    @Override
+                    public void request(long n) {}
+                    @Override
+                    public void cancel() {}
+                });
+                subscriber.onError(new IllegalStateException("FrameStream supports only one subscriber."));
+                return;
+            }
+            this.subscriber = subscriber;
+        }
+
+        subscriber.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(long n) {
+                if (n <= 0) {
+                    cancel();
+                    subscriber.onError(new IllegalArgumentException("Request must be positive."));
+                    return;
+                }
+                long current, next;
+                do {
+                    current = demand.get();
+                    next = current + n < 0 ? Long.MAX_VALUE : current + n;
+                } while (!demand.compareAndSet(current, next));
+            }
+
+            @Override
+            public void cancel() {
+                synchronized (lock) {
+                    if (FrameStream.this.subscriber == subscriber)
+                        FrameStream.this.subscriber = null;
+                }
+            }
+        });
+    }
+
+    private void work(){
+        while (true) {
+            Buffer buffer;
+            synchronized (lock) {
+                while (pending == null && !closed) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException ex) {
+                        return;
+                    }
+                }
+                if (pending == null) break;
+                buffer = pending;
+                pending = null;
+            }
+
+            FastBitmap result = buffer.image;
+            synchronized (stages) {
+                for (int i = 0; i < stages.size(); i++)
+                    result = stages.get(i).process(result);
+            }
+
+            Flow.Subscriber<? super FastBitmap> s = subscriber;
+            if (s != null && take()) {
+                s.onNext(result);
+                processed.incrementAndGet();
+                record(System.nanoTime() - buffer.timestamp);
+            }
+            else{
+                dropped.incrementAndGet();
+            }
+
+            synchronized (lock) {
+                free.add(buffer);
+            }
+        }
+
+        Flow.Subscriber<? super FastBitmap> s = subscriber;
+        if (s != null) {
+            if (error != null)
+                s.onError(error);
+            else
+                s.onComplete();
+        }
+    }
+
+    private boolean take(){
+        long current;
+        do {
+            current = demand.get();
+            if (current == 0) return false;
+            if (current == Long.MAX_VALUE) return true;
+        } while (!demand.compareAndSet(current, current - 1));
+        return true;
+    }
+
+    private void record(long nanos){
+        synchronized (latencies) {
+            latencies[(int)(latencyCount % LATENCY_SAMPLES)] = nanos;
+            latencyCount++;
+        }
+    }
+
+    private static class Buffer {
+        FastBitmap image;
+        long timestamp;
+
+        Buffer(FastBitmap image) {
+            this.image = image;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,127 @@
+// Catalano Imaging Library
+// The Catalano Framework
+//
+// Copyright © Diego Catalano, 2013
+// diego.catalano at live.com
+//
+//    This library is free software; you can redistribute it and/or
+//    modify it under the terms of the GNU Lesser General Public
+//    License as published by the Free Software Foundation; either
+//    version 2.1 of the License, or (at your option) any later version.
+//
+//    This library is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+//    Lesser General Public License for more details.
+//
+//    You should have received a copy of the GNU Lesser General Public
+//    License along with this library; if not, write to the Free Software
+//    Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+//
+
+package Catalano.Imaging.Video;
+
+import Catalano.Imaging.FastBitmap;
+import Catalano.Math.Functions.Gaussian;
+
+/**
+ * Stage that applies a separable gaussian blur in place.
+ * <br /> The kernel is computed once in fixed point and the intermediate row pass is kept between frames. Borders are clamped to the edge.
+ * @author Diego Catalano
+ */
+public class GaussianBlurStage implements IFrameStage{
+
+    private int[] kernel;
+    private int[] scratch;
+
+    /**
+     * Initialize a new instance of the GaussianBlurStage class.
+     */
+    public GaussianBlurStage() {
+        this(1.4, 5);
+    }
+
+    /**
+     * Initialize a new instance of the GaussianBlurStage class.
+     * @param sigma Gaussian sigma value.[0.5, 5.0].
+     * @param size Kernel size. [3, 21].
+     */
+    public GaussianBlurStage(double sigma, int size) {
+        sigma = Math.max(0.5, Math.min(5.0, sigma));
+        size = Math.max(3, Math.min(21, size | 1));
+
+        double[] k = new Gaussian(sigma).Kernel1D(size);
+        double sum = 0;
+        for (int i = 0; i < k.length; i++) sum += k[i];
+
+        // Weights sum to 1 << 12, the rounding error goes to the center.
+        this.kernel = new int[size];
+        int total = 0;
+        for (int i = 0; i < size; i++) {
+            kernel[i] = (int)Math.round(k[i] / sum * 4096);
+            total += kernel[i];
+        }
+        kernel[size / 2] += 4096 - total;
+    }
+
+    @Override
+    public FastBitmap process(FastBitmap frame) {
+        int width = frame.getWidth();
+        int height = frame.getHeight();
+        if (scratch == null || scratch.length != width * height)
+            scratch = new int[width * height];
+
+        if (frame.isGrayscale()) {
+            byte[] gray = frame.getGrayData();
+            rows(gray, null, 0, width, height);
+            columns(gray, null, 0, width, height);
+        }
+        else{
+            int[] rgb = frame.getRGBData();
+            for (int shift = 16; shift >= 0; shift -= 8) {
+                rows(null, rgb, shift, width, height);
+                columns(null, rgb, shift, width, height);
+            }
+        }
+        return frame;
+    }
+
+    private void rows(byte[] gray, int[] rgb, int shift, int width, int height){
+        int r = kernel.length / 2;
+        for (int x = 0; x < height; x++) {
+            int row = x * width;
+            for (int y = 0; y < width; y++) {
+                int sum = 0;
+                for (int k = -r; k <= r; k++) {
+                    int j = y + k;
+                    j = j < 0 ? 0 : (j >= width ? width - 1 : j);
+                    int v = gray != null ? gray[row + j] & 0xFF : rgb[row + j] >> shift & 0xFF;
+                    sum += kernel[k + r] * v;
+                }
+                // Keep 8 fractional bits so the column pass fits in an int.
+                scratch[row + y] = (sum + 8) >> 4;
+            }
+        }
+    }
+
+    private void columns(byte[] gray, int[] rgb, int shift, int width, int height){
+        int r = kernel.length / 2;
+        int mask = ~(0xFF << shift);
+        for (int x = 0; x < height; x++) {
+            for (int y = 0; y < width; y++) {
+                int sum = 0;
+                for (int k = -r; k <= r; k++) {
+                    int i = x + k;
+                    i = i < 0 ? 0 : (i >= height ? height - 1 : i);
+                    sum += kernel[k + r] * scratch[i * width + y];
+                }
+                int v = (sum + (1 << 19)) >> 20;
+                v = v > 255 ? 255 : v;
+                if (gray != null)
+                    gray[x * width + y] = (byte)v;
+                else
+                    rgb[x * width + y] = (rgb[x * width + y] & mask) | v << shift;
+            }
+        }
+    }
+}
\ No newline at end of file
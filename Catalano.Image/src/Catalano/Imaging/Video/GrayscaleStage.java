@@ -0,0 +1,58 @@
+// Catalano Imaging Library
+// The Catalano Framework
+//
+// Copyright © Diego Catalano, 2013
+// diego.catalano at live.com
+//
+//    This library is free software; you can redistribute it and/or
+//    modify it under the terms of the GNU Lesser General Public
+//    License as published by the Free Software Foundation; either
+//    version 2.1 of the License, or (at your option) any later version.
+//
+//    This library is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+//    Lesser General Public License for more details.
+//
+//    You should have received a copy of the GNU Lesser General Public
+//    License along with this library; if not, write to the Free Software
+//    Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+//
+
+package Catalano.Imaging.Video;
+
+import Catalano.Imaging.FastBitmap;
+
+/**
+ * Stage that converts RGB frames to grayscale into a reusable buffer.
+ * <br /> Uses 0.2125R + 0.7154G + 0.0721B, the same of Grayscale. Grayscale frames are passed through.
+ * @author Diego Catalano
+ */
+public class GrayscaleStage implements IFrameStage{
+
+    private FastBitmap buffer;
+
+    /**
+     * Initialize a new instance of the GrayscaleStage class.
+     */
+    public GrayscaleStage() {}
+
+    @Override
+    public FastBitmap process(FastBitmap frame) {
+        if (frame.isGrayscale()) return frame;
+
+        int width = frame.getWidth();
+        int height = frame.getHeight();
+        if (buffer == null || buffer.getWidth() != width || buffer.getHeight() != height)
+            buffer = new FastBitmap(width, height, FastBitmap.ColorSpace.Grayscale);
+
+        int[] rgb = frame.getRGBData();
+        byte[] gray = buffer.getGrayData();
+        for (int i = 0; i < gray.length; i++) {
+            int p = rgb[i];
+            // 0.2125, 0.7154, 0.0721 in 16 bits fixed point.
+            gray[i] = (byte)((13926 * (p >> 16 & 0xFF) + 46885 * (p >> 8 & 0xFF) + 4725 * (p & 0xFF)) >> 16);
+        }
+        return buffer;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,39 @@
+// Catalano Imaging Library
+// The Catalano Framework
+//
+// Copyright © Diego Catalano, 2013
+// diego.catalano at live.com
+//
+//    This library is free software; you can redistribute it and/or
+//    modify it under the terms of the GNU Lesser General Public
+//    License as published by the Free Software Foundation; either
+//    version 2.1 of the License, or (at your option) any later version.
+//
+//    This library is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+//    Lesser General Public License for more details.
+//
+//    You should have received a copy of the GNU Lesser General Public
+//    License along with this library; if not, write to the Free Software
+//    Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+//
+
+package Catalano.Imaging.Video;
+
+import Catalano.Imaging.FastBitmap;
+
+/**
+ * Frame stage's interface.
+ * <br /> A stage of a FrameStream. Stages keep their buffers between frames, so they do not allocate per frame.
+ * @author Diego Catalano
+ */
+public interface IFrameStage {
+
+    /**
+     * Process a frame.
+     * @param frame Frame, it can be modified.
+     * @return The frame itself or a buffer owned by the stage, which is overwritten by the next frame.
+     */
+    FastBitmap process(FastBitmap frame);
+}
\ No newline at end of file
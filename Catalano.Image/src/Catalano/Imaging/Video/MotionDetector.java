@@ -0,0 +1,443 @@
+// Catalano Imaging Library
+// The Catalano Framework
+//
+// Copyright © Diego Catalano, 2013
+// diego.catalano at live.com
+//
+//    This library is free software; you can redistribute it and/or
+//    modify it under the terms of the GNU Lesser General Public
+//    License as published by the Free Software Foundation; either
+//    version 2.1 of the License, or (at your option) any later version.
+//
+//    This library is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+//    Lesser General Public License for more details.
+//
+//    You should have received a copy of the GNU Lesser General Public
+//    License along with this library; if not, write to the Free Software
+//    Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+//
+
+package Catalano.Imaging.Video;
+
+import Catalano.Core.DoublePoint;
+import Catalano.Core.IntPoint;
+import Catalano.Imaging.FastBitmap;
+import Catalano.Imaging.Tools.ConnectedComponentsLabeling;
+import Catalano.Imaging.Tools.LabeledImage;
+import java.util.ArrayList;
+
+/**
+ * Motion detector with an incremental background model.
+ * <br /> Each frame is compared to the background and the background is updated in the same pass, without intermediate images.
+ * The result is a binary mask (255 for motion) and the list of motion regions.
+ * <br /> With subsample greater than 1 the model only keeps one pixel out of subsample in each direction, the mask has the reduced size and the regions are given in frame coordinates.
+ * @author Diego Catalano
+ */
+public class MotionDetector implements IFrameStage{
+
+    /**
+     * Background model.
+     */
+    public static enum Model {
+
+        /**
+         * Running average: bg = bg + rate * (frame - bg). Motion when |frame - bg| is greater than threshold.
+         */
+        RunningAverage,
+        /**
+         * Mixture of three gaussians per pixel (Stauffer-Grimson). Motion when no background gaussian is closer than threshold standard deviations.
+         */
+        GaussianMixture
+    };
+
+    private static final int K = 3;
+    private static final float INITIAL_VARIANCE = 225f;
+    private static final float MIN_VARIANCE = 16f;
+    private static final float BACKGROUND_RATIO = 0.7f;
+
+    private Model model = Model.RunningAverage;
+    private double threshold = 25;
+    private double learningRate = 0.05;
+    private int subsample = 1;
+    private int minArea = 1;
+
+    private int width, height;
+    private int cols, rows;
+    private FastBitmap mask;
+    private int[] average;
+    private float[] weight, mean, variance;
+
+    /**
+     * Initialize a new instance of the MotionDetector class.
+     */
+    public MotionDetector() {}
+
+    /**
+     * Initialize a new instance of the MotionDetector class.
+     * @param model Background model.
+     */
+    public MotionDetector(Model model) {
+        this.model = model;
+        if (model == Model.GaussianMixture) {
+            threshold = 2.5;
+            learningRate = 0.01;
+        }
+    }
+
+    /**
+     * Initialize a new instance of the MotionDetector class.
+     * @param model Background model.
+     * @param threshold Gray level difference for RunningAverage, number of standard deviations for GaussianMixture.
+     * @param learningRate Learning rate, [0, 1].
+     */
+    public MotionDetector(Model model, double threshold, double learningRate) {
+        this.model = model;
+        this.threshold = threshold;
+        setLearningRate(learningRate);
+    }
+
+    /**
+     * Get background model.
+     * @return Background model.
+     */
+    public Model getModel() {
+        return model;
+    }
+
+    /**
+     * Get threshold.
+     * @return Gray level difference for RunningAverage, number of standard deviations for GaussianMixture.
+     */
+    public double getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * Set threshold.
+     * @param threshold Gray level difference for RunningAverage, number of standard deviations for GaussianMixture.
+     */
+    public void setThreshold(double threshold) {
+        this.threshold = threshold;
+    }
+
+    /**
+     * Get learning rate.
+     * @return Learning rate.
+     */
+    public double getLearningRate() {
+        return learningRate;
+    }
+
+    /**
+     * Set learning rate.
+     * @param learningRate Learning rate, [0, 1].
+     */
+    public void setLearningRate(double learningRate) {
+        this.learningRate = Math.max(0, Math.min(1, learningRate));
+    }
+
+    /**
+     * Get subsample.
+     * @return Subsample.
+     */
+    public int getSubsample() {
+        return subsample;
+    }
+
+    /**
+     * Set subsample. The background model is reset.
+     * @param subsample Keep one pixel out of subsample in each direction.
+     */
+    public void setSubsample(int subsample) {
+        this.subsample = Math.max(1, subsample);
+        reset();
+    }
+
+    /**
+     * Get minimum area of the regions, in frame pixels.
+     * @return Minimum area.
+     */
+    public int getMinArea() {
+        return minArea;
+    }
+
+    /**
+     * Set minimum area of the regions, in frame pixels.
+     * @param minArea Minimum area.
+     */
+    public void setMinArea(int minArea) {
+        this.minArea = minArea;
+    }
+
+    /**
+     * Get motion mask of the last frame.
+     * @return Mask, or null before the first frame.
+     */
+    public FastBitmap getMask() {
+        return mask;
+    }
+
+    /**
+     * Forget the background.
+     */
+    public void reset(){
+        average = null;
+        weight = mean = variance = null;
+        mask = null;
+    }
+
+    /**
+     * Update the background with a frame and detect motion.
+     * @param frame Grayscale or RGB frame, it is not modified.
+     * @return Motion mask, reused by the next frame.
+     */
+    @Override
+    public FastBitmap process(FastBitmap frame) {
+        if (mask == null || frame.getWidth() != width || frame.getHeight() != height) {
+            width = frame.getWidth();
+            height = frame.getHeight();
+            cols = (width + subsample - 1) / subsample;
+            rows = (height + subsample - 1) / subsample;
+            mask = new FastBitmap(cols, rows, FastBitmap.ColorSpace.Grayscale);
+            average = null;
+            weight = null;
+        }
+
+        if (model == Model.RunningAverage)
+            runningAverage(frame);
+        else
+            gaussianMixture(frame);
+
+        return mask;
+    }
+
+    /**
+     * Find the 8-connected motion regions of the last mask.
+     * @return Regions with at least minArea pixels.
+     */
+    public ArrayList<Region> getRegions(){
+        ArrayList<Region> regions = new ArrayList<Region>();
+        if (mask == null) return regions;
+
+        LabeledImage labels = new ConnectedComponentsLabeling(ConnectedComponentsLabeling.Connectivity.Eight).Process(mask);
+        int s = subsample;
+        for (int l = 1; l <= labels.getCount(); l++) {
+            int area = labels.getArea(l) * s * s;
+            if (area < minArea) continue;
+            DoublePoint c = labels.getCentroid(l);
+            regions.add(new Region(
+                    area,
+                    new IntPoint((int)(c.x * s) + s / 2, (int)(c.y * s) + s / 2),
+                    labels.getMinX(l) * s, labels.getMinY(l) * s,
+                    Math.min(height - 1, labels.getMaxX(l) * s + s - 1), Math.min(width - 1, labels.getMaxY(l) * s + s - 1)));
+        }
+        return regions;
+    }
+
+    private void runningAverage(FastBitmap frame){
+        byte[] gray = frame.getGrayData();
+        int[] rgb = frame.getRGBData();
+        byte[] m = mask.getGrayData();
+        int n = m.length;
+        int t = (int)(threshold * 256);
+        int rate = (int)Math.round(learningRate * 256);
+
+        if (average == null) {
+            average = new int[n];
+            for (int x = 0, i = 0; x < rows; x++)
+                for (int y = 0; y < cols; y++, i++)
+                    average[i] = luma(gray, rgb, (x * width + y) * subsample) << 8;
+        }
+
+        // Background in 8.8 fixed point.
+        for (int x = 0, i = 0; x < rows; x++) {
+            for (int y = 0; y < cols; y++, i++) {
+                int v = luma(gray, rgb, (x * width + y) * subsample) << 8;
+                int d = v - average[i];
+                m[i] = (byte)((d < 0 ? -d : d) > t ? 255 : 0);
+                // Round to nearest, so the background does not drift down.
+                average[i] += (d * rate + 128) >> 8;
+            }
+        }
+    }
+
+    private void gaussianMixture(FastBitmap frame){
+        byte[] gray = frame.getGrayData();
+        int[] rgb = frame.getRGBData();
+        byte[] m = mask.getGrayData();
+        int n = m.length;
+        float a = (float)learningRate;
+        float t2 = (float)(threshold * threshold);
+
+        if (weight == null) {
+            weight = new float[n * K];
+            mean = new float[n * K];
+            variance = new float[n * K];
+            for (int x = 0, i = 0; x < rows; x++) {
+                for (int y = 0; y < cols; y++, i++) {
+                    int o = i * K;
+                    mean[o] = luma(gray, rgb, (x * width + y) * subsample);
+                    weight[o] = 1;
+                    for (int k = 0; k < K; k++) variance[o + k] = INITIAL_VARIANCE;
+                }
+            }
+        }
+
+        for (int x = 0, i = 0; x < rows; x++) {
+            for (int y = 0; y < cols; y++, i++) {
+                float v = luma(gray, rgb, (x * width + y) * subsample);
+                int o = i * K;
+
+                // Components are kept sorted by weight / sigma, the first match wins.
+                int match = -1;
+                boolean matched = false;
+                for (int k = 0; k < K; k++) {
+                    if (weight[o + k] <= 0) break;
+                    float d = v - mean[o + k];
+                    if (d * d < t2 * variance[o + k]) {
+                        match = k;
+                        matched = true;
+                        break;
+                    }
+                }
+
+                float total = 0;
+                for (int k = 0; k < K; k++) {
+                    weight[o + k] *= 1 - a;
+                    total += weight[o + k];
+                }
+
+                if (matched) {
+                    int c = o + match;
+                    weight[c] += a;
+                    total += a;
+                    float rho = a / weight[c];
+                    float d = v - mean[c];
+                    mean[c] += rho * d;
+                    float var = variance[c] + rho * (d * d - variance[c]);
+                    variance[c] = var < MIN_VARIANCE ? MIN_VARIANCE : var;
+                }
+                else{
+                    // Replace the least probable component.
+                    match = K - 1;
+                    int c = o + match;
+                    total += a - weight[c];
+                    weight[c] = a;
+                    mean[c] = v;
+                    variance[c] = INITIAL_VARIANCE;
+                }
+
+                float inv = 1f / total;
+                for (int k = 0; k < K; k++) weight[o + k] *= inv;
+
+                // Bubble the updated component to its place.
+                while (match > 0 && rank(o + match) > rank(o + match - 1)) {
+                    swap(o + match, o + match - 1);
+                    match--;
+                }
+                while (match < K - 1 && rank(o + match) < rank(o + match + 1)) {
+                    swap(o + match, o + match + 1);
+                    match++;
+                }
+
+                // The first components up to BACKGROUND_RATIO of the weight model the background.
+                float cumulative = 0;
+                boolean background = false;
+                for (int k = 0; matched && k < K; k++) {
+                    if (k == match) {
+                        background = true;
+                        break;
+                    }
+                    cumulative += weight[o + k];
+                    if (cumulative > BACKGROUND_RATIO) break;
+                }
+                m[i] = (byte)(background ? 0 : 255);
+            }
+        }
+    }
+
+    private float rank(int c){
+        return weight[c] * weight[c] / variance[c];
+    }
+
+    private void swap(int a, int b){
+        float w = weight[a]; weight[a] = weight[b]; weight[b] = w;
+        float mu = mean[a]; mean[a] = mean[b]; mean[b] = mu;
+        float s = variance[a]; variance[a] = variance[b]; variance[b] = s;
+    }
+
+    private static int luma(byte[] gray, int[] rgb, int i){
+        if (gray != null) return gray[i] & 0xFF;
+        int p = rgb[i];
+        return (13926 * (p >> 16 & 0xFF) + 46885 * (p >> 8 & 0xFF) + 4725 * (p & 0xFF)) >> 16;
+    }
+
+    /**
+     * Connected region of motion.
+     */
+    public static class Region {
+
+        private int area;
+        private IntPoint center;
+        private int minX, minY, maxX, maxY;
+
+        Region(int area, IntPoint center, int minX, int minY, int maxX, int maxY) {
+            this.area = area;
+            this.center = center;
+            this.minX = minX;
+            this.minY = minY;
+            this.maxX = maxX;
+            this.maxY = maxY;
+        }
+
+        /**
+         * Get area.
+         * @return Area, in frame pixels.
+         */
+        public int getArea() {
+            return area;
+        }
+
+        /**
+         * Get center.
+         * @return Center.
+         */
+        public IntPoint getCenter() {
+            return center;
+        }
+
+        /**
+         * Get first row of the bounding box.
+         * @return Row.
+         */
+        public int getMinX() {
+            return minX;
+        }
+
+        /**
+         * Get first column of the bounding box.
+         * @return Column.
+         */
+        public int getMinY() {
+            return minY;
+        }
+
+        /**
+         * Get last row of the bounding box.
+         * @return Row.
+         */
+        public int getMaxX() {
+            return maxX;
+        }
+
+        /**
+         * Get last column of the bounding box.
+         * @return Column.
+         */
+        public int getMaxY() {
+            return maxY;
+        }
+    }
+}
\ No newline at end of file
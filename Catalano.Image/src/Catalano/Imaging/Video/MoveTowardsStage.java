@@ -0,0 +1,132 @@
+// Catalano Imaging Library
+// The Catalano Framework
+//
+// Copyright © Diego Catalano, 2013
+// diego.catalano at live.com
+//
+//    This library is free software; you can redistribute it and/or
+//    modify it under the terms of the GNU Lesser General Public
+//    License as published by the Free Software Foundation; either
+//    version 2.1 of the License, or (at your option) any later version.
+//
+//    This library is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+//    Lesser General Public License for more details.
+//
+//    You should have received a copy of the GNU Lesser General Public
+//    License along with this library; if not, write to the Free Software
+//    Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+//
+
+package Catalano.Imaging.Video;
+
+import Catalano.Imaging.FastBitmap;
+
+/**
+ * Stage that keeps a background image moving towards each frame, as MoveTowards does.
+ * <br /> The update is <b>bg = bg + Min( Abs( frame - bg ), step ) * Sign( frame - bg )</b>. The background starts from the first frame.
+ * The frame is replaced by the background, or by its absolute difference to the background.
+ * @author Diego Catalano
+ */
+public class MoveTowardsStage implements IFrameStage{
+
+    private FastBitmap background;
+    private int stepSize = 1;
+    private boolean difference = false;
+
+    /**
+     * Initialize a new instance of the MoveTowardsStage class.
+     */
+    public MoveTowardsStage() {}
+
+    /**
+     * Initialize a new instance of the MoveTowardsStage class.
+     * @param stepSize Step size, [0, 255].
+     * @param difference True to output the difference between frame and background, false to output the background.
+     */
+    public MoveTowardsStage(int stepSize, boolean difference) {
+        setStepSize(stepSize);
+        this.difference = difference;
+    }
+
+    /**
+     * Defines the maximum amount of changes per pixel in the background.
+     * @return Step size, [0, 255].
+     */
+    public int getStepSize() {
+        return stepSize;
+    }
+
+    /**
+     * Defines the maximum amount of changes per pixel in the background.
+     * @param stepSize Step size, [0, 255].
+     */
+    public void setStepSize(int stepSize) {
+        this.stepSize = Math.max(0, Math.min(255, stepSize));
+    }
+
+    /**
+     * Get background.
+     * @return Background, or null before the first frame.
+     */
+    public FastBitmap getBackground() {
+        return background;
+    }
+
+    /**
+     * Forget the background.
+     */
+    public void reset(){
+        background = null;
+    }
+
+    @Override
+    public FastBitmap process(FastBitmap frame) {
+        if (background == null || background.getWidth() != frame.getWidth() || background.getHeight() != frame.getHeight() || background.getColorSpace() != frame.getColorSpace())
+            background = new FastBitmap(frame);
+
+        if (frame.isGrayscale()) {
+            byte[] cur = frame.getGrayData();
+            byte[] bg = background.getGrayData();
+            for (int i = 0; i < cur.length; i++) {
+                int c = cur[i] & 0xFF;
+                int b = move(bg[i] & 0xFF, c);
+                bg[i] = (byte)b;
+                if (difference) {
+                    int d = c - b;
+                    cur[i] = (byte)(d < 0 ? -d : d);
+                }
+                else{
+                    cur[i] = (byte)b;
+                }
+            }
+        }
+        else{
+            int[] cur = frame.getRGBData();
+            int[] bg = background.getRGBData();
+            for (int i = 0; i < cur.length; i++) {
+                int c = cur[i];
+                int p = bg[i];
+                int r = move(p >> 16 & 0xFF, c >> 16 & 0xFF);
+                int g = move(p >> 8 & 0xFF, c >> 8 & 0xFF);
+                int b = move(p & 0xFF, c & 0xFF);
+                bg[i] = r << 16 | g << 8 | b;
+                if (difference) {
+                    r = Math.abs((c >> 16 & 0xFF) - r);
+                    g = Math.abs((c >> 8 & 0xFF) - g);
+                    b = Math.abs((c & 0xFF) - b);
+                }
+                cur[i] = r << 16 | g << 8 | b;
+            }
+        }
+        return frame;
+    }
+
+    private int move(int value, int target){
+        int v = target - value;
+        if (v > 0) return value + (stepSize < v ? stepSize : v);
+        if (v < 0) return value - (stepSize < -v ? stepSize : -v);
+        return value;
+    }
+}
\ No newline at end of file
@@ -79,24 +79,24 @@ public final class QuadrilateralTransformationCalc {
         return b;
     }
     
-    // Calculate matrix for unit square to quad mapping
-    private static double[][] MapSquareToQuad( ArrayList<IntPoint> quad ){
+    // Calculate matrix for unit square to quad mapping, the quad is x0, y0, x1, y1, x2, y2, x3, y3
+    private static double[][] MapSquareToQuad( double[] quad ){
         double[][] sq = new double[3][3];
         double px, py;
 
-        px = quad.get(0).x - quad.get(1).x + quad.get(2).x - quad.get(3).x;
-        py = quad.get(0).y - quad.get(1).y + quad.get(2).y - quad.get(3).y;
+        px = quad[0] - quad[2] + quad[4] - quad[6];
+        py = quad[1] - quad[3] + quad[5] - quad[7];
 
         if ( ( px < TOLERANCE ) && ( px > -TOLERANCE ) &&
              ( py < TOLERANCE ) && ( py > -TOLERANCE ) )
         {
-            sq[0][0] = quad.get(1).x - quad.get(0).x;
-            sq[0][1] = quad.get(2).x - quad.get(1).x;
-            sq[0][2] = quad.get(0).x;
+            sq[0][0] = quad[2] - quad[0];
+            sq[0][1] = quad[4] - quad[2];
+            sq[0][2] = quad[0];
 
-            sq[1][0] = quad.get(1).y - quad.get(0).y;
-            sq[1][1] = quad.get(2).y - quad.get(1).y;
-            sq[1][2] = quad.get(0).y;
+            sq[1][0] = quad[3] - quad[1];
+            sq[1][1] = quad[5] - quad[3];
+            sq[1][2] = quad[1];
 
             sq[2][0] = 0.0;
             sq[2][1] = 0.0;
@@ -106,10 +106,10 @@ public final class QuadrilateralTransformationCalc {
         {
             double dx1, dx2, dy1, dy2, del;
 
-            dx1 = quad.get(1).x - quad.get(2).x;
-            dx2 = quad.get(3).x - quad.get(2).x;
-            dy1 = quad.get(1).y - quad.get(2).y;
-            dy2 = quad.get(3).y - quad.get(2).y;
+            dx1 = quad[2] - quad[4];
+            dx2 = quad[6] - quad[4];
+            dy1 = quad[3] - quad[5];
+            dy2 = quad[7] - quad[5];
 
             del = Det2( dx1, dx2, dy1, dy2 );
 
@@ -120,19 +120,47 @@ public final class QuadrilateralTransformationCalc {
             sq[2][1] = Det2( dx1, px, dy1, py ) / del;
             sq[2][2] = 1.0;
 
-            sq[0][0] = quad.get(1).x - quad.get(0).x + sq[2][0] * quad.get(1).x;
-            sq[0][1] = quad.get(3).x - quad.get(0).x + sq[2][1] * quad.get(3).x;
-            sq[0][2] = quad.get(0).x;
+            sq[0][0] = quad[2] - quad[0] + sq[2][0] * quad[2];
+            sq[0][1] = quad[6] - quad[0] + sq[2][1] * quad[6];
+            sq[0][2] = quad[0];
 
-            sq[1][0] = quad.get(1).y - quad.get(0).y + sq[2][0] * quad.get(1).y;
-            sq[1][1] = quad.get(3).y - quad.get(0).y + sq[2][1] * quad.get(3).y;
-            sq[1][2] = quad.get(0).y;
+            sq[1][0] = quad[3] - quad[1] + sq[2][0] * quad[3];
+            sq[1][1] = quad[7] - quad[1] + sq[2][1] * quad[7];
+            sq[1][2] = quad[1];
         }
         return sq;
     }
     
-    // Calculate matrix for general quad to quad mapping
+    // Corners of a quad as x0, y0, x1, y1, x2, y2, x3, y3
+    private static double[] ToArray( ArrayList<IntPoint> quad ){
+        double[] q = new double[8];
+        for (int i = 0; i < 4; i++) {
+            q[i * 2] = quad.get(i).x;
+            q[i * 2 + 1] = quad.get(i).y;
+        }
+        return q;
+    }
+    
+    /**
+     * Calculate matrix for general quad to quad mapping.
+     * @param input Corners of the input quad.
+     * @param output Corners of the output quad.
+     * @return Homogeneous 3x3 matrix, or null if the output quad is degenerate.
+     */
     public static double[][] MapQuadToQuad( ArrayList<IntPoint> input, ArrayList<IntPoint> output ){
+        return MapQuadToQuad( ToArray( input ), ToArray( output ) );
+    }
+    
+    /**
+     * Calculate matrix for general quad to quad mapping.
+     * @param input Corners of the input quad, as x0, y0, x1, y1, x2, y2, x3, y3.
+     * @param output Corners of the output quad, as x0, y0, x1, y1, x2, y2, x3, y3.
+     * @return Homogeneous 3x3 matrix, or null if the output quad is degenerate.
+     */
+    public static double[][] MapQuadToQuad( double[] input, double[] output ){
+        if ( input.length < 8 || output.length < 8 )
+            throw new IllegalArgumentException( "A quad must have 4 corners." );
+        
         double[][] squareToInpit = MapSquareToQuad( input );
         double[][] squareToOutput = MapSquareToQuad( output );
 